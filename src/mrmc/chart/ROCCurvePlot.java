@@ -50,7 +50,7 @@ public class ROCCurvePlot extends JFrame {
 	private static final long serialVersionUID = 1L;
 	private XYLineAndShapeRenderer renderer;
 	public XYSeriesCollection seriesCollection;          //ROC curve data
-	private ArrayList<InterpolatedLine> allLines;
+	private ROCCurveSeries curves;
 	private ArrayList<String> readerSeriesTitles;         //readers ID
 	private ArrayList<JCheckBox> readerSeriesBoxes;
 	private JCheckBox vert;
@@ -78,13 +78,13 @@ public class ROCCurvePlot extends JFrame {
 		inputfilepathandname = filePathAndName;
 		filename = fileName.substring(0,fileName.lastIndexOf("."));;
 		TextTitle subtitle = new TextTitle(fileName);
-		seriesCollection = new XYSeriesCollection();
-		readerSeriesTitles = new ArrayList<String>();       
-		modalityID =fulltreeMap.keySet();
+		curves = new ROCCurveSeries(fulltreeMap);     										//extract data from fulltreeMap into seriesCollection and readerSeriesTitles
+		seriesCollection = curves.seriesCollection;
+		readerSeriesTitles = curves.readerSeriesTitles;
+		modalityID = curves.modalityID;
 		List<String> readerarray = new ArrayList<String>();
 		for (String mod : modalityID){
 		    TreeMap<String, TreeSet<XYPair>> treeMap = fulltreeMap.get(mod);
-			createDataset(mod,treeMap);     										//extract data from fulltreeMap and save them into seriesCollection and readerSeriesTitles
 			for (String r : treeMap.keySet()) {
 				if(!readerarray.contains(r)){
 				readerarray.add(r);
@@ -176,38 +176,6 @@ public class ROCCurvePlot extends JFrame {
 
 	}
 
-	/**
-	 * Converts the mapping of readers to curve points into a collection of
-	 * separate XY data.
-	 * 
-	 * @param treeMap Mapping of readers to points defining a curve
-	 */
-	private void createDataset(String mod, TreeMap<String, TreeSet<XYPair>> treeMap) {
-		for (String r : treeMap.keySet()) {
-			XYSeries series = new XYSeries(mod +": "+ r, false);
-			readerSeriesTitles.add("" + r);
-			for (XYPair point : treeMap.get(r)) {
-				series.add(point.x, point.y);
-			}
-			seriesCollection.addSeries(series);
-		}
-
-		allLines = new ArrayList<InterpolatedLine>();
-		for (String r : treeMap.keySet()) {
-
-			allLines.add(new InterpolatedLine(treeMap.get(r)));
-		}
-		XYSeries vertAvg = generateVerticalROC(mod);
-		seriesCollection.addSeries(vertAvg);
-		XYSeries horizAvg = generateHorizontalROC(mod);
-		seriesCollection.addSeries(horizAvg);
-		XYSeries diagAvg = generateDiagonalROC(mod, treeMap);
-		seriesCollection.addSeries(diagAvg);
-		XYSeries pooledAvg = new XYSeries(mod + ": Pooled Average", false);
-		seriesCollection.addSeries(pooledAvg);
-
-	}
-
 	/**
 	 * Adds a set of XY points to the collection of ROC curves
 	 * 
@@ -215,102 +183,7 @@ public class ROCCurvePlot extends JFrame {
 	 * @param type Name for this set of points
 	 */
 	public void addData(TreeMap<String, TreeSet<XYPair>> fullnewData, String type) {
-		for (String mod : modalityID){
-			TreeSet<XYPair> newData = fullnewData.get(mod);
-			for (XYPair point : newData) {
-				seriesCollection.getSeries(mod +": " + type).add(point.x, point.y);
-			}
-		}
-	}
-
-	/**
-	 * Creates an ROC curve that averages together the scores for all readers in
-	 * the diagonal direction
-	 * 
-	 * @param treeMap Mapping of readers to points defining a curve
-	 * @return Series containing the ROC curve points
-	 */
-	private XYSeries generateDiagonalROC(String mod, TreeMap<String, TreeSet<XYPair>> treeMap) {
-		XYSeries diagAvg = new XYSeries(mod + ": Diagonal Average", false);
-		TreeMap<String, TreeSet<XYPair>> rotatedData = new TreeMap<String, TreeSet<XYPair>>();
-
-		// rotate all points in data 45 degrees clockwise about origin
-		for (String r : treeMap.keySet()) {
-			rotatedData.put(r, new TreeSet<XYPair>());
-			for (XYPair point : treeMap.get(r)) {
-				double x2 = (point.x + point.y) / Math.sqrt(2.0);
-				double y2 = (point.y - point.x) / Math.sqrt(2.0);
-				rotatedData.get(r).add(new XYPair(x2, y2));
-			}
-		}
-
-		// generate linear interpolation with new points
-		ArrayList<InterpolatedLine> rotatedLines = new ArrayList<InterpolatedLine>();
-		for (String r : rotatedData.keySet()) {
-			rotatedLines.add(new InterpolatedLine(rotatedData.get(r)));
-		}
-
-		// take vertical sample averages from x = 0 to x = 1
-		for (double i = 0; i <= Math.sqrt(2); i += 0.01) {
-			double avg = 0;
-			int counter = 0;
-			for (InterpolatedLine line : rotatedLines) {
-				avg += line.getYatDiag(i);
-				counter++;
-			}
-
-			// rotate points back 45 degrees counterclockwise
-			double x1 = i;
-			double y1 = (avg / (double) counter);
-			double x2 = (x1 * Math.cos(Math.toRadians(45)))
-					- (y1 * Math.sin(Math.toRadians(45)));
-			double y2 = (x1 * Math.sin(Math.toRadians(45)))
-					+ (y1 * Math.cos(Math.toRadians(45)));
-			diagAvg.add(x2, y2);
-		}
-
-		diagAvg.add(1, 1);
-		return diagAvg;
-	}
-
-	/**
-	 * Creates an ROC curve that averages together the scores for all readers in
-	 * the horizontal direction
-	 * 
-	 * @return Series containing the ROC curve points
-	 */
-	private XYSeries generateHorizontalROC(String mod) {
-		XYSeries horizAvg = new XYSeries(mod+": Horizontal Average", false);
-		for (double i = 0; i <= 1.01; i += 0.01) {
-			double avg = 0;
-			int counter = 0;
-			for (InterpolatedLine line : allLines) {
-				avg += line.getXat(i);
-				counter++;
-			}
-			horizAvg.add(avg / (double) counter, i);
-		}
-		return horizAvg;
-	}
-
-	/**
-	 * Creates an ROC curve that averages together the scores for all readers in
-	 * the vertical direction
-	 * 
-	 * @return Series containing the ROC curve points
-	 */
-	private XYSeries generateVerticalROC(String mod) {
-		XYSeries vertAvg = new XYSeries(mod + ": Vertical Average", false);
-		for (double i = 0; i <= 1.01; i += 0.01) {
-			double avg = 0;
-			int counter = 0;
-			for (InterpolatedLine line : allLines) {
-				avg += line.getYat(i);
-				counter++;
-			}
-			vertAvg.add(i, avg / (double) counter);
-		}
-		return vertAvg;
+		curves.addData(fullnewData, type);
 	}
 
 	/**
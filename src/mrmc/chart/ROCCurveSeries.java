@@ -0,0 +1,178 @@
+package mrmc.chart;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+/**
+ * ROC curves for each reader of each modality, and the curves averaged over readers
+ * vertically, horizontally and diagonally. A "Pooled Average" curve is filled by
+ * {@link #addData(TreeMap, String)}. <br>
+ * <br>
+ * This is the data shown by {@link mrmc.chart.ROCCurvePlot} and exported by
+ * {@link mrmc.chart.exportToFile#exportROC(XYSeriesCollection, String)}.
+ * It does not create any window, so it can be used without a display.
+ */
+public class ROCCurveSeries {
+
+	public XYSeriesCollection seriesCollection;          //ROC curve data
+	public ArrayList<String> readerSeriesTitles;         //readers ID
+	public Set<String> modalityID;
+	private ArrayList<InterpolatedLine> allLines;
+
+	/**
+	 * Sole constructor. Creates the curves of each reader and the averaged curves of each modality
+	 *
+	 * @param fulltreeMap Mapping of modalities to readers to a set of points defining an ROC curve
+	 */
+	public ROCCurveSeries(TreeMap<String, TreeMap<String, TreeSet<XYPair>>> fulltreeMap) {
+		seriesCollection = new XYSeriesCollection();
+		readerSeriesTitles = new ArrayList<String>();
+		modalityID = fulltreeMap.keySet();
+		for (String mod : modalityID){
+			createDataset(mod, fulltreeMap.get(mod));
+		}
+	}
+
+	/**
+	 * Converts the mapping of readers to curve points into a collection of
+	 * separate XY data.
+	 *
+	 * @param treeMap Mapping of readers to points defining a curve
+	 */
+	private void createDataset(String mod, TreeMap<String, TreeSet<XYPair>> treeMap) {
+		for (String r : treeMap.keySet()) {
+			XYSeries series = new XYSeries(mod +": "+ r, false);
+			readerSeriesTitles.add("" + r);
+			for (XYPair point : treeMap.get(r)) {
+				series.add(point.x, point.y);
+			}
+			seriesCollection.addSeries(series);
+		}
+
+		allLines = new ArrayList<InterpolatedLine>();
+		for (String r : treeMap.keySet()) {
+
+			allLines.add(new InterpolatedLine(treeMap.get(r)));
+		}
+		XYSeries vertAvg = generateVerticalROC(mod);
+		seriesCollection.addSeries(vertAvg);
+		XYSeries horizAvg = generateHorizontalROC(mod);
+		seriesCollection.addSeries(horizAvg);
+		XYSeries diagAvg = generateDiagonalROC(mod, treeMap);
+		seriesCollection.addSeries(diagAvg);
+		XYSeries pooledAvg = new XYSeries(mod + ": Pooled Average", false);
+		seriesCollection.addSeries(pooledAvg);
+
+	}
+
+	/**
+	 * Adds a set of XY points to the collection of ROC curves
+	 *
+	 * @param fullnewData Mapping of modalities to a set of XY coordinates
+	 * @param type Name for this set of points
+	 */
+	public void addData(TreeMap<String, TreeSet<XYPair>> fullnewData, String type) {
+		for (String mod : modalityID){
+			TreeSet<XYPair> newData = fullnewData.get(mod);
+			for (XYPair point : newData) {
+				seriesCollection.getSeries(mod +": " + type).add(point.x, point.y);
+			}
+		}
+	}
+
+	/**
+	 * Creates an ROC curve that averages together the scores for all readers in
+	 * the diagonal direction
+	 *
+	 * @param treeMap Mapping of readers to points defining a curve
+	 * @return Series containing the ROC curve points
+	 */
+	private XYSeries generateDiagonalROC(String mod, TreeMap<String, TreeSet<XYPair>> treeMap) {
+		XYSeries diagAvg = new XYSeries(mod + ": Diagonal Average", false);
+		TreeMap<String, TreeSet<XYPair>> rotatedData = new TreeMap<String, TreeSet<XYPair>>();
+
+		// rotate all points in data 45 degrees clockwise about origin
+		for (String r : treeMap.keySet()) {
+			rotatedData.put(r, new TreeSet<XYPair>());
+			for (XYPair point : treeMap.get(r)) {
+				double x2 = (point.x + point.y) / Math.sqrt(2.0);
+				double y2 = (point.y - point.x) / Math.sqrt(2.0);
+				rotatedData.get(r).add(new XYPair(x2, y2));
+			}
+		}
+
+		// generate linear interpolation with new points
+		ArrayList<InterpolatedLine> rotatedLines = new ArrayList<InterpolatedLine>();
+		for (String r : rotatedData.keySet()) {
+			rotatedLines.add(new InterpolatedLine(rotatedData.get(r)));
+		}
+
+		// take vertical sample averages from x = 0 to x = 1
+		for (double i = 0; i <= Math.sqrt(2); i += 0.01) {
+			double avg = 0;
+			int counter = 0;
+			for (InterpolatedLine line : rotatedLines) {
+				avg += line.getYatDiag(i);
+				counter++;
+			}
+
+			// rotate points back 45 degrees counterclockwise
+			double x1 = i;
+			double y1 = (avg / (double) counter);
+			double x2 = (x1 * Math.cos(Math.toRadians(45)))
+					- (y1 * Math.sin(Math.toRadians(45)));
+			double y2 = (x1 * Math.sin(Math.toRadians(45)))
+					+ (y1 * Math.cos(Math.toRadians(45)));
+			diagAvg.add(x2, y2);
+		}
+
+		diagAvg.add(1, 1);
+		return diagAvg;
+	}
+
+	/**
+	 * Creates an ROC curve that averages together the scores for all readers in
+	 * the horizontal direction
+	 *
+	 * @return Series containing the ROC curve points
+	 */
+	private XYSeries generateHorizontalROC(String mod) {
+		XYSeries horizAvg = new XYSeries(mod+": Horizontal Average", false);
+		for (double i = 0; i <= 1.01; i += 0.01) {
+			double avg = 0;
+			int counter = 0;
+			for (InterpolatedLine line : allLines) {
+				avg += line.getXat(i);
+				counter++;
+			}
+			horizAvg.add(avg / (double) counter, i);
+		}
+		return horizAvg;
+	}
+
+	/**
+	 * Creates an ROC curve that averages together the scores for all readers in
+	 * the vertical direction
+	 *
+	 * @return Series containing the ROC curve points
+	 */
+	private XYSeries generateVerticalROC(String mod) {
+		XYSeries vertAvg = new XYSeries(mod + ": Vertical Average", false);
+		for (double i = 0; i <= 1.01; i += 0.01) {
+			double avg = 0;
+			int counter = 0;
+			for (InterpolatedLine line : allLines) {
+				avg += line.getYat(i);
+				counter++;
+			}
+			vertAvg.add(i, avg / (double) counter);
+		}
+		return vertAvg;
+	}
+
+}
@@ -30,7 +30,7 @@ import javax.swing.table.DefaultTableModel;
 
 import mrmc.chart.ROCCurvePlot.exportROCresult;
 import mrmc.core.DBRecord;
-import mrmc.core.StatTest;
+import mrmc.core.PowerSurface;
 import mrmc.gui.GUInterface;
 import mrmc.gui.RowHeaderRenderer;
 import mrmc.gui.SizePanel;
@@ -121,27 +121,10 @@ public class exploreExpSize extends JFrame {
 	
 	// calculate variance for R*N0
 	private void varReaderVsNormal(int ChooseNdisease) {
-		// TODO Auto-generated method stub
+		PowerSurface.Cell[][][] cells = sizeSurface(Nreader, Nnormal, new int[] { ChooseNdisease });
 		for (int i=0 ; i<Nreader.length;i++ ){
 			for (int j=0 ; j < Nnormal.length;j++){
-				DBRecordSize.Nreader = Nreader[i];
-				DBRecordSize.Nnormal = Nnormal[j];
-				DBRecordSize.Ndisease = ChooseNdisease;
-				DBRecordSize.BDGcoeff = DBRecordSize.genBDGCoeff(Nreader[i],Nnormal[j],ChooseNdisease);
-				
-				DBRecordSize.BDGforSizeFullPanel();
-
-				if (varOrPower.equals("S.E."))
-				fullyTable.setValueAt(SizePanel1.threeDecE.format(Math.sqrt(DBRecordSize.totalVar)), i, j);
-				else {
-					DBRecordSize.BCKcoeff = DBRecordSize.genBCKCoeff(DBRecordSize.BDGcoeff);
-					DBRecordSize.BCK = DBRecordSize.BDG2BCK(DBRecordSize.BDG, DBRecordSize.BCKcoeff);
-					DBRecordSize.BCKbias = DBRecordSize.BDG2BCK(DBRecordSize.BDGbias, DBRecordSize.BCKcoeff);
-					doFullSize =true;
-					StatTest testSize = new StatTest(SizePanel1, DBRecordStat, DBRecordSize);
-					doFullSize =false;
-					fullyTable.setValueAt(SizePanel1.threeDecE.format(testSize.powerBDG), i, j);
-				}
+				setFullyCell(cells[i][j][0], i, j);
 			}
 		}
 	}
@@ -149,57 +132,48 @@ public class exploreExpSize extends JFrame {
 	
 	// calculate variance for R*N1
 	private void varReaderVsDisease(int ChooseNormal) {
-		// TODO Auto-generated method stub
+		PowerSurface.Cell[][][] cells = sizeSurface(Nreader, new int[] { ChooseNormal }, Ndisease);
 		for (int i=0 ; i<Nreader.length;i++ ){
 			for (int j=0 ; j < Ndisease.length;j++){
-				DBRecordSize.Nreader = Nreader[i];
-				DBRecordSize.Nnormal = ChooseNormal;
-				DBRecordSize.Ndisease = Ndisease[j];
-				DBRecordSize.BDGcoeff = DBRecordSize.genBDGCoeff(Nreader[i],ChooseNormal,Ndisease[j]);			    
-				DBRecordSize.BDGforSizeFullPanel();
-				if (varOrPower.equals("S.E."))
-				fullyTable.setValueAt(SizePanel1.threeDecE.format(Math.sqrt(DBRecordSize.totalVar)), i, j);
-				else {
-					DBRecordSize.BCKcoeff = DBRecordSize.genBCKCoeff(DBRecordSize.BDGcoeff);
-					DBRecordSize.BCK = DBRecordSize.BDG2BCK(DBRecordSize.BDG, DBRecordSize.BCKcoeff);
-					DBRecordSize.BCKbias = DBRecordSize.BDG2BCK(DBRecordSize.BDGbias, DBRecordSize.BCKcoeff);
-					doFullSize =true;
-					StatTest testSize = new StatTest(SizePanel1, DBRecordStat, DBRecordSize);
-					doFullSize =false;
-					fullyTable.setValueAt(SizePanel1.threeDecE.format(testSize.powerBDG), i, j);
-				}
+				setFullyCell(cells[i][0][j], i, j);
 			}
 		}
-		
 	}
 	
 	
 	
 	// calculate variance for N0*N1
 	private void varNormalVsDisease(int ChooseReader) {
-		// TODO Auto-generated method stub
+		PowerSurface.Cell[][][] cells = sizeSurface(new int[] { ChooseReader }, Nnormal, Ndisease);
 		for (int i=0 ; i<Nnormal.length;i++ ){
 			for (int j=0 ; j <Ndisease.length;j++){
-				DBRecordSize.Nreader = ChooseReader;
-				DBRecordSize.Nnormal = Nnormal[i];
-				DBRecordSize.Ndisease = Ndisease[j];
-				DBRecordSize.BDGcoeff = DBRecordSize.genBDGCoeff(ChooseReader,Nnormal[i],Ndisease[j]);			    
-				DBRecordSize.BDGforSizeFullPanel();
-				if (varOrPower.equals("S.E."))
-				fullyTable.setValueAt(SizePanel1.threeDecE.format(Math.sqrt(DBRecordSize.totalVar)), i, j);
-				else {
-					DBRecordSize.BCKcoeff = DBRecordSize.genBCKCoeff(DBRecordSize.BDGcoeff);
-					DBRecordSize.BCK = DBRecordSize.BDG2BCK(DBRecordSize.BDG, DBRecordSize.BCKcoeff);
-					DBRecordSize.BCKbias = DBRecordSize.BDG2BCK(DBRecordSize.BDGbias, DBRecordSize.BCKcoeff);
-					doFullSize =true;
-					StatTest testSize = new StatTest(SizePanel1, DBRecordStat, DBRecordSize);
-					doFullSize =false;
-					fullyTable.setValueAt(SizePanel1.threeDecE.format(testSize.powerBDG), i, j);
-				}
-				
+				setFullyCell(cells[0][i][j], i, j);
 			}
 		}
-		
+	}
+	
+	
+	
+	// variance and power of all sizes of the table, from the BDG moments of the reader study.
+	// The tables use the U-statistics variance, whatever the MLE setting
+	private PowerSurface.Cell[][][] sizeSurface(int[] reader, int[] normal, int[] disease) {
+		try {
+			return new PowerSurface(DBRecordStat, SizePanel1.sigLevel, SizePanel1.effSize, 1, 1, 1, 1, 0)
+					.grid(reader, normal, disease);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	
+	// show S.E. or BDG power of a size in the table
+	private void setFullyCell(PowerSurface.Cell cell, int i, int j) {
+		if (varOrPower.equals("S.E."))
+			fullyTable.setValueAt(SizePanel1.threeDecE.format(cell.SE), i, j);
+		else
+			fullyTable.setValueAt(SizePanel1.threeDecE.format(cell.powerBDG), i, j);
 	}
 	
 	
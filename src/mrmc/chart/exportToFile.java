@@ -44,6 +44,7 @@ import mrmc.gui.StatPanel;
 
 public class exportToFile {
 	
+	// DecimalFormat is not thread safe; the exports used by mrmc.core.SaveAllStat are synchronized
 	static DecimalFormat twoDec = new DecimalFormat("0.00");
 	static DecimalFormat threeDec = new DecimalFormat("0.000");
 	static DecimalFormat fourDec = new DecimalFormat("0.0000");
@@ -78,7 +79,7 @@ public class exportToFile {
 		return str;
 	}
 	//export BDG table
-	public static String exportTableBDG(String oldReport, DBRecord DBRecordTable) {
+	public static synchronized String exportTableBDG(String oldReport, DBRecord DBRecordTable) {
 		String str = oldReport;
 		double[][] BDGdata1 = DBRecord.getBDGTab(DBRecordTable.selectedMod,
 				DBRecordTable.BDG, DBRecordTable.BDGcoeff);
@@ -128,7 +129,7 @@ public class exportToFile {
 	}
 	
 	//export BCK table
-	public static String exportTableBCK(String oldReport, DBRecord DBRecordTable) {
+	public static synchronized String exportTableBCK(String oldReport, DBRecord DBRecordTable) {
 		String str = oldReport;
 		double[][] BCKdata1 = DBRecord.getBCKTab(DBRecordTable.selectedMod,
 				DBRecordTable.BCK, DBRecordTable.BCKcoeff);
@@ -178,7 +179,7 @@ public class exportToFile {
 	}
 	
 	//export DBM table
-	public static String exportTableDBM(String oldReport, DBRecord DBRecordTable) {
+	public static synchronized String exportTableDBM(String oldReport, DBRecord DBRecordTable) {
 		String str = oldReport;
 		double[][] DBMdata1 = DBRecord.getDBMTab(DBRecordTable.selectedMod,
 				DBRecordTable.DBM, DBRecordTable.DBMcoeff);
@@ -217,7 +218,7 @@ public class exportToFile {
 	}
 	
 	//export OR table
-	public static String exportTableOR(String oldReport, DBRecord DBRecordTable) {
+	public static synchronized String exportTableOR(String oldReport, DBRecord DBRecordTable) {
 		String str = oldReport;
 		double[][] ORdata1 = DBRecord.getORTab(DBRecordTable.selectedMod,
 				DBRecordTable.OR, DBRecordTable.ORcoeff);
@@ -256,7 +257,7 @@ public class exportToFile {
 	}
 	
 	//export MS table
-	public static String exportTableMS(String oldReport, DBRecord DBRecordTable) {
+	public static synchronized String exportTableMS(String oldReport, DBRecord DBRecordTable) {
 		String str = oldReport;
 		double[][] MSdata1 = DBRecord.getMSTab(DBRecordTable.selectedMod,
 				DBRecordTable.MS, DBRecordTable.MScoeff);
@@ -1101,7 +1102,7 @@ public class exportToFile {
 	}
 	
 	// Export stat result in one line
-	public static String exportStat(String report, DBRecord StatDBRecord,String timestring) {
+	public static synchronized String exportStat(String report, DBRecord StatDBRecord,String timestring) {
 		String str = report;
 		//String inputfilename =  StatDBRecord.InputFile1.filename.substring(StatDBRecord.InputFile1.filename.lastIndexOf("\\")+1);
 		String inputfilename =  StatDBRecord.InputFile1.fileName;
@@ -1163,7 +1164,7 @@ public class exportToFile {
 	}
 
 	// export each readers analysis result
-	public static String exportReaders(String report, DBRecord StatDBRecord,InputFile InputFile1,String timestring) {
+	public static synchronized String exportReaders(String report, DBRecord StatDBRecord,InputFile InputFile1,String timestring) {
 		
 		String str = report;
 	//	String inputfilename =  StatDBRecord.InputFile1.filename.substring(StatDBRecord.InputFile1.filename.lastIndexOf("\\")+1);
@@ -1216,7 +1217,7 @@ public class exportToFile {
 		return str;
 	}
 	// export readers covariance
-	public static String exportReadersCov(String readerCovReport, DBRecord StatDBRecord, InputFile InputFile1) {
+	public static synchronized String exportReadersCov(String readerCovReport, DBRecord StatDBRecord, InputFile InputFile1) {
 		// TODO Auto-generated method stub
 		String str = readerCovReport;
 		if(StatDBRecord.selectedMod == 0){
@@ -1251,7 +1252,7 @@ public class exportToFile {
 		return str;
 	}
 	// export ROC curve information 
-	public static String exportROC(XYSeriesCollection seriesCollection,String report) {
+	public static synchronized String exportROC(XYSeriesCollection seriesCollection,String report) {
 		String str = report;
 		int maxColumn = 0;
 		for (int j=0;j<seriesCollection.getSeriesCount();j++){
@@ -0,0 +1,114 @@
+package mrmc.core;
+
+import java.util.ArrayList;
+
+/**
+ * Variance analysis of a reader study without a GUI, safe to run from many threads at the same time. <br>
+ * <br>
+ * {@link #run(StudyInput, AnalysisConfig)} wraps {@link mrmc.core.DBRecord}, {@link mrmc.core.CovMRMC}
+ * and {@link mrmc.core.StatTest} as the statistical analysis panel of the GUI does.
+ * Each call works on its own {@link mrmc.core.DBRecord}s and only reads the {@link mrmc.core.StudyInput},
+ * so it does not depend on {@link mrmc.gui.GUInterface#selectedInput}, {@link mrmc.core.MRMC#commandStart}
+ * or the sizing panel. No dialog is shown: warnings go to {@link mrmc.core.AnalysisResult#getWarnings()}
+ * and errors are thrown. <br>
+ * <br>
+ * Example: <br>
+ * -- StudyInput study = StudyInput.read("study.imrmc"); <br>
+ * -- AnalysisResult result = Analysis.run(study, new AnalysisConfig("A", "B", 0)); <br>
+ */
+public class Analysis {
+
+	/**
+	 * Analyzes a reader study
+	 *
+	 * @param input the reader study
+	 * @param config what to analyze
+	 * @return the AUCs, their variance and the hypothesis tests, and the power of a new trial if asked for
+	 * @throws IllegalArgumentException if a modality is not in the study, or the new trial cannot be sized
+	 * @throws IllegalStateException if the data do not allow the analysis, for example no observations for a modality
+	 */
+	public static AnalysisResult run(StudyInput input, AnalysisConfig config) {
+
+		ArrayList<String> warnings = new ArrayList<String>();
+		DBRecord record = new DBRecord();
+		record.verbose = false;
+		record.messages = warnings;
+		record.flagMLE = config.flagMLE;
+
+		if (input.rawData) {
+			checkModality(input, config.modalityA);
+			checkModality(input, config.modalityB);
+			record.modalityA = config.modalityA;
+			record.modalityB = config.modalityB;
+			record.selectedMod = config.selectedMod;
+			record.DBRecordStatFill(input.getInputFile(), record);
+		} else {
+			fillSummary(record, input, config);
+			record.DBRecordStatFillSummary(record);
+		}
+
+		DBRecord sizeRecord = null;
+		if (config.sizing) {
+			sizeRecord = new DBRecord();
+			sizeRecord.verbose = false;
+			sizeRecord.messages = warnings;
+			sizeRecord.flagMLE = config.flagMLE;
+			sizeRecord.selectedMod = record.selectedMod;
+			sizeRecord.modalityA = record.modalityA;
+			sizeRecord.modalityB = record.modalityB;
+			sizeRecord.DBRecordSizeFill(record, config.sizeNreader, config.sizeNnormal, config.sizeNdisease,
+					config.sizeNgroup, config.pairedReaders, config.pairedNormals, config.pairedDiseased,
+					config.sigLevel, config.effSize);
+		}
+
+		return new AnalysisResult(config, record, sizeRecord, warnings);
+
+	}
+
+	private static void checkModality(StudyInput input, String modality) {
+		if (!modality.equals(AnalysisConfig.NO_MOD) && !input.getModalityIDs().contains(modality))
+			throw new IllegalArgumentException("Modality " + modality + " is not in " + input.fileName);
+	}
+
+	/**
+	 * Copies the summary statistics into record, as {@link mrmc.core.SaveAllStat#analyzeSummary(DBRecord, String, String)} does.
+	 * A single modality is matched to modality A or B of the summary, whichever it is.
+	 */
+	private static void fillSummary(DBRecord record, StudyInput input, AnalysisConfig config) {
+
+		DBRecord summary = input.getSummary();
+		String summaryA = summary.modalityA, summaryB = summary.modalityB;
+		if (config.selectedMod == 3) {
+			if (!config.modalityA.equals(summaryA) || !config.modalityB.equals(summaryB))
+				throw new IllegalArgumentException("The summary statistics are for modalities "
+						+ summaryA + " and " + summaryB + " of " + input.fileName);
+			record.modalityA = summaryA;
+			record.modalityB = summaryB;
+			record.selectedMod = 3;
+		} else {
+			String modality = config.selectedMod == 0 ? config.modalityA : config.modalityB;
+			checkModality(input, modality);
+			if (modality.equals(summaryA) && summary.inputMod != 1) {
+				record.modalityA = modality;
+				record.modalityB = AnalysisConfig.NO_MOD;
+				record.selectedMod = 0;
+			} else {
+				record.modalityA = AnalysisConfig.NO_MOD;
+				record.modalityB = modality;
+				record.selectedMod = 1;
+			}
+		}
+		record.AUCs = Matrix.copy(summary.AUCs);
+		record.AUCsReaderAvg = Matrix.copy(summary.AUCsReaderAvg);
+		record.LoadBDG = Matrix.copy(summary.LoadBDG);
+		record.Ndisease = summary.Ndisease;
+		record.NdiseaseDB = summary.NdiseaseDB;
+		record.Nnormal = summary.Nnormal;
+		record.NnormalDB = summary.NnormalDB;
+		record.Nreader = summary.Nreader;
+		record.NreaderDB = summary.NreaderDB;
+		record.InputFile1 = input.getInputFile();
+
+	}
+
+}
@@ -0,0 +1,133 @@
+package mrmc.core;
+
+import mrmc.gui.GUInterface;
+
+/**
+ * What {@link mrmc.core.Analysis} computes for a {@link mrmc.core.StudyInput}. <br>
+ * <br>
+ * -- The modalities: one modality, with the other set to {@link #NO_MOD}, or the difference of two <br>
+ * -- U-statistics or MLE estimates of the variance <br>
+ * -- Optionally, the size of a new trial whose power is computed from the variance analysis,
+ * as in the sizing panel of the GUI <br>
+ * <br>
+ * An AnalysisConfig does not change once it is created, so it can be shared between threads.
+ */
+public final class AnalysisConfig {
+
+	/**
+	 * Modality ID meaning no modality, the same as {@link mrmc.gui.GUInterface#NO_MOD}
+	 */
+	public static final String NO_MOD = GUInterface.NO_MOD;
+
+	/**
+	 * Modalities analyzed
+	 */
+	public final String modalityA, modalityB;
+	/**
+	 * 0 for U-statistics, 1 for MLE
+	 */
+	public final int flagMLE;
+	/**
+	 * 0 to analyze modality A, 1 to analyze modality B, 3 to analyze the difference of A and B,
+	 * the values of {@link mrmc.core.DBRecord#selectedMod}
+	 */
+	public final int selectedMod;
+	/**
+	 * True if a new trial is sized
+	 */
+	public final boolean sizing;
+	/**
+	 * Size of the new trial: readers, signal-absent cases, signal-present cases and split-plot groups
+	 */
+	public final int sizeNreader, sizeNnormal, sizeNdisease, sizeNgroup;
+	/**
+	 * 1 if readers, signal-absent cases and signal-present cases of the new trial are paired across modalities
+	 */
+	public final int pairedReaders, pairedNormals, pairedDiseased;
+	/**
+	 * Significance level and effect size of the new trial
+	 */
+	public final double sigLevel, effSize;
+
+	/**
+	 * Analysis of one modality, or of the difference of two modalities, without sizing
+	 *
+	 * @param modalityA first modality, or {@link #NO_MOD}
+	 * @param modalityB second modality, or {@link #NO_MOD}
+	 * @param flagMLE 0 for U-statistics, 1 for MLE
+	 */
+	public AnalysisConfig(String modalityA, String modalityB, int flagMLE) {
+		this(modalityA, modalityB, flagMLE, false, 0, 0, 0, 1, 1, 1, 1, 0.05, 0.0);
+	}
+
+	private AnalysisConfig(String modalityA, String modalityB, int flagMLE, boolean sizing,
+			int sizeNreader, int sizeNnormal, int sizeNdisease, int sizeNgroup,
+			int pairedReaders, int pairedNormals, int pairedDiseased, double sigLevel, double effSize) {
+
+		if (modalityA == null) modalityA = NO_MOD;
+		if (modalityB == null) modalityB = NO_MOD;
+		if (modalityA.equals(NO_MOD) && modalityB.equals(NO_MOD))
+			throw new IllegalArgumentException("At least one modality must be chosen");
+		if (flagMLE != 0 && flagMLE != 1)
+			throw new IllegalArgumentException("flagMLE must be 0 or 1: " + flagMLE);
+		this.modalityA = modalityA;
+		this.modalityB = modalityB;
+		this.flagMLE = flagMLE;
+		if (modalityB.equals(NO_MOD)) {
+			selectedMod = 0;
+		} else if (modalityA.equals(NO_MOD)) {
+			selectedMod = 1;
+		} else {
+			selectedMod = 3;
+		}
+		this.sizing = sizing;
+		this.sizeNreader = sizeNreader;
+		this.sizeNnormal = sizeNnormal;
+		this.sizeNdisease = sizeNdisease;
+		this.sizeNgroup = sizeNgroup;
+		this.pairedReaders = pairedReaders;
+		this.pairedNormals = pairedNormals;
+		this.pairedDiseased = pairedDiseased;
+		this.sigLevel = sigLevel;
+		this.effSize = effSize;
+
+	}
+
+	/**
+	 * @return this configuration with the U-statistics (0) or MLE (1) estimates
+	 */
+	public AnalysisConfig withMLE(int flagMLE) {
+		return new AnalysisConfig(modalityA, modalityB, flagMLE, sizing,
+				sizeNreader, sizeNnormal, sizeNdisease, sizeNgroup,
+				pairedReaders, pairedNormals, pairedDiseased, sigLevel, effSize);
+	}
+
+	/**
+	 * @return this configuration, also sizing a new trial
+	 * @throws IllegalArgumentException if a size or the number of groups is not positive, a pairing flag is not 0 or 1,
+	 *  the significance level is not between 0 and 1, or the effect size is not a number
+	 * @see mrmc.core.DBRecord#DBRecordSizeFill(DBRecord, int, int, int, int, int, int, int, double, double)
+	 */
+	public AnalysisConfig withSizing(int sizeNreader, int sizeNnormal, int sizeNdisease, int sizeNgroup,
+			int pairedReaders, int pairedNormals, int pairedDiseased, double sigLevel, double effSize) {
+		if (sizeNreader < 1 || sizeNnormal < 1 || sizeNdisease < 1)
+			throw new IllegalArgumentException("The size of the new trial must be positive");
+		if (sizeNgroup < 1)
+			throw new IllegalArgumentException("The number of split-plot groups must be at least 1: " + sizeNgroup);
+		if (!isFlag(pairedReaders) || !isFlag(pairedNormals) || !isFlag(pairedDiseased))
+			throw new IllegalArgumentException("The pairing flags must be 0 or 1: "
+					+ pairedReaders + ", " + pairedNormals + ", " + pairedDiseased);
+		if (!(sigLevel > 0 && sigLevel < 1))
+			throw new IllegalArgumentException("The significance level must be between 0 and 1: " + sigLevel);
+		if (Double.isNaN(effSize) || Double.isInfinite(effSize))
+			throw new IllegalArgumentException("The effect size must be a number: " + effSize);
+		return new AnalysisConfig(modalityA, modalityB, flagMLE, true,
+				sizeNreader, sizeNnormal, sizeNdisease, sizeNgroup,
+				pairedReaders, pairedNormals, pairedDiseased, sigLevel, effSize);
+	}
+
+	private static boolean isFlag(int flag) {
+		return flag == 0 || flag == 1;
+	}
+
+}
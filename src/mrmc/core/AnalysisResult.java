@@ -0,0 +1,201 @@
+package mrmc.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of {@link mrmc.core.Analysis#run(StudyInput, AnalysisConfig)}: the AUCs, their variance,
+ * the variance components, the hypothesis tests and, if asked for, the power of a new trial. <br>
+ * <br>
+ * The values are copied out of the {@link mrmc.core.DBRecord} and {@link mrmc.core.StatTest}
+ * of the analysis, so an AnalysisResult does not change and can be shared between threads.
+ * Arrays are returned as copies. Indices follow {@link mrmc.core.DBRecord}: 0 for modality A,
+ * 1 for modality B, 2 for the covariance of A and B (tables only) or A minus B (AUCs), 3 for A minus B.
+ */
+public final class AnalysisResult {
+
+	/**
+	 * What was analyzed
+	 */
+	public final AnalysisConfig config;
+	/**
+	 * The number of readers and cases of the study, and of the readers and cases scored in the analyzed modalities
+	 */
+	public final long Nreader, Nnormal, Ndisease, NreaderDB, NnormalDB, NdiseaseDB;
+	/**
+	 * Variance of the AUC of the analyzed modality, or of the difference in AUCs, and its square root
+	 */
+	public final double totalVar, SE;
+	/**
+	 * Variance of the AUC of modality A and of modality B
+	 */
+	public final double varA, varB;
+	/**
+	 * True if every reader scored every case in the analyzed modalities
+	 */
+	public final boolean flagFullyCrossed;
+	/**
+	 * Degrees of freedom, p-values, confidence intervals and rejections (1 or 0) of the normal approximation,
+	 * of BDG and of Hillis; see {@link mrmc.core.StatTest}
+	 */
+	public final double DF_BDG, DF_Hillis,
+			pValNormal, pValBDG, pValHillis,
+			ciBotNormal, ciBotBDG, ciBotHillis,
+			ciTopNormal, ciTopBDG, ciTopHillis,
+			rejectNormal, rejectBDG, rejectHillis;
+	/**
+	 * Sizing of the new trial, NaN if {@link mrmc.core.AnalysisConfig#sizing} is false
+	 */
+	public final double sizeTotalVar, sizeSE, sizeDF_BDG, sizeDF_Hillis, powerNormal, powerBDG, powerHillis;
+
+	private final double[] AUCsReaderAvg;
+	private final double[][] AUCs, BDG, BDGbias, BCK, DBM, OR, MS;
+	private final List<String> warnings;
+
+	/**
+	 * Copies the result of an analysis
+	 *
+	 * @param config what was analyzed
+	 * @param record the variance analysis, with its {@link mrmc.core.DBRecord#testStat}
+	 * @param sizeRecord the sizing of a new trial, with its {@link mrmc.core.DBRecord#testSize}, or null
+	 * @param warnings warnings from the analysis
+	 */
+	AnalysisResult(AnalysisConfig config, DBRecord record, DBRecord sizeRecord, List<String> warnings) {
+
+		this.config = config;
+		Nreader = record.Nreader;
+		Nnormal = record.Nnormal;
+		Ndisease = record.Ndisease;
+		NreaderDB = record.NreaderDB;
+		NnormalDB = record.NnormalDB;
+		NdiseaseDB = record.NdiseaseDB;
+		totalVar = record.totalVar;
+		SE = record.SE;
+		varA = record.varA;
+		varB = record.varB;
+		flagFullyCrossed = record.flagFullyCrossed;
+
+		StatTest testStat = record.testStat;
+		DF_BDG = testStat.DF_BDG;
+		DF_Hillis = testStat.DF_Hillis;
+		pValNormal = testStat.pValNormal;
+		pValBDG = testStat.pValBDG;
+		pValHillis = testStat.pValHillis;
+		ciBotNormal = testStat.ciBotNormal;
+		ciBotBDG = testStat.ciBotBDG;
+		ciBotHillis = testStat.ciBotHillis;
+		ciTopNormal = testStat.ciTopNormal;
+		ciTopBDG = testStat.ciTopBDG;
+		ciTopHillis = testStat.ciTopHillis;
+		rejectNormal = testStat.rejectNormal;
+		rejectBDG = testStat.rejectBDG;
+		rejectHillis = testStat.rejectHillis;
+
+		if (sizeRecord != null) {
+			StatTest testSize = sizeRecord.testSize;
+			sizeTotalVar = sizeRecord.totalVar;
+			sizeSE = sizeRecord.SE;
+			sizeDF_BDG = testSize.DF_BDG;
+			sizeDF_Hillis = testSize.DF_Hillis;
+			powerNormal = testSize.powerNormal;
+			powerBDG = testSize.powerBDG;
+			powerHillis = testSize.powerHillis;
+		} else {
+			sizeTotalVar = Double.NaN;
+			sizeSE = Double.NaN;
+			sizeDF_BDG = Double.NaN;
+			sizeDF_Hillis = Double.NaN;
+			powerNormal = Double.NaN;
+			powerBDG = Double.NaN;
+			powerHillis = Double.NaN;
+		}
+
+		AUCsReaderAvg = copy(record.AUCsReaderAvg);
+		AUCs = copy(record.AUCs);
+		BDG = copy(record.BDG);
+		BDGbias = copy(record.BDGbias);
+		BCK = copy(record.BCK);
+		DBM = copy(record.DBM);
+		OR = copy(record.OR);
+		MS = copy(record.MS);
+		this.warnings = Collections.unmodifiableList(new ArrayList<String>(warnings));
+
+	}
+
+	/**
+	 * @return reader-averaged AUC of modality A, modality B, and A minus B [3]
+	 */
+	public double[] getAUCsReaderAvg() {
+		return copy(AUCsReaderAvg);
+	}
+
+	/**
+	 * @return AUC of each reader [Nreader][3], as {@link #getAUCsReaderAvg()}; null for summary statistics
+	 */
+	public double[][] getAUCs() {
+		return copy(AUCs);
+	}
+
+	/**
+	 * @return BDG moments [4][8]
+	 */
+	public double[][] getBDG() {
+		return copy(BDG);
+	}
+
+	/**
+	 * @return biased (MLE) BDG moments [4][8]
+	 */
+	public double[][] getBDGbias() {
+		return copy(BDGbias);
+	}
+
+	/**
+	 * @return BCK moments [4][7]
+	 */
+	public double[][] getBCK() {
+		return copy(BCK);
+	}
+
+	/**
+	 * @return DBM variance components [4][6]
+	 */
+	public double[][] getDBM() {
+		return copy(DBM);
+	}
+
+	/**
+	 * @return OR variance components [4][6]
+	 */
+	public double[][] getOR() {
+		return copy(OR);
+	}
+
+	/**
+	 * @return MS mean squares [4][6]
+	 */
+	public double[][] getMS() {
+		return copy(MS);
+	}
+
+	/**
+	 * @return warnings from the analysis, such as degrees of freedom that were raised to a minimum
+	 */
+	public List<String> getWarnings() {
+		return warnings;
+	}
+
+	private static double[] copy(double[] m) {
+		return m == null ? null : m.clone();
+	}
+
+	private static double[][] copy(double[][] m) {
+		if (m == null) return null;
+		double[][] result = new double[m.length][];
+		for (int i = 0; i < m.length; i++)
+			result[i] = copy(m[i]);
+		return result;
+	}
+
+}
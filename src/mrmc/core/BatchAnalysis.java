@@ -0,0 +1,228 @@
+package mrmc.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mrmc.gui.GUInterface;
+
+/**
+ * Analyzes many .imrmc and .omrmc files in one JVM, without a display. <br>
+ * <br>
+ * Usage: java -jar iMRMC.jar -batch [-workers=N] [-threads=N] [-cache] input [outputFolder] <br>
+ * -- input is a folder, whose .imrmc and .omrmc files are analyzed,
+ * or a manifest, a text file listing one input file per line.
+ * In a manifest, empty lines and lines starting with # are skipped,
+ * and relative paths are relative to the folder of the manifest. <br>
+ * -- Each input file gets its own output folder, holding the same files as the "Save All Stat" button
+ * ({@link mrmc.core.SaveAllStat}). It is outputFolder/name of the input file,
+ * or the input file name with a date and time appended, as in command mode. <br>
+ * -- -workers=N analyzes up to N files at the same time, {@link #workers} by default.
+ * -threads=N and -cache are as in command mode, see {@link mrmc.core.commandStartFunction#parseOptions(String[])}. <br>
+ * <br>
+ * An error in one input file is reported and the other files are still analyzed.
+ * The exit status is the number of files that failed, at most 255. <br>
+ * <br>
+ * CALLED BY: {@link mrmc.core.MRMC#main(String[])} when the first argument is -batch
+ */
+public class BatchAnalysis {
+
+	/**
+	 * Number of input files analyzed at the same time
+	 */
+	public static int workers = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Runs the batch and exits
+	 *
+	 * @param args command-line arguments after -batch
+	 */
+	public static void main(String[] args) {
+
+		System.setProperty("java.awt.headless", "true");
+		Locale.setDefault(Locale.US);
+		ArrayList<String> remaining = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.startsWith("-workers=")) {
+				int n = 0;
+				try {
+					n = Integer.parseInt(arg.substring("-workers=".length()).trim());
+				} catch (NumberFormatException e) {
+					n = 0;
+				}
+				if (n < 1) {
+					System.out.println("Error: -workers must be a positive integer: " + arg);
+					System.exit(1);
+				}
+				workers = n;
+			} else {
+				remaining.add(arg);
+			}
+		}
+		args = commandStartFunction.parseOptions(remaining.toArray(new String[remaining.size()]));
+		if (args.length < 1 || args.length > 2) {
+			System.out.println("Usage: -batch [-workers=N] [-threads=N] [-cache] inputFolderOrManifest [outputFolder]");
+			System.exit(1);
+		}
+		File outputFolder = args.length == 2 ? new File(args[1]) : null;
+
+		ArrayList<File> inputFiles;
+		try {
+			inputFiles = listInputFiles(new File(args[0]));
+		} catch (IOException e) {
+			System.out.println("Error: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		int failed = run(inputFiles, outputFolder);
+		System.exit(Math.min(failed, 255));
+
+	}
+
+	/**
+	 * @param input a folder or a manifest
+	 * @return the .imrmc and .omrmc files of a folder, sorted by name, or the files listed in a manifest
+	 * @throws IOException if the manifest cannot be read
+	 */
+	public static ArrayList<File> listInputFiles(File input) throws IOException {
+
+		ArrayList<File> inputFiles = new ArrayList<File>();
+		if (input.isDirectory()) {
+			File[] files = input.listFiles();
+			if (files == null) throw new IOException("Cannot list folder " + input);
+			Arrays.sort(files);
+			for (File f : files) {
+				if (f.isFile() && inputMode(f) != null) inputFiles.add(f);
+			}
+			return inputFiles;
+		}
+		if (!input.isFile()) throw new IOException("No such folder or manifest: " + input);
+		BufferedReader br = new BufferedReader(new FileReader(input));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) continue;
+				File f = new File(line);
+				if (!f.isAbsolute()) f = new File(input.getAbsoluteFile().getParentFile(), line);
+				inputFiles.add(f);
+			}
+		} finally {
+			br.close();
+		}
+		return inputFiles;
+
+	}
+
+	/**
+	 * Analyzes the input files on {@link #workers} threads, printing the outcome of each file in input order
+	 *
+	 * @param inputFiles .imrmc and .omrmc files
+	 * @param outputFolder parent of the output folder of each file, or null to write next to each input file
+	 * @return the number of files that failed
+	 */
+	public static int run(ArrayList<File> inputFiles, File outputFolder) {
+
+		DateFormat dateForm = new SimpleDateFormat("yyyyMMddHHmm");
+		final String fileTime = dateForm.format(new Date());
+		HashSet<String> usedNames = new HashSet<String>();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(workers, inputFiles.size())));
+		ArrayList<Future<File>> results = new ArrayList<Future<File>>();
+		for (final File inputFile : inputFiles) {
+			String name = inputFile.getName();
+			if (name.lastIndexOf(".") > 0) name = name.substring(0, name.lastIndexOf("."));
+			final File outputDir;
+			if (outputFolder == null) {
+				outputDir = new File(inputFile.getParentFile(), name + fileTime);
+			} else {
+				// two inputs with the same name get different output folders
+				String unique = name;
+				for (int n = 2; !usedNames.add(unique); n++)
+					unique = name + "_" + n;
+				outputDir = new File(outputFolder, unique);
+			}
+			results.add(pool.submit(new Callable<File>() {
+				public File call() throws Exception {
+					analyze(inputFile, outputDir, fileTime);
+					return outputDir;
+				}
+			}));
+		}
+		pool.shutdown();
+
+		int failed = 0;
+		for (int i = 0; i < inputFiles.size(); i++) {
+			try {
+				File outputDir = results.get(i).get();
+				System.out.println("Done: " + inputFiles.get(i) + " -> " + outputDir);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				System.out.println("Failed: " + inputFiles.get(i) + ": " + cause);
+				failed++;
+			} catch (InterruptedException e) {
+				System.out.println("Failed: " + inputFiles.get(i) + ": " + e);
+				failed++;
+			}
+		}
+		System.out.println((inputFiles.size() - failed) + " of " + inputFiles.size() + " input files analyzed");
+		return failed;
+
+	}
+
+	/**
+	 * Reads one input file, analyzes it and writes the results, as the "Save All Stat" button does
+	 *
+	 * @param inputFile .imrmc or .omrmc file
+	 * @param outputDir output folder of this file
+	 * @param fileTime date and time written in each row of the reports
+	 * @throws IOException if the file cannot be read or analyzed
+	 */
+	public static void analyze(File inputFile, File outputDir, String fileTime) throws IOException {
+
+		String inputMode = inputMode(inputFile);
+		if (inputMode == null)
+			throw new IOException("Please choose .imrmc or .omrmc format inputfile.");
+		InputFile InputFile1 = new InputFile();
+		InputFile1.fileName = inputFile.getName();
+		InputFile1.filePath = inputFile.getParent();
+		InputFile1.filePathAndName = inputFile.getPath();
+		DBRecord DBRecordStat = new DBRecord();
+		InputFile1.ReadInputFile(inputMode, DBRecordStat, false);
+		if (!InputFile1.isLoaded())
+			throw new IOException("Cannot read " + inputFile);
+
+		SaveAllStat allStat = new SaveAllStat(InputFile1, fileTime);
+		if (inputMode == GUInterface.DescInputModeImrmc) {
+			allStat.analyzeRawData();
+		} else {
+			allStat.analyzeSummary(DBRecordStat, DBRecordStat.modalityA, DBRecordStat.modalityB);
+		}
+		allStat.write(outputDir);
+
+	}
+
+	/**
+	 * @return the input mode given by the extension of the file, or null if it is not .imrmc or .omrmc
+	 */
+	private static String inputMode(File f) {
+		String name = f.getName();
+		String inputFormat = name.substring(name.lastIndexOf(".") + 1);
+		if (inputFormat.equals("imrmc")) return GUInterface.DescInputModeImrmc;
+		if (inputFormat.equals("omrmc")) return GUInterface.DescInputModeOmrmc;
+		return null;
+	}
+
+}
@@ -1,6 +1,9 @@
 package mrmc.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
@@ -112,6 +115,25 @@ public class CovMRMC {
 	
 	boolean fullyCrossedA = true, fullyCrossedB = true, fullyCrossedAB = true;
 
+	/**
+	 * If true, {@link #doAUCcovUstatistics(String)} uses the sort-based kernels of
+	 * {@link mrmc.core.UstatKernel} when all scores are finite.
+	 * Otherwise it builds the full [Nnormal][Ndisease] success matrices for every reader and reader pair.
+	 */
+	public static boolean useSortedKernel = true;
+
+	/**
+	 * Number of threads {@link #doAUCcovUstatistics(String)} uses to process readers.
+	 * Set from the GUI menu (Settings, Analysis Threads) or the command-line option -threads=N
+	 * of {@link mrmc.core.commandStartFunction}, while analyses may be running on other threads.
+	 * The results do not depend on this number.
+	 */
+	public static volatile int parallelism = Runtime.getRuntime().availableProcessors();
+	/**
+	 * Pool shared by all analyses, see {@link #forEachReader(int, ReaderBody)}
+	 */
+	private static ForkJoinPool readerPool;
+
 	/**
 	 * Constructor for CovMRMC created in {link mrmc.core.DBRecord} workflow 1<br>
 	 * Uses <br>
@@ -120,8 +142,9 @@ public class CovMRMC {
 	 * <br>
 	 * Implements <br>
 	 * -- {@link #makeTMatrices()} <br>
-	 * -- {@link #doAUCcovUstatistics(String)}
-	 * 
+	 * -- {@link #doAUCcovUstatistics(String)} <br>
+	 * -- {@link #doAUCcovUstatisticsAll()}
+	 *
 	 */
 	public CovMRMC(InputFile InputFileStatTemp, DBRecord DBRecordStatTemp) {
 
@@ -159,24 +182,107 @@ public class CovMRMC {
 		readerCoefficientsABCov = new double[(int)Nreader][(int)Nreader][5];
 		
 		
+		analyze();
+
+	}
+	
+	/**
+	 * Repeats the analysis of {@link #CovMRMC(InputFile, DBRecord)} on the current scores of the same input file,
+	 * for example the next experiment of a simulation. The score and design matrices and the reader arrays
+	 * are reused instead of allocated again. The results are the same as those of a new CovMRMC. <br>
+	 * <br>
+	 * CALLED BY: {@link mrmc.core.DBRecord#DBRecordStatFill(InputFile, DBRecord)} when {@link mrmc.core.DBRecord#reuseCovMRMC} is true <br>
+	 */
+	public void reanalyze() {
+
+		Nreader = InputFileStat.Nreader;
+		Nnormal = InputFileStat.Nnormal;
+		Ndisease = InputFileStat.Ndisease;
+
+		DBRecordStat.Nnormal = Nnormal;
+		DBRecordStat.Ndisease = Ndisease;
+		DBRecordStat.Nreader = Nreader;
+
+		fullyCrossedA = true;
+		fullyCrossedB = true;
+		fullyCrossedAB = true;
+
+		/*
+		 * A modality pair without observations keeps the reader moments it starts with,
+		 * so they are zeroed as in a new CovMRMC
+		 */
+		readerMomentsAA = zero(readerMomentsAA);
+		readerMomentsBiasedAA = zero(readerMomentsBiasedAA);
+		readerMomentsBB = zero(readerMomentsBB);
+		readerMomentsBiasedBB = zero(readerMomentsBiasedBB);
+		readerMomentsAB = zero(readerMomentsAB);
+		readerMomentsBiasedAB = zero(readerMomentsBiasedAB);
+		readerCoefficientsAA = zero(readerCoefficientsAA);
+		readerCoefficientsBB = zero(readerCoefficientsBB);
+		readerCoefficientsAB = zero(readerCoefficientsAB);
+		readerMomentsAACov = zero(readerMomentsAACov);
+		readerMomentsBiasedAACov = zero(readerMomentsBiasedAACov);
+		readerMomentsBBCov = zero(readerMomentsBBCov);
+		readerMomentsBiasedBBCov = zero(readerMomentsBiasedBBCov);
+		readerMomentsABCov = zero(readerMomentsABCov);
+		readerMomentsBiasedABCov = zero(readerMomentsBiasedABCov);
+		readerCoefficientsAACov = zero(readerCoefficientsAACov);
+		readerCoefficientsBBCov = zero(readerCoefficientsBBCov);
+		readerCoefficientsABCov = zero(readerCoefficientsABCov);
+
+		analyze();
+
+	}
+
+	/**
+	 * Fills the score and design matrices and does the variance analysis of {@link mrmc.core.DBRecord#selectedMod}
+	 */
+	private void analyze() {
+
 		makeTMatrices();
-		if(DBRecordStatTemp.selectedMod == 0) {
+		if(DBRecordStat.selectedMod == 0) {
 			doAUCcovUstatistics("AA");
 		}
-		if(DBRecordStatTemp.selectedMod == 1) {
+		if(DBRecordStat.selectedMod == 1) {
 			doAUCcovUstatistics("BB");
 		}
-		if(DBRecordStatTemp.selectedMod == 3) {
-			doAUCcovUstatistics("AA");
-			doAUCcovUstatistics("BB");
-			doAUCcovUstatistics("AB");
-			// AUCs and AUCsReaderAvg are set in the last function call for "AB"
+		if(DBRecordStat.selectedMod == 3) {
+			doAUCcovUstatisticsAll();
+			// AUCs and AUCsReaderAvg are set in the last step, for "AB"
 		}
 		
 		DBRecordStat.AUCs = AUCs;
 		DBRecordStat.AUCsReaderAvg = AUCsReaderAvg;
 
 	}
+
+	/**
+	 * @return m with all elements set to 0, or a new [Nreader][5] array if m does not have Nreader rows
+	 */
+	private double[][] zero(double[][] m) {
+		if (m == null || m.length != Nreader) {
+			return new double[(int) Nreader][5];
+		}
+		for (double[] row : m) {
+			Arrays.fill(row, 0.0);
+		}
+		return m;
+	}
+
+	/**
+	 * @return m with all elements set to 0, or a new [Nreader][Nreader][5] array if m does not have Nreader rows
+	 */
+	private double[][][] zero(double[][][] m) {
+		if (m == null || m.length != Nreader) {
+			return new double[(int) Nreader][(int) Nreader][5];
+		}
+		for (double[][] plane : m) {
+			for (double[] row : plane) {
+				Arrays.fill(row, 0.0);
+			}
+		}
+		return m;
+	}
 	
 	/**
 	 * Constructor for CovMRMC created in {link mrmc.core.DBRecord} workflow 2 <br>
@@ -252,10 +358,8 @@ public class CovMRMC {
 			doAUCcovUstatistics("BB");
 		}
 		if(DBRecordSize.selectedMod == 3) {
-			doAUCcovUstatistics("AA");
-			doAUCcovUstatistics("BB");
-			doAUCcovUstatistics("AB");
-			// AUCs and AUCsReaderAvg are set in the last function call for "AB"
+			doAUCcovUstatisticsAll();
+			// AUCs and AUCsReaderAvg are set in the last step, for "AB"
 		}
 	
 		DBRecordSize.AUCs = AUCs;
@@ -281,28 +385,8 @@ public class CovMRMC {
  */
 public void doAUCcovUstatistics(String flagModality) {
 
-	AUCsReaderAvg = new double[3];
-	AUCsReaderAvg[0] = -1.0;
-	AUCsReaderAvg[1] = -1.0;
-	AUCsReaderAvg[2] = -1.0;
-	AUCs = new double[(int) Nreader][3];
-	for(int i=0; i<Nreader; i++) {
-		AUCs[i][0] = -1;
-		AUCs[i][1] = -1;
-		AUCs[i][2] = -1;
-	}
+	resetAUCs();
 
-	double[] moments = new double[9];
-	double[][] readerMoments = new double[(int) Nreader][5];
-	double[][][] readerMomentsCov = new double[(int) Nreader][(int) Nreader][5];
-	 // The MLE moments according to Gallas2009_Commun-Stat-A-Theor_v38p2586 (first element is empty).
-	double[] momentsBiased = new double[9];
-	double[][] readerMomentsBiased = new double[(int) Nreader][5];
-	double[][][] readerMomentsBiasedCov = new double[(int) Nreader][(int) Nreader][5];
-	// The coefficients according to Gallas2009_Commun-Stat-A-Theor_v38p2586 (first element is empty)
-	double[] coefficients = new double[9];
-	double[][] readerCoefficients = new double [(int)Nreader][5];
-	double[][][] readerCoefficientsCov = new double [(int)Nreader][(int)Nreader][5];
 	//case AB
 	double[][][] t0 = t0_modAB;
 	double[][][] t1 = t1_modAB;
@@ -324,20 +408,321 @@ public void doAUCcovUstatistics(String flagModality) {
 		break;
 	}
 	
+	double[][] w = readerWeights();
+
+	UstatSums sums;
+	if (useSortedKernel && isSortedKernelValid(t0, t1)) {
+		sums = accumulateSortedKernel(t0, t1, d0, d1, w);
+	} else {
+		sums = accumulateMatrixKernel(t0, t1, d0, d1, w);
+	}
+	doAUCcovMoments(flagModality, sums, w);
+
+}
+
+/**
+ * Perform the variance analysis of {@link #doAUCcovUstatistics(String)} for
+ * all three modality pairs "AA", "BB" and "AB" at once. <br>
+ * <br>
+ * The "AA" and "BB" inputs are copies of the first and second modality of the "AB" inputs.
+ * So the sort-based path ranks the scores of each reader and modality once,
+ * and then it gets the success matrix products of every reader pair for all three modality pairs in one pass over readers.
+ * The "AA" and "BB" products are symmetric in the reader pair, so only half of them are computed.
+ * The results are the same as calling {@link #doAUCcovUstatistics(String)} for "AA", "BB" and "AB", in that order.
+ * If the sort-based kernels are off or cannot be used, it does exactly that. <br>
+ * <br>
+ * CALLED BY: the constructors when selectedMod = 3 <br>
+ */
+public void doAUCcovUstatisticsAll() {
+
+	if (!useSortedKernel || !isSortedKernelValid(t0_modAB, t1_modAB)) {
+		doAUCcovUstatistics("AA");
+		doAUCcovUstatistics("BB");
+		doAUCcovUstatistics("AB");
+		return;
+	}
+
+	double[][] w = readerWeights();
+
+	// ***************summaries of each reader and modality******************
+	ReaderSummaries[] summaries = summarizeReaders(t0_modAB, t1_modAB, d0_modAB, d1_modAB);
+	final ReaderSummaries summariesA = summaries[0];
+	final ReaderSummaries summariesB = summaries[1];
+
+	// ***************success matrix products of each reader pair******************
+	final double[][] crossAA = new double[(int) Nreader][(int) Nreader];
+	final double[][] crossBB = new double[(int) Nreader][(int) Nreader];
+	final double[][] crossAB = new double[(int) Nreader][(int) Nreader];
+	forEachReader((int) Nreader, new ReaderBody() {
+		public void run(int ir) {
+			for (int irCov = 0; irCov < Nreader; irCov++) {
+				// reader ir fills row ir and column ir from the diagonal on
+				if (irCov >= ir) {
+					crossAA[ir][irCov] = UstatKernel.crossKernel(summariesA.scores[ir], summariesA.scores[irCov]);
+					crossAA[irCov][ir] = crossAA[ir][irCov];
+					crossBB[ir][irCov] = UstatKernel.crossKernel(summariesB.scores[ir], summariesB.scores[irCov]);
+					crossBB[irCov][ir] = crossBB[ir][irCov];
+				}
+				crossAB[ir][irCov] = UstatKernel.crossKernel(summariesA.scores[ir], summariesB.scores[irCov]);
+			}
+		}
+	});
+
+	resetAUCs();
+	doAUCcovMoments("AA", accumulateSortedKernel(summariesA, summariesA, crossAA, w), w);
+	resetAUCs();
+	doAUCcovMoments("BB", accumulateSortedKernel(summariesB, summariesB, crossBB, w), w);
+	resetAUCs();
+	doAUCcovMoments("AB", accumulateSortedKernel(summariesA, summariesB, crossAB, w), w);
+
+}
+
+/**
+ * Sets {@link #AUCsReaderAvg} and {@link #AUCs} to -1, meaning not available
+ */
+private void resetAUCs() {
+
+	AUCsReaderAvg = new double[3];
+	AUCsReaderAvg[0] = -1.0;
+	AUCsReaderAvg[1] = -1.0;
+	AUCsReaderAvg[2] = -1.0;
+	AUCs = new double[(int) Nreader][3];
+	for(int i=0; i<Nreader; i++) {
+		AUCs[i][0] = -1;
+		AUCs[i][1] = -1;
+		AUCs[i][2] = -1;
+	}
+
+}
+
+/**
+ * @return the reader weights [Nreader][2], all 1
+ */
+private double[][] readerWeights() {
+
+	double[][] w = new double[(int) Nreader][2];
+	for (int i = 0; i < Nreader; i++) {
+		for (int j = 0; j < 2; j++) {
+			w[i][j] = 1.0;
+		}
+	}
+	return w;
+
+}
+
+/**
+ * Turns the U-statistic sums into the moments and coefficients of one modality pair
+ * and stores them with the reader-averaged AUCs. <br>
+ *
+ * @param flagModality "AA", "BB" or "AB"
+ * @param sums the sums from one of the accumulate methods
+ * @param w reader weights [Nreader][2]
+ */
+private void doAUCcovMoments(String flagModality, UstatSums sums, double[][] w) {
+
+	// The moments are the sums of numerators divided in place, and each row of the coefficients
+	// is a new array, so only the outer arrays are allocated here
+	double[] moments;
+	double[][] readerMoments;
+	double[][][] readerMomentsCov;
+	 // The MLE moments according to Gallas2009_Commun-Stat-A-Theor_v38p2586 (first element is empty).
+	double[] momentsBiased;
+	double[][] readerMomentsBiased;
+	double[][][] readerMomentsBiasedCov;
+	// The coefficients according to Gallas2009_Commun-Stat-A-Theor_v38p2586 (first element is empty)
+	double[] coefficients;
+	double[][] readerCoefficients = new double [(int)Nreader][];
+	double[][][] readerCoefficientsCov = new double [(int)Nreader][(int)Nreader][];
+
+	double aucA = sums.aucA;
+	double aucB = sums.aucB;
+	double totalwada = sums.totalwada;
+	double totalwbdb = sums.totalwbdb;
+	double[] readerTotalwada = sums.readerTotalwada;
+	double[] readerTotalwbdb = sums.readerTotalwbdb;
+	double[][] readerTotalwbdbCov = sums.readerTotalwbdbCov;
+	double[] bnumer = sums.bnumer;
+	double[][] readerBnumer = sums.readerBnumer;
+	double[][][] readerBnumerCov = sums.readerBnumerCov;
+	double[] bdenom = sums.bdenom;
+	double[][] readerBdenom = sums.readerBdenom;
+	double[][][] readerBdenomCov = sums.readerBdenomCov;
+
+	double[][] bias2unbias = new double[][] {
+			{ 0, 0, 0, 0, 0, 0, 0, 0, 0 }, { 0, 1.0, 0, 0, 0, 0, 0, 0, 0 },
+			{ 0, -1.0, 1.0, 0, 0, 0, 0, 0, 0 },
+			{ 0, -1.0, 0, 1.0, 0, 0, 0, 0, 0 },
+			{ 0, 1.0, -1.0, -1.0, 1.0, 0, 0, 0, 0 },
+			{ 0, -1.0, 0, 0, 0, 1.0, 0, 0, 0 },
+			{ 0, 1.0, -1.0, 0, 0, -1.0, 1.0, 0, 0 },
+			{ 0, 1.0, 0, -1.0, 0, -1.0, 0, 1.0, 0 },
+			{ 0, -1.0, 1.0, 1.0, -1.0, 1.0, -1.0, -1.0, 1.0 } };
+
+	double[] denom = Matrix.multiply(bias2unbias, bdenom);
+	double[] numer = Matrix.multiply(bias2unbias, bnumer);
+	// biased moments
+	momentsBiased = bnumer;
+	for (int i = 0; i < momentsBiased.length; i++) {
+		if (bdenom[i] > Matrix.min(w) / 2.0)
+			momentsBiased[i] = momentsBiased[i] / bdenom[i];
+	}
+
+	// unbiased moment
+	// double[] m = numer;
+	moments = numer;
+	for (int i = 0; i < moments.length; i++) {
+		if (denom[i] > Matrix.min(w) / 2.0)
+			moments[i] = moments[i] / denom[i];
+	}
+	// readers moment
+	double[][] readerDenom = new double[(int)Nreader][];
+	double[][] readerNumer = new double[(int)Nreader][];
+	double[][][] readerDenomCov = new double[(int)Nreader][(int)Nreader][];
+	double[][][] readerNumerCov = new double[(int)Nreader][(int)Nreader][];
+	readerMoments = readerNumer;
+	readerMomentsCov = readerNumerCov;
+	readerMomentsBiased = readerBnumer;
+	readerMomentsBiasedCov = readerBnumerCov;
+	double[][] readerBias2unbias = new double[][] {
+				{ 0, 0, 0, 0, 0}, { 0, 1.0, 0, 0, 0},
+				{ 0, -1.0, 1.0, 0, 0},{ 0, -1.0, 0, 1.0, 0},
+				{ 0, 1.0, -1.0, -1.0, 1.0},};
+	for (int ir = 0; ir < Nreader; ir++) {
+		readerDenom[ir] = Matrix.multiply(readerBias2unbias, readerBdenom[ir]);
+		readerNumer[ir] = Matrix.multiply(readerBias2unbias, readerBnumer[ir]);
+		readerMomentsBiased = readerBnumer;
+		// biased moment
+		for (int i = 0; i < readerMomentsBiased[0].length; i++) {
+			if (readerBdenom[ir][i] > Matrix.min(w) / 2.0)
+				readerMomentsBiased[ir][i] = readerMomentsBiased[ir][i]/readerBdenom[ir][i];
+		}
+		// unbiased moment
+		readerMoments = readerNumer;
+		for (int i = 0; i < readerMoments[0].length; i++) {
+			if (readerDenom[ir][i] > Matrix.min(w) / 2.0)
+				readerMoments[ir][i] = readerMoments[ir][i]/readerDenom[ir][i];
+		}
+		// coefficients
+		readerCoefficients[ir] = Matrix.linearTrans(readerDenom[ir], 1.0 / (readerTotalwada[ir] * readerTotalwbdb[ir]), 0);
+		readerCoefficients[ir][4] = readerCoefficients[ir][4] - 1.0;
+		// reader Covariance
+		for (int irCov = 0; irCov < Nreader; irCov++) {
+			readerDenomCov[ir][irCov] = Matrix.multiply(readerBias2unbias, readerBdenomCov[ir][irCov]);
+			readerNumerCov[ir][irCov] = Matrix.multiply(readerBias2unbias, readerBnumerCov[ir][irCov]);
+			readerMomentsBiasedCov = readerBnumerCov;
+			// biased moment
+			for (int i = 0; i < readerMomentsBiasedCov[0][0].length; i++) {
+				if (readerBdenomCov[ir][irCov][i] > Matrix.min(w) / 2.0)
+					readerMomentsBiasedCov[ir][irCov][i] = readerMomentsBiasedCov[ir][irCov][i]/readerBdenomCov[ir][irCov][i];
+			}
+			// unbiased moment
+			readerMomentsCov = readerNumerCov;
+			for (int i = 0; i < readerMomentsCov[0][0].length; i++) {
+				if (readerDenomCov[ir][irCov][i] > Matrix.min(w) / 2.0)
+					readerMomentsCov[ir][irCov][i] = readerMomentsCov[ir][irCov][i]/(readerDenomCov[ir][irCov][i]);
+			}
+			// coefficients
+			readerCoefficientsCov[ir][irCov] = Matrix.linearTrans(readerDenomCov[ir][irCov], 1.0 / (readerTotalwada[ir] * readerTotalwbdbCov[ir][irCov]), 0);
+			readerCoefficientsCov[ir][irCov][4] = readerCoefficientsCov[ir][irCov][4] - 1.0;
+		}
+		
+	}
+	// coefficients
+	coefficients = Matrix.linearTrans(denom, 1.0 / (totalwada * totalwbdb), 0);
+	coefficients[8] = coefficients[8] - 1.0;
+
+	switch(flagModality) {
+	case "AA":
+		if( Double.isInfinite(1.0/totalwada) ) {
+			AUCsReaderAvg[0] = -1;
+			return;
+		}
+
+		AUCsReaderAvg[0] = aucA / totalwada;
+		momentsAA = moments;
+		momentsBiasedAA = momentsBiased;
+		readerMomentsAA = readerMoments;
+		readerMomentsBiasedAA = readerMomentsBiased;
+		coefficientsAA = coefficients;
+		readerCoefficientsAA = readerCoefficients;
+		readerMomentsAACov = readerMomentsCov;
+		readerMomentsBiasedAACov = readerMomentsBiasedCov;
+		readerCoefficientsAACov = readerCoefficientsCov;
+		break;
+	case "BB":
+		if( Double.isInfinite(1.0/totalwbdb) ) {
+			AUCsReaderAvg[1] = -1;
+			return;
+		}
+
+		AUCsReaderAvg[1] = aucB / totalwbdb;
+		momentsBB = moments;
+		momentsBiasedBB = momentsBiased;
+		readerMomentsBB = readerMoments;
+		readerMomentsBiasedBB = readerMomentsBiased;
+		coefficientsBB = coefficients;
+		readerCoefficientsBB = readerCoefficients;
+		readerMomentsBBCov = readerMomentsCov;
+		readerMomentsBiasedBBCov = readerMomentsBiasedCov;
+		readerCoefficientsBBCov = readerCoefficientsCov;
+		break;
+	case "AB":
+		if( Double.isInfinite(1.0/totalwada) ) {
+			AUCsReaderAvg[0] = -1;
+			return;
+		}
+		if( Double.isInfinite(1.0/totalwbdb) ) {
+			AUCsReaderAvg[1] = -1;
+			return;
+		}
+
+		AUCsReaderAvg[0] = aucA / totalwada;
+		AUCsReaderAvg[1] = aucB / totalwbdb;
+		AUCsReaderAvg[2] = AUCsReaderAvg[0] - AUCsReaderAvg[1];
+		momentsAB = moments;
+		momentsBiasedAB = momentsBiased;
+		readerMomentsAB = readerMoments;
+		readerMomentsBiasedAB = readerMomentsBiased;
+		coefficientsAB = coefficients;
+		readerCoefficientsAB = readerCoefficients;
+		readerMomentsABCov = readerMomentsCov;
+		readerMomentsBiasedABCov = readerMomentsBiasedCov;
+		readerCoefficientsABCov = readerCoefficientsCov;
+		break;
+	}
+	
+}
+
+
+/**
+ * Accumulates the U-statistic sums by building the full [Nnormal][Ndisease]
+ * design and success matrices of each reader and each pair of readers.
+ * This works for any study design.
+ * 
+ * @param t0 signal-absent scores [Nnormal][Nreader][2]
+ * @param t1 signal-present scores [Ndisease][Nreader][2]
+ * @param d0 signal-absent design [Nnormal][Nreader][2]
+ * @param d1 signal-present design [Ndisease][Nreader][2]
+ * @param w reader weights [Nreader][2]
+ * @return the sums that feed the moments
+ */
+private UstatSums accumulateMatrixKernel(double[][][] t0, double[][][] t1,
+		int[][][] d0, int[][][] d1, double[][] w) {
+
+	UstatSums sums = new UstatSums((int) Nreader);
 	double aucA = 0.0;
 	double aucB = 0.0;
 	
-	double[][] w = new double[(int) Nreader][2];
 	int[] pairs = new int[3];
 	double totalwada = 0;
 	double totalwbdb = 0;
 	double totalwbdbCov = 0;
-	double[] readerTotalwada = new double[(int)Nreader];
-	double[] readerTotalwbdb = new double[(int)Nreader];
-	double[][] readerTotalwbdbCov = new double[(int)Nreader][(int)Nreader];
-	double[] bnumer = new double[9];
-	double[][] readerBnumer = new double[(int)Nreader][5];
-	double[][][] readerBnumerCov = new double[(int)Nreader][(int)Nreader][5];
+	double[] readerTotalwada = sums.readerTotalwada;
+	double[] readerTotalwbdb = sums.readerTotalwbdb;
+	double[][] readerTotalwbdbCov = sums.readerTotalwbdbCov;
+	double[] bnumer = sums.bnumer;
+	double[][] readerBnumer = sums.readerBnumer;
+	double[][][] readerBnumerCov = sums.readerBnumerCov;
 	double[][] wadasaSumr = new double[(int) Nnormal][(int) Ndisease];
 	double[][] wbdbsbSumr = new double[(int) Nnormal][(int) Ndisease];
 	double[] wadasaSumir = new double[(int) Ndisease];
@@ -347,9 +732,9 @@ public void doAUCcovUstatistics(String flagModality) {
 	double wadasaSumijr = 0.0;
 	double wbdbsbSumijr = 0.0;
 
-	double[] bdenom = new double[9];
-	double[][] readerBdenom = new double[(int)Nreader][5];
-	double[][][] readerBdenomCov = new double[(int)Nreader][(int)Nreader][5];
+	double[] bdenom = sums.bdenom;
+	double[][] readerBdenom = sums.readerBdenom;
+	double[][][] readerBdenomCov = sums.readerBdenomCov;
 	double[][] wadaSumr = new double[(int) Nnormal][(int) Ndisease];
 	double[][] wbdbSumr = new double[(int) Nnormal][(int) Ndisease];
 	double[] wadaSumir = new double[(int) Ndisease];
@@ -359,11 +744,6 @@ public void doAUCcovUstatistics(String flagModality) {
 	double wadaSumijr = 0.0;
 	double wbdbSumijr = 0.0;
 
-	for (int i = 0; i < Nreader; i++) {
-		for (int j = 0; j < 2; j++) {
-			w[i][j] = 1.0;
-		}
-	}
 	for (int i = 0; i < 3; i++) {
 		pairs[i] = 0;
 	}
@@ -508,231 +888,446 @@ public void doAUCcovUstatistics(String flagModality) {
 			AUCs[ir][0] = Matrix.total(wadasa) / totalda;
 			aucA = aucA + totalda * AUCs[ir][0];
 		}
-		// evaluate AUCs modality b
+		// evaluate AUCs modality b
+		if (totaldb > 0) {
+			totalwbdb = totalwbdb + wb * totaldb;
+			readerTotalwbdb[ir] = wb * totaldb;
+			AUCs[ir][1] = Matrix.total(wbdbsb) / totaldb;
+			aucB = aucB + totaldb * AUCs[ir][1];
+		}
+		if(totalda > 0 && totaldb > 0 ) AUCs[ir][2] = AUCs[ir][0] - AUCs[ir][1];
+		// Coveriance
+		for (int irCov = 0; irCov < Nreader; irCov++) {
+			// ***************for the second modality******************
+			int[][] designB0Cov = Matrix.extractFirstDimension(d0, irCov, 1);
+			int[][] designB1Cov = Matrix.extractFirstDimension(d1, irCov, 1);
+			int[][] dbCov = Matrix.multiply(designB0Cov,
+					Matrix.matrixTranspose(designB1Cov));
+			int totaldbCov = Matrix.total(dbCov);
+			if (totaldbCov > 0) {
+				totalwbdbCov = totalwbdbCov + wb * totaldbCov;
+				readerTotalwbdbCov[ir][irCov] = wb * totaldbCov;
+			}
+			double wbCov = w[irCov][1];
+			double[][] t0B_irCov = Matrix.extractFirstDimension(t0, irCov, 1);
+			double[][] t1B_irCov = Matrix.extractFirstDimension(t1, irCov, 1);
+
+			double[][] sb0Cov = Matrix.multiply(t0B_irCov,
+					Matrix.matrixTranspose(ones_vect1));
+			double[][] sb1Cov = Matrix.multiply(ones_vect0,
+					Matrix.matrixTranspose(t1B_irCov));
+			double[][] sbCov = Matrix.subtract(sb1Cov, sb0Cov);
+			for (int i = 0; i < Nnormal; i++)
+				for (int j = 0; j < Ndisease; j++) {
+					if (sbCov[i][j] < 0)
+						sbCov[i][j] = 0.0;
+					else if (sbCov[i][j] == 0)
+						sbCov[i][j] = 0.5;
+					else if (sbCov[i][j] > 0)
+						sbCov[i][j] = 1.0;
+				}
+			double[][] wbdbCov = Matrix.linearTrans(dbCov, wbCov, 0);
+			double[][] wbdbsbCov = Matrix.elementMultiply(wbdbCov, sbCov);
+			
+			// ***********precompute row (col???) sums***********************
+			double[] wada_sumiCov = Matrix.colSum(wada);
+			double[] wbdb_sumiCov = Matrix.colSum(wbdbCov);
+			double[] wadasa_sumiCov = Matrix.colSum(wadasa);
+			double[] wbdbsb_sumiCov = Matrix.colSum(wbdbsbCov);
+			// ***********precompute col (row?????) sums***********************
+			double[] wada_sumjCov = Matrix.rowSum(wada);
+			double[] wbdb_sumjCov = Matrix.rowSum(wbdbCov);
+			double[] wadasa_sumjCov = Matrix.rowSum(wadasa);
+			double[] wbdbsb_sumjCov = Matrix.rowSum(wbdbsbCov);
+			// **********precompute the matrix sums*****************
+			double wada_sumijCov = Matrix.total(wada);
+			double wbdb_sumijCov = Matrix.total(wbdbCov);
+			double wadasa_sumijCov = Matrix.total(wadasa);
+			double wbdbsb_sumijCov = Matrix.total(wbdbsbCov);
+			// *********the sum for reader Cov that will feed ReaderM1-ReaderM4
+			readerBdenomCov[ir][irCov][1]= Matrix.total(Matrix.elementMultiply(wada, wbdbCov));
+			readerBdenomCov[ir][irCov][2] = Matrix.total(Matrix.elementMultiply(wada_sumiCov, wbdb_sumiCov));
+			readerBdenomCov[ir][irCov][3] = Matrix.total(Matrix.elementMultiply(wada_sumjCov, wbdb_sumjCov));
+			readerBdenomCov[ir][irCov][4] = wada_sumijCov * wbdb_sumijCov;
+			readerBnumerCov[ir][irCov][1] = Matrix.total(Matrix.elementMultiply(wadasa, wbdbsbCov));
+			readerBnumerCov[ir][irCov][2] = Matrix.total(Matrix.elementMultiply(wadasa_sumiCov,wbdbsb_sumiCov));
+			readerBnumerCov[ir][irCov][3] = Matrix.total(Matrix.elementMultiply(wadasa_sumjCov,wbdbsb_sumjCov));
+			readerBnumerCov[ir][irCov][4] = wadasa_sumijCov * wbdbsb_sumijCov;
+		}
+
+	} // end reader loop
+
+	bdenom[5] = Matrix.total(Matrix.elementMultiply(wadaSumr, wbdbSumr));
+	bdenom[6] = Matrix.total(Matrix.elementMultiply(wadaSumir, wbdbSumir));
+	bdenom[7] = Matrix.total(Matrix.elementMultiply(wadaSumjr, wbdbSumjr));
+	bdenom[8] = wadaSumijr * wbdbSumijr;
+	bnumer[5] = Matrix
+			.total(Matrix.elementMultiply(wadasaSumr, wbdbsbSumr));
+	bnumer[6] = Matrix.total(Matrix.elementMultiply(wadasaSumir,
+			wbdbsbSumir));
+	bnumer[7] = Matrix.total(Matrix.elementMultiply(wadasaSumjr,
+			wbdbsbSumjr));
+	bnumer[8] = wadasaSumijr * wbdbsbSumijr;
+
+	sums.aucA = aucA;
+	sums.aucB = aucB;
+	sums.totalwada = totalwada;
+	sums.totalwbdb = totalwbdb;
+	return sums;
+
+}
+
+/**
+ * Determines if {@link #accumulateSortedKernel(double[][][], double[][][], int[][][], int[][][], double[][])}
+ * can replace {@link #accumulateMatrixKernel(double[][][], double[][][], int[][][], int[][][], double[][])}.
+ * All scores must be finite (an infinite score turns the full success matrix into NaN).
+ * 
+ * @param t0 signal-absent scores [Nnormal][Nreader][2]
+ * @param t1 signal-present scores [Ndisease][Nreader][2]
+ * @return true if the sort-based kernels give the same result as the full matrices
+ */
+private boolean isSortedKernelValid(double[][][] t0, double[][][] t1) {
+
+	for (double[][][] t : new double[][][][] { t0, t1 })
+		for (int i = 0; i < t.length; i++)
+			for (int ir = 0; ir < Nreader; ir++)
+				for (int m = 0; m < 2; m++)
+					if (Double.isNaN(t[i][ir][m]) || Double.isInfinite(t[i][ir][m]))
+						return false;
+	return true;
+
+}
+
+/**
+ * Accumulates the same sums as {@link #accumulateMatrixKernel(double[][][], double[][][], int[][][], int[][][], double[][])}
+ * without building any [Nnormal][Ndisease] matrix. <br>
+ * -- Phase 1: for each reader and modality, rank the scores once in a
+ *    {@link mrmc.core.UstatKernel.ReaderScores}, see {@link #summarizeReaders(double[][][], double[][][], int[][][], int[][][])}. <br>
+ * -- Phases 2 and 3: see {@link #accumulateSortedKernel(ReaderSummaries, ReaderSummaries, double[][], double[][])} <br>
+ * 
+ * @param t0 signal-absent scores [Nnormal][Nreader][2]
+ * @param t1 signal-present scores [Ndisease][Nreader][2]
+ * @param d0 signal-absent design [Nnormal][Nreader][2]
+ * @param d1 signal-present design [Ndisease][Nreader][2]
+ * @param w reader weights [Nreader][2]
+ * @return the sums that feed the moments
+ */
+private UstatSums accumulateSortedKernel(double[][][] t0, double[][][] t1,
+		int[][][] d0, int[][][] d1, double[][] w) {
+
+	ReaderSummaries[] summaries = summarizeReaders(t0, t1, d0, d1);
+	return accumulateSortedKernel(summaries[0], summaries[1], null, w);
+
+}
+
+/**
+ * Ranks the scores of each reader and modality once in a {@link mrmc.core.UstatKernel.ReaderScores}.
+ * This gives the placement values, which are the row and column sums of the success matrix.
+ * Readers are split across {@link #parallelism} threads by {@link #forEachReader(int, ReaderBody)}.
+ * 
+ * @param t0 signal-absent scores [Nnormal][Nreader][2]
+ * @param t1 signal-present scores [Ndisease][Nreader][2]
+ * @param d0 signal-absent design [Nnormal][Nreader][2]
+ * @param d1 signal-present design [Ndisease][Nreader][2]
+ * @return the summaries of the first and second modality
+ */
+private ReaderSummaries[] summarizeReaders(final double[][][] t0, final double[][][] t1,
+		final int[][][] d0, final int[][][] d1) {
+
+	final ReaderSummaries[] summaries = new ReaderSummaries[] {
+			new ReaderSummaries((int) Nreader), new ReaderSummaries((int) Nreader) };
+	forEachReader((int) Nreader, new ReaderBody() {
+		public void run(int ir) {
+			for (int m = 0; m < 2; m++) {
+				UstatKernel.ReaderScores scores = new UstatKernel.ReaderScores(
+						Matrix.extractVector(t0, ir, m), Matrix.extractVector(d0, ir, m),
+						Matrix.extractVector(t1, ir, m), Matrix.extractVector(d1, ir, m));
+				summaries[m].scores[ir] = scores;
+				summaries[m].sumi[ir] = designSums(scores.d1, scores.N0);
+				summaries[m].sumj[ir] = designSums(scores.d0, scores.N1);
+			}
+		}
+	});
+	return summaries;
+
+}
+
+/**
+ * Accumulates the sums from the reader summaries of the first and second modality. <br>
+ * -- Phase 2: form the reader and reader-pair terms from the placement values.
+ *    Only the total of the element-wise product of two success matrices goes back to the ranks, through
+ *    {@link mrmc.core.UstatKernel#crossKernel(mrmc.core.UstatKernel.ReaderScores, mrmc.core.UstatKernel.ReaderScores)},
+ *    unless cross already holds these totals. <br>
+ * -- Phase 3: sum the reader terms over readers. <br>
+ * <br>
+ * Phase 2 only writes reader-indexed arrays, so readers are split across
+ * {@link #parallelism} threads by {@link #forEachReader(int, ReaderBody)}.
+ * Phase 3 runs in reader order on one thread, so the results do not depend on the number of threads. <br>
+ * <br>
+ * The design matrices are outer products of the signal-absent and signal-present
+ * design vectors, so their sums are products of case counts.
+ * The M5 sums over all readers are the sums over all reader pairs of the reader covariance terms.
+ * The reader weights are all 1, so the weighted design and success sums
+ * are the case counts and placement values themselves.
+ * 
+ * @param summariesA reader summaries of the first modality
+ * @param summariesB reader summaries of the second modality
+ * @param cross success matrix product totals [Nreader][Nreader] of reader ir in the first modality
+ * and reader irCov in the second modality, or null to compute them here
+ * @param w reader weights [Nreader][2]
+ * @return the sums that feed the moments
+ */
+private UstatSums accumulateSortedKernel(ReaderSummaries summariesA, ReaderSummaries summariesB,
+		final double[][] cross, final double[][] w) {
+
+	UstatSums sums = new UstatSums((int) Nreader);
+	double aucA = 0.0;
+	double aucB = 0.0;
+	double totalwada = 0;
+	double totalwbdb = 0;
+	final double[] readerTotalwada = sums.readerTotalwada;
+	final double[] readerTotalwbdb = sums.readerTotalwbdb;
+	final double[][] readerTotalwbdbCov = sums.readerTotalwbdbCov;
+	double[] bnumer = sums.bnumer;
+	final double[][] readerBnumer = sums.readerBnumer;
+	final double[][][] readerBnumerCov = sums.readerBnumerCov;
+	double[] bdenom = sums.bdenom;
+	final double[][] readerBdenom = sums.readerBdenom;
+	final double[][][] readerBdenomCov = sums.readerBdenomCov;
+
+	double[] wadasaSumir = new double[(int) Ndisease];
+	double[] wbdbsbSumir = new double[(int) Ndisease];
+	double[] wadasaSumjr = new double[(int) Nnormal];
+	double[] wbdbsbSumjr = new double[(int) Nnormal];
+	double wadasaSumijr = 0.0;
+	double wbdbsbSumijr = 0.0;
+	double[] wadaSumir = new double[(int) Ndisease];
+	double[] wbdbSumir = new double[(int) Ndisease];
+	double[] wadaSumjr = new double[(int) Nnormal];
+	double[] wbdbSumjr = new double[(int) Nnormal];
+	double wadaSumijr = 0.0;
+	double wbdbSumijr = 0.0;
+
+	final UstatKernel.ReaderScores[] scoresA = summariesA.scores;
+	final UstatKernel.ReaderScores[] scoresB = summariesB.scores;
+	// row and col sums of the design matrices
+	final double[][] wada_sumi = summariesA.sumi;
+	final double[][] wbdb_sumi = summariesB.sumi;
+	final double[][] wada_sumj = summariesA.sumj;
+	final double[][] wbdb_sumj = summariesB.sumj;
+
+	// ***************phase 2: reader and reader-pair terms******************
+	forEachReader((int) Nreader, new ReaderBody() {
+		public void run(int ir) {
+			UstatKernel.ReaderScores a = scoresA[ir];
+			UstatKernel.ReaderScores b = scoresB[ir];
+			long totalda = (long) a.N0 * a.N1;
+			long totaldb = (long) b.N0 * b.N1;
+			double wa = w[ir][0];
+			double wb = w[ir][1];
+			double wada_sumij = totalda;
+			double wbdb_sumij = totaldb;
+
+			// *********the sum for each reader that will feed ReaderM1-ReaderM4
+			readerBdenom[ir][1] = (double) Matrix.innerProduct(a.d0, b.d0) * Matrix.innerProduct(a.d1, b.d1);
+			readerBdenom[ir][2] = Matrix.total(Matrix.elementMultiply(wada_sumi[ir], wbdb_sumi[ir]));
+			readerBdenom[ir][3] = Matrix.total(Matrix.elementMultiply(wada_sumj[ir], wbdb_sumj[ir]));
+			readerBdenom[ir][4] = wada_sumij * wbdb_sumij;
+			if (cross != null) {
+				readerBnumer[ir][1] = cross[ir][ir];
+			} else {
+				readerBnumer[ir][1] = UstatKernel.crossKernel(a, b);
+			}
+			readerBnumer[ir][2] = Matrix.total(Matrix.elementMultiply(a.place1, b.place1));
+			readerBnumer[ir][3] = Matrix.total(Matrix.elementMultiply(a.place0, b.place0));
+			readerBnumer[ir][4] = a.total * b.total;
+
+			// ------------------------------------------
+			// calculate AUCs
+			// ------------------------------------------
+			// evaluate AUCs modality a
+			if (totalda > 0) {
+				readerTotalwada[ir] = wa * totalda;
+				AUCs[ir][0] = a.total / totalda;
+			}
+			// evaluate AUCs modality b
+			if (totaldb > 0) {
+				readerTotalwbdb[ir] = wb * totaldb;
+				AUCs[ir][1] = b.total / totaldb;
+			}
+			if(totalda > 0 && totaldb > 0 ) AUCs[ir][2] = AUCs[ir][0] - AUCs[ir][1];
+			// Coveriance
+			for (int irCov = 0; irCov < Nreader; irCov++) {
+				UstatKernel.ReaderScores bCov = scoresB[irCov];
+				long totaldbCov = (long) bCov.N0 * bCov.N1;
+				if (totaldbCov > 0) {
+					readerTotalwbdbCov[ir][irCov] = wb * totaldbCov;
+				}
+				// *********the sum for reader Cov that will feed ReaderM1-ReaderM4
+				readerBdenomCov[ir][irCov][1] = (double) Matrix.innerProduct(a.d0, bCov.d0) * Matrix.innerProduct(a.d1, bCov.d1);
+				readerBdenomCov[ir][irCov][2] = Matrix.total(Matrix.elementMultiply(wada_sumi[ir], wbdb_sumi[irCov]));
+				readerBdenomCov[ir][irCov][3] = Matrix.total(Matrix.elementMultiply(wada_sumj[ir], wbdb_sumj[irCov]));
+				readerBdenomCov[ir][irCov][4] = wada_sumij * (double) totaldbCov;
+				if (cross != null) {
+					readerBnumerCov[ir][irCov][1] = cross[ir][irCov];
+				} else if (irCov == ir) {
+					readerBnumerCov[ir][irCov][1] = readerBnumer[ir][1];
+				} else {
+					readerBnumerCov[ir][irCov][1] = UstatKernel.crossKernel(a, bCov);
+				}
+				readerBnumerCov[ir][irCov][2] = Matrix.total(Matrix.elementMultiply(a.place1, bCov.place1));
+				readerBnumerCov[ir][irCov][3] = Matrix.total(Matrix.elementMultiply(a.place0, bCov.place0));
+				readerBnumerCov[ir][irCov][4] = a.total * bCov.total;
+			}
+		}
+	});
+
+	// ***************phase 3: sums over readers, in reader order******************
+	for (int ir = 0; ir < Nreader; ir++) {
+		UstatKernel.ReaderScores a = scoresA[ir];
+		UstatKernel.ReaderScores b = scoresB[ir];
+		long totalda = (long) a.N0 * a.N1;
+		long totaldb = (long) b.N0 * b.N1;
+
+		// *********aggregate the sum over readers that will feed M1-M4
+		for (int i = 1; i <= 4; i++) {
+			bdenom[i] = bdenom[i] + readerBdenom[ir][i];
+			bnumer[i] = bnumer[i] + readerBnumer[ir][i];
+		}
+
+		// *********aggregate the sum over readers that will feed M6-M8
+		wadaSumir = Matrix.add(wadaSumir, wada_sumi[ir]);
+		wbdbSumir = Matrix.add(wbdbSumir, wbdb_sumi[ir]);
+		wadasaSumir = Matrix.add(wadasaSumir, a.place1);
+		wbdbsbSumir = Matrix.add(wbdbsbSumir, b.place1);
+
+		wadaSumjr = Matrix.add(wadaSumjr, wada_sumj[ir]);
+		wbdbSumjr = Matrix.add(wbdbSumjr, wbdb_sumj[ir]);
+		wadasaSumjr = Matrix.add(wadasaSumjr, a.place0);
+		wbdbsbSumjr = Matrix.add(wbdbsbSumjr, b.place0);
+		wadaSumijr = wadaSumijr + totalda;
+		wbdbSumijr = wbdbSumijr + totaldb;
+		wadasaSumijr = wadasaSumijr + a.total;
+		wbdbsbSumijr = wbdbsbSumijr + b.total;
+
+		// *********aggregate the AUCs
+		if (totalda > 0) {
+			totalwada = totalwada + w[ir][0] * totalda;
+			aucA = aucA + totalda * AUCs[ir][0];
+		}
 		if (totaldb > 0) {
-			totalwbdb = totalwbdb + wb * totaldb;
-			readerTotalwbdb[ir] = wb * totaldb;
-			AUCs[ir][1] = Matrix.total(wbdbsb) / totaldb;
+			totalwbdb = totalwbdb + w[ir][1] * totaldb;
 			aucB = aucB + totaldb * AUCs[ir][1];
 		}
-		if(totalda > 0 && totaldb > 0 ) AUCs[ir][2] = AUCs[ir][0] - AUCs[ir][1];
-		// Coveriance
-		for (int irCov = 0; irCov < Nreader; irCov++) {
-			// ***************for the second modality******************
-			int[][] designB0Cov = Matrix.extractFirstDimension(d0, irCov, 1);
-			int[][] designB1Cov = Matrix.extractFirstDimension(d1, irCov, 1);
-			int[][] dbCov = Matrix.multiply(designB0Cov,
-					Matrix.matrixTranspose(designB1Cov));
-			int totaldbCov = Matrix.total(dbCov);
-			if (totaldbCov > 0) {
-				totalwbdbCov = totalwbdbCov + wb * totaldbCov;
-				readerTotalwbdbCov[ir][irCov] = wb * totaldbCov;
-			}
-			double wbCov = w[irCov][1];
-			double[][] t0B_irCov = Matrix.extractFirstDimension(t0, irCov, 1);
-			double[][] t1B_irCov = Matrix.extractFirstDimension(t1, irCov, 1);
 
-			double[][] sb0Cov = Matrix.multiply(t0B_irCov,
-					Matrix.matrixTranspose(ones_vect1));
-			double[][] sb1Cov = Matrix.multiply(ones_vect0,
-					Matrix.matrixTranspose(t1B_irCov));
-			double[][] sbCov = Matrix.subtract(sb1Cov, sb0Cov);
-			for (int i = 0; i < Nnormal; i++)
-				for (int j = 0; j < Ndisease; j++) {
-					if (sbCov[i][j] < 0)
-						sbCov[i][j] = 0.0;
-					else if (sbCov[i][j] == 0)
-						sbCov[i][j] = 0.5;
-					else if (sbCov[i][j] > 0)
-						sbCov[i][j] = 1.0;
-				}
-			double[][] wbdbCov = Matrix.linearTrans(dbCov, wbCov, 0);
-			double[][] wbdbsbCov = Matrix.elementMultiply(wbdbCov, sbCov);
-			
-			// ***********precompute row (col???) sums***********************
-			double[] wada_sumiCov = Matrix.colSum(wada);
-			double[] wbdb_sumiCov = Matrix.colSum(wbdbCov);
-			double[] wadasa_sumiCov = Matrix.colSum(wadasa);
-			double[] wbdbsb_sumiCov = Matrix.colSum(wbdbsbCov);
-			// ***********precompute col (row?????) sums***********************
-			double[] wada_sumjCov = Matrix.rowSum(wada);
-			double[] wbdb_sumjCov = Matrix.rowSum(wbdbCov);
-			double[] wadasa_sumjCov = Matrix.rowSum(wadasa);
-			double[] wbdbsb_sumjCov = Matrix.rowSum(wbdbsbCov);
-			// **********precompute the matrix sums*****************
-			double wada_sumijCov = Matrix.total(wada);
-			double wbdb_sumijCov = Matrix.total(wbdbCov);
-			double wadasa_sumijCov = Matrix.total(wadasa);
-			double wbdbsb_sumijCov = Matrix.total(wbdbsbCov);
-			// *********the sum for reader Cov that will feed ReaderM1-ReaderM4
-			readerBdenomCov[ir][irCov][1]= Matrix.total(Matrix.elementMultiply(wada, wbdbCov));
-			readerBdenomCov[ir][irCov][2] = Matrix.total(Matrix.elementMultiply(wada_sumiCov, wbdb_sumiCov));
-			readerBdenomCov[ir][irCov][3] = Matrix.total(Matrix.elementMultiply(wada_sumjCov, wbdb_sumjCov));
-			readerBdenomCov[ir][irCov][4] = wada_sumijCov * wbdb_sumijCov;
-			readerBnumerCov[ir][irCov][1] = Matrix.total(Matrix.elementMultiply(wadasa, wbdbsbCov));
-			readerBnumerCov[ir][irCov][2] = Matrix.total(Matrix.elementMultiply(wadasa_sumiCov,wbdbsb_sumiCov));
-			readerBnumerCov[ir][irCov][3] = Matrix.total(Matrix.elementMultiply(wadasa_sumjCov,wbdbsb_sumjCov));
-			readerBnumerCov[ir][irCov][4] = wadasa_sumijCov * wbdbsb_sumijCov;
+		// the sum over all readers of the success matrices, squared, feeds M5
+		for (int irCov = 0; irCov < Nreader; irCov++) {
+			bdenom[5] = bdenom[5] + readerBdenomCov[ir][irCov][1];
+			bnumer[5] = bnumer[5] + readerBnumerCov[ir][irCov][1];
 		}
+	}
 
-	} // end reader loop
-
-	bdenom[5] = Matrix.total(Matrix.elementMultiply(wadaSumr, wbdbSumr));
 	bdenom[6] = Matrix.total(Matrix.elementMultiply(wadaSumir, wbdbSumir));
 	bdenom[7] = Matrix.total(Matrix.elementMultiply(wadaSumjr, wbdbSumjr));
 	bdenom[8] = wadaSumijr * wbdbSumijr;
-	bnumer[5] = Matrix
-			.total(Matrix.elementMultiply(wadasaSumr, wbdbsbSumr));
 	bnumer[6] = Matrix.total(Matrix.elementMultiply(wadasaSumir,
 			wbdbsbSumir));
 	bnumer[7] = Matrix.total(Matrix.elementMultiply(wadasaSumjr,
 			wbdbsbSumjr));
 	bnumer[8] = wadasaSumijr * wbdbsbSumijr;
 
-	double[][] bias2unbias = new double[][] {
-			{ 0, 0, 0, 0, 0, 0, 0, 0, 0 }, { 0, 1.0, 0, 0, 0, 0, 0, 0, 0 },
-			{ 0, -1.0, 1.0, 0, 0, 0, 0, 0, 0 },
-			{ 0, -1.0, 0, 1.0, 0, 0, 0, 0, 0 },
-			{ 0, 1.0, -1.0, -1.0, 1.0, 0, 0, 0, 0 },
-			{ 0, -1.0, 0, 0, 0, 1.0, 0, 0, 0 },
-			{ 0, 1.0, -1.0, 0, 0, -1.0, 1.0, 0, 0 },
-			{ 0, 1.0, 0, -1.0, 0, -1.0, 0, 1.0, 0 },
-			{ 0, -1.0, 1.0, 1.0, -1.0, 1.0, -1.0, -1.0, 1.0 } };
+	sums.aucA = aucA;
+	sums.aucB = aucB;
+	sums.totalwada = totalwada;
+	sums.totalwbdb = totalwbdb;
+	return sums;
 
-	double[] denom = Matrix.multiply(bias2unbias, bdenom);
-	double[] numer = Matrix.multiply(bias2unbias, bnumer);
-	// biased moments
-	momentsBiased = bnumer;
-	for (int i = 0; i < momentsBiased.length; i++) {
-		if (bdenom[i] > Matrix.min(w) / 2.0)
-			momentsBiased[i] = momentsBiased[i] / bdenom[i];
-	}
+}
 
-	// unbiased moment
-	// double[] m = numer;
-	moments = numer;
-	for (int i = 0; i < moments.length; i++) {
-		if (denom[i] > Matrix.min(w) / 2.0)
-			moments[i] = moments[i] / denom[i];
+/**
+ * Work done for one reader inside {@link #forEachReader(int, ReaderBody)}
+ */
+interface ReaderBody {
+	void run(int ir);
+}
+
+/**
+ * Calls body.run(ir) for ir = 0, ..., Nreader-1. <br>
+ * If {@link #parallelism} is greater than 1, the readers are split across a shared
+ * fork-join pool with that many threads and this method returns when all readers are done.
+ * The body must only write reader-indexed outputs.
+ * 
+ * @param Nreader number of readers
+ * @param body the work for one reader
+ */
+static void forEachReader(int Nreader, ReaderBody body) {
+
+	int threads = parallelism;
+	if (threads <= 1 || Nreader <= 1) {
+		for (int ir = 0; ir < Nreader; ir++)
+			body.run(ir);
+		return;
 	}
-	// readers moment
-	double[][] readerDenom = new double[(int)Nreader][5];
-	double[][] readerNumer = new double[(int)Nreader][5];
-	double[][][] readerDenomCov = new double[(int)Nreader][(int)Nreader][5];
-	double[][][] readerNumerCov = new double[(int)Nreader][(int)Nreader][5];
-	double[][] readerBias2unbias = new double[][] {
-				{ 0, 0, 0, 0, 0}, { 0, 1.0, 0, 0, 0},
-				{ 0, -1.0, 1.0, 0, 0},{ 0, -1.0, 0, 1.0, 0},
-				{ 0, 1.0, -1.0, -1.0, 1.0},};
-	for (int ir = 0; ir < Nreader; ir++) {
-		readerDenom[ir] = Matrix.multiply(readerBias2unbias, readerBdenom[ir]);
-		readerNumer[ir] = Matrix.multiply(readerBias2unbias, readerBnumer[ir]);
-		readerMomentsBiased = readerBnumer;
-		// biased moment
-		for (int i = 0; i < readerMomentsBiased[0].length; i++) {
-			if (readerBdenom[ir][i] > Matrix.min(w) / 2.0)
-				readerMomentsBiased[ir][i] = readerMomentsBiased[ir][i]/readerBdenom[ir][i];
-		}
-		// unbiased moment
-		readerMoments = readerNumer;
-		for (int i = 0; i < readerMoments[0].length; i++) {
-			if (readerDenom[ir][i] > Matrix.min(w) / 2.0)
-				readerMoments[ir][i] = readerMoments[ir][i]/readerDenom[ir][i];
-		}
-		// coefficients
-		readerCoefficients[ir] = Matrix.linearTrans(readerDenom[ir], 1.0 / (readerTotalwada[ir] * readerTotalwbdb[ir]), 0);
-		readerCoefficients[ir][4] = readerCoefficients[ir][4] - 1.0;
-		// reader Covariance
-		for (int irCov = 0; irCov < Nreader; irCov++) {
-			readerDenomCov[ir][irCov] = Matrix.multiply(readerBias2unbias, readerBdenomCov[ir][irCov]);
-			readerNumerCov[ir][irCov] = Matrix.multiply(readerBias2unbias, readerBnumerCov[ir][irCov]);
-			readerMomentsBiasedCov = readerBnumerCov;
-			// biased moment
-			for (int i = 0; i < readerMomentsBiasedCov[0][0].length; i++) {
-				if (readerBdenomCov[ir][irCov][i] > Matrix.min(w) / 2.0)
-					readerMomentsBiasedCov[ir][irCov][i] = readerMomentsBiasedCov[ir][irCov][i]/readerBdenomCov[ir][irCov][i];
-			}
-			// unbiased moment
-			readerMomentsCov = readerNumerCov;
-			for (int i = 0; i < readerMomentsCov[0][0].length; i++) {
-				if (readerDenomCov[ir][irCov][i] > Matrix.min(w) / 2.0)
-					readerMomentsCov[ir][irCov][i] = readerMomentsCov[ir][irCov][i]/(readerDenomCov[ir][irCov][i]);
-			}
-			// coefficients
-			readerCoefficientsCov[ir][irCov] = Matrix.linearTrans(readerDenomCov[ir][irCov], 1.0 / (readerTotalwada[ir] * readerTotalwbdbCov[ir][irCov]), 0);
-			readerCoefficientsCov[ir][irCov][4] = readerCoefficientsCov[ir][irCov][4] - 1.0;
-		}
-		
+	getReaderPool(threads).invoke(new ReaderRange(body, 0, Nreader));
+
+}
+
+/**
+ * @param threads the {@link #parallelism} read by the caller
+ * @return the fork-join pool used by {@link #forEachReader(int, ReaderBody)},
+ * replaced by a new pool if the number of threads has changed. The old pool is not shut down,
+ * as an analysis that got it may not have given it its work yet; its daemon threads end once idle
+ */
+private static synchronized ForkJoinPool getReaderPool(int threads) {
+
+	if (readerPool == null || readerPool.getParallelism() != threads) {
+		readerPool = new ForkJoinPool(threads);
 	}
-	// coefficients
-	coefficients = Matrix.linearTrans(denom, 1.0 / (totalwada * totalwbdb), 0);
-	coefficients[8] = coefficients[8] - 1.0;
+	return readerPool;
 
-	switch(flagModality) {
-	case "AA":
-		if( Double.isInfinite(1.0/totalwada) ) {
-			AUCsReaderAvg[0] = -1;
-			return;
-		}
+}
 
-		AUCsReaderAvg[0] = aucA / totalwada;
-		momentsAA = moments;
-		momentsBiasedAA = momentsBiased;
-		readerMomentsAA = readerMoments;
-		readerMomentsBiasedAA = readerMomentsBiased;
-		coefficientsAA = coefficients;
-		readerCoefficientsAA = readerCoefficients;
-		readerMomentsAACov = readerMomentsCov;
-		readerMomentsBiasedAACov = readerMomentsBiasedCov;
-		readerCoefficientsAACov = readerCoefficientsCov;
-		break;
-	case "BB":
-		if( Double.isInfinite(1.0/totalwbdb) ) {
-			AUCsReaderAvg[1] = -1;
-			return;
-		}
+/**
+ * Splits a range of readers in half until each task has one reader
+ */
+@SuppressWarnings("serial")
+static class ReaderRange extends RecursiveAction {
+	final ReaderBody body;
+	final int from, to;
 
-		AUCsReaderAvg[1] = aucB / totalwbdb;
-		momentsBB = moments;
-		momentsBiasedBB = momentsBiased;
-		readerMomentsBB = readerMoments;
-		readerMomentsBiasedBB = readerMomentsBiased;
-		coefficientsBB = coefficients;
-		readerCoefficientsBB = readerCoefficients;
-		readerMomentsBBCov = readerMomentsCov;
-		readerMomentsBiasedBBCov = readerMomentsBiasedCov;
-		readerCoefficientsBBCov = readerCoefficientsCov;
-		break;
-	case "AB":
-		if( Double.isInfinite(1.0/totalwada) ) {
-			AUCsReaderAvg[0] = -1;
-			return;
-		}
-		if( Double.isInfinite(1.0/totalwbdb) ) {
-			AUCsReaderAvg[1] = -1;
+	ReaderRange(ReaderBody body, int from, int to) {
+		this.body = body;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from == 1) {
+			body.run(from);
 			return;
 		}
-
-		AUCsReaderAvg[0] = aucA / totalwada;
-		AUCsReaderAvg[1] = aucB / totalwbdb;
-		AUCsReaderAvg[2] = AUCsReaderAvg[0] - AUCsReaderAvg[1];
-		momentsAB = moments;
-		momentsBiasedAB = momentsBiased;
-		readerMomentsAB = readerMoments;
-		readerMomentsBiasedAB = readerMomentsBiased;
-		coefficientsAB = coefficients;
-		readerCoefficientsAB = readerCoefficients;
-		readerMomentsABCov = readerMomentsCov;
-		readerMomentsBiasedABCov = readerMomentsBiasedCov;
-		readerCoefficientsABCov = readerCoefficientsCov;
-		break;
+		int mid = (from + to) >>> 1;
+		invokeAll(new ReaderRange(body, from, mid), new ReaderRange(body, mid, to));
 	}
-	
 }
 
+/**
+ * Row or column sums of the design matrix d0*d1', which is an outer product
+ * 
+ * @param d design vector of the summed-over truth state
+ * @param Nother number of cases scored in the other truth state
+ * @return d[i]*Nother
+ */
+private static double[] designSums(int[] d, int Nother) {
+	double[] result = new double[d.length];
+	for (int i = 0; i < d.length; i++)
+		result[i] = d[i] * (double) Nother;
+	return result;
+}
 
 /**
- * Takes study data ({@link mrmc.core.InputFile#keyedData}, {@link mrmc.core.InputFile#truthVals})
+ * Takes study data ({@link mrmc.core.InputFile#scoreStore})
  *  and creates data for {@link mrmc.core.CovMRMC} <br>
  * --t-matrices: reader scores <br>
  * ---- {@link #t0_modAA}, {@link #t0_modAB}, {@link #t0_modBB}: signal-absent scores  [Nnormal ][Nreader][2 modalities] <br>
@@ -751,20 +1346,30 @@ public void makeTMatrices() {
 	String modA = DBRecordStat.modalityA;
 	String modB = DBRecordStat.modalityB;
 
-	t0_modAB = new double[(int) Nnormal][(int) Nreader][2];
-	t1_modAB = new double[(int) Ndisease][(int) Nreader][2];
-	t0_modAA = new double[(int) Nnormal][(int) Nreader][2];
-	t0_modBB = new double[(int) Nnormal][(int) Nreader][2];
-	t1_modAA = new double[(int) Ndisease][(int) Nreader][2];
-	t1_modBB = new double[(int) Ndisease][(int) Nreader][2];
-	d0_modAA = new int[(int) Nnormal][(int) Nreader][2];
-	d1_modAA = new int[(int) Ndisease][(int) Nreader][2];
-	d0_modBB = new int[(int) Nnormal][(int) Nreader][2];
-	d1_modBB = new int[(int) Ndisease][(int) Nreader][2];
-	d0_modAB = new int[(int) Nnormal][(int) Nreader][2];
-	d1_modAB = new int[(int) Ndisease][(int) Nreader][2];
-	N0perReader =new int[(int) Nreader][3];
-	N1perReader =new int[(int) Nreader][3];
+	// Every element of the score and design matrices is set below,
+	// so the matrices of a previous analysis of the same size are reused as they are
+	if (t0_modAB == null || t0_modAB.length != Nnormal || t1_modAB.length != Ndisease
+			|| N0perReader.length != Nreader) {
+		t0_modAB = new double[(int) Nnormal][(int) Nreader][2];
+		t1_modAB = new double[(int) Ndisease][(int) Nreader][2];
+		t0_modAA = new double[(int) Nnormal][(int) Nreader][2];
+		t0_modBB = new double[(int) Nnormal][(int) Nreader][2];
+		t1_modAA = new double[(int) Ndisease][(int) Nreader][2];
+		t1_modBB = new double[(int) Ndisease][(int) Nreader][2];
+		d0_modAA = new int[(int) Nnormal][(int) Nreader][2];
+		d1_modAA = new int[(int) Ndisease][(int) Nreader][2];
+		d0_modBB = new int[(int) Nnormal][(int) Nreader][2];
+		d1_modBB = new int[(int) Ndisease][(int) Nreader][2];
+		d0_modAB = new int[(int) Nnormal][(int) Nreader][2];
+		d1_modAB = new int[(int) Ndisease][(int) Nreader][2];
+		N0perReader =new int[(int) Nreader][3];
+		N1perReader =new int[(int) Nreader][3];
+	} else {
+		for (int k = 0; k < Nreader; k++) {
+			Arrays.fill(N0perReader[k], 0);
+			Arrays.fill(N1perReader[k], 0);
+		}
+	}
 	double ScoreModA;
 	double ScoreModB;
 	int PresentModA;
@@ -773,42 +1378,37 @@ public void makeTMatrices() {
 	totalscoredB = 0;
 	totalscoredAB = 0;
 	
+	ScoreStore scoreStore = InputFileStat.scoreStore;
+	int iModA = InputFileStat.getModalityIndex(modA);
+	int iModB = InputFileStat.getModalityIndex(modB);
+	
 	int m = 0; // signal-absent case counter
 	int n = 0; // signal-present case counter
-	int k = 0; // reader counter
-	for (String r : InputFileStat.keyedData.keySet()) {
+	for (int k = 0; k < scoreStore.Nreader; k++) { // reader counter
 		m = 0;
 		n = 0;
-		for (String c : InputFileStat.keyedData.get(r).keySet()) {
+		for (int c = 0; c < scoreStore.Ncase; c++) {
 
 			// For all readers and cases, determine which had observations
-			if (InputFileStat.keyedData.get(r).containsKey(c)) {
-				if (InputFileStat.keyedData.get(r).get(c).containsKey(modA)) {
-					ScoreModA = InputFileStat.keyedData.get(r).get(c).get(modA);
-					PresentModA = 1;
-				} else {
-					ScoreModA = -1000000;
-					PresentModA = 0;
-					fullyCrossedA = false;
-				}
-				if (InputFileStat.keyedData.get(r).get(c).containsKey(modB)) {
-					ScoreModB = InputFileStat.keyedData.get(r).get(c).get(modB);
-					PresentModB = 1;
-				} else {
-					ScoreModB = -1000000;
-					PresentModB = 0;
-					fullyCrossedB = false;
-				}
+			if (iModA >= 0 && scoreStore.isScored(iModA, k, c)) {
+				ScoreModA = scoreStore.getScore(iModA, k, c);
+				PresentModA = 1;
 			} else {
 				ScoreModA = -1000000;
-				ScoreModB = -1000000;
 				PresentModA = 0;
+				fullyCrossedA = false;
+			}
+			if (iModB >= 0 && scoreStore.isScored(iModB, k, c)) {
+				ScoreModB = scoreStore.getScore(iModB, k, c);
+				PresentModB = 1;
+			} else {
+				ScoreModB = -1000000;
 				PresentModB = 0;
-				fullyCrossedAB = false;
+				fullyCrossedB = false;
 			}
 			
 			// Fill in the score and design matrices
-			if (InputFileStat.truthVals.get(c) == 0) {
+			if (scoreStore.truth[c] == 0) {
 				t0_modAB[m][k][0] = ScoreModA;
 				t0_modAB[m][k][1] = ScoreModB;
 				t0_modAA[m][k][0] = ScoreModA;
@@ -852,7 +1452,6 @@ public void makeTMatrices() {
 				n++;
 			}
 		} // loop over cases
-		k++;
 	} // loop over readers
 
 	
@@ -983,4 +1582,45 @@ public void makeDMatrices() {
 
 
 
+
+/**
+ * The {@link mrmc.core.UstatKernel.ReaderScores} of each reader in one modality,
+ * with the row and col sums of the design matrices
+ */
+static class ReaderSummaries {
+	UstatKernel.ReaderScores[] scores;
+	double[][] sumi, sumj;
+
+	ReaderSummaries(int Nreader) {
+		scores = new UstatKernel.ReaderScores[Nreader];
+		sumi = new double[Nreader][];
+		sumj = new double[Nreader][];
+	}
+}
+
+/**
+ * The sums over readers and cases accumulated by {@link #doAUCcovUstatistics(String)}
+ * before they are turned into moments and coefficients
+ */
+static class UstatSums {
+	double aucA, aucB;
+	double totalwada, totalwbdb;
+	double[] readerTotalwada, readerTotalwbdb;
+	double[][] readerTotalwbdbCov;
+	double[] bnumer = new double[9];
+	double[] bdenom = new double[9];
+	double[][] readerBnumer, readerBdenom;
+	double[][][] readerBnumerCov, readerBdenomCov;
+
+	UstatSums(int Nreader) {
+		readerTotalwada = new double[Nreader];
+		readerTotalwbdb = new double[Nreader];
+		readerTotalwbdbCov = new double[Nreader][Nreader];
+		readerBnumer = new double[Nreader][5];
+		readerBdenom = new double[Nreader][5];
+		readerBnumerCov = new double[Nreader][Nreader][5];
+		readerBdenomCov = new double[Nreader][Nreader][5];
+	}
+}
+
 }
\ No newline at end of file
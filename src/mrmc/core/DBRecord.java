@@ -7,7 +7,6 @@ import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 
-import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
 import mrmc.gui.GUInterface;
@@ -51,6 +50,12 @@ import mrmc.gui.SizePanel;
 public class DBRecord {
 	
 	public boolean verbose = true;
+	/**
+	 * If not null, warnings from the analysis of this record are added here instead of being displayed,
+	 * and errors are thrown as IllegalStateException. Set by {@link mrmc.core.Analysis},
+	 * so that analyses running at the same time do not depend on {@link mrmc.core.MRMC#commandStart}.
+	 */
+	public List<String> messages = null;
     public double totalVarMLE;
 	public double varAMLE=0.0;
 	public double varBMLE=0.0;
@@ -109,6 +114,12 @@ public class DBRecord {
 	 * Covariance information {@link mrmc.core.CovMRMC}
 	 */
 	public CovMRMC covMRMCstat, covMRMCsize;
+	/**
+	 * If true, {@link #DBRecordStatFill(InputFile, DBRecord)} reanalyzes the same input file with {@link #covMRMCstat}
+	 * instead of creating a new {@link mrmc.core.CovMRMC}, reusing its buffers.
+	 * Set by {@link roemetz.core.SimExperiments} for the record of each simulation experiment.
+	 */
+	public boolean reuseCovMRMC = false;
 	/**
 	 * Reader-averaged auc for each modality
 	 */
@@ -506,7 +517,12 @@ public class DBRecord {
 	public void DBRecordStatFill(InputFile InputFileTemp, DBRecord DBRecordStatTemp) {
 		InputFile1 = InputFileTemp;
 		DBRecordStat = DBRecordStatTemp;
-		covMRMCstat = new CovMRMC(InputFile1, DBRecordStatTemp);
+		if (reuseCovMRMC && covMRMCstat != null && covMRMCstat.InputFileStat == InputFileTemp
+				&& covMRMCstat.DBRecordStat == DBRecordStatTemp) {
+			covMRMCstat.reanalyze();
+		} else {
+			covMRMCstat = new CovMRMC(InputFile1, DBRecordStatTemp);
+		}
 		BDGforStatPanel();
 		Decompositions();
 		TreeMap<String, TreeMap<String,ArrayList<String>>> modinformation1 =InputFile1.modinformation;
@@ -519,10 +535,9 @@ public class DBRecord {
 			chosendiseaselist = modinformation1.get(modalityA).get("disease");
 			//flagFullyCrossed = covMRMCstat.fullyCrossedA;
 			if(AUCsReaderAvg[0] < 0) {
-				JFrame frame = new JFrame();
 				String errorStr = "There are no observations for modality A." + 
 						"\nPlease check your data.";
-				commandStartFunction.displayConsoleError(frame,errorStr);
+				displayError(errorStr);
 				return;
 			}
 		}
@@ -532,10 +547,9 @@ public class DBRecord {
 			chosendiseaselist = modinformation1.get(modalityB).get("disease");
 			//flagFullyCrossed = covMRMCstat.fullyCrossedB;
 			if(AUCsReaderAvg[1] < 0) {
-				JFrame frame = new JFrame();
 				String errorStr = "There are no observations for modality B." + 
 						"\nPlease check your data.";
-				commandStartFunction.displayConsoleError(frame,errorStr);
+				displayError(errorStr);
 				return;
 			}
 		}
@@ -568,10 +582,9 @@ public class DBRecord {
 				//	covMRMCstat.fullyCrossedB && 
 					//covMRMCstat.fullyCrossedAB;
 			if(AUCsReaderAvg[0] < 0) {
-				JFrame frame = new JFrame();
 				String errorStr = "There are no observations for modality A." + 
 						"\nPlease check your data.";
-				commandStartFunction.displayConsoleError(frame,errorStr);
+				displayError(errorStr);
 
 /*				JOptionPane.showMessageDialog(frame,
 						"There are no observations for modality A." + 
@@ -580,10 +593,9 @@ public class DBRecord {
 				return;
 			}
 			if(AUCsReaderAvg[1] < 0) {
-				JFrame frame = new JFrame();
 				String errorStr = "There are no observations for modality B." + 
 						"\nPlease check your data.";
-				commandStartFunction.displayConsoleError(frame,errorStr);
+				displayError(errorStr);
 				return;
 			}
 		}
@@ -718,34 +730,64 @@ public class DBRecord {
 			return false;
 		}
 
-		covMRMCstat = DBRecordStat.covMRMCstat;
-		Nreader = Integer.parseInt(SizePanel1.NreaderJTextField.getText());
-		Nnormal = Integer.parseInt(SizePanel1.NnormalJTextField.getText());
-		Ndisease = Integer.parseInt(SizePanel1.NdiseaseJTextField.getText());
+		int Nreader = Integer.parseInt(SizePanel1.NreaderJTextField.getText());
+		int Nnormal = Integer.parseInt(SizePanel1.NnormalJTextField.getText());
+		int Ndisease = Integer.parseInt(SizePanel1.NdiseaseJTextField.getText());
 		int Ngroup =Integer.parseInt(SizePanel1.NumSplitPlotsJTextField.getText());
-		int Preader = SizePanel1.pairedReadersFlag; 
-		int Pnormal = SizePanel1.pairedNormalsFlag; 
-		int Pdisease = SizePanel1.pairedDiseasedFlag;
+		try {
+			DBRecordSizeFill(DBRecordStat, Nreader, Nnormal, Ndisease, Ngroup,
+					SizePanel1.pairedReadersFlag, SizePanel1.pairedNormalsFlag, SizePanel1.pairedDiseasedFlag,
+					SizePanel1.sigLevel, SizePanel1.effSize);
+		} catch (IllegalArgumentException e) {
+			JOptionPane.showMessageDialog(GUI.MRMCobject.getFrame(),
+					e.getMessage(), "Error",
+					JOptionPane.ERROR_MESSAGE);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sizes a new trial from the variance analysis of a reader study, without a GUI. <br>
+	 * This record gets the variance of the new trial and {@link #testSize} its power.
+	 * 
+	 * CALLED BY: {@link #DBRecordSizeFill(SizePanel)}, {@link mrmc.core.Analysis}
+	 * 
+	 * @param DBRecordStatTemp the variance analysis of the reader study
+	 * @param Nreader number of readers of the new trial
+	 * @param Nnormal number of signal-absent cases of the new trial
+	 * @param Ndisease number of signal-present cases of the new trial
+	 * @param Ngroup number of split-plot groups
+	 * @param Preader 1 if readers are paired across modalities, 0 if not
+	 * @param Pnormal 1 if signal-absent cases are paired across modalities, 0 if not
+	 * @param Pdisease 1 if signal-present cases are paired across modalities, 0 if not
+	 * @param sigLevel significance level
+	 * @param effSize effect size
+	 * @throws IllegalArgumentException if the readers or cases cannot be evenly distributed into the modalities and groups
+	 */
+	public void DBRecordSizeFill(DBRecord DBRecordStatTemp, int Nreader, int Nnormal, int Ndisease, int Ngroup,
+			int Preader, int Pnormal, int Pdisease, double sigLevel, double effSize) {
+
+		DBRecordSize = this;
+		DBRecordStat = DBRecordStatTemp;
+		covMRMCstat = DBRecordStat.covMRMCstat;
+		this.Nreader = Nreader;
+		this.Nnormal = Nnormal;
+		this.Ndisease = Ndisease;
 		double Subreader = (double)Nreader/(double)Ngroup/(2-(double)Preader);
 		double Subnormal = (double)Nnormal/(double)Ngroup/(2-(double)Pnormal);
 		double Subdisease = (double)Ndisease/(double)Ngroup/(2-(double)Pdisease);
 		if (Math.floor(Subreader) != Subreader){
-			JOptionPane.showMessageDialog(GUI.MRMCobject.getFrame(),
-					"The sizing panel needs the number of readers \r\n to be evenly distributed into each modality and group", "Error",
-					JOptionPane.ERROR_MESSAGE);
-			return false;
+			throw new IllegalArgumentException(
+					"The sizing panel needs the number of readers \r\n to be evenly distributed into each modality and group");
 		}
 		if (Math.floor(Subnormal) != Subnormal){
-			JOptionPane.showMessageDialog(GUI.MRMCobject.getFrame(),
-					"The sizing panel needs the number of normal cases \r\n to be evenly distributed into each modality and group", "Error",
-					JOptionPane.ERROR_MESSAGE);
-			return false;
+			throw new IllegalArgumentException(
+					"The sizing panel needs the number of normal cases \r\n to be evenly distributed into each modality and group");
 		}
 		if (Math.floor(Subdisease) != Subdisease){
-			JOptionPane.showMessageDialog(GUI.MRMCobject.getFrame(),
-					"The sizing panel needs the number of disease cases \r\n to be evenly distributed into each modality and group", "Error",
-					JOptionPane.ERROR_MESSAGE);
-			return false;
+			throw new IllegalArgumentException(
+					"The sizing panel needs the number of disease cases \r\n to be evenly distributed into each modality and group");
 		}
 		BDGcoeff = genBDGSplitUnpairedCoeff(Nreader, Nnormal, Ndisease, Ngroup, Preader, Pnormal, Pdisease);
 		//covMRMCsize = new CovMRMC(SizePanel1, DBRecordSize);
@@ -776,9 +818,34 @@ public class DBRecord {
 			flagFullyCrossed = false;
 		
 
-		testSize = new StatTest(SizePanel1, DBRecordStat, DBRecordSize);
+		testSize = new StatTest(sigLevel, effSize, DBRecordStat, DBRecordSize);
 		
-		return true;
+	}
+	
+	/**
+	 * Shows an error with {@link mrmc.core.commandStartFunction#displayConsoleError(javax.swing.JFrame, String)},
+	 * or throws it if {@link #messages} is set
+	 * 
+	 * @param errorStr the error
+	 */
+	void displayError(String errorStr) {
+		if (messages != null) throw new IllegalStateException(errorStr);
+		commandStartFunction.displayConsoleError(null, errorStr);
+	}
+
+	/**
+	 * Adds a warning to {@link #messages} if it is set, otherwise shows it with
+	 * {@link mrmc.core.commandStartFunction#displayConsoleWarning(javax.swing.JFrame, String)} if show is true
+	 * 
+	 * @param show whether the warning is displayed when {@link #messages} is not set
+	 * @param warningStr the warning
+	 */
+	void displayWarning(boolean show, String warningStr) {
+		if (messages != null) {
+			messages.add(warningStr);
+		} else if (show) {
+			commandStartFunction.displayConsoleWarning(null, warningStr);
+		}
 	}
 	
 	
@@ -0,0 +1,528 @@
+package mrmc.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Streaming mean, variance and, optionally, covariance of the results of many {@link mrmc.core.DBRecord}s,
+ * such as the Monte Carlo experiments of iRoeMetz. <br>
+ * <br>
+ * The accumulated values are the fields summed by {@link mrmc.core.DBRecord#add(DBRecord, DBRecord)}, in the same order: <br>
+ * -- {@link mrmc.core.DBRecord#AUCs}, {@link mrmc.core.DBRecord#AUCsReaderAvg} <br>
+ * -- {@link mrmc.core.DBRecord#BDG}, {@link mrmc.core.DBRecord#BDGbias}, {@link mrmc.core.DBRecord#BDGcoeff} <br>
+ * -- the confidence intervals, cutoffs, degrees of freedom, p-values, test statistic and rejections of {@link mrmc.core.DBRecord#testStat} <br>
+ * -- {@link mrmc.core.DBRecord#totalVar}, {@link mrmc.core.DBRecord#SE}, {@link mrmc.core.DBRecord#varA}, {@link mrmc.core.DBRecord#varB} <br>
+ * -- {@link mrmc.core.DBRecord#readerVarA}, {@link mrmc.core.DBRecord#readerVarB}, {@link mrmc.core.DBRecord#readerTotalVar} <br>
+ * Matrices are stored row by row. {@link #indexOf(String)} gives the index of the first value of a field. <br>
+ * <br>
+ * Each record updates the means and the sums of squared deviations from the mean with Welford's algorithm,
+ * so the variance does not lose precision as the difference of two large sums would.
+ * Accumulators of separate runs are combined with {@link #merge(DBRecordAccumulator)} (Chan et al.),
+ * giving the same results, up to rounding, as one accumulator of all the records.
+ * An accumulator of another process is passed in a file with {@link #write(DataOutput)} and {@link #read(DataInput)}. <br>
+ * <br>
+ * An accumulator is not thread safe: each worker fills its own, and they are merged when the workers are done.
+ */
+public class DBRecordAccumulator {
+
+	/**
+	 * Names of the accumulated fields, in order
+	 */
+	public static final String[] FIELDS = {
+		"AUCs", "AUCsReaderAvg", "BDG", "BDGbias", "BDGcoeff",
+		"ciBotNormal", "ciBotBDG", "ciBotHillis",
+		"ciTopNormal", "ciTopBDG", "ciTopHillis",
+		"cutoffNormal", "cutoffBDG", "cutoffHillis",
+		"DF_BDG", "DF_Hillis",
+		"pValNormal", "pValBDG", "pValHillis",
+		"tStatEst", "rejectNormal", "rejectBDG", "rejectHillis",
+		"totalVar", "SE", "varA", "varB",
+		"readerVarA", "readerVarB", "readerTotalVar" };
+
+	/**
+	 * Number of records accumulated
+	 */
+	public long n = 0;
+	/**
+	 * Number of records that were dropped, not accumulated, because their totalVar was negative.
+	 * Counted by the caller; added up by {@link #merge(DBRecordAccumulator)}
+	 */
+	public long flagTotalVarIsNegative = 0;
+
+	private final boolean withCovariance;
+	/**
+	 * Shape of each field: rows and columns of a matrix, rows = 1 for a vector or a number,
+	 * rows = 0 if the field of the first record was null
+	 */
+	private int[] rows, cols;
+	/**
+	 * Index of the first value of each field, and the number of values
+	 */
+	private int[] offset;
+	private int size = -1;
+	/**
+	 * The means, the sums of squared deviations from the means and,
+	 * if {@link #withCovariance}, the sums of products of deviations (upper triangle)
+	 */
+	private double[] mean, m2;
+	private double[][] comoment;
+	/**
+	 * Values of the current record, and their deviations from the previous means
+	 */
+	private double[] x, delta;
+
+	/**
+	 * Accumulates means and variances
+	 */
+	public DBRecordAccumulator() {
+		this(false);
+	}
+
+	/**
+	 * @param withCovariance true to also accumulate the covariance of every pair of values.
+	 *  This costs the square of the number of values for each record
+	 */
+	public DBRecordAccumulator(boolean withCovariance) {
+		this.withCovariance = withCovariance;
+	}
+
+	/**
+	 * Adds the results of one record
+	 *
+	 * @param DBRecordTemp the record; the shape of its fields must be the same as that of the first record
+	 */
+	public void add(DBRecord DBRecordTemp) {
+
+		if (size < 0) {
+			init(DBRecordTemp);
+		}
+		pack(DBRecordTemp, x);
+
+		n++;
+		for (int i = 0; i < size; i++) {
+			double d = x[i] - mean[i];
+			mean[i] += d / n;
+			m2[i] += d * (x[i] - mean[i]);
+			delta[i] = d;
+		}
+		if (withCovariance) {
+			for (int i = 0; i < size; i++) {
+				double d = delta[i];
+				double[] row = comoment[i];
+				for (int j = i; j < size; j++) {
+					row[j] += d * (x[j] - mean[j]);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Adds the records of another accumulator, as if they had been added to this one
+	 *
+	 * @param other accumulator of the same kind of records; it is not changed
+	 */
+	public void merge(DBRecordAccumulator other) {
+
+		flagTotalVarIsNegative += other.flagTotalVarIsNegative;
+		if (other.n == 0) {
+			return;
+		}
+		if (withCovariance && !other.withCovariance) {
+			throw new IllegalArgumentException("Cannot merge an accumulator without covariance into one with covariance");
+		}
+		if (n == 0) {
+			copyShape(other);
+			n = other.n;
+			System.arraycopy(other.mean, 0, mean, 0, size);
+			System.arraycopy(other.m2, 0, m2, 0, size);
+			if (withCovariance) {
+				for (int i = 0; i < size; i++) {
+					System.arraycopy(other.comoment[i], 0, comoment[i], 0, size);
+				}
+			}
+			return;
+		}
+		checkShape(other);
+
+		long total = n + other.n;
+		double weight = (double) n * other.n / total;
+		for (int i = 0; i < size; i++) {
+			double d = other.mean[i] - mean[i];
+			mean[i] += d * other.n / total;
+			m2[i] += other.m2[i] + d * d * weight;
+			delta[i] = d;
+		}
+		if (withCovariance) {
+			for (int i = 0; i < size; i++) {
+				for (int j = i; j < size; j++) {
+					comoment[i][j] += other.comoment[i][j] + delta[i] * delta[j] * weight;
+				}
+			}
+		}
+		n = total;
+
+	}
+
+	/**
+	 * @return a new accumulator of the same records, which can be merged without changing this one
+	 */
+	public DBRecordAccumulator copy() {
+		DBRecordAccumulator copy = new DBRecordAccumulator(withCovariance);
+		copy.merge(this);
+		return copy;
+	}
+
+	/**
+	 * @return the number of values accumulated for each record, 0 before the first record
+	 */
+	public int size() {
+		return Math.max(size, 0);
+	}
+
+	/**
+	 * @param field one of {@link #FIELDS}
+	 * @return index of the first value of the field
+	 */
+	public int indexOf(String field) {
+		if (size < 0) {
+			throw new IllegalStateException("No records accumulated");
+		}
+		for (int f = 0; f < FIELDS.length; f++) {
+			if (FIELDS[f].equals(field)) return offset[f];
+		}
+		throw new IllegalArgumentException("Unknown field: " + field);
+	}
+
+	/**
+	 * @param i index of a value
+	 * @return mean of the value over the records
+	 */
+	public double getMean(int i) {
+		return mean[i];
+	}
+
+	/**
+	 * @param i index of a value
+	 * @return sample variance of the value, dividing by n-1
+	 */
+	public double getVariance(int i) {
+		return m2[i] / (n - 1);
+	}
+
+	/**
+	 * @param i index of a value
+	 * @param j index of a value
+	 * @return sample covariance of the two values, dividing by n-1
+	 * @throws IllegalStateException if the accumulator was not created with covariance
+	 */
+	public double getCovariance(int i, int j) {
+		if (!withCovariance) {
+			throw new IllegalStateException("The accumulator was created without covariance");
+		}
+		if (i == j) return getVariance(i);
+		return (i < j ? comoment[i][j] : comoment[j][i]) / (n - 1);
+	}
+
+	/**
+	 * Sets the accumulated fields of a record to their means. Other fields are not changed.
+	 *
+	 * @param DBRecordTemp the record, usually one of the experiments, to hold the means
+	 */
+	public void fillMean(DBRecord DBRecordTemp) {
+		if (n == 0) {
+			throw new IllegalStateException("No records accumulated");
+		}
+		unpack(mean, DBRecordTemp);
+		DBRecordTemp.flagTotalVarIsNegative = flagTotalVarIsNegative;
+	}
+
+	/**
+	 * Sets the accumulated fields of a record to their sample variances. Other fields are not changed.
+	 *
+	 * @param DBRecordTemp the record, usually one of the experiments, to hold the variances
+	 */
+	public void fillVariance(DBRecord DBRecordTemp) {
+		if (n == 0) {
+			throw new IllegalStateException("No records accumulated");
+		}
+		double[] variance = new double[size];
+		for (int i = 0; i < size; i++) {
+			variance[i] = getVariance(i);
+		}
+		unpack(variance, DBRecordTemp);
+	}
+
+	/**
+	 * Writes the accumulator, so that it can be merged by another process, see {@link #read(DataInput)}
+	 *
+	 * @param out the stream
+	 * @throws IOException
+	 */
+	public void write(DataOutput out) throws IOException {
+
+		out.writeInt(FIELDS.length);
+		out.writeBoolean(withCovariance);
+		out.writeLong(n);
+		out.writeLong(flagTotalVarIsNegative);
+		out.writeBoolean(size >= 0);
+		if (size < 0) return;
+		for (int f = 0; f < FIELDS.length; f++) {
+			out.writeInt(rows[f]);
+			out.writeInt(cols[f]);
+		}
+		for (int i = 0; i < size; i++) {
+			out.writeDouble(mean[i]);
+			out.writeDouble(m2[i]);
+		}
+		if (withCovariance) {
+			for (int i = 0; i < size; i++) {
+				for (int j = i; j < size; j++) {
+					out.writeDouble(comoment[i][j]);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Reads an accumulator written by {@link #write(DataOutput)}
+	 *
+	 * @param in the stream
+	 * @return the accumulator, with the same sums as the one written
+	 * @throws IOException if the stream does not hold an accumulator of the same fields
+	 */
+	public static DBRecordAccumulator read(DataInput in) throws IOException {
+
+		if (in.readInt() != FIELDS.length) {
+			throw new IOException("The accumulator was written with other fields");
+		}
+		DBRecordAccumulator accumulator = new DBRecordAccumulator(in.readBoolean());
+		accumulator.n = in.readLong();
+		accumulator.flagTotalVarIsNegative = in.readLong();
+		if (!in.readBoolean()) return accumulator;
+		accumulator.rows = new int[FIELDS.length];
+		accumulator.cols = new int[FIELDS.length];
+		for (int f = 0; f < FIELDS.length; f++) {
+			accumulator.rows[f] = in.readInt();
+			accumulator.cols[f] = in.readInt();
+		}
+		accumulator.allocate();
+		for (int i = 0; i < accumulator.size; i++) {
+			accumulator.mean[i] = in.readDouble();
+			accumulator.m2[i] = in.readDouble();
+		}
+		if (accumulator.withCovariance) {
+			for (int i = 0; i < accumulator.size; i++) {
+				for (int j = i; j < accumulator.size; j++) {
+					accumulator.comoment[i][j] = in.readDouble();
+				}
+			}
+		}
+		return accumulator;
+
+	}
+
+	/**
+	 * Gets the shape of the fields from the first record and allocates the sums
+	 */
+	private void init(DBRecord DBRecordTemp) {
+
+		rows = new int[FIELDS.length];
+		cols = new int[FIELDS.length];
+		int f = 0;
+		f = shape(f, DBRecordTemp.AUCs);
+		f = shape(f, DBRecordTemp.AUCsReaderAvg);
+		f = shape(f, DBRecordTemp.BDG);
+		f = shape(f, DBRecordTemp.BDGbias);
+		f = shape(f, DBRecordTemp.BDGcoeff);
+		for (; f < FIELDS.length - 3; f++) {
+			rows[f] = 1;
+			cols[f] = 1;
+		}
+		f = shape(f, DBRecordTemp.readerVarA);
+		f = shape(f, DBRecordTemp.readerVarB);
+		f = shape(f, DBRecordTemp.readerTotalVar);
+		allocate();
+
+	}
+
+	private int shape(int f, double[][] m) {
+		rows[f] = m == null ? 0 : m.length;
+		cols[f] = m == null || m.length == 0 ? 0 : m[0].length;
+		return f + 1;
+	}
+
+	private int shape(int f, double[] v) {
+		rows[f] = v == null ? 0 : 1;
+		cols[f] = v == null ? 0 : v.length;
+		return f + 1;
+	}
+
+	private void allocate() {
+
+		offset = new int[FIELDS.length];
+		size = 0;
+		for (int f = 0; f < FIELDS.length; f++) {
+			offset[f] = size;
+			size += rows[f] * cols[f];
+		}
+		mean = new double[size];
+		m2 = new double[size];
+		x = new double[size];
+		delta = new double[size];
+		if (withCovariance) {
+			comoment = new double[size][size];
+		}
+
+	}
+
+	private void copyShape(DBRecordAccumulator other) {
+		if (size < 0) {
+			rows = other.rows.clone();
+			cols = other.cols.clone();
+			allocate();
+		} else {
+			checkShape(other);
+		}
+	}
+
+	private void checkShape(DBRecordAccumulator other) {
+		if (!Arrays.equals(rows, other.rows) || !Arrays.equals(cols, other.cols)) {
+			throw new IllegalArgumentException("The accumulators hold records of different sizes");
+		}
+	}
+
+	/**
+	 * Copies the accumulated fields of a record into a vector, in the order of {@link #FIELDS}
+	 */
+	private void pack(DBRecord DBRecordTemp, double[] v) {
+
+		int f = 0;
+		f = put(DBRecordTemp.AUCs, f, v);
+		f = put(DBRecordTemp.AUCsReaderAvg, f, v);
+		f = put(DBRecordTemp.BDG, f, v);
+		f = put(DBRecordTemp.BDGbias, f, v);
+		f = put(DBRecordTemp.BDGcoeff, f, v);
+
+		StatTest testStat = DBRecordTemp.testStat;
+		int k = offset[f];
+		v[k++] = testStat.ciBotNormal;
+		v[k++] = testStat.ciBotBDG;
+		v[k++] = testStat.ciBotHillis;
+		v[k++] = testStat.ciTopNormal;
+		v[k++] = testStat.ciTopBDG;
+		v[k++] = testStat.ciTopHillis;
+		v[k++] = testStat.cutoffNormal;
+		v[k++] = testStat.cutoffBDG;
+		v[k++] = testStat.cutoffHillis;
+		v[k++] = testStat.DF_BDG;
+		v[k++] = testStat.DF_Hillis;
+		v[k++] = testStat.pValNormal;
+		v[k++] = testStat.pValBDG;
+		v[k++] = testStat.pValHillis;
+		v[k++] = testStat.tStatEst;
+		v[k++] = testStat.rejectNormal;
+		v[k++] = testStat.rejectBDG;
+		v[k++] = testStat.rejectHillis;
+		v[k++] = DBRecordTemp.totalVar;
+		v[k++] = DBRecordTemp.SE;
+		v[k++] = DBRecordTemp.varA;
+		v[k++] = DBRecordTemp.varB;
+		f = FIELDS.length - 3;
+
+		f = put(DBRecordTemp.readerVarA, f, v);
+		f = put(DBRecordTemp.readerVarB, f, v);
+		f = put(DBRecordTemp.readerTotalVar, f, v);
+
+	}
+
+	private int put(double[][] m, int f, double[] v) {
+		int r = m == null ? 0 : m.length;
+		if (r != rows[f] || (r > 0 && m[0].length != cols[f])) {
+			throw new IllegalArgumentException("The size of " + FIELDS[f] + " is not that of the first record");
+		}
+		int k = offset[f];
+		for (int i = 0; i < r; i++) {
+			System.arraycopy(m[i], 0, v, k, cols[f]);
+			k += cols[f];
+		}
+		return f + 1;
+	}
+
+	private int put(double[] m, int f, double[] v) {
+		int c = m == null ? 0 : m.length;
+		if (c != rows[f] * cols[f]) {
+			throw new IllegalArgumentException("The size of " + FIELDS[f] + " is not that of the first record");
+		}
+		if (c > 0) {
+			System.arraycopy(m, 0, v, offset[f], c);
+		}
+		return f + 1;
+	}
+
+	/**
+	 * Copies a vector into the accumulated fields of a record, in the order of {@link #FIELDS}.
+	 * Fields that were null in the first record are left as they are.
+	 */
+	private void unpack(double[] v, DBRecord DBRecordTemp) {
+
+		int f = 0;
+		if (rows[f] > 0) DBRecordTemp.AUCs = take(v, f);
+		f++;
+		if (rows[f] > 0) DBRecordTemp.AUCsReaderAvg = take(v, f)[0];
+		f++;
+		if (rows[f] > 0) DBRecordTemp.BDG = take(v, f);
+		f++;
+		if (rows[f] > 0) DBRecordTemp.BDGbias = take(v, f);
+		f++;
+		if (rows[f] > 0) DBRecordTemp.BDGcoeff = take(v, f);
+		f++;
+
+		StatTest testStat = DBRecordTemp.testStat;
+		int k = offset[f];
+		testStat.ciBotNormal  = v[k++];
+		testStat.ciBotBDG     = v[k++];
+		testStat.ciBotHillis  = v[k++];
+		testStat.ciTopNormal  = v[k++];
+		testStat.ciTopBDG     = v[k++];
+		testStat.ciTopHillis  = v[k++];
+		testStat.cutoffNormal = v[k++];
+		testStat.cutoffBDG    = v[k++];
+		testStat.cutoffHillis = v[k++];
+		testStat.DF_BDG       = v[k++];
+		testStat.DF_Hillis    = v[k++];
+		testStat.pValNormal   = v[k++];
+		testStat.pValBDG      = v[k++];
+		testStat.pValHillis   = v[k++];
+		testStat.tStatEst     = v[k++];
+		testStat.rejectNormal = v[k++];
+		testStat.rejectBDG    = v[k++];
+		testStat.rejectHillis = v[k++];
+		DBRecordTemp.totalVar = v[k++];
+		DBRecordTemp.SE       = v[k++];
+		DBRecordTemp.varA     = v[k++];
+		DBRecordTemp.varB     = v[k++];
+		f = FIELDS.length - 3;
+
+		if (rows[f] > 0) DBRecordTemp.readerVarA = take(v, f)[0];
+		f++;
+		if (rows[f] > 0) DBRecordTemp.readerVarB = take(v, f)[0];
+		f++;
+		if (rows[f] > 0) DBRecordTemp.readerTotalVar = take(v, f)[0];
+
+	}
+
+	private double[][] take(double[] v, int f) {
+		double[][] m = new double[rows[f]][cols[f]];
+		int k = offset[f];
+		for (int i = 0; i < rows[f]; i++) {
+			System.arraycopy(v, k, m[i], 0, cols[f]);
+			k += cols[f];
+		}
+		return m;
+	}
+
+}
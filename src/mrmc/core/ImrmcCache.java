@@ -0,0 +1,407 @@
+package mrmc.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.TreeMap;
+
+/**
+ * Binary cache of the parsed contents of an .imrmc file, stored next to it as "name.imrmc.cache" <br>
+ * <br>
+ * After {@link mrmc.core.InputFile#ReadInputFile(mrmc.gui.GUInterface)} has read, checked and processed
+ * an .imrmc file, {@link #save(InputFile, byte[])} writes the results to the cache file.
+ * The next time the same file is read, {@link #load(InputFile, byte[])} fills the {@link mrmc.core.InputFile}
+ * from the cache without parsing any text. The cache is used only if it was made from a file with the same
+ * SHA-256 content hash, with the same default charset and by the same version of this format. <br>
+ * <br>
+ * Contents, in order <br>
+ * -- format: {@link #MAGIC}, {@link #VERSION}, content hash of the .imrmc file, default charset <br>
+ * -- header: rows before the data, record title, file header, data check results, experiment size <br>
+ * -- ID dictionaries: reader, case and modality IDs in index order <br>
+ * -- truth vector, and truth rows of IDs that are not cases <br>
+ * -- per modality: score column and design bitmap of {@link mrmc.core.ScoreStore},
+ *    case counts of each reader, and the readers and cases listed in modinformation <br>
+ * <br>
+ * The cache is used when {@link #useCache} is true, set by the command-line option -cache.
+ * A cache that cannot be read is ignored, and a cache that cannot be written is skipped with a message.
+ */
+public class ImrmcCache {
+
+	/**
+	 * Read and write caches of .imrmc files. Set by the command-line option -cache of
+	 * {@link mrmc.core.commandStartFunction}.
+	 */
+	public static boolean useCache = false;
+	/**
+	 * First eight bytes of a cache file, "iMRMCbin"
+	 */
+	static final long MAGIC = 0x694D524D4362696EL;
+	/**
+	 * Version of the format, changed whenever the contents or the processing of the input change
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * @return the cache file of an .imrmc file
+	 */
+	public static String cacheFileName(String filePathAndName) {
+		return filePathAndName + ".cache";
+	}
+
+	/**
+	 * @return the SHA-256 hash of the contents of the file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static byte[] contentHash(String filePathAndName) throws IOException {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		ByteBuffer bytes = ByteBuffer.allocateDirect(1 << 16);
+		FileChannel channel = FileChannel.open(Paths.get(filePathAndName), StandardOpenOption.READ);
+		try {
+			while (channel.read(bytes) >= 0) {
+				bytes.flip();
+				digest.update(bytes);
+				bytes.clear();
+			}
+		} finally {
+			channel.close();
+		}
+		return digest.digest();
+
+	}
+
+	/**
+	 * Fills the input file from its cache if the cache is fresh
+	 *
+	 * @param InputFile1 input file whose filePathAndName is set
+	 * @param hash content hash of the .imrmc file, see {@link #contentHash(String)}
+	 * @return true if the cache was fresh and has been loaded, false if the file has to be parsed
+	 */
+	public static boolean load(InputFile InputFile1, byte[] hash) {
+
+		File file = new File(cacheFileName(InputFile1.filePathAndName));
+		if (!file.isFile()) return false;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			try {
+				if (in.readLong() != MAGIC || in.readInt() != VERSION) return false;
+				byte[] storedHash = new byte[hash.length];
+				in.readFully(storedHash);
+				if (!Arrays.equals(storedHash, hash)) return false;
+				if (!readString(in).equals(Charset.defaultCharset().name())) return false;
+				read(in, InputFile1);
+				return true;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Cache " + file.getPath() + " not used: " + e.getMessage());
+			return false;
+		}
+
+	}
+
+	/**
+	 * Writes the cache of an input file that has been read and processed.
+	 * The cache is written to a temporary file of its own in the folder of the cache file, which then replaces the cache file,
+	 * so a cache file is never read while partly written, and threads or processes that cache the same input file
+	 * do not write to the same temporary file.
+	 *
+	 * @param InputFile1 input file that has been read
+	 * @param hash content hash of the .imrmc file, see {@link #contentHash(String)}
+	 */
+	public static void save(InputFile InputFile1, byte[] hash) {
+
+		File file = new File(cacheFileName(InputFile1.filePathAndName));
+		File temp = null;
+		try {
+			temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+			try {
+				out.writeLong(MAGIC);
+				out.writeInt(VERSION);
+				out.write(hash);
+				writeString(out, Charset.defaultCharset().name());
+				write(out, InputFile1);
+			} finally {
+				out.close();
+			}
+			try {
+				// a rename replaces the cache file in one step, even if another thread or process replaces it too
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			System.out.println("Cache written: " + file.getPath());
+		} catch (IOException e) {
+			if (temp != null) temp.delete();
+			System.out.println("Cache " + file.getPath() + " not written: " + e.getMessage());
+		}
+
+	}
+
+	/**
+	 * Writes the contents after the format fields
+	 */
+	private static void write(DataOutputStream out, InputFile InputFile1) throws IOException {
+
+		ScoreStore store = InputFile1.scoreStore;
+
+		// header
+		out.writeInt(InputFile1.fileContent.size());
+		for (String row : InputFile1.fileContent)
+			writeString(out, row);
+		out.writeInt(InputFile1.NrowsInHeader);
+		writeString(out, InputFile1.recordTitle);
+		writeString(out, InputFile1.fileHeader);
+		writeString(out, InputFile1.dataCheckResults);
+		out.writeLong(InputFile1.Nreader);
+		out.writeLong(InputFile1.Nnormal);
+		out.writeLong(InputFile1.Ndisease);
+		out.writeLong(InputFile1.Nmodality);
+
+		// ID dictionaries
+		writeStrings(out, store.readerIDs);
+		writeStrings(out, store.caseIDs);
+		writeStrings(out, store.modalityIDs);
+
+		// truth
+		writeInts(out, store.truth);
+		ArrayList<String> otherIDs = new ArrayList<String>();
+		for (String ID : InputFile1.truthVals.keySet()) {
+			if (!InputFile1.caseIDs.containsKey(ID)) otherIDs.add(ID);
+		}
+		out.writeInt(otherIDs.size());
+		for (String ID : otherIDs) {
+			writeString(out, ID);
+			out.writeInt(InputFile1.truthVals.get(ID));
+		}
+
+		// per modality
+		for (int m = 0; m < store.Nmodality; m++) {
+			writeDoubles(out, store.scores[m]);
+			long[] words = store.design[m].toLongArray();
+			out.writeInt(words.length);
+			for (long word : words)
+				out.writeLong(word);
+
+			String modalityID = store.modalityIDs[m];
+			TreeMap<String, Integer[]> readercount = InputFile1.casecount.get(modalityID);
+			for (int r = 0; r < store.Nreader; r++) {
+				Integer[] countnum = readercount.get(store.readerIDs[r]);
+				out.writeInt(countnum == null ? -1 : countnum[0]);
+				out.writeInt(countnum == null ? -1 : countnum[1]);
+			}
+
+			TreeMap<String, ArrayList<String>> listed = InputFile1.modinformation.get(modalityID);
+			writeIndices(out, listed.get("reader"), InputFile1.readerIDs);
+			writeIndices(out, listed.get("normal"), InputFile1.caseIDs);
+			writeIndices(out, listed.get("disease"), InputFile1.caseIDs);
+		}
+
+	}
+
+	/**
+	 * Reads the contents after the format fields.
+	 * Everything is read before the input file is changed, so a damaged cache leaves it as it was.
+	 */
+	private static void read(DataInputStream in, InputFile InputFile1) throws IOException {
+
+		// header
+		ArrayList<String> header = new ArrayList<String>();
+		int Nrows = in.readInt();
+		for (int i = 0; i < Nrows; i++)
+			header.add(readString(in));
+		int NrowsInHeader = in.readInt();
+		String recordTitle = readString(in);
+		String fileHeader = readString(in);
+		String dataCheckResults = readString(in);
+		long Nreader = in.readLong();
+		long Nnormal = in.readLong();
+		long Ndisease = in.readLong();
+		long Nmodality = in.readLong();
+
+		// ID dictionaries
+		String[] readerIDs = readStrings(in);
+		String[] caseIDs = readStrings(in);
+		String[] modalityIDs = readStrings(in);
+		ScoreStore store = new ScoreStore(readerIDs, caseIDs, modalityIDs);
+
+		// truth
+		readInts(in, store.truth);
+		TreeMap<String, Integer> truthVals = new TreeMap<String, Integer>();
+		for (int c = 0; c < store.Ncase; c++)
+			truthVals.put(caseIDs[c], store.truth[c]);
+		int NotherIDs = in.readInt();
+		for (int i = 0; i < NotherIDs; i++) {
+			String ID = readString(in);
+			truthVals.put(ID, in.readInt());
+		}
+
+		// per modality
+		TreeMap<String, TreeMap<String, Integer[]>> casecount = new TreeMap<String, TreeMap<String, Integer[]>>();
+		TreeMap<String, TreeMap<String, ArrayList<String>>> modinformation =
+				new TreeMap<String, TreeMap<String, ArrayList<String>>>();
+		for (int m = 0; m < store.Nmodality; m++) {
+			readDoubles(in, store.scores[m]);
+			long[] words = new long[in.readInt()];
+			for (int k = 0; k < words.length; k++)
+				words[k] = in.readLong();
+			store.design[m] = BitSet.valueOf(words);
+
+			TreeMap<String, Integer[]> readercount = new TreeMap<String, Integer[]>();
+			for (int r = 0; r < store.Nreader; r++) {
+				int count0 = in.readInt();
+				int count1 = in.readInt();
+				if (count0 >= 0) readercount.put(readerIDs[r], new Integer[] {count0, count1});
+			}
+			casecount.put(modalityIDs[m], readercount);
+
+			TreeMap<String, ArrayList<String>> listed = new TreeMap<String, ArrayList<String>>();
+			listed.put("reader", readIndices(in, readerIDs));
+			listed.put("normal", readIndices(in, caseIDs));
+			listed.put("disease", readIndices(in, caseIDs));
+			modinformation.put(modalityIDs[m], listed);
+		}
+
+		// Fill the input file
+		InputFile1.fileContent.clear();
+		InputFile1.fileContent.addAll(header);
+		InputFile1.NlinesFileContent = header.size();
+		InputFile1.filePosition = NrowsInHeader;
+		InputFile1.NrowsInHeader = NrowsInHeader;
+		InputFile1.recordTitle = recordTitle;
+		InputFile1.fileHeader = fileHeader;
+		InputFile1.dataCheckResults = dataCheckResults;
+		InputFile1.Nreader = Nreader;
+		InputFile1.Nnormal = Nnormal;
+		InputFile1.Ndisease = Ndisease;
+		InputFile1.Nmodality = Nmodality;
+
+		InputFile1.resetIDs();
+		int in0 = 0, in1 = 0;
+		for (int c = 0; c < caseIDs.length; c++) {
+			InputFile1.caseIDs.put(caseIDs[c], c);
+			if (store.truth[c] == 0) InputFile1.normalIDs.put(caseIDs[c], in0++);
+			else InputFile1.diseaseIDs.put(caseIDs[c], in1++);
+		}
+		for (int r = 0; r < readerIDs.length; r++)
+			InputFile1.readerIDs.put(readerIDs[r], r);
+		for (int m = 0; m < modalityIDs.length; m++)
+			InputFile1.modalityIDs.put(modalityIDs[m], m);
+
+		InputFile1.scoreStore = store;
+		InputFile1.truthVals.clear();
+		InputFile1.truthVals.putAll(truthVals);
+		InputFile1.casecount.putAll(casecount);
+		InputFile1.modinformation.putAll(modinformation);
+		InputFile1.observerData = null;
+		InputFile1.observerTable = null;
+
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+		out.writeInt(strings.length);
+		for (String s : strings)
+			writeString(out, s);
+	}
+
+	private static String[] readStrings(DataInputStream in) throws IOException {
+		String[] strings = new String[in.readInt()];
+		for (int i = 0; i < strings.length; i++)
+			strings[i] = readString(in);
+		return strings;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] x) throws IOException {
+		for (int value : x)
+			out.writeInt(value);
+	}
+
+	private static void readInts(DataInputStream in, int[] x) throws IOException {
+		for (int i = 0; i < x.length; i++)
+			x[i] = in.readInt();
+	}
+
+	/**
+	 * Writes the doubles in blocks through a byte buffer rather than one at a time
+	 */
+	private static void writeDoubles(DataOutputStream out, double[] x) throws IOException {
+		ByteBuffer block = ByteBuffer.allocate(1 << 16);
+		int perBlock = block.capacity() / 8;
+		for (int from = 0; from < x.length; from += perBlock) {
+			int n = Math.min(perBlock, x.length - from);
+			block.clear();
+			block.asDoubleBuffer().put(x, from, n);
+			out.write(block.array(), 0, 8 * n);
+		}
+	}
+
+	/**
+	 * Reads x.length doubles written by {@link #writeDoubles(DataOutputStream, double[])}
+	 */
+	private static void readDoubles(DataInputStream in, double[] x) throws IOException {
+		ByteBuffer block = ByteBuffer.allocate(1 << 16);
+		int perBlock = block.capacity() / 8;
+		for (int from = 0; from < x.length; from += perBlock) {
+			int n = Math.min(perBlock, x.length - from);
+			in.readFully(block.array(), 0, 8 * n);
+			block.clear();
+			block.asDoubleBuffer().get(x, from, n);
+		}
+	}
+
+	/**
+	 * Writes a list of IDs as their indices
+	 */
+	private static void writeIndices(DataOutputStream out, ArrayList<String> IDs, TreeMap<String, Integer> index)
+			throws IOException {
+		out.writeInt(IDs.size());
+		for (String ID : IDs)
+			out.writeInt(index.get(ID));
+	}
+
+	private static ArrayList<String> readIndices(DataInputStream in, String[] IDs) throws IOException {
+		int n = in.readInt();
+		ArrayList<String> list = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++)
+			list.add(IDs[in.readInt()]);
+		return list;
+	}
+
+}
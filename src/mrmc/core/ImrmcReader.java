@@ -0,0 +1,506 @@
+package mrmc.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reads an .imrmc reader study data file in one pass <br>
+ * <br>
+ * -- {@link #header}: the rows up to and including "BEGIN DATA:" <br>
+ * -- {@link #table}: the rows after "BEGIN DATA:" <br>
+ * <br>
+ * The data rows are cut into fields where they are read, and the scores are parsed
+ * from the characters directly, so no String is made for a data row.
+ * A String is only made the first time an ID is seen.
+ * Rows are cleaned up the same way for the header and the data:
+ * a row that ends with ",," is cut at its first ",,", then one trailing "," is removed.
+ * The fields of a data row are the text between commas with all white space removed.
+ * <br>
+ * Reading stops at the first data row without four fields or with a score that is not a number.
+ * The row is kept in {@link #invalidRow} and {@link #invalidLine} so the caller can report it
+ * after checking the header. <br>
+ * <br>
+ * {@link #read(String)} reads the file in one pass.
+ * {@link #readMapped(String)} memory-maps the file, splits the rows after "BEGIN DATA:" into chunks
+ * at line breaks and reads the chunks in parallel, then merges them in file order.
+ * Both give the same result.
+ */
+public class ImrmcReader {
+
+	/**
+	 * Rows of the file up to and including the row starting with "BEGIN DATA:"
+	 */
+	public ArrayList<String> header = new ArrayList<String>();
+	/**
+	 * Rows of observation data following "BEGIN DATA:"
+	 */
+	public ObserverTable table = new ObserverTable();
+	/**
+	 * Index of the first data row that could not be read, -1 if all rows were read
+	 */
+	public int invalidRow = -1;
+	/**
+	 * The data row that could not be read
+	 */
+	public String invalidLine;
+	/**
+	 * {@link mrmc.core.InputFile#ReadInputFile(mrmc.gui.GUInterface)} uses {@link #readMapped(String)}
+	 * for files at least this many bytes long. Long.MAX_VALUE turns memory-mapping off.
+	 */
+	public static long mappedThreshold = 64L << 20;
+	/**
+	 * Chunks are at least this long unless the data is shorter, so small files are not split finely
+	 */
+	private static final long MIN_CHUNK = 1L << 20;
+	/**
+	 * Chunks are at most this long, well below the 2 GB limit of one mapping
+	 */
+	private static final long MAX_CHUNK = 1L << 30;
+
+	private boolean inData = false;
+	private boolean afterCR = false;
+	private char[] line = new char[256];
+	private int lineLength = 0;
+	private char[] field = new char[256];
+
+	/**
+	 * Powers of ten that are exact doubles
+	 */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = 10.0 * POWERS_OF_TEN[i - 1];
+	}
+
+	/**
+	 * Reads the file, decoding it with the default charset like {@link java.io.InputStreamReader}.
+	 * Rows end with "\n", "\r" or "\r\n", as for {@link java.io.BufferedReader#readLine()}.
+	 *
+	 * @param filePathAndName the .imrmc file
+	 * @throws IOException if the file cannot be read
+	 */
+	public void read(String filePathAndName) throws IOException {
+
+		CharsetDecoder decoder = newDecoder(Charset.defaultCharset());
+		ByteBuffer bytes = ByteBuffer.allocateDirect(1 << 16);
+		CharBuffer chars = CharBuffer.allocate(1 << 16);
+
+		FileChannel channel = FileChannel.open(Paths.get(filePathAndName), StandardOpenOption.READ);
+		try {
+			boolean endOfInput = false;
+			while (invalidRow < 0) {
+				if (!endOfInput) endOfInput = channel.read(bytes) < 0;
+				bytes.flip();
+				CoderResult result = decoder.decode(bytes, chars, endOfInput);
+				bytes.compact();
+				addChars(chars);
+				if (endOfInput && result.isUnderflow()) {
+					decoder.flush(chars);
+					addChars(chars);
+					break;
+				}
+			}
+			if (lineLength > 0 && invalidRow < 0) endLine();
+		} finally {
+			channel.close();
+		}
+
+	}
+
+	/**
+	 * Reads the file like {@link #read(String)}, using one thread per chunk of the data rows. <br>
+	 * <br>
+	 * The header is read from a mapping of the start of the file.
+	 * The data rows are cut into chunks of about equal size that end at line breaks.
+	 * Each chunk is mapped and read into its own {@link mrmc.core.ObserverTable}
+	 * on the pool of {@link mrmc.core.CovMRMC#forEachReader(int, CovMRMC.ReaderBody)},
+	 * using {@link mrmc.core.CovMRMC#parallelism} threads.
+	 * The chunk tables are then merged in file order, so the codes and the first invalid row
+	 * are the same as in a single pass. <br>
+	 * <br>
+	 * Line breaks are found by their bytes, so the default charset must encode
+	 * "\r" and "\n" as single bytes like ASCII; otherwise, or if the header does not end
+	 * with "BEGIN DATA:" followed by a line break, the file is read by {@link #read(String)}.
+	 *
+	 * @param filePathAndName the .imrmc file
+	 * @throws IOException if the file cannot be read
+	 */
+	public void readMapped(String filePathAndName) throws IOException {
+
+		final Charset charset = Charset.defaultCharset();
+		if (!Arrays.equals("\r\n,".getBytes(charset), new byte[] {'\r', '\n', ','})) {
+			read(filePathAndName);
+			return;
+		}
+
+		final FileChannel channel = FileChannel.open(Paths.get(filePathAndName), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			long dataStart = readMappedHeader(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					Math.min(size, Integer.MAX_VALUE)), charset);
+			if (dataStart < 0) {
+				header.clear();
+				inData = false;
+				lineLength = 0;
+			} else {
+				readMappedData(channel, dataStart, size, charset);
+			}
+		} finally {
+			channel.close();
+		}
+		if (!inData) read(filePathAndName);
+
+	}
+
+	/**
+	 * Adds the rows of the mapped start of the file to {@link #header}, up to "BEGIN DATA:"
+	 *
+	 * @return the position after the line break that ends the "BEGIN DATA:" row, -1 if not found
+	 */
+	private long readMappedHeader(MappedByteBuffer bytes, Charset charset) {
+
+		CharsetDecoder decoder = newDecoder(charset);
+		int lineStart = 0;
+		for (int k = 0; k < bytes.limit(); k++) {
+			byte b = bytes.get(k);
+			if (b != '\n' && b != '\r') continue;
+			ByteBuffer lineBytes = bytes.duplicate();
+			lineBytes.limit(k);
+			lineBytes.position(lineStart);
+			CharBuffer chars;
+			try {
+				chars = decoder.decode(lineBytes);
+			} catch (CharacterCodingException e) {
+				// not thrown, malformed input is replaced
+				return -1;
+			}
+			while (chars.hasRemaining()) {
+				if (lineLength == line.length) line = Arrays.copyOf(line, 2 * lineLength);
+				line[lineLength++] = chars.get();
+			}
+			endLine();
+			lineStart = k + 1;
+			if (b == '\r' && lineStart < bytes.limit() && bytes.get(lineStart) == '\n') lineStart++;
+			if (inData) return lineStart;
+			k = lineStart - 1;
+		}
+		return -1;
+
+	}
+
+	/**
+	 * Splits the data rows into chunks, reads the chunks in parallel and merges them into {@link #table}
+	 *
+	 * @param dataStart position of the first data row
+	 * @param size size of the file
+	 */
+	private void readMappedData(final FileChannel channel, long dataStart, long size, final Charset charset)
+			throws IOException {
+
+		long length = size - dataStart;
+		long Nchunks = Math.min(CovMRMC.parallelism, length / MIN_CHUNK);
+		Nchunks = Math.max(Nchunks, (length + MAX_CHUNK - 1) / MAX_CHUNK);
+		Nchunks = Math.max(Nchunks, 1);
+		final long[] bounds = new long[(int) Nchunks + 1];
+		bounds[0] = dataStart;
+		for (int c = 1; c < Nchunks; c++) {
+			long target = dataStart + length / Nchunks * c;
+			bounds[c] = nextLineStart(channel, Math.max(target, bounds[c - 1]), size);
+		}
+		bounds[(int) Nchunks] = size;
+
+		final ImrmcReader[] parts = new ImrmcReader[(int) Nchunks];
+		final IOException[] errors = new IOException[(int) Nchunks];
+		CovMRMC.forEachReader((int) Nchunks, new CovMRMC.ReaderBody() {
+			public void run(int ichunk) {
+				ImrmcReader part = new ImrmcReader();
+				part.inData = true;
+				try {
+					part.readChunk(channel, bounds[ichunk], bounds[ichunk + 1], charset);
+				} catch (IOException e) {
+					errors[ichunk] = e;
+				}
+				parts[ichunk] = part;
+			}
+		});
+		for (int c = 0; c < Nchunks; c++) {
+			if (errors[c] != null) throw errors[c];
+		}
+
+		// Merge in file order, stopping at the first chunk with an invalid row
+		int Nrows = 0;
+		for (int c = 0; c < Nchunks; c++) {
+			Nrows = Nrows + parts[c].table.Nrows;
+			if (parts[c].invalidRow >= 0) break;
+		}
+		table.ensureCapacity(Nrows);
+		for (int c = 0; c < Nchunks; c++) {
+			int offset = table.Nrows;
+			table.addAll(parts[c].table);
+			if (parts[c].invalidRow >= 0) {
+				invalidRow = offset + parts[c].invalidRow;
+				invalidLine = parts[c].invalidLine;
+				break;
+			}
+			parts[c] = null;
+		}
+
+	}
+
+	/**
+	 * @return the position after the first line break at or after position, or size if there is none
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+
+		ByteBuffer bytes = ByteBuffer.allocate(1 << 12);
+		while (position < size) {
+			bytes.clear();
+			int n = channel.read(bytes, position);
+			if (n <= 0) break;
+			for (int k = 0; k < n; k++) {
+				byte b = bytes.get(k);
+				if (b != '\n' && b != '\r') continue;
+				if (b == '\n') return position + k + 1;
+				// "\r", or "\r\n" read as one line break
+				if (k + 1 < n) return position + k + 1 + (bytes.get(k + 1) == '\n' ? 1 : 0);
+				ByteBuffer next = ByteBuffer.allocate(1);
+				int m = channel.read(next, position + k + 1);
+				return position + k + 1 + (m > 0 && next.get(0) == '\n' ? 1 : 0);
+			}
+			position = position + n;
+		}
+		return size;
+
+	}
+
+	/**
+	 * Reads the data rows in [from, to) of the file into {@link #table}
+	 */
+	private void readChunk(FileChannel channel, long from, long to, Charset charset) throws IOException {
+
+		if (to <= from) return;
+		MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+		CharsetDecoder decoder = newDecoder(charset);
+		CharBuffer chars = CharBuffer.allocate(1 << 16);
+		while (invalidRow < 0) {
+			CoderResult result = decoder.decode(bytes, chars, true);
+			addChars(chars);
+			if (result.isUnderflow()) {
+				decoder.flush(chars);
+				addChars(chars);
+				break;
+			}
+		}
+		if (lineLength > 0 && invalidRow < 0) endLine();
+
+	}
+
+	/**
+	 * @return a decoder that replaces malformed input, like {@link java.io.InputStreamReader}
+	 */
+	private static CharsetDecoder newDecoder(Charset charset) {
+		return charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Adds decoded characters to the current row, ending a row at each line break
+	 *
+	 * @param chars characters in write mode, cleared on return
+	 */
+	private void addChars(CharBuffer chars) {
+
+		chars.flip();
+		while (chars.hasRemaining() && invalidRow < 0) {
+			char c = chars.get();
+			if (c == '\n') {
+				if (!afterCR) endLine();
+				afterCR = false;
+			} else if (c == '\r') {
+				endLine();
+				afterCR = true;
+			} else {
+				afterCR = false;
+				if (lineLength == line.length) line = Arrays.copyOf(line, 2 * lineLength);
+				line[lineLength++] = c;
+			}
+		}
+		chars.clear();
+
+	}
+
+	/**
+	 * Cleans up the row that just ended and adds it to {@link #header} or {@link #table}
+	 */
+	private void endLine() {
+
+		int length = lineLength;
+		lineLength = 0;
+		if (length > 1 && line[length - 2] == ',' && line[length - 1] == ',') {
+			for (int k = 0; k < length - 1; k++) {
+				if (line[k] == ',' && line[k + 1] == ',') {
+					length = k;
+					break;
+				}
+			}
+		}
+		if (length > 0 && line[length - 1] == ',') length--;
+
+		if (!inData) {
+			String row = new String(line, 0, length);
+			header.add(row);
+			inData = row.toUpperCase().indexOf("BEGIN DATA:") == 0;
+			return;
+		}
+		if (!addRow(length)) {
+			invalidRow = table.Nrows;
+			invalidLine = new String(line, 0, length);
+		}
+
+	}
+
+	/**
+	 * Splits a data row into reader, case, modality and score and adds it to {@link #table}
+	 *
+	 * @return false if the row does not have four fields or the score is not a number
+	 */
+	private boolean addRow(int length) {
+
+		int[] codes = new int[3];
+		int start = 0;
+		for (int f = 0; f < 4; f++) {
+			int end = start;
+			while (end < length && line[end] != ',') end++;
+			if (f < 3 && end == length) return false;
+			int fieldLength = removeWhiteSpace(start, end);
+			if (f < 3) {
+				ObserverTable.Dictionary codesOfField = f == 0 ? table.readerCodes
+						: f == 1 ? table.caseCodes : table.modalityCodes;
+				codes[f] = codesOfField.code(field, 0, fieldLength);
+			} else {
+				double score;
+				try {
+					score = parseDouble(field, 0, fieldLength);
+				} catch (NumberFormatException e) {
+					return false;
+				}
+				table.add(codes[0], codes[1], codes[2], score);
+			}
+			start = end + 1;
+		}
+		return true;
+
+	}
+
+	/**
+	 * Copies line[start..end) to {@link #field} without white space, the characters matched by \s
+	 *
+	 * @return the length of the field
+	 */
+	private int removeWhiteSpace(int start, int end) {
+
+		if (field.length < end - start) field = new char[end - start];
+		int n = 0;
+		for (int k = start; k < end; k++) {
+			char c = line[k];
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r')
+				field[n++] = c;
+		}
+		return n;
+
+	}
+
+	/**
+	 * Parses a decimal number such as -12.5e-3 with at most 15 significant digits
+	 * and a power of ten between -22 and 22. The digits and the power of ten are exact doubles,
+	 * so one multiplication or division gives the correctly rounded result.
+	 * Other input goes to {@link java.lang.Double#parseDouble(String)}.
+	 * Either way the result is the same as {@link java.lang.Double#valueOf(String)}.
+	 *
+	 * @return the number in buf[from..to)
+	 * @throws NumberFormatException if the text is not a number
+	 */
+	static double parseDouble(char[] buf, int from, int to) {
+
+		int k = from;
+		boolean negative = false;
+		if (k < to && (buf[k] == '-' || buf[k] == '+')) {
+			negative = buf[k] == '-';
+			k++;
+		}
+		long digits = 0;
+		int Ndigits = 0;
+		int exponent = 0;
+		boolean anyDigit = false;
+		boolean fastPath = true;
+		while (k < to && buf[k] >= '0' && buf[k] <= '9') {
+			anyDigit = true;
+			if (digits != 0 || buf[k] != '0') {
+				digits = 10 * digits + (buf[k] - '0');
+				Ndigits++;
+			}
+			k++;
+		}
+		if (k < to && buf[k] == '.') {
+			k++;
+			while (k < to && buf[k] >= '0' && buf[k] <= '9') {
+				anyDigit = true;
+				if (digits != 0 || buf[k] != '0') {
+					digits = 10 * digits + (buf[k] - '0');
+					Ndigits++;
+				}
+				exponent--;
+				k++;
+			}
+		}
+		if (anyDigit && k < to && (buf[k] == 'e' || buf[k] == 'E')) {
+			k++;
+			boolean negativeExponent = false;
+			if (k < to && (buf[k] == '-' || buf[k] == '+')) {
+				negativeExponent = buf[k] == '-';
+				k++;
+			}
+			int e = 0;
+			int NexponentDigits = 0;
+			while (k < to && buf[k] >= '0' && buf[k] <= '9') {
+				if (e < 10000) e = 10 * e + (buf[k] - '0');
+				NexponentDigits++;
+				k++;
+			}
+			if (NexponentDigits == 0) fastPath = false;
+			exponent = exponent + (negativeExponent ? -e : e);
+		}
+		if (!anyDigit || k != to || Ndigits > 15) fastPath = false;
+
+		if (fastPath) {
+			double value;
+			if (digits == 0) {
+				value = 0.0;
+			} else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+				value = digits * POWERS_OF_TEN[exponent];
+			} else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+				value = digits / POWERS_OF_TEN[-exponent];
+			} else {
+				return Double.parseDouble(new String(buf, from, to - from));
+			}
+			return negative ? -value : value;
+		}
+		return Double.parseDouble(new String(buf, from, to - from));
+
+	}
+
+}
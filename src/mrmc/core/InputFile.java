@@ -21,12 +21,12 @@ import mrmc.gui.SizePanel;
  * <br>
  * <ul>
  *   <li> ----KEY FIELDS----
- *   <li> {@link #observerData},
+ *   <li> {@link #observerData}, {@link #observerTable},
  *   <li> {@link #readerIDs}, {@link #Nreader}, 
  *   <li> {@link #normalIDs}, {@link #Nnormal},
  *   <li> {@link #diseaseIDs}, {@link #Ndisease},
  *   <li> {@link #modalityIDs}, {@link #Nmodality},
- *   <li> {@link #keyedData}, {@link #truthVals},
+ *   <li> {@link #scoreStore}, {@link #truthVals},
  *   <li> {@link #caseIDs}
  *   <li> These fields are not private and are accessed directly, like a structure.
  * </ul>
@@ -39,11 +39,10 @@ import mrmc.gui.SizePanel;
 public class InputFile {
 	
 	/**
-	 *  Contains all score data organized as a TreeMap of a fully-crossed study 
-	 *  (Reader, (Case, (Modality, Score))), sorted by default
+	 *  Contains all score data of a fully-crossed study as primitive arrays
+	 *  indexed by {@link #readerIDs}, {@link #caseIDs} and {@link #modalityIDs}
 	 */
-	TreeMap<String, TreeMap<String, TreeMap<String, Double>>> 
-		keyedData = new TreeMap<String, TreeMap<String, TreeMap<String, Double>>>();
+	ScoreStore scoreStore = new ScoreStore(new String[0], new String[0], new String[0]);
 	/**
 	 * Contains counts for normal and disease cases for each modality and reader
 	 */
@@ -140,6 +139,11 @@ public class InputFile {
 	 *   reader_id, case_id, modality_id, score
 	 */
 	public String[][] observerData;
+	/**
+	 * Rows of observation data in compact form, filled while reading an .imrmc file
+	 * or from {@link #observerData}, and released after {@link #processScoresAndTruth(boolean)}
+	 */
+	ObserverTable observerTable;
 	
 
 	public boolean isLoaded = false;
@@ -256,13 +260,13 @@ public class InputFile {
 	 */
 	public double getMaxScore(String mod) {
 		double max = Double.MIN_VALUE;
-		for (String r : keyedData.keySet()) {
-			for (String c : keyedData.get(r).keySet()) {
-				if (keyedData.get(r).get(c).get(mod) != null) {
-					if (keyedData.get(r).get(c).get(mod) > max) {
-						max = keyedData.get(r).get(c).get(mod);
-					}
-				}
+		int m = getModalityIndex(mod);
+		if (m < 0) return max;
+		double[] scores = scoreStore.scores[m];
+		BitSet design = scoreStore.design[m];
+		for (int i = design.nextSetBit(0); i >= 0; i = design.nextSetBit(i + 1)) {
+			if (scores[i] > max) {
+				max = scores[i];
 			}
 		}
 		return max;
@@ -278,18 +282,28 @@ public class InputFile {
 	 */
 	public double getMinScore(String mod) {
 		double min = Double.MAX_VALUE;
-		for (String r : keyedData.keySet()) {
-			for (String c : keyedData.get(r).keySet()) {
-				if (keyedData.get(r).get(c).get(mod) != null) {
-					if (keyedData.get(r).get(c).get(mod) < min) {
-						min = keyedData.get(r).get(c).get(mod);
-					}
-				}
+		int m = getModalityIndex(mod);
+		if (m < 0) return min;
+		double[] scores = scoreStore.scores[m];
+		BitSet design = scoreStore.design[m];
+		for (int i = design.nextSetBit(0); i >= 0; i = design.nextSetBit(i + 1)) {
+			if (scores[i] < min) {
+				min = scores[i];
 			}
 		}
 		return min;
 	}
 
+	/**
+	 * @param mod a modality ID
+	 * @return the index of the modality in {@link #scoreStore}, -1 if there is no such modality
+	 */
+	int getModalityIndex(String mod) {
+		Integer m = modalityIDs.get(mod);
+		if (m == null || m >= scoreStore.Nmodality) return -1;
+		return m;
+	}
+
 	/**
 	 * For a given modality, determines XY coordinates of ROC points for each
 	 * reader of the study. Moves threshold from minimum to maximum score and
@@ -308,17 +322,18 @@ public class InputFile {
 			double min = getMinScore(mod);
 			double max = getMaxScore(mod);
 			double inc = (max - min) / samples;
-			for (String r : keyedData.keySet()) {
+			int m = getModalityIndex(mod);
+			for (int ir = 0; ir < scoreStore.Nreader; ir++) {
+				String r = scoreStore.readerIDs[ir];
 				for (double thresh = min - inc; thresh <= max + inc; thresh += inc) {
 					int fp = 0;
 					int tp = 0;
 					int normCount = 0;
 					int disCount = 0;
-					for (String c : keyedData.get(r).keySet()) {
-						if (!keyedData.get(r).get(c).isEmpty()
-								&& (keyedData.get(r).get(c).get(mod) != null )) {
-							double score = keyedData.get(r).get(c).get(mod);
-							int caseTruth = truthVals.get(c);
+					for (int ic = 0; ic < scoreStore.Ncase; ic++) {
+						if (m >= 0 && scoreStore.isScored(m, ir, ic)) {
+							double score = scoreStore.getScore(m, ir, ic);
+							int caseTruth = scoreStore.truth[ic];
 							if (caseTruth == 0) {
 								normCount++;
 								if (score > thresh) {
@@ -367,18 +382,18 @@ public class InputFile {
 			double min = getMinScore(rocMod);
 			double max = getMaxScore(rocMod);
 			double inc = (max - min) / samples;
+			int m = getModalityIndex(rocMod);
 			TreeSet<XYPair> pooledCurve = new TreeSet<XYPair>();
 			for (double thresh = min - inc; thresh <= max + inc; thresh += inc) {
 				int fp = 0;
 				int tp = 0;
 				int normCount = 0;
 				int disCount = 0;
-				for (String r : keyedData.keySet()) {
-					for (String c : keyedData.get(r).keySet()) {
-						if (!keyedData.get(r).get(c).isEmpty()
-								&& (keyedData.get(r).get(c).get(rocMod) != null)) {
-							double score = keyedData.get(r).get(c).get(rocMod);
-							int caseTruth = truthVals.get(c);
+				for (int ir = 0; ir < scoreStore.Nreader; ir++) {
+					for (int ic = 0; ic < scoreStore.Ncase; ic++) {
+						if (m >= 0 && scoreStore.isScored(m, ir, ic)) {
+							double score = scoreStore.getScore(m, ir, ic);
+							int caseTruth = scoreStore.truth[ic];
 							if (caseTruth == 0) {
 								normCount++;
 								if (score > thresh) {
@@ -410,16 +425,16 @@ public class InputFile {
 	 */
 	public TreeMap<String, Double> readersPerCase() {
 		TreeMap<String, Double> rpc = new TreeMap<String, Double>();
-		for (String r : keyedData.keySet()) {
-			for (String c : keyedData.get(r).keySet()) {
-				if (!keyedData.get(r).get(c).isEmpty()) {
-					if (rpc.get(c) == null) {
-						rpc.put(c, 1.0);
-					} else {
-						rpc.put(c, rpc.get(c) + 1);
-					}
+		for (int ic = 0; ic < scoreStore.Ncase; ic++) {
+			int count = 0;
+			for (int ir = 0; ir < scoreStore.Nreader; ir++) {
+				if (scoreStore.isScoredAny(ir, ic)) {
+					count++;
 				}
 			}
+			if (count > 0) {
+				rpc.put(scoreStore.caseIDs[ic], (double) count);
+			}
 		}
 		return rpc;
 	}
@@ -433,16 +448,16 @@ public class InputFile {
 	 */
 	public TreeMap<String, Double> casesPerReader() {
 		TreeMap<String, Double> cpr = new TreeMap<String, Double>();
-		for (String r : keyedData.keySet()) {
-			for (String c : keyedData.get(r).keySet()) {
-				if (!keyedData.get(r).get(c).isEmpty()) {
-					if (cpr.get(r) == null) {
-						cpr.put(r, 1.0);
-					} else {
-						cpr.put(r, cpr.get(r) + 1);
-					}
+		for (int ir = 0; ir < scoreStore.Nreader; ir++) {
+			int count = 0;
+			for (int ic = 0; ic < scoreStore.Ncase; ic++) {
+				if (scoreStore.isScoredAny(ir, ic)) {
+					count++;
 				}
 			}
+			if (count > 0) {
+				cpr.put(scoreStore.readerIDs[ir], (double) count);
+			}
 		}
 		return cpr;
 	}
@@ -474,25 +489,23 @@ public class InputFile {
 		String[][] caserelation = new String[(int) (Nnormal + Ndisease)][2];
 		TreeMap<String,String[][]> StudyDesignData= new TreeMap<String,String[][]>();
 		//String labelreaderID[]=new String[5];
-		int r = 0, i = 0;
-		for (String readerID : keyedData.keySet()) {
-			i = 0;
-			design[r][i] = readerID;
-			for (String caseID : keyedData.get(readerID).keySet()) {
+		int m = getModalityIndex(modalityID);
+		for (int r = 0; r < scoreStore.Nreader; r++) {
+			String readerID = scoreStore.readerIDs[r];
+			design[r][0] = readerID;
+			for (int i = 0; i < scoreStore.Ncase; i++) {
 				if (r==0){
 					caserelation[i][0]=Integer.toString(i+1);
-					caserelation[i][1]=caseID;
+					caserelation[i][1]=scoreStore.caseIDs[i];
 				}
-				i++;
-				if (keyedData.get(readerID).get(caseID).get(modalityID) != null) {
-					design[r][i] = "true";
+				if (m >= 0 && scoreStore.isScored(m, r, i)) {
+					design[r][i+1] = "true";
 				} else {
-					design[r][i] = "false";
+					design[r][i+1] = "false";
 				}
 			}
 			readerrelation[r][0]=Integer.toString(r);
 			readerrelation[r][1]=readerID;
-			r++;
 		}
 		StudyDesignData.put("readerrelation", readerrelation);
 		StudyDesignData.put("caserelation", caserelation);
@@ -536,11 +549,13 @@ public class InputFile {
 	}
 
 	/**
-	 * Given .imrmc input file {@link #filename}, create {@link #fileContent}, then <br>
+	 * Given .imrmc input file {@link #filename}, create {@link #fileContent} and {@link #observerTable}
+	 * with {@link mrmc.core.ImrmcReader}, then <br>
 	 * ----{@link #getExperimentSizeFromHeader()} <br>
-	 * ----{@link #parseObserverData()} <br>
 	 * ----{@link #verifySizesAndGetIDs(boolean,boolean)} <br>
 	 * ----{@link #processScoresAndTruth(boolean)} <br>
+	 * If {@link mrmc.core.ImrmcCache#useCache} is set, a fresh {@link mrmc.core.ImrmcCache} is loaded instead,
+	 * or written after the file has been processed.
 	 * 
 	 * @see #dataCheckResults
 	 * @see #isLoaded
@@ -551,18 +566,70 @@ public class InputFile {
 	 */
 	public void ReadInputFile(GUInterface GUInterface_temp) throws IOException {
 	    GUI = GUInterface_temp;
+	    ReadInputFile(GUInterface.selectedInput, GUI.DBRecordStat, !MRMC.commandStart);
+	}
+
+	/**
+	 * Reads the input file as {@link #ReadInputFile(GUInterface)} does, without a GUI. <br>
+	 * The input mode is given instead of read from {@link mrmc.gui.GUInterface#selectedInput},
+	 * so several files can be read at the same time.
+	 * 
+	 * CALLED BY: {@link mrmc.core.BatchAnalysis}, {@link mrmc.core.StudyInput}
+	 * 
+	 * @param inputMode {@link mrmc.gui.GUInterface#DescInputModeImrmc} or {@link mrmc.gui.GUInterface#DescInputModeOmrmc}
+	 * @param DBRecordStatTemp filled with the summary statistics of an .omrmc file
+	 * @param DisplayWarning show warnings about the data in a dialog as well as on the console
+	 * @throws IOException
+	 */
+	public void ReadInputFile(String inputMode, DBRecord DBRecordStatTemp, boolean DisplayWarning) throws IOException {
+	    ImrmcReader imrmcReader = null;
+	    // A fresh binary cache replaces reading and processing the .imrmc file
+	    byte[] sourceHash = null;
+	    if (ImrmcCache.useCache && inputMode == GUInterface.DescInputModeImrmc) {
+	    	try {
+	    		sourceHash = ImrmcCache.contentHash(filePathAndName);
+	    	} catch (IOException e) {
+	    		sourceHash = null;
+	    	}
+	    	if (sourceHash != null && ImrmcCache.load(this, sourceHash)) {
+	    		checkCaseCounts(DisplayWarning);
+	    		System.out.println("Input Raw File Successfully Read from cache!");
+	    		isLoaded = true;
+	    		return;
+	    	}
+	    }
+		//String inputformat = filename.substring(filename.lastIndexOf(".")+1);
+		String inputformat = filePathAndName.substring(filePathAndName.lastIndexOf(".")+1);
+		if (!inputformat.equals("csv") && !inputformat.equals("imrmc") && !inputformat.equals("omrmc")) {
+			if (GUI == null) {
+				System.out.println("Error: Please choose .imrmc, .omrmc or .csv format inputfile.");
+			} else {
+				JOptionPane.showMessageDialog(GUI.MRMCobject.getFrame(),
+						"Please choose .imrmc, .omrmc or .csv format inputfile.", "Error",
+						JOptionPane.ERROR_MESSAGE);
+			}
+			return;
+		}
 		try {
-			//InputStreamReader isr;
-			//DataInputStream din;
-			FileInputStream fstream = new FileInputStream(filePathAndName);
-			DataInputStream din = new DataInputStream(fstream);
-			InputStreamReader isr = new InputStreamReader(din);
-			BufferedReader br = new BufferedReader(isr);
-			String strtemp;
-			try {
-				//String inputformat = filename.substring(filename.lastIndexOf(".")+1);
-				String inputformat = filePathAndName.substring(filePathAndName.lastIndexOf(".")+1);
-				if (inputformat.equals("csv")||inputformat.equals("imrmc")||inputformat.equals("omrmc")){
+			if (inputMode == GUInterface.DescInputModeImrmc) {
+				// Data rows are read straight into compact columns, only the header is kept as text.
+				// A file without "BEGIN DATA:" is all header, as the rows read one by one below
+				imrmcReader = new ImrmcReader();
+				if (new File(filePathAndName).length() >= ImrmcReader.mappedThreshold) {
+					imrmcReader.readMapped(filePathAndName);
+				} else {
+					imrmcReader.read(filePathAndName);
+				}
+				fileContent.addAll(imrmcReader.header);
+			} else {
+				//InputStreamReader isr;
+				//DataInputStream din;
+				FileInputStream fstream = new FileInputStream(filePathAndName);
+				DataInputStream din = new DataInputStream(fstream);
+				InputStreamReader isr = new InputStreamReader(din);
+				BufferedReader br = new BufferedReader(isr);
+				String strtemp;
+				try {
 					while ((strtemp = br.readLine()) != null) {
 						if (strtemp.length()>0 && strtemp.substring(strtemp.length()-2).equals(",,"))
 						strtemp = strtemp.substring(0, strtemp.indexOf(",,"));
@@ -570,20 +637,10 @@ public class InputFile {
 							strtemp = strtemp.substring(0, strtemp.length()-1);
 						fileContent.add(strtemp);
 					}
-				}else{
-					JOptionPane.showMessageDialog(GUI.MRMCobject.getFrame(),
-							"Please choose .imrmc, .omrmc or .csv format inputfile.", "Error",
-							JOptionPane.ERROR_MESSAGE);
-					return;
+				} finally {
+					din.close();
 				}
-				din.close();
-			} catch (FileNotFoundException e1) {
-				e1.printStackTrace();
-			} catch (Exception e) {
-				System.err.println("read record Error in inputFile.java: "
-						+ e.getMessage());
 			}
-
 		} catch (Exception e) {
 			System.err
 					.println("Error reading file" + filePathAndName + e.getMessage());
@@ -598,24 +655,38 @@ public class InputFile {
 			// Function determines readerIDs, normalIDs, diseaseIDs, modalityIDs from the data
 			// Return holds string indicating inconsistencies between header and data
 			// User will be made aware of inconsistencies and header info will be ignored
-			if  (GUInterface.selectedInput == GUInterface.DescInputModeImrmc){    // if input raw data
+			if  (inputMode == GUInterface.DescInputModeImrmc){    // if input raw data
 				filePosition = 0;
 				getExperimentSizeFromHeader();
-				observerData = new String[NlinesFileContent - (filePosition + 1)][4];
-				parseObserverData();
+				if (imrmcReader.invalidRow >= 0) {
+					String toReturn = "ERROR: Invalid input";
+					toReturn = toReturn + "      row = " +    (NrowsInHeader+imrmcReader.invalidRow+2) + " \n";
+					toReturn = toReturn + imrmcReader.invalidLine + " \n";
+					
+					if (!MRMC.commandStart){
+						throw new IOException(toReturn);
+					}else{
+						System.out.println(toReturn);
+						System.exit(0);
+					}
+				}
+				observerData = null;
+				observerTable = imrmcReader.table;
 				boolean VerboseTrue=true;
-				boolean DisplayWarning=!MRMC.commandStart;
 				verifySizesAndGetIDs(VerboseTrue, DisplayWarning);		
-				// fills keyedData and truthVals structures with proper values
+				// fills scoreStore and truthVals structures with proper values
 				processScoresAndTruth(VerboseTrue);
+				if (sourceHash != null) {
+					ImrmcCache.save(this, sourceHash);
+				}
 				System.out.println("Input Raw File Successfully Read!");
 				isLoaded = true;
 			}
-			if  (GUInterface.selectedInput == GUInterface.DescInputModeOmrmc){    // if input summary data
+			if  (inputMode == GUInterface.DescInputModeOmrmc){    // if input summary data
 				summaryPosition = 0;
 				findSummaryBegin();
 				findSummaryEnd();				
-				DBRecordStat = GUI.DBRecordStat;
+				DBRecordStat = DBRecordStatTemp;
 				loadSummaryData();
 				System.out.println("Input Summary File Successfully Read!");
 				isLoaded = true;
@@ -1059,38 +1130,7 @@ public class InputFile {
 	}
 
 	/**
-	 * Given {@link #fileContent} parse rows following "BEGIN DATA:" into {@link #observerData}
-	 * 
-	 * @throws IOException
-	 */
-	private void parseObserverData() throws IOException {
-		String[] tempNumbers;
-
-		// parse each line of input into its separate fields (still ordered by line)
-		for (int i = 0; i < NlinesFileContent - (filePosition + 1); i++) {
-			tempNumbers = fileContent.get((filePosition + 1) + i).split(",");
-			try {
-				observerData[i][0] = String.valueOf(tempNumbers[0]).replaceAll("\\s",""); // Reader
-				observerData[i][1] = String.valueOf(tempNumbers[1]).replaceAll("\\s",""); // Case
-				observerData[i][2] = String.valueOf(tempNumbers[2]).replaceAll("\\s",""); // Modality id
-				observerData[i][3] = String.valueOf(tempNumbers[3]).replaceAll("\\s",""); // Score
-			} catch (Exception e) {
-				String toReturn = "ERROR: Invalid input";
-				toReturn = toReturn + "      row = " +    (NrowsInHeader+i+2) + " \n";
-				toReturn = toReturn + fileContent.get(filePosition+1+i) + " \n";
-				
-				if (!MRMC.commandStart){
-					throw new IOException(toReturn, e);
-				}else{
-					System.out.println(toReturn);
-					System.exit(0);
-				}
-			}
-		}
-	}
-	
-	/**
-	 * Given {@link #observerData}, determine <br>
+	 * Given {@link #observerTable}, or {@link #observerData} if it is set, determine <br>
 	 * ----{@link #Nreader}, {@link #readerIDs} <br>
 	 * ----{@link #Nnormal}, {@link #normalIDs} <br>
 	 * ----{@link #Ndisease}, {@link #diseaseIDs} <br>
@@ -1111,22 +1151,28 @@ public class InputFile {
 		
 		Integer in0=-1, in1=-1, inr=-1, inm=-1;
 		
+		if (observerData != null) {
+			observerTable = ObserverTable.fromStrings(observerData);
+		}
+		ObserverTable table = observerTable;
+		int NreaderCodes = table.readerNames.size();
+		int NcaseCodes = table.caseNames.size();
+		int NmodalityCodes = table.modalityNames.size();
+		
 		// Find the rows corresponding to truth
 		// Check for duplicate cases
 		// Create normalIDs and diseaseIDs
-		for (int i = 0; i < observerData.length; i++) {
-
-			if(observerData[i][0] == null) break;
+		for (int i = 0; i < table.Nrows; i++) {
 
-			//if ( observerData[i][0].equals("-1")){																 // Load truth lines
-			if ( observerData[i][0].equals("truth")||observerData[i][0].equals("-1")){																 // Load truth lines
-				if ( normalIDs.containsKey(observerData[i][1]) || diseaseIDs.containsKey(observerData[i][1]) ){  // Check Duplicate case truth define 
+			if ( table.isTruth(i) ){																 // Load truth lines
+				String caseID = table.caseNames.get(table.caseID[i]);
+				if ( normalIDs.containsKey(caseID) || diseaseIDs.containsKey(caseID) ){  // Check Duplicate case truth define 
 					dataCheckResults = "ERROR: Duplicate case found"                 + " \n";
 					dataCheckResults = dataCheckResults + "      row = " + (NrowsInHeader+i+2)+ " \n";
 					dataCheckResults = dataCheckResults + "Check for an earlier occurrence:" + " \n";
-					dataCheckResults = dataCheckResults + "      readerID = " + observerData[i][0]   + " \n";
-					dataCheckResults = dataCheckResults + "      caseID = " + observerData[i][1]     + " \n";
-					dataCheckResults = dataCheckResults + "      modalityID = " + observerData[i][2] + " \n";
+					dataCheckResults = dataCheckResults + "      readerID = " + table.readerNames.get(table.reader[i])     + " \n";
+					dataCheckResults = dataCheckResults + "      caseID = " + caseID                                       + " \n";
+					dataCheckResults = dataCheckResults + "      modalityID = " + table.modalityNames.get(table.modality[i]) + " \n";
 					
 					if (!MRMC.commandStart){
 						throw new IOException(dataCheckResults);
@@ -1137,30 +1183,41 @@ public class InputFile {
 
 				}
 				// New normal ID?
-				if ( !normalIDs.containsKey(observerData[i][1])  && observerData[i][3].equals("0")) {
-					normalIDs.put(observerData[i][1], in0);
+				if ( table.score[i] == 0 ) {
+					normalIDs.put(caseID, in0);
 				}
 				// New disease ID?
-				if ( !diseaseIDs.containsKey(observerData[i][1]) && observerData[i][3].equals("1")) {
-					diseaseIDs.put(observerData[i][1], in1);
+				if ( table.score[i] == 1 ) {
+					diseaseIDs.put(caseID, in1);
 				}
 			}
 		}
 		
+		// Truth of each case code: 0 = normal, 1 = disease, -1 = no truth
+		int[] caseTruth = new int[NcaseCodes];
+		for (int c = 0; c < NcaseCodes; c++) {
+			String caseID = table.caseNames.get(c);
+			caseTruth[c] = normalIDs.containsKey(caseID) ? 0 : diseaseIDs.containsKey(caseID) ? 1 : -1;
+		}
+		
 		// Find all the rows not corresponding to truth
 		// Check that cases have truth, find readers and modalities
-		for (int i = 0; i < observerData.length; i++) {
-
-			if(observerData[i][0] == null) break;
-
-			//if ( !observerData[i][0].equals("-1")){
-			if ( !(observerData[i][0].equals("truth")||observerData[i][0].equals("-1"))){
-				if ( !normalIDs.containsKey(observerData[i][1]) && !diseaseIDs.containsKey(observerData[i][1]) ){
+		// Count the normal and disease cases of each reader in each modality
+		boolean[] readerFound = new boolean[NreaderCodes];
+		boolean[] modalityFound = new boolean[NmodalityCodes];
+		int[][] count0 = new int[NmodalityCodes][NreaderCodes];
+		int[][] count1 = new int[NmodalityCodes][NreaderCodes];
+		boolean[][] countFound = new boolean[NmodalityCodes][NreaderCodes];
+		for (int i = 0; i < table.Nrows; i++) {
+
+			if ( !table.isTruth(i) ){
+				int r = table.reader[i], c = table.caseID[i], m = table.modality[i];
+				if ( caseTruth[c] < 0 ){
 					dataCheckResults = "ERROR: No truth for case"                     + " \n";
 					dataCheckResults = dataCheckResults + "      row = " + (NrowsInHeader+i+2) + " \n";
-					dataCheckResults = dataCheckResults + "      readerID = " + observerData[i][0]   + " \n";
-					dataCheckResults = dataCheckResults + "      caseID = " + observerData[i][1]     + " \n";
-					dataCheckResults = dataCheckResults + "      modalityID = " + observerData[i][2] + " \n";
+					dataCheckResults = dataCheckResults + "      readerID = " + table.readerNames.get(r)     + " \n";
+					dataCheckResults = dataCheckResults + "      caseID = " + table.caseNames.get(c)         + " \n";
+					dataCheckResults = dataCheckResults + "      modalityID = " + table.modalityNames.get(m) + " \n";
 					
 					if (!MRMC.commandStart){
 						throw new IOException(dataCheckResults);
@@ -1170,28 +1227,36 @@ public class InputFile {
 					}
 				}
 				// New reader ID?
-				if ( !readerIDs.containsKey(observerData[i][0])  ) {
-					readerIDs.put(observerData[i][0], inr);					
+				if ( !readerFound[r] ) {
+					readerFound[r] = true;
+					if ( !readerIDs.containsKey(table.readerNames.get(r)) ) {
+						readerIDs.put(table.readerNames.get(r), inr);
+					}
 				}
 				// New modality ID?
-				if ( !modalityIDs.containsKey(observerData[i][2])) {
-					modalityIDs.put(observerData[i][2], inm);			
-					casecount.put(observerData[i][2], new TreeMap<String, Integer[]>());
-				}
-				if (!casecount.get(observerData[i][2]).containsKey(observerData[i][0])) {
-					Integer[] startnum={0,0};
-					casecount.get(observerData[i][2]).put(observerData[i][0],startnum);		
-				}
-				if( normalIDs.containsKey(observerData[i][1]) ) {
-					Integer[] countnum = casecount.get(observerData[i][2]).get(observerData[i][0]);
-					countnum[0]++;
-					casecount.get(observerData[i][2]).put(observerData[i][0],countnum);									
+				if ( !modalityFound[m] ) {
+					modalityFound[m] = true;
+					if ( !modalityIDs.containsKey(table.modalityNames.get(m)) ) {
+						modalityIDs.put(table.modalityNames.get(m), inm);
+						casecount.put(table.modalityNames.get(m), new TreeMap<String, Integer[]>());
+					}
 				}
-				if( diseaseIDs.containsKey(observerData[i][1]) ) {
-					Integer[] countnum = casecount.get(observerData[i][2]).get(observerData[i][0]);
-					countnum[1]++;
-					casecount.get(observerData[i][2]).put(observerData[i][0],countnum);									
+				countFound[m][r] = true;
+				if ( caseTruth[c] == 0 ) count0[m][r]++;
+				if ( caseTruth[c] == 1 ) count1[m][r]++;
+			}
+		}
+		for (int m = 0; m < NmodalityCodes; m++) {
+			for (int r = 0; r < NreaderCodes; r++) {
+				if (!countFound[m][r]) continue;
+				TreeMap<String, Integer[]> readercount = casecount.get(table.modalityNames.get(m));
+				Integer[] countnum = readercount.get(table.readerNames.get(r));
+				if (countnum == null) {
+					countnum = new Integer[] {0,0};
+					readercount.put(table.readerNames.get(r), countnum);
 				}
+				countnum[0] = countnum[0] + count0[m][r];
+				countnum[1] = countnum[1] + count1[m][r];
 			}
 		}
 
@@ -1251,6 +1316,16 @@ public class InputFile {
 		if(verbose) {
 			System.out.println("caseIDs: " + caseIDs);
 		}
+		checkCaseCounts(DisplayWarning);
+	}
+	
+	/**
+	 * Warns about readers that read less than 2 normal or less than 2 disease cases in a modality,
+	 * given {@link #casecount}
+	 * 
+	 * @param DisplayWarning show the warning in a dialog as well as on the console
+	 */
+	void checkCaseCounts(boolean DisplayWarning) {
 		String misscasemessage="";
 		int messagecount=0;
 		for (String m : modalityIDs.keySet()){
@@ -1275,11 +1350,12 @@ public class InputFile {
 	}
 	
 	/**
-	 * Maps {@link #observerData} to the core data structures <br>
-	 * ----{@link #keyedData} <br>
+	 * Maps {@link #observerTable} to the core data structures <br>
+	 * ----{@link #scoreStore} <br>
 	 * ----{@link #truthVals} <br>
 	 * Also creates {@link #caseIDs} by combining {@link #normalIDs} and {@link #diseaseIDs}<br>
-	 * Also checks for duplicate observations 
+	 * Also checks for duplicate observations <br>
+	 * Releases {@link #observerTable} when done
 	 * 
 	 * @param verbose indicates whether or not to write info to the console
 	 * 
@@ -1288,17 +1364,22 @@ public class InputFile {
 	public void processScoresAndTruth(boolean verbose) 
 					throws IOException {
 		
-		// Create a data structure corresponding to a fully-crossed experiment
-		for (String r : readerIDs.keySet()) {
-			keyedData.put(r, new TreeMap<String, TreeMap<String, Double>>());
-			for (String n : normalIDs.keySet()) {
-				keyedData.get(r).put(n, new TreeMap<String, Double>());
-			}
-			for (String d : diseaseIDs.keySet()) {
-				keyedData.get(r).put(d, new TreeMap<String, Double>());
-			}
+		// Determine caseIDs
+		TreeSet<String> allCases = new TreeSet<String>(normalIDs.keySet());
+		allCases.addAll(diseaseIDs.keySet());
+		Integer ic=0;
+		for ( String desc : allCases ) {
+			caseIDs.put(desc, ic++);
 		}
+
+		// Create a data structure corresponding to a fully-crossed experiment
+		scoreStore = new ScoreStore(readerIDs.keySet().toArray(new String[0]),
+				caseIDs.keySet().toArray(new String[0]),
+				modalityIDs.keySet().toArray(new String[0]));
 		
+		// Readers and cases already listed in modinformation, by modality
+		BitSet[] modReaderListed = new BitSet[scoreStore.Nmodality];
+		BitSet[] modCaseListed = new BitSet[scoreStore.Nmodality];
 		for (String m : modalityIDs.keySet()) {
 			ArrayList<String> readerlist = new ArrayList<String>();
 			ArrayList<String> normallist = new ArrayList<String>();
@@ -1307,33 +1388,67 @@ public class InputFile {
 			modinformation.get(m).put("reader", readerlist);
 			modinformation.get(m).put("normal", normallist);
 			modinformation.get(m).put("disease", diseaselist);
+			modReaderListed[modalityIDs.get(m)] = new BitSet(scoreStore.Nreader);
+			modCaseListed[modalityIDs.get(m)] = new BitSet(scoreStore.Ncase);
 		}
 
-		// Determine caseIDs
-		Integer ic=0;
-		for ( String desc : keyedData.get(keyedData.firstKey()).keySet() ) {
-			caseIDs.put(desc, ic++);
+		if (observerTable == null) {
+			observerTable = ObserverTable.fromStrings(observerData);
+		}
+		ObserverTable table = observerTable;
+
+		// Indices of the reader, case and modality codes, -1 if not in the study
+		int[] readerIndex = new int[table.readerNames.size()];
+		boolean[] truthReader = new boolean[table.readerNames.size()];
+		for (int r = 0; r < readerIndex.length; r++) {
+			String readerID = table.readerNames.get(r);
+			truthReader[r] = readerID.equals("truth")||readerID.equals("-1");
+			readerIndex[r] = readerIDs.containsKey(readerID) ? readerIDs.get(readerID) : -1;
+		}
+		int[] caseIndex = new int[table.caseNames.size()];
+		int[] caseTruth = new int[table.caseNames.size()];
+		for (int c = 0; c < caseIndex.length; c++) {
+			String caseID = table.caseNames.get(c);
+			caseIndex[c] = caseIDs.containsKey(caseID) ? caseIDs.get(caseID) : -1;
+			caseTruth[c] = normalIDs.containsKey(caseID) ? 0 : diseaseIDs.containsKey(caseID) ? 1 : -1;
+		}
+		int[] modalityIndex = new int[table.modalityNames.size()];
+		for (int m = 0; m < modalityIndex.length; m++) {
+			String modalityID = table.modalityNames.get(m);
+			modalityIndex[m] = modalityIDs.containsKey(modalityID) ? modalityIDs.get(modalityID) : -1;
+		}
+		// Reader-modality combinations with more than 2 normal and 2 disease cases
+		boolean[][] enoughCases = new boolean[scoreStore.Nmodality][scoreStore.Nreader];
+		for (String m : modalityIDs.keySet()) {
+			for (String r : readerIDs.keySet()) {
+				Integer[] countnum = casecount.get(m).get(r);
+				enoughCases[modalityIDs.get(m)][readerIDs.get(r)] =
+						countnum != null && Math.min(countnum[0],countnum[1])>2;
+			}
 		}
 
-		// Populate keyedData with the observed scores
-		for (int i = 0; i < observerData.length; i++) {
+		// Populate scoreStore with the observed scores
+		for (int i = 0; i < table.Nrows; i++) {
 			
-			if(observerData[i][0] == null) break;
-			String readerID   = observerData[i][0];
-			String caseID     = observerData[i][1];
-			String modalityID = observerData[i][2];
-			double score = Double.valueOf(observerData[i][3]).doubleValue();
+			double score = table.score[i];
 			//if (readerID.equals("-1")) {
-			if (readerID.equals("truth")||readerID.equals("-1")) {
-				truthVals.put(caseID, Integer.valueOf(observerData[i][3]).intValue());
+			if (truthReader[table.reader[i]]) {
+				String caseID = table.caseNames.get(table.caseID[i]);
+				truthVals.put(caseID, (int) score);
+				if (caseIndex[table.caseID[i]] >= 0) {
+					scoreStore.truth[caseIndex[table.caseID[i]]] = truthVals.get(caseID);
+				}
 			} else {
-				if (keyedData.get(readerID).get(caseID).containsKey(modalityID)	){
+				int ir = readerIndex[table.reader[i]];
+				int iCase = caseIndex[table.caseID[i]];
+				int im = modalityIndex[table.modality[i]];
+				if (scoreStore.isScored(im, ir, iCase)	){
 					String toReturn = "ERROR: Replicate observation found"    + " \n";
 					toReturn = toReturn + "      row = " + (NrowsInHeader+i+2) + " \n";
 					toReturn = toReturn + "Check for an earlier occurrence: " + " \n";
-					toReturn = toReturn + "      readerID = " + observerData[i][0]   + " \n";
-					toReturn = toReturn + "      caseID = " + observerData[i][1]     + " \n";
-					toReturn = toReturn + "      modalityID = " + observerData[i][2] + " \n";
+					toReturn = toReturn + "      readerID = " + table.readerNames.get(table.reader[i])     + " \n";
+					toReturn = toReturn + "      caseID = " + table.caseNames.get(table.caseID[i])         + " \n";
+					toReturn = toReturn + "      modalityID = " + table.modalityNames.get(table.modality[i]) + " \n";
 
 					if (!MRMC.commandStart){
 						throw new IOException(toReturn);
@@ -1344,30 +1459,136 @@ public class InputFile {
 
 				}
 				else {
-					Integer[] countnum = casecount.get(modalityID).get(readerID);
-					if (Math.min(countnum[0],countnum[1])>2){
-						keyedData.get(readerID).get(caseID).put(modalityID, score);
-						if (!modinformation.get(modalityID).get("reader").contains(readerID)){
-							modinformation.get(modalityID).get("reader").add(readerID);
+					if (enoughCases[im][ir]){
+						scoreStore.setScore(im, ir, iCase, score);
+						if (!modReaderListed[im].get(ir)){
+							modReaderListed[im].set(ir);
+							modinformation.get(scoreStore.modalityIDs[im]).get("reader").add(scoreStore.readerIDs[ir]);
 						}
-						if ( normalIDs.containsKey(caseID) & !modinformation.get(modalityID).get("normal").contains(caseID)){
-							modinformation.get(modalityID).get("normal").add(caseID);
+						if ( caseTruth[table.caseID[i]] == 0 & !modCaseListed[im].get(iCase)){
+							modCaseListed[im].set(iCase);
+							modinformation.get(scoreStore.modalityIDs[im]).get("normal").add(scoreStore.caseIDs[iCase]);
 						}
-						if ( diseaseIDs.containsKey(caseID) & !modinformation.get(modalityID).get("disease").contains(caseID)){
-							modinformation.get(modalityID).get("disease").add(caseID);
+						if ( caseTruth[table.caseID[i]] == 1 & !modCaseListed[im].get(iCase)){
+							modCaseListed[im].set(iCase);
+							modinformation.get(scoreStore.modalityIDs[im]).get("disease").add(scoreStore.caseIDs[iCase]);
 						}
 					}
 				}
 			}
 
 		}
+		
+		// The compact rows are no longer needed
+		observerTable = null;
+	}
+
+	/**
+	 * Loads scores that are already in a {@link mrmc.core.ScoreStore}, for example simulated scores,
+	 * instead of parsing {@link #observerData}. The results are the same as those of
+	 * {@link #verifySizesAndGetIDs(boolean, boolean)} and {@link #processScoresAndTruth(boolean)}
+	 * for the observations of the store <br>
+	 * ----{@link #readerIDs}, {@link #normalIDs}, {@link #diseaseIDs}, {@link #caseIDs}, {@link #modalityIDs} <br>
+	 * ----{@link #Nreader}, {@link #Nnormal}, {@link #Ndisease}, {@link #Nmodality} <br>
+	 * ----{@link #casecount}, {@link #modinformation}, {@link #truthVals}, {@link #scoreStore} <br>
+	 * <br>
+	 * The IDs of the store must be in sorted order, and each reader and modality must have observations.
+	 * As in {@link #processScoresAndTruth(boolean)}, readers that scored 2 or fewer normal or disease cases
+	 * in a modality are dropped from the design of that modality.
+	 * The store is kept, not copied, so new scores can be written into it and analyzed
+	 * without loading it again, as long as the design does not change. <br>
+	 * <br>
+	 * CALLED BY: {@link roemetz.core.SimRoeMetz#doSim(DBRecord)} <br>
+	 * 
+	 * @param store scores, study design and truth
+	 * @param verbose indicates whether or not to write info to the console
+	 * @param DisplayWarning show warnings in a dialog as well as on the console
+	 */
+	public void loadScores(ScoreStore store, boolean verbose, boolean DisplayWarning) {
+
+		observerData = null;
+		observerTable = null;
+		resetIDs();
+		casecount.clear();
+		modinformation.clear();
+		truthVals.clear();
+
+		int in0 = 0, in1 = 0;
+		for (int c = 0; c < store.Ncase; c++) {
+			caseIDs.put(store.caseIDs[c], c);
+			truthVals.put(store.caseIDs[c], store.truth[c]);
+			if (store.truth[c] == 0) normalIDs.put(store.caseIDs[c], in0++);
+			else diseaseIDs.put(store.caseIDs[c], in1++);
+		}
+		for (int r = 0; r < store.Nreader; r++)
+			readerIDs.put(store.readerIDs[r], r);
+		for (int m = 0; m < store.Nmodality; m++)
+			modalityIDs.put(store.modalityIDs[m], m);
+		Nreader = store.Nreader;
+		Nnormal = in0;
+		Ndisease = in1;
+		Nmodality = store.Nmodality;
+		if(verbose) {
+			System.out.println("readerIDs: " + readerIDs);
+			System.out.println("normalIDs: " + normalIDs);
+			System.out.println("diseaseIDs: " + diseaseIDs);
+			System.out.println("modalityIDs: " + modalityIDs);
+		}
+
+		// Count the normal and disease cases of each reader in each modality
+		for (int m = 0; m < store.Nmodality; m++) {
+			TreeMap<String, Integer[]> readercount = new TreeMap<String, Integer[]>();
+			for (int r = 0; r < store.Nreader; r++) {
+				int count0 = 0, count1 = 0;
+				for (int c = 0; c < store.Ncase; c++) {
+					if (!store.isScored(m, r, c)) continue;
+					if (store.truth[c] == 0) count0++;
+					else count1++;
+				}
+				if (count0 + count1 > 0)
+					readercount.put(store.readerIDs[r], new Integer[] {count0, count1});
+			}
+			casecount.put(store.modalityIDs[m], readercount);
+		}
+		checkCaseCounts(DisplayWarning);
+
+		// Keep the reader-modality combinations with more than 2 normal and 2 disease cases
+		// and list their readers and cases in modinformation
+		for (int m = 0; m < store.Nmodality; m++) {
+			ArrayList<String> readerlist = new ArrayList<String>();
+			ArrayList<String> normallist = new ArrayList<String>();
+			ArrayList<String> diseaselist = new ArrayList<String>();
+			BitSet caseListed = new BitSet(store.Ncase);
+			for (int r = 0; r < store.Nreader; r++) {
+				Integer[] countnum = casecount.get(store.modalityIDs[m]).get(store.readerIDs[r]);
+				if (countnum == null) continue;
+				if (Math.min(countnum[0],countnum[1]) <= 2) {
+					store.design[m].clear(store.index(r, 0), store.index(r, store.Ncase));
+					continue;
+				}
+				readerlist.add(store.readerIDs[r]);
+				for (int c = 0; c < store.Ncase; c++) {
+					if (!store.isScored(m, r, c) || caseListed.get(c)) continue;
+					caseListed.set(c);
+					if (store.truth[c] == 0) normallist.add(store.caseIDs[c]);
+					else diseaselist.add(store.caseIDs[c]);
+				}
+			}
+			modinformation.put(store.modalityIDs[m], new TreeMap<String,ArrayList<String>>()) ;
+			modinformation.get(store.modalityIDs[m]).put("reader", readerlist);
+			modinformation.get(store.modalityIDs[m]).put("normal", normallist);
+			modinformation.get(store.modalityIDs[m]).put("disease", diseaselist);
+		}
+
+		scoreStore = store;
 	}
 
 	public void resetInputFile() {
 
 		observerData = null;
+		observerTable = null;
 		isLoaded = false;
-		keyedData.clear();
+		scoreStore = new ScoreStore(new String[0], new String[0], new String[0]);
 		truthVals.clear();
 
 		Nreader = 0;
@@ -6,6 +6,7 @@ import mrmc.gui.GUImenubar;
 import mrmc.gui.GUInterface;
 
 import java.awt.*;
+import java.util.Arrays;
 import java.util.Locale;
 
 /**
@@ -62,9 +63,16 @@ public class MRMC extends JApplet {
 	 * the user's OS and starts the application with the specified frame size. <br>
 	 * ---- Creates object MRMC from class jApplet
 	 * 
-	 * @param args Command-line arguments, not used
+	 * If the first argument is -batch, {@link mrmc.core.BatchAnalysis} analyzes a folder or manifest of
+	 * input files instead, and no window is created.
+	 * 
+	 * @param args Command-line arguments: input file, output folder, and options such as -threads=N and -cache
 	 */
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("-batch")) {
+			BatchAnalysis.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		try {
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
 		} catch (ClassNotFoundException e) {
@@ -77,6 +85,7 @@ public class MRMC extends JApplet {
 			e.printStackTrace();
 		}
 		Locale.setDefault(Locale.US);
+		args = commandStartFunction.parseOptions(args);
 		String inputFileFullName = "";
 		String outputFolderFullName = "";
 		if (args.length == 1){
@@ -149,6 +149,33 @@ public class Matrix {
 		return T;
 	}
 
+	/**
+	 * Calculates the total of all values in an int vector
+	 * 
+	 * @param m The vector
+	 * @return Total value of all entries in m
+	 */
+	public static int total(int[] m) {
+		int T = 0;
+		for (int i = 0; i < m.length; i++)
+			T = T + m[i];
+		return T;
+	}
+
+	/**
+	 * Calculates the inner product of two int vectors
+	 * 
+	 * @param m1 First vector
+	 * @param m2 Second vector
+	 * @return sum of m1[i]*m2[i]
+	 */
+	public static long innerProduct(int[] m1, int[] m2) {
+		long T = 0;
+		for (int i = 0; i < m1.length; i++)
+			T = T + m1[i] * m2[i];
+		return T;
+	}
+
 	/**
 	 * Calculates the total of all values in a double matrix
 	 * 
@@ -450,6 +477,38 @@ public class Matrix {
 		return result;
 	}
 
+	/**
+	 * Gets the first dimension of a 3-d double matrix as a vector
+	 * 
+	 * @param m The matrix
+	 * @param d2 Second dimension
+	 * @param d3 Third dimension
+	 * @return Vector of m[*][d2][d3]
+	 */
+	public static double[] extractVector(double[][][] m, int d2, int d3) {
+		double[] result = new double[m.length];
+		for (int i = 0; i < m.length; i++) {
+			result[i] = m[i][d2][d3];
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the first dimension of a 3-d int matrix as a vector
+	 * 
+	 * @param m The matrix
+	 * @param d2 Second dimension
+	 * @param d3 Third dimension
+	 * @return Vector of m[*][d2][d3]
+	 */
+	public static int[] extractVector(int[][][] m, int d2, int d3) {
+		int[] result = new int[m.length];
+		for (int i = 0; i < m.length; i++) {
+			result[i] = m[i][d2][d3];
+		}
+		return result;
+	}
+
 	/**
 	 * Performs linear transformation on a double matrix
 	 * 
@@ -0,0 +1,210 @@
+package mrmc.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Rows of observation data in compact form, one entry per row after "BEGIN DATA:" <br>
+ * <br>
+ * Each row holds a reader, a case and a modality as integer codes and the score as a double.
+ * The codes number the distinct IDs in order of first appearance;
+ * {@link #readerNames}, {@link #caseNames} and {@link #modalityNames} turn a code back into its ID.
+ * Truth rows have the reader ID "truth" or "-1", and their score is the truth. <br>
+ * <br>
+ * Filled by {@link mrmc.core.ImrmcReader} while reading an .imrmc file, by
+ * {@link #addAll(ObserverTable)} from the tables of the chunks of a large file, or by
+ * {@link #fromStrings(String[][])} from {@link mrmc.core.InputFile#observerData}.
+ * Read by {@link mrmc.core.InputFile#verifySizesAndGetIDs(boolean, boolean)} and
+ * {@link mrmc.core.InputFile#processScoresAndTruth(boolean)}.
+ */
+public class ObserverTable {
+
+	/**
+	 * Number of rows
+	 */
+	public int Nrows = 0;
+	/**
+	 * Reader, case and modality codes of each row
+	 */
+	public int[] reader = new int[1024], caseID = new int[1024], modality = new int[1024];
+	/**
+	 * Score of each row
+	 */
+	public double[] score = new double[1024];
+	/**
+	 * The IDs of each code
+	 */
+	public ArrayList<String> readerNames = new ArrayList<String>(),
+			caseNames = new ArrayList<String>(), modalityNames = new ArrayList<String>();
+
+	final Dictionary readerCodes = new Dictionary(readerNames);
+	final Dictionary caseCodes = new Dictionary(caseNames);
+	final Dictionary modalityCodes = new Dictionary(modalityNames);
+
+	/**
+	 * Converts rows of observation data given as strings
+	 *
+	 * @param observerData rows of reader_id, case_id, modality_id, score; the first null row ends the data
+	 * @return the compact rows
+	 * @throws NumberFormatException if a score is not a number
+	 */
+	public static ObserverTable fromStrings(String[][] observerData) {
+
+		ObserverTable table = new ObserverTable();
+		for (int i = 0; i < observerData.length; i++) {
+			if (observerData[i][0] == null) break;
+			table.add(table.readerCodes.code(observerData[i][0]),
+					table.caseCodes.code(observerData[i][1]),
+					table.modalityCodes.code(observerData[i][2]),
+					Double.valueOf(observerData[i][3]).doubleValue());
+		}
+		return table;
+
+	}
+
+	/**
+	 * Appends a row
+	 */
+	void add(int readerCode, int caseCode, int modalityCode, double value) {
+
+		if (Nrows == score.length) ensureCapacity(2 * Nrows);
+		reader[Nrows] = readerCode;
+		caseID[Nrows] = caseCode;
+		modality[Nrows] = modalityCode;
+		score[Nrows] = value;
+		Nrows++;
+
+	}
+
+	/**
+	 * Appends the rows of another table, translating its codes to the codes of this table.
+	 * IDs new to this table get codes in their order of first appearance in part,
+	 * so adding the tables of consecutive chunks of a file gives the same codes as reading it in one pass.
+	 *
+	 * @param part rows to append
+	 */
+	void addAll(ObserverTable part) {
+
+		int[] readerMap = translate(part.readerNames, readerCodes);
+		int[] caseMap = translate(part.caseNames, caseCodes);
+		int[] modalityMap = translate(part.modalityNames, modalityCodes);
+		ensureCapacity(Nrows + part.Nrows);
+		for (int i = 0; i < part.Nrows; i++) {
+			reader[Nrows + i] = readerMap[part.reader[i]];
+			caseID[Nrows + i] = caseMap[part.caseID[i]];
+			modality[Nrows + i] = modalityMap[part.modality[i]];
+		}
+		System.arraycopy(part.score, 0, score, Nrows, part.Nrows);
+		Nrows = Nrows + part.Nrows;
+
+	}
+
+	/**
+	 * Grows the row arrays to hold at least length rows
+	 */
+	void ensureCapacity(int length) {
+
+		if (length <= score.length) return;
+		reader = Arrays.copyOf(reader, length);
+		caseID = Arrays.copyOf(caseID, length);
+		modality = Arrays.copyOf(modality, length);
+		score = Arrays.copyOf(score, length);
+
+	}
+
+	/**
+	 * @return the code in dictionary of each name
+	 */
+	private static int[] translate(ArrayList<String> names, Dictionary dictionary) {
+		int[] codes = new int[names.size()];
+		for (int c = 0; c < codes.length; c++)
+			codes[c] = dictionary.code(names.get(c));
+		return codes;
+	}
+
+	/**
+	 * @return true if row i defines the truth of a case
+	 */
+	public boolean isTruth(int i) {
+		String readerID = readerNames.get(reader[i]);
+		return readerID.equals("truth") || readerID.equals("-1");
+	}
+
+	/**
+	 * Hash table from IDs to codes. IDs can be looked up from a range of a char array,
+	 * so a String is only created for a new ID.
+	 */
+	static class Dictionary {
+		final ArrayList<String> names;
+		int[] slots = new int[64];
+		int[] hashes = new int[0];
+
+		Dictionary(ArrayList<String> names) {
+			this.names = names;
+			Arrays.fill(slots, -1);
+		}
+
+		/**
+		 * @return the code of the ID in buf[from..to)
+		 */
+		int code(char[] buf, int from, int to) {
+			int hash = 0;
+			for (int k = from; k < to; k++)
+				hash = 31 * hash + buf[k];
+			int mask = slots.length - 1;
+			for (int s = mix(hash) & mask; ; s = (s + 1) & mask) {
+				int code = slots[s];
+				if (code < 0) {
+					return insert(s, hash, new String(buf, from, to - from));
+				}
+				if (hashes[code] == hash && equals(names.get(code), buf, from, to)) {
+					return code;
+				}
+			}
+		}
+
+		/**
+		 * @return the code of the ID
+		 */
+		int code(String id) {
+			char[] buf = id.toCharArray();
+			return code(buf, 0, buf.length);
+		}
+
+		private int insert(int slot, int hash, String id) {
+			int code = names.size();
+			names.add(id);
+			if (code == hashes.length)
+				hashes = Arrays.copyOf(hashes, Math.max(16, 2 * code));
+			hashes[code] = hash;
+			slots[slot] = code;
+			if (2 * names.size() > slots.length) {
+				// rehash into a table twice as large
+				slots = new int[2 * slots.length];
+				Arrays.fill(slots, -1);
+				int mask = slots.length - 1;
+				for (int c = 0; c < names.size(); c++) {
+					int s = mix(hashes[c]) & mask;
+					while (slots[s] >= 0)
+						s = (s + 1) & mask;
+					slots[s] = c;
+				}
+			}
+			return code;
+		}
+
+		private static int mix(int hash) {
+			hash ^= (hash >>> 16);
+			hash *= 0x85ebca6b;
+			return hash ^ (hash >>> 13);
+		}
+
+		private static boolean equals(String id, char[] buf, int from, int to) {
+			if (id.length() != to - from) return false;
+			for (int k = 0; k < id.length(); k++)
+				if (id.charAt(k) != buf[from + k]) return false;
+			return true;
+		}
+	}
+
+}
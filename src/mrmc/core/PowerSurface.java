@@ -0,0 +1,417 @@
+package mrmc.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import umontreal.iro.lecuyer.probdist.BetaDist;
+import umontreal.iro.lecuyer.probdist.FisherFDist;
+import umontreal.iro.lecuyer.probdist.NormalDist;
+
+/**
+ * Variance, degrees of freedom and power of new trials over a grid of numbers of readers and cases,
+ * from the BDG moments of a reader study. <br>
+ * <br>
+ * Does for each size what {@link mrmc.core.DBRecord#DBRecordSizeFill} and {@link mrmc.core.StatTest} do for one,
+ * without the {@link mrmc.core.DBRecord} of the new trial: the moments, the study design and the parameters
+ * of the test are copied when the surface is made, and each size only reads them. So the sizes are done
+ * in parallel on {@link #numWorkers} threads, and the surface can be shared. <br>
+ * <br>
+ * It is faster than a {@link mrmc.core.StatTest} per size:
+ * -- the cutoffs of the F tests are found once for each degree of freedom below 50 <br>
+ * -- the series of the non-central F cdf stops once what is left of it is below {@link #TAIL},
+ * instead of running to 500 terms <br>
+ * -- nothing is printed <br>
+ * <br>
+ * CALLED FROM: {@link mrmc.chart.exploreExpSize}
+ */
+public class PowerSurface {
+
+	/**
+	 * Number of threads of {@link #grid(int[], int[], int[])}. Default: the number of available processors
+	 */
+	public static int numWorkers = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Largest term of the non-central F cdf left out
+	 */
+	public static final double TAIL = 1E-15;
+
+	/**
+	 * Degrees of freedom from which the F test is approximated by the normal test, as {@link mrmc.core.StatTest#PowerFtest}
+	 */
+	static final int DF_NORMAL = 50;
+	private static final int INFINITY = 500;
+
+	public final int selectedMod;
+	public final int flagMLE;
+	public final double sigLevel, effSize;
+	/**
+	 * Study design: number of groups of a split-plot study, and 1 if the readers, normal cases or disease cases
+	 * are paired across modalities, 0 if not, as {@link mrmc.core.DBRecord#genBDGSplitUnpairedCoeff}
+	 */
+	public final int Ngroup, Preader, Pnormal, Pdisease;
+
+	private final double[][] BDG = new double[3][8];
+	private final double[][] BDGbias = new double[3][8];
+	/**
+	 * Hillis inputs of the reader study, null OR if it has none
+	 */
+	private final double[][] OR;
+	private final double ms_tr, ms_r;
+	private final long NcaseStat;
+
+	private final double cutoffNormal;
+	private final double[] cutoffF = new double[DF_NORMAL];
+
+	/**
+	 * Variance, degrees of freedom and power of a new trial of one size
+	 */
+	public static class Cell {
+		public final long Nreader, Nnormal, Ndisease;
+		public double varA, varB, totalVar, SE;
+		public double DF_BDG, lambdaBDG, cutoffBDG, powerBDG;
+		public double DF_Hillis, lambdaHillis, cutoffHillis, powerHillis;
+		public double cutoffNormal, powerNormal;
+
+		private Cell(long Nreader, long Nnormal, long Ndisease) {
+			this.Nreader = Nreader;
+			this.Nnormal = Nnormal;
+			this.Ndisease = Ndisease;
+		}
+	}
+
+	/**
+	 * Surface of fully-crossed trials
+	 *
+	 * @param DBRecordStat the variance analysis of the reader study
+	 * @param sigLevel significance level
+	 * @param effSize effect size
+	 */
+	public PowerSurface(DBRecord DBRecordStat, double sigLevel, double effSize) {
+		this(DBRecordStat, sigLevel, effSize, 1, 1, 1, 1);
+	}
+
+	/**
+	 * Surface with the MLE setting of the reader study
+	 *
+	 * @param DBRecordStat the variance analysis of the reader study
+	 * @param sigLevel significance level
+	 * @param effSize effect size
+	 * @param Ngroup number of groups of a split-plot study
+	 * @param Preader 1 if the readers are paired across modalities, 0 if not
+	 * @param Pnormal 1 if the normal cases are paired across modalities, 0 if not
+	 * @param Pdisease 1 if the disease cases are paired across modalities, 0 if not
+	 */
+	public PowerSurface(DBRecord DBRecordStat, double sigLevel, double effSize,
+			int Ngroup, int Preader, int Pnormal, int Pdisease) {
+		this(DBRecordStat, sigLevel, effSize, Ngroup, Preader, Pnormal, Pdisease, DBRecordStat.flagMLE);
+	}
+
+	/**
+	 * @param DBRecordStat the variance analysis of the reader study
+	 * @param sigLevel significance level
+	 * @param effSize effect size
+	 * @param Ngroup number of groups of a split-plot study
+	 * @param Preader 1 if the readers are paired across modalities, 0 if not
+	 * @param Pnormal 1 if the normal cases are paired across modalities, 0 if not
+	 * @param Pdisease 1 if the disease cases are paired across modalities, 0 if not
+	 * @param flagMLE 1 if the variance of a new trial is the MLE one, from BDGbias, 0 if not
+	 */
+	public PowerSurface(DBRecord DBRecordStat, double sigLevel, double effSize,
+			int Ngroup, int Preader, int Pnormal, int Pdisease, int flagMLE) {
+
+		selectedMod = DBRecordStat.selectedMod;
+		this.flagMLE = flagMLE;
+		this.sigLevel = sigLevel;
+		this.effSize = effSize;
+		this.Ngroup = Ngroup;
+		this.Preader = Preader;
+		this.Pnormal = Pnormal;
+		this.Pdisease = Pdisease;
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 8; j++) {
+				BDG[i][j] = DBRecordStat.BDG[i][j];
+				BDGbias[i][j] = DBRecordStat.BDGbias[i][j];
+			}
+		}
+		OR = DBRecordStat.OR == null ? null : Matrix.copy(DBRecordStat.OR);
+		ms_tr = DBRecordStat.ms_tr;
+		ms_r = selectedMod == 1 ? DBRecordStat.ms_rB : DBRecordStat.ms_rA;
+		NcaseStat = DBRecordStat.Nnormal + DBRecordStat.Ndisease;
+
+		cutoffNormal = NormalDist.inverseF(0, 1, 1 - sigLevel / 2.0);
+		for (int df = 2; df < DF_NORMAL; df++) {
+			cutoffF[df] = new FisherFDist(1, df).inverseF(1 - sigLevel);
+		}
+
+	}
+
+	/**
+	 * @return true if the readers and cases can be evenly distributed into each modality and group
+	 */
+	public boolean isValid(long Nreader, long Nnormal, long Ndisease) {
+		return Nreader % (Ngroup * (2 - Preader)) == 0
+				&& Nnormal % (Ngroup * (2 - Pnormal)) == 0
+				&& Ndisease % (Ngroup * (2 - Pdisease)) == 0;
+	}
+
+	/**
+	 * @param Nreader number of readers of the new trial
+	 * @param Nnormal number of normal cases of the new trial
+	 * @param Ndisease number of disease cases of the new trial
+	 * @return the variance, degrees of freedom and power of the new trial
+	 * @throws IllegalArgumentException if the readers or cases cannot be evenly distributed into each modality and group
+	 */
+	public Cell cell(long Nreader, long Nnormal, long Ndisease) {
+
+		if (Nreader % (Ngroup * (2 - Preader)) != 0) {
+			throw new IllegalArgumentException(
+					"The sizing panel needs the number of readers \r\n to be evenly distributed into each modality and group");
+		}
+		if (Nnormal % (Ngroup * (2 - Pnormal)) != 0) {
+			throw new IllegalArgumentException(
+					"The sizing panel needs the number of normal cases \r\n to be evenly distributed into each modality and group");
+		}
+		if (Ndisease % (Ngroup * (2 - Pdisease)) != 0) {
+			throw new IllegalArgumentException(
+					"The sizing panel needs the number of disease cases \r\n to be evenly distributed into each modality and group");
+		}
+
+		Cell cell = new Cell(Nreader, Nnormal, Ndisease);
+		double[][] BDGcoeff;
+		if (Ngroup == 1 && Preader == 1 && Pnormal == 1 && Pdisease == 1) {
+			BDGcoeff = DBRecord.genBDGCoeff(Nreader, Nnormal, Ndisease);
+		} else {
+			BDGcoeff = DBRecord.genBDGSplitUnpairedCoeff(Nreader, Nnormal, Ndisease, Ngroup, Preader, Pnormal, Pdisease);
+		}
+
+		// as DBRecord.BDGforSizePanel
+		double[][] BDGbiasSize = new double[4][8];
+		double totalVar = 0.0, totalVarMLE = 0.0;
+		for (int i = 0; i < 8; i++) {
+			cell.varA += BDGcoeff[0][i] * BDG[0][i];
+			cell.varB += BDGcoeff[1][i] * BDG[1][i];
+			totalVar += BDGcoeff[3][i] * ((BDG[0][i] * BDGcoeff[0][i])
+					+ (BDG[1][i] * BDGcoeff[1][i])
+					- 2.0 * (BDG[2][i] * BDGcoeff[2][i]));
+			BDGbiasSize[0][i] = BDGbias[0][i];
+			BDGbiasSize[1][i] = BDGbias[1][i];
+			BDGbiasSize[2][i] = BDGbias[2][i];
+			BDGbiasSize[3][i] = (BDGbias[0][i] * BDGcoeff[0][i])
+					+ (BDGbias[1][i] * BDGcoeff[1][i])
+					- 2.0 * (BDGbias[2][i] * BDGcoeff[2][i]);
+			totalVarMLE += BDGcoeff[3][i] * BDGbiasSize[3][i];
+		}
+		cell.totalVar = flagMLE == 1 ? totalVarMLE : totalVar;
+		cell.SE = Math.sqrt(cell.totalVar);
+
+		// as StatTest(sigLevel, effSize, DBRecordStat, DBRecordSize)
+		double tStatCalc = effSize / Math.sqrt(cell.totalVar);
+		double[][] BCKcoeff = DBRecord.genBCKCoeff(BDGcoeff);
+		cell.DF_BDG = DF_BDGms(cell.totalVar, DBRecord.BDG2BCK(BDGbiasSize, BCKcoeff), BCKcoeff);
+		cell.lambdaBDG = tStatCalc * tStatCalc;
+		cell.cutoffNormal = cutoffNormal;
+		cell.powerNormal = 1 - NormalDist.cdf(tStatCalc, 1, cutoffNormal);
+		double[] result = powerF(cell.DF_BDG, cell.lambdaBDG);
+		cell.cutoffBDG = result[0];
+		cell.powerBDG = result[1];
+
+		if (OR == null) {
+			cell.DF_Hillis = Double.NaN;
+			cell.lambdaHillis = Double.NaN;
+			cell.cutoffHillis = Double.NaN;
+			cell.powerHillis = Double.NaN;
+			return cell;
+		}
+		double dnr = Nreader;
+		double resizeFactor = ((double) NcaseStat) / ((double) (Nnormal + Ndisease));
+		double var_r, var_tr, bracket1, bracket2, variance;
+		if (selectedMod == 3) {
+			var_tr = ms_tr - OR[3][5] + OR[3][2] + Math.max(OR[3][3] - OR[3][4], 0);
+			bracket1 = OR[3][5] - OR[3][2] + (dnr - 1.0) * Math.max((OR[3][3] - OR[3][4]), 0);
+			variance = 2.0 / dnr * (var_tr + resizeFactor * bracket1);
+			cell.lambdaHillis = effSize * effSize / variance;
+			bracket2 = OR[3][5] - OR[3][2] - Math.max((OR[3][3] - OR[3][4]), 0);
+			cell.DF_Hillis = (dnr - 1.0) * dnr * dnr * variance * variance / 2.0 / 2.0
+					/ (var_tr + resizeFactor * bracket2) / (var_tr + resizeFactor * bracket2);
+		} else {
+			var_r = ms_r - OR[selectedMod][5] + OR[selectedMod][3];
+			bracket1 = OR[selectedMod][5] + (dnr - 1) * OR[selectedMod][3];
+			variance = 1.0 / dnr * (var_r + resizeFactor * bracket1);
+			cell.lambdaHillis = effSize * effSize / variance;
+			bracket2 = OR[selectedMod][5] - OR[selectedMod][3];
+			cell.DF_Hillis = (dnr - 1.0) * dnr * dnr * variance * variance
+					/ (var_r + resizeFactor * bracket2) / (var_r + resizeFactor * bracket2);
+		}
+		if (cell.DF_Hillis < 2) cell.DF_Hillis = 2;
+		result = powerF(cell.DF_Hillis, cell.lambdaHillis);
+		cell.cutoffHillis = result[0];
+		cell.powerHillis = result[1];
+		return cell;
+
+	}
+
+	/**
+	 * Cells of all the sizes of a grid, done in parallel on {@link #numWorkers} threads
+	 *
+	 * @param Nreader numbers of readers
+	 * @param Nnormal numbers of normal cases
+	 * @param Ndisease numbers of disease cases
+	 * @return [i][j][k] the cell of Nreader[i], Nnormal[j] and Ndisease[k]
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 * @throws IllegalArgumentException if a size is not valid, see {@link #isValid(long, long, long)}
+	 */
+	public Cell[][][] grid(final int[] Nreader, final int[] Nnormal, final int[] Ndisease) throws InterruptedException {
+
+		final Cell[][][] cells = new Cell[Nreader.length][Nnormal.length][Ndisease.length];
+		final int count = Nreader.length * Nnormal.length * Ndisease.length;
+		final int workers = Math.max(1, Math.min(numWorkers, count));
+		if (count == 0) return cells;
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		try {
+			ArrayList<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (int w = 0; w < workers; w++) {
+				final int worker = w;
+				futures.add(pool.submit(new Callable<Object>() {
+					public Object call() {
+						// interleaved, as the cells of few readers take the longest
+						for (int index = worker; index < count; index += workers) {
+							int k = index % Ndisease.length;
+							int j = index / Ndisease.length % Nnormal.length;
+							int i = index / Ndisease.length / Nnormal.length;
+							cells[i][j][k] = cell(Nreader[i], Nnormal[j], Ndisease[k]);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return cells;
+
+	}
+
+	/**
+	 * Degrees of freedom by BDG, as {@link mrmc.core.StatTest#calcDF_BDGms(DBRecord)} without the warnings
+	 */
+	private double DF_BDGms(double totalVar, double[][] tempBCKbias, double[][] tempBCKcoeff) {
+
+		double DFnormalA  = Math.round(1.0/tempBCKcoeff[0][0] - 1.0);
+		double DFnormalB  = Math.round(1.0/tempBCKcoeff[1][0] - 1.0);
+		double DFdiseaseA = Math.round(1.0/tempBCKcoeff[0][1] - 1.0);
+		double DFdiseaseB = Math.round(1.0/tempBCKcoeff[1][1] - 1.0);
+		double DFreaderA  = Math.round(1.0/tempBCKcoeff[0][3] - 1.0);
+		double DFreaderB  = Math.round(1.0/tempBCKcoeff[1][3] - 1.0);
+
+		double MSnormalA  = tempBCKbias[0][0];
+		double MSnormalB  = tempBCKbias[1][0];
+		double MSnormal   = tempBCKbias[0][0] + tempBCKbias[1][0] - 2.0*tempBCKbias[2][0];
+		double MSdiseaseA = tempBCKbias[0][1];
+		double MSdiseaseB = tempBCKbias[1][1];
+		double MSdisease  = tempBCKbias[0][1] + tempBCKbias[1][1] - 2.0*tempBCKbias[2][1];
+		double MSreaderA  = tempBCKbias[0][3];
+		double MSreaderB  = tempBCKbias[1][3];
+		double MSreader   = tempBCKbias[0][3] + tempBCKbias[1][3] - 2.0*tempBCKbias[2][3];
+
+		double DF_denom = 0.0, DF_min = 0.0;
+		if (selectedMod == 0) {
+			DF_denom =
+					+ Math.pow(MSnormalA  / DFnormalA,  2) / DFnormalA
+					+ Math.pow(MSdiseaseA / DFdiseaseA, 2) / DFdiseaseA
+					+ Math.pow(MSreaderA  / DFreaderA,  2) / DFreaderA;
+			DF_min = Math.min(Math.min(DFnormalA, DFdiseaseA), DFreaderA);
+		}
+		if (selectedMod == 1) {
+			DF_denom =
+					+ Math.pow(MSnormalB  / DFnormalB,  2) / DFnormalB
+					+ Math.pow(MSdiseaseB / DFdiseaseB, 2) / DFdiseaseB
+					+ Math.pow(MSreaderB  / DFreaderB,  2) / DFreaderB;
+			DF_min = Math.min(Math.min(DFnormalB, DFdiseaseB), DFreaderB);
+		}
+		if (selectedMod == 3) {
+			double DFnormal   = Math.min(DFnormalA, DFnormalB);
+			double DFdisease  = Math.min(DFdiseaseA, DFdiseaseB);
+			double DFreader   = Math.min(DFreaderA, DFreaderB);
+			DF_min = Math.min(Math.min(DFnormal, DFdisease), DFreader);
+			if (tempBCKcoeff[2][0] > 0.0) {
+				DF_denom += Math.pow(MSnormal / DFnormal, 2) / DFnormal;
+			} else {
+				DF_denom += Math.pow(MSnormalA / DFnormalA, 2) / DFnormalA
+						+ Math.pow(MSnormalB / DFnormalB, 2) / DFnormalB;
+			}
+			if (tempBCKcoeff[2][1] > 0.0) {
+				DF_denom += Math.pow(MSdisease / DFdisease, 2) / DFdisease;
+			} else {
+				DF_denom += Math.pow(MSdiseaseA / DFdiseaseA, 2) / DFdiseaseA
+						+ Math.pow(MSdiseaseB / DFdiseaseB, 2) / DFdiseaseB;
+			}
+			if (tempBCKcoeff[2][3] > 0.0) {
+				DF_denom += Math.pow(MSreader / DFreader, 2) / DFreader;
+			} else {
+				DF_denom += Math.pow(MSreaderA / DFreaderA, 2) / DFreaderA
+						+ Math.pow(MSreaderB / DFreaderB, 2) / DFreaderB;
+			}
+		}
+
+		double DF_BDG = Math.pow(totalVar, 2) / DF_denom;
+		// According to Gaylor1969_Technometrics_v4p691, there is a minimum DF
+		if (DF_BDG < DF_min) DF_BDG = DF_min;
+		if (DF_BDG < 2) DF_BDG = 2;
+		return DF_BDG;
+
+	}
+
+	/**
+	 * Power of the F test, as {@link mrmc.core.StatTest#PowerFtest(double, double)}
+	 *
+	 * @return [0] cutoff, [1] power
+	 */
+	private double[] powerF(double df, double lambda) {
+
+		double cutoff, power;
+		if (df >= DF_NORMAL) {
+			cutoff = cutoffNormal;
+			power = 1 - NormalDist.cdf(Math.sqrt(lambda), 1, cutoff);
+		} else {
+			cutoff = cutoffF[(int) df];
+			power = 1 - cdfNonCentralF(1, (int) df - 1, lambda, cutoff);
+		}
+		return new double[] { cutoff, power };
+
+	}
+
+	/**
+	 * Non-central F cdf, as {@link mrmc.core.StatTest#cdfNonCentralF(int, int, double, double)}:
+	 * the Poisson(delta/2) mixture of beta cdfs. Each beta cdf is at most 1, so once the Poisson weights decrease,
+	 * the rest of the series is below the current weight times r / (1 - r), r the ratio of two weights,
+	 * and the series stops when that is below {@link #TAIL}
+	 */
+	private static double cdfNonCentralF(int df1, int df2, double delta, double x) {
+
+		double halfDelta = 0.5 * delta;
+		double weight = Math.exp(-halfDelta);
+		double cdf = 0;
+		for (int j = 0; j < INFINITY; j++) {
+			if (j > 0) weight *= halfDelta / j;
+			cdf += weight * BetaDist.cdf(df1 / 2.0 + j, df2 / 2.0, df1 * x / (df2 + df1 * x));
+			double ratio = halfDelta / (j + 1);
+			if (ratio < 1 && weight * ratio / (1 - ratio) < TAIL) break;
+		}
+		return cdf;
+
+	}
+
+}
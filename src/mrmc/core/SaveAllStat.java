@@ -0,0 +1,227 @@
+package mrmc.core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import mrmc.chart.ROCCurveSeries;
+import mrmc.chart.exportToFile;
+
+/**
+ * Analysis of every modality and every pair of modalities of a reader study, exported as csv files. <br>
+ * <br>
+ * This is the work of {@link mrmc.gui.GUInterface.SaveAllStatListener} without the GUI,
+ * so that {@link mrmc.core.BatchAnalysis} can analyze several input files at the same time. <br>
+ * -- {@link #analyzeRawData()} analyzes an .imrmc file <br>
+ * -- {@link #analyzeSummary(DBRecord, String, String)} analyzes an .omrmc file <br>
+ * -- {@link #write(File)} writes the reports to an output folder <br>
+ * <br>
+ * These fields are not private and are accessed directly, like a structure.
+ */
+public class SaveAllStat {
+
+	/**
+	 * The input file being analyzed
+	 */
+	public InputFile InputFile1;
+	/**
+	 * Date and time written in each row of the reports
+	 */
+	public String fileTime;
+	/**
+	 * True if the reports come from raw data, so the per-reader results and ROC curves are included
+	 */
+	public boolean rawData = false;
+	/**
+	 * Contents of statAnalysis.csv, statAnalysisMLE.csv, AUCperReader.csv, readerCovariance.csv and ROCcurves.csv
+	 */
+	public String AllStatreport, AllStatMLEreport, AllAUCsreport, readerCovReport, AllROCreport;
+	/**
+	 * Contents of BDGtable.csv, BCKtable.csv, DBMtable.csv, ORtable.csv and MStable.csv
+	 */
+	public String BDGout, BCKout, DBMout, ORout, MSout;
+
+	private DBRecord DBRecordStatAll = new DBRecord();
+
+	/**
+	 * Starts the reports with their headers
+	 *
+	 * @param InputFileTemp a loaded input file
+	 * @param fileTimeTemp date and time written in each row of the reports
+	 */
+	public SaveAllStat(InputFile InputFileTemp, String fileTimeTemp) {
+
+		InputFile1 = InputFileTemp;
+		fileTime = fileTimeTemp;
+		String statHead =  "inputFile,date,iMRMCversion,NR,N0,N1,modalityA,modalityB,UstatOrMLE,AUCA,varAUCA,AUCB,varAUCB,AUCAminusAUCB,varAUCAminusAUCB,"
+				+"pValueNormal,botCInormal,topCInormal,rejectNormal,dfBDG,pValueBDG,botCIBDG,topCIBDG,rejectBDG,dfHillis,pValueHillis,botCIHillis,topCIHillis,rejectHillis";
+		BDGout =  "modalityA,modalityB,UstatOrMLE,compOrCoeff,M1,M2,M3,M4,M5,M6,M7,M8" +"\r\n";
+		BCKout =  "modalityA,modalityB,UstatOrMLE,Moments,N,D,ND,R,NR,DR,RND" +"\r\n";
+		DBMout =  "modalityA,modalityB,UstatOrMLE,Components,R,C,RC,TR,TC,TRC" +"\r\n";
+		ORout =  "modalityA,modalityB,UstatOrMLE,Components,R,TR,COV1,COV2,COV3,ERROR" +"\r\n";
+		MSout =  "modalityA,modalityB,UstatOrMLE,Components,R,C,RC,MR,MC,MRC" +"\r\n";
+		AllStatreport = statHead+"\r\n";
+		AllStatMLEreport = statHead+"\r\n";
+		AllAUCsreport = "inputFile,date,iMRMCversion,readerID,N0,N1,modalityA,modalityB,AUCA,varAUCA,AUCB,varAUCB,AUCAminusAUCB,varAUCAminusAUCB,"
+				+"pValueNormal,botCInormal,topCInormal,rejectNormal,dfBDG,pValueBDG,botCIBDG,topCIBDG,rejectBDG,dfHillis,pValueHillis,botCIHillis,topCIHillis,rejectHillis"+"\r\n";
+		readerCovReport = "inputFile,data,iMRMCversion" +"\r\n" + InputFile1.fileName + "," + fileTime + ',' + MRMC.versionname + "\r\n";
+		AllROCreport = "";
+
+	}
+
+	/**
+	 * Analyzes each modality and each pair of modalities of raw data,
+	 * with U-statistics and with MLE, and builds the ROC curves of each modality
+	 */
+	public void analyzeRawData() {
+
+		rawData = true;
+		// Create a list for all combination of modality
+		int numMod = InputFile1.getModalityIDs().size();
+		int modCombination  = numMod*(numMod-1)/2+numMod;      // find how many combination in total
+		String[][] modCombinationList = new String[modCombination] [2];
+		String[] rocMod = new String[numMod];
+		int count = 0;
+		for (String ModalityID : InputFile1.getModalityIDs()) {
+			modCombinationList[count][0]= ModalityID;
+			modCombinationList[count][1]= "NO_MOD";
+			rocMod[count] = ModalityID;
+			count++;
+		}
+		for (int i=0; i<numMod-1; i++) {
+			for(int j=i+1 ; j<numMod; j++){
+				modCombinationList[count][0]= modCombinationList[i][0];
+				modCombinationList[count][1]= modCombinationList[j][0];
+				count++;
+			}
+		}
+
+		//Do simulation for each group of modality, save Stat and reader AUC result
+		for (int i = 0; i<count; i ++ ){
+			DBRecordStatAll.flagMLE = 0;
+			DBRecordStatAll.modalityA = modCombinationList[i][0];
+			DBRecordStatAll.modalityB = modCombinationList[i][1];
+			if (i<numMod){
+				DBRecordStatAll.selectedMod = 0;
+			}else{
+				DBRecordStatAll.selectedMod = 3;
+			}
+			// calculate and save Ustat result
+			DBRecordStatAll.DBRecordStatFill(InputFile1, DBRecordStatAll);
+			AllStatreport = exportToFile.exportStat(AllStatreport, DBRecordStatAll, fileTime);
+			AllAUCsreport = exportToFile.exportReaders(AllAUCsreport, DBRecordStatAll,InputFile1, fileTime);
+			readerCovReport =  exportToFile.exportReadersCov(readerCovReport, DBRecordStatAll,InputFile1);
+			savetable();
+			// calculate and save MLE result
+			DBRecordStatAll.flagMLE = 1;
+			DBRecordStatAll.DBRecordStatFill(InputFile1, DBRecordStatAll);
+			AllStatMLEreport = exportToFile.exportStat(AllStatMLEreport, DBRecordStatAll, fileTime);
+			savetable();
+		}
+
+		//Get ROC result
+		ROCCurveSeries roc = new ROCCurveSeries(InputFile1.generateROCpoints(rocMod));
+		roc.addData(InputFile1.generatePooledROC(rocMod), "Pooled Average");
+		AllROCreport = exportToFile.exportROC(roc.seriesCollection,AllROCreport);
+
+	}
+
+	/**
+	 * Analyzes modality A, modality B and their difference from summary statistics,
+	 * with U-statistics and with MLE. A modality that is null or "NO_MOD" is skipped.
+	 *
+	 * @param DBRecordStat summary statistics read from an .omrmc file
+	 * @param tempModA modality A
+	 * @param tempModB modality B
+	 */
+	public void analyzeSummary(DBRecord DBRecordStat, String tempModA, String tempModB) {
+
+		rawData = false;
+		DBRecordStatAll.AUCs = Matrix.copy(DBRecordStat.AUCs);
+		DBRecordStatAll.AUCsReaderAvg = Matrix.copy(DBRecordStat.AUCsReaderAvg);
+		DBRecordStatAll.LoadBDG = Matrix.copy(DBRecordStat.LoadBDG);
+		DBRecordStatAll.Ndisease = DBRecordStat.Ndisease;
+		DBRecordStatAll.NdiseaseDB = DBRecordStat.NdiseaseDB;
+		DBRecordStatAll.Nnormal = DBRecordStat.Nnormal;
+		DBRecordStatAll.NnormalDB = DBRecordStat.NnormalDB;
+		DBRecordStatAll.Nreader = DBRecordStat.Nreader;
+		DBRecordStatAll.NreaderDB = DBRecordStat.NreaderDB;
+		DBRecordStatAll.InputFile1 = InputFile1;
+		// Analysis modality A
+		if (tempModA!=null&&!tempModA.equals("NO_MOD")){
+			analyzeSummaryModality(tempModA, "NO_MOD", 0);
+		}
+		// Analysis modality B
+		if (tempModB!=null&&!tempModB.equals("NO_MOD")){
+			analyzeSummaryModality("NO_MOD", tempModB, 1);
+		}
+		// Analysis modality A and B
+		if (tempModA!=null&&tempModB!=null&&!tempModA.equals("NO_MOD")&&!tempModB.equals("NO_MOD")){
+			analyzeSummaryModality(tempModA, tempModB, 3);
+		}
+
+	}
+
+	private void analyzeSummaryModality(String modalityA, String modalityB, int selectedMod) {
+
+		DBRecordStatAll.modalityA = modalityA;
+		DBRecordStatAll.modalityB = modalityB;
+		DBRecordStatAll.selectedMod = selectedMod;
+		DBRecordStatAll.flagMLE = 0;
+		DBRecordStatAll.DBRecordStatFillSummary(DBRecordStatAll);
+		AllStatreport = exportToFile.exportStat(AllStatreport, DBRecordStatAll, fileTime);
+		savetable();
+		DBRecordStatAll.flagMLE = 1;
+		DBRecordStatAll.DBRecordStatFillSummary(DBRecordStatAll);
+		AllStatMLEreport = exportToFile.exportStat(AllStatMLEreport, DBRecordStatAll, fileTime);
+		savetable();
+
+	}
+
+	private void savetable() {
+		// save tables result
+		BDGout = exportToFile.exportTableBDG(BDGout,DBRecordStatAll);
+		BCKout = exportToFile.exportTableBCK(BCKout,DBRecordStatAll);
+		DBMout = exportToFile.exportTableDBM(DBMout,DBRecordStatAll);
+		ORout = exportToFile.exportTableOR(ORout,DBRecordStatAll);
+		MSout = exportToFile.exportTableMS(MSout,DBRecordStatAll);
+	}
+
+	/**
+	 * Writes the reports to the output folder, creating it if needed.
+	 * AUCperReader.csv, readerCovariance.csv and ROCcurves.csv are only written for raw data.
+	 *
+	 * @param outputDir output folder
+	 * @throws IOException
+	 */
+	public void write(File outputDir) throws IOException {
+
+		if(!outputDir.exists() && !outputDir.isDirectory())
+			outputDir.mkdirs();
+		writeReport(new File(outputDir, "statAnalysis.csv"), AllStatreport);
+		writeReport(new File(outputDir, "statAnalysisMLE.csv"), AllStatMLEreport);
+		writeReport(new File(outputDir, "BDGtable.csv"), BDGout);
+		writeReport(new File(outputDir, "BCKtable.csv"), BCKout);
+		writeReport(new File(outputDir, "DBMtable.csv"), DBMout);
+		writeReport(new File(outputDir, "ORtable.csv"), ORout);
+		writeReport(new File(outputDir, "MStable.csv"), MSout);
+		// only export ROC and each reader information for raw data
+		if (rawData){
+			writeReport(new File(outputDir, "AUCperReader.csv"), AllAUCsreport);
+			writeReport(new File(outputDir, "ROCcurves.csv"), AllROCreport);
+			writeReport(new File(outputDir, "readerCovariance.csv"), readerCovReport);
+		}
+
+	}
+
+	private static void writeReport(File file, String report) throws IOException {
+		BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+		try {
+			bw.write(report);
+		} finally {
+			bw.close();
+		}
+	}
+
+}
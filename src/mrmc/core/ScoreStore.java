@@ -0,0 +1,109 @@
+package mrmc.core;
+
+import java.util.BitSet;
+
+/**
+ * Dense store of the reader study scores, replacing nested maps keyed by ID strings. <br>
+ * <br>
+ * Readers, cases and modalities are referred to by integer indices, the positions of their IDs in
+ * {@link #readerIDs}, {@link #caseIDs} and {@link #modalityIDs}.
+ * {@link mrmc.core.InputFile} uses the sorted order of the ID strings,
+ * the same as the values of {@link mrmc.core.InputFile#readerIDs}, {@link mrmc.core.InputFile#caseIDs}
+ * and {@link mrmc.core.InputFile#modalityIDs}. <br>
+ * -- {@link #scores}: one primitive column of scores per modality <br>
+ * -- {@link #design}: one bitset per modality, set if the reader scored the case in that modality <br>
+ * -- {@link #truth}: truth of each case, 0 = signal absent, 1 = signal present <br>
+ * <br>
+ * A column holds the cases of reader 0, then the cases of reader 1, and so on,
+ * so the entry of reader ir and case ic is at ir*Ncase + ic.
+ * These fields are not private and are accessed directly, like a structure.
+ */
+public class ScoreStore {
+
+	/**
+	 * The number of readers, cases and modalities
+	 */
+	public int Nreader, Ncase, Nmodality;
+	/**
+	 * The reader, case and modality IDs of each index
+	 */
+	public String[] readerIDs, caseIDs, modalityIDs;
+	/**
+	 * Scores [Nmodality][Nreader*Ncase], 0 where not scored
+	 */
+	public double[][] scores;
+	/**
+	 * Study design [Nmodality], bit ir*Ncase + ic is set if reader ir scored case ic
+	 */
+	public BitSet[] design;
+	/**
+	 * Truth of each case [Ncase]
+	 */
+	public int[] truth;
+
+	/**
+	 * Creates an empty store; no case is scored and every case is signal absent
+	 *
+	 * @param readerIDs reader IDs in index order
+	 * @param caseIDs case IDs in index order, signal absent and signal present
+	 * @param modalityIDs modality IDs in index order
+	 */
+	public ScoreStore(String[] readerIDs, String[] caseIDs, String[] modalityIDs) {
+
+		this.readerIDs = readerIDs;
+		this.caseIDs = caseIDs;
+		this.modalityIDs = modalityIDs;
+		Nreader = readerIDs.length;
+		Ncase = caseIDs.length;
+		Nmodality = modalityIDs.length;
+		scores = new double[Nmodality][Nreader * Ncase];
+		design = new BitSet[Nmodality];
+		for (int m = 0; m < Nmodality; m++) {
+			design[m] = new BitSet(Nreader * Ncase);
+		}
+		truth = new int[Ncase];
+
+	}
+
+	/**
+	 * @return position of reader ir and case ic in a column of {@link #scores} and in {@link #design}
+	 */
+	public int index(int ir, int ic) {
+		return ir * Ncase + ic;
+	}
+
+	/**
+	 * @return true if reader ir scored case ic in modality im
+	 */
+	public boolean isScored(int im, int ir, int ic) {
+		return design[im].get(index(ir, ic));
+	}
+
+	/**
+	 * @return true if reader ir scored case ic in any modality
+	 */
+	public boolean isScoredAny(int ir, int ic) {
+		int i = index(ir, ic);
+		for (int m = 0; m < Nmodality; m++) {
+			if (design[m].get(i)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return score of reader ir for case ic in modality im, 0 if not scored
+	 */
+	public double getScore(int im, int ir, int ic) {
+		return scores[im][index(ir, ic)];
+	}
+
+	/**
+	 * Stores the score of reader ir for case ic in modality im and marks it as scored
+	 */
+	public void setScore(int im, int ir, int ic, double score) {
+		int i = index(ir, ic);
+		scores[im][i] = score;
+		design[im].set(i);
+	}
+
+}
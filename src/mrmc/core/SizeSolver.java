@@ -0,0 +1,237 @@
+package mrmc.core;
+
+import umontreal.iro.lecuyer.probdist.NormalDist;
+
+/**
+ * Finds the cheapest new trial that reaches a target power, from the BDG moments of a reader study. <br>
+ * <br>
+ * A trial costs {@link #costReader} per reader, {@link #costNormal} per normal case and {@link #costDisease}
+ * per disease case, and has {@link #ratio} disease cases per normal case, rounded up.
+ * The study design, split-plot groups and pairing across modalities, is that of the {@link mrmc.core.PowerSurface},
+ * and every trial has at least two readers and two cases of each truth state per modality and group. <br>
+ * <br>
+ * For each number of readers, the fewest cases that reach the target are found by bisections,
+ * over the runs of cases in which the power increases, see {@link #fewestCases(long, long, long, double)}.
+ * The readers are tried in increasing order until the readers alone cost as much as the cheapest trial found,
+ * and the cases of a number of readers are not searched beyond that cost. <br>
+ * <br>
+ * Example: <br>
+ * -- PowerSurface surface = new PowerSurface(DBRecordStat, 0.05, 0.05); <br>
+ * -- SizeSolver.Design design = new SizeSolver(surface, SizeSolver.POWER_BDG, 0.8, 1000, 50, 50, 1).solve(100, 5000); <br>
+ */
+public class SizeSolver {
+
+	public static final int POWER_NORMAL = 0;
+	public static final int POWER_BDG = 1;
+	public static final int POWER_HILLIS = 2;
+
+	public final PowerSurface surface;
+	/**
+	 * {@link #POWER_NORMAL}, {@link #POWER_BDG} or {@link #POWER_HILLIS}
+	 */
+	public final int powerType;
+	public final double targetPower;
+	public final double costReader, costNormal, costDisease;
+	/**
+	 * Number of disease cases per normal case
+	 */
+	public final double ratio;
+
+	/**
+	 * Number of trials whose power was calculated by the last {@link #solve(int, int)}
+	 */
+	public int evaluations = 0;
+
+	/**
+	 * Cheapest trial found
+	 */
+	public static class Design {
+		public final long Nreader, Nnormal, Ndisease;
+		public final double cost;
+		public final PowerSurface.Cell cell;
+
+		private Design(PowerSurface.Cell cell, double cost) {
+			Nreader = cell.Nreader;
+			Nnormal = cell.Nnormal;
+			Ndisease = cell.Ndisease;
+			this.cost = cost;
+			this.cell = cell;
+		}
+	}
+
+	/**
+	 * @param surface the moments of the reader study, the study design and the test of the new trial
+	 * @param powerType {@link #POWER_NORMAL}, {@link #POWER_BDG} or {@link #POWER_HILLIS}
+	 * @param targetPower power to reach
+	 * @param costReader cost of a reader
+	 * @param costNormal cost of a normal case
+	 * @param costDisease cost of a disease case
+	 * @param ratio number of disease cases per normal case
+	 * @throws IllegalArgumentException if a cost is negative, or the ratio not positive
+	 */
+	public SizeSolver(PowerSurface surface, int powerType, double targetPower,
+			double costReader, double costNormal, double costDisease, double ratio) {
+		if (powerType < POWER_NORMAL || powerType > POWER_HILLIS) {
+			throw new IllegalArgumentException("Unknown power " + powerType);
+		}
+		if (costReader < 0 || costNormal < 0 || costDisease < 0) {
+			throw new IllegalArgumentException("The costs cannot be negative");
+		}
+		if (!(ratio > 0)) {
+			throw new IllegalArgumentException("The number of disease cases per normal case must be positive");
+		}
+		this.surface = surface;
+		this.powerType = powerType;
+		this.targetPower = targetPower;
+		this.costReader = costReader;
+		this.costNormal = costNormal;
+		this.costDisease = costDisease;
+		this.ratio = ratio;
+	}
+
+	/**
+	 * @param maxReader largest number of readers
+	 * @param maxNormal largest number of normal cases
+	 * @return the cheapest trial that reaches the target power, the one with fewer readers among those of the same cost;
+	 *  null if none of at most maxReader readers and maxNormal normal cases does
+	 */
+	public Design solve(int maxReader, int maxNormal) {
+
+		evaluations = 0;
+		// sizes are multiples of these, so that they are evenly distributed into each modality and group
+		long stepReader = surface.Ngroup * (2 - surface.Preader);
+		long stepNormal = surface.Ngroup * (2 - surface.Pnormal);
+		long maxUnits = maxNormal / stepNormal;
+		if (maxUnits < 2) return null;
+
+		Design best = null;
+		for (long Nreader = 2 * stepReader; Nreader <= maxReader; Nreader += stepReader) {
+			if (best != null && costReader * Nreader + cost(0, 2 * stepNormal) >= best.cost) break;
+			PowerSurface.Cell cell = fewestCases(Nreader, stepNormal, maxUnits, best == null ? Double.POSITIVE_INFINITY : best.cost);
+			if (cell == null) continue;
+			double cost = cost(Nreader, cell.Nnormal);
+			if (best == null || cost < best.cost) best = new Design(cell, cost);
+		}
+		return best;
+
+	}
+
+	/**
+	 * Fewest normal cases, in units of stepNormal, of a trial of Nreader readers that reach the target power. <br>
+	 * <br>
+	 * With its degrees of freedom fixed, the power increases with the cases. But the F test takes the integer part
+	 * of the degrees of freedom, so the power drops each time that changes. The power with infinite degrees of freedom
+	 * is above the power and increases with the cases: the search starts at the fewest cases for which it reaches the target.
+	 * From there, each run of cases with the same integer degrees of freedom is found by bisection,
+	 * as the degrees of freedom change in one direction, and searched by bisection if its last trial reaches the target.
+	 *
+	 * @param maxCost the search stops at trials that cost as much
+	 * @return the trial, null if none of at most maxUnits units costs less than maxCost
+	 */
+	private PowerSurface.Cell fewestCases(long Nreader, long stepNormal, long maxUnits, double maxCost) {
+
+		// fewest cases for which the power with infinite degrees of freedom reaches the target
+		PowerSurface.Cell maxCell = cell(Nreader, maxUnits * stepNormal);
+		if (limit(maxCell) < targetPower) return null;
+		long lo = 1, hi = maxUnits;
+		while (hi - lo > 1) {
+			long mid = (lo + hi) / 2;
+			if (limit(cell(Nreader, mid * stepNormal)) >= targetPower) hi = mid;
+			else lo = mid;
+		}
+
+		long units = hi;
+		while (units <= maxUnits && cost(Nreader, units * stepNormal) < maxCost) {
+			PowerSurface.Cell first = cell(Nreader, units * stepNormal);
+			if (power(first) >= targetPower) return first;
+
+			// last trial of the run of the same integer degrees of freedom
+			int band = band(first);
+			long last = units, after = maxUnits + 1;
+			PowerSurface.Cell lastCell = first;
+			if (band(maxCell) == band) {
+				last = maxUnits;
+				lastCell = maxCell;
+			} else {
+				after = maxUnits;
+				while (after - last > 1) {
+					long mid = (last + after) / 2;
+					PowerSurface.Cell midCell = cell(Nreader, mid * stepNormal);
+					if (band(midCell) == band) {
+						last = mid;
+						lastCell = midCell;
+					} else {
+						after = mid;
+					}
+				}
+			}
+
+			if (power(lastCell) >= targetPower) {
+				// first trial of the run that reaches the target
+				lo = units;
+				hi = last;
+				PowerSurface.Cell hiCell = lastCell;
+				while (hi - lo > 1) {
+					long mid = (lo + hi) / 2;
+					PowerSurface.Cell midCell = cell(Nreader, mid * stepNormal);
+					if (power(midCell) >= targetPower) {
+						hi = mid;
+						hiCell = midCell;
+					} else {
+						lo = mid;
+					}
+				}
+				return cost(Nreader, hiCell.Nnormal) < maxCost ? hiCell : null;
+			}
+			units = last + 1;
+		}
+		return null;
+
+	}
+
+	/**
+	 * @return the trial of Nreader readers, Nnormal normal cases and the disease cases of {@link #ratio}
+	 */
+	private PowerSurface.Cell cell(long Nreader, long Nnormal) {
+		evaluations++;
+		return surface.cell(Nreader, Nnormal, Ndisease(Nnormal));
+	}
+
+	/**
+	 * @return at least ratio Nnormal disease cases, evenly distributed into each modality and group, and at least two per group
+	 */
+	private long Ndisease(long Nnormal) {
+		long stepDisease = surface.Ngroup * (2 - surface.Pdisease);
+		long units = (long) Math.ceil(ratio * Nnormal / stepDisease - 1E-9);
+		return Math.max(units, 2) * stepDisease;
+	}
+
+	private double cost(long Nreader, long Nnormal) {
+		return costReader * Nreader + costNormal * Nnormal + costDisease * Ndisease(Nnormal);
+	}
+
+	/**
+	 * @return the power of the test with infinite degrees of freedom
+	 */
+	private double limit(PowerSurface.Cell cell) {
+		double lambda = powerType == POWER_HILLIS ? cell.lambdaHillis : cell.lambdaBDG;
+		return 1 - NormalDist.cdf(Math.sqrt(lambda), 1, cell.cutoffNormal);
+	}
+
+	/**
+	 * @return the integer degrees of freedom of the F test, {@link mrmc.core.PowerSurface#DF_NORMAL} for the normal test
+	 */
+	private int band(PowerSurface.Cell cell) {
+		double df = Double.POSITIVE_INFINITY;
+		if (powerType == POWER_BDG) df = cell.DF_BDG;
+		if (powerType == POWER_HILLIS) df = cell.DF_Hillis;
+		return df >= PowerSurface.DF_NORMAL ? PowerSurface.DF_NORMAL : (int) df;
+	}
+
+	private double power(PowerSurface.Cell cell) {
+		if (powerType == POWER_NORMAL) return cell.powerNormal;
+		if (powerType == POWER_HILLIS) return cell.powerHillis;
+		return cell.powerBDG;
+	}
+
+}
@@ -1,6 +1,5 @@
 package mrmc.core;
 
-import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
 import roemetz.core.RoeMetz;
@@ -156,12 +155,26 @@ public class StatTest {
 	 */
 	public StatTest(SizePanel SizePanel, DBRecord DBRecordStat, DBRecord DBRecordSize) {
 
+		this(SizePanel.sigLevel, SizePanel.effSize, DBRecordStat, DBRecordSize);
+
+	}
+
+	/**
+	 * Constructor used for calculating statistics when sizing a new trial, without a GUI
+	 * 
+	 * @param sigLevel significance level
+	 * @param effSize effect size
+	 * @param DBRecordStat the variance analysis of the reader study
+	 * @param DBRecordSize the variance of the new trial
+	 */
+	public StatTest(double sigLevel, double effSize, DBRecord DBRecordStat, DBRecord DBRecordSize) {
+
 		this.DBRecordStat = DBRecordStat;
 		this.DBRecordSize = DBRecordSize;
 		int selectedMod = DBRecordSize.selectedMod;
 		
-		effSize = SizePanel.effSize;
-		sigLevel = SizePanel.sigLevel;
+		this.effSize = effSize;
+		this.sigLevel = sigLevel;
 		tStatCalc = effSize / Math.sqrt(DBRecordSize.totalVar);
 		
 		System.out.println("\nBegin Sizing Analysis");
@@ -207,13 +220,10 @@ public class StatTest {
 					/ (var_r + resizeFactor * bracket2) / (var_r + resizeFactor * bracket2);
 		}
 		if (DF_Hillis < 2) {
-			if (!exploreExpSize.doFullSize){
-				JFrame frame = new JFrame();
-				String warningStr = "DF_Hillis was calculated to be " + DF_Hillis +
+			DBRecordSize.displayWarning(!exploreExpSize.doFullSize,
+					"DF_Hillis was calculated to be " + DF_Hillis +
 						"\nDF_Hillis less than 2 cannot be handled" +
-						"\nTherefore, it is being set to 2";
-				commandStartFunction.displayConsoleWarning(frame,warningStr);
-			}
+						"\nTherefore, it is being set to 2");
 			DF_Hillis = 2;
 		}
 
@@ -379,27 +389,21 @@ public double calcDF_BDGbckIndep(DBRecord curRecord) {
 	 */
 	// According to Gaylor1969_Technometrics_v4p691, there is a minimum DF
 	if (DF_BDG < DF_min) {
-		if(verbose&&!MRMC.commandStart) {
-			JFrame frame = new JFrame();
-			String warningStr = "DF_BDG is below a minimum." +
+		curRecord.displayWarning(verbose&&!MRMC.commandStart,
+				"DF_BDG is below a minimum." +
 					"\nDF_BDG was calculated to be " + DF_BDG + "\nIt is being set to DF_min = " + DF_min +
 					"\nThis follows Gaylor1969_Technometrics_v4p691" +
-					"\nand indicates that your data is very limited";
-			commandStartFunction.displayConsoleWarning(frame,warningStr);
-		}
+					"\nand indicates that your data is very limited");
 		DF_BDG = DF_min;
 	}
 
 	// Do not return a DF_BDG that is less than 2
 	if (DF_BDG < 2) {
-		if(verbose&&!MRMC.commandStart) {
- 			JFrame frame = new JFrame();
-			String warningStr = "DF_BDG is below a minimum." +
+		curRecord.displayWarning(verbose&&!MRMC.commandStart,
+				"DF_BDG is below a minimum." +
 					"\nDF_BDG was calculated to be " + DF_BDG +
 					"\nDF_BDG less than 2 cannot be handled" +
-					"\nTherefore, it is being set to 2";
-			commandStartFunction.displayConsoleWarning(frame,warningStr);
-		}
+					"\nTherefore, it is being set to 2");
 		DF_BDG = 2;
 	}
 
@@ -536,27 +540,21 @@ DF_BDG = Math.pow(totalVar, 2) / DF_denom;
  */
 //According to Gaylor1969_Technometrics_v4p691, there is a minimum DF
 if (DF_BDG < DF_min) {
-	if(verbose&&!MRMC.commandStart) {
-		JFrame frame = new JFrame();
-		String warningStr = "DF_BDG is below a minimum." +
+	curRecord.displayWarning(verbose&&!MRMC.commandStart,
+			"DF_BDG is below a minimum." +
 				"\nDF_BDG was calculated to be " + DF_BDG + "\nIt is being set to DF_min = " + DF_min +
 				"\nThis follows Gaylor1969_Technometrics_v4p691" +
-				"\nand indicates that your data is very limited";
-		commandStartFunction.displayConsoleWarning(frame,warningStr);
-	}
+				"\nand indicates that your data is very limited");
 	DF_BDG = DF_min;
 }
 
 //Do not return a DF_BDG that is less than 2
 if (DF_BDG < 2) {
-	if(verbose&&!MRMC.commandStart) {
-			JFrame frame = new JFrame();
-			String warningStr = "DF_BDG is below a minimum." +
+	curRecord.displayWarning(verbose&&!MRMC.commandStart,
+			"DF_BDG is below a minimum." +
 					"\nDF_BDG was calculated to be " + DF_BDG +
 					"\nDF_BDG less than 2 cannot be handled" +
-					"\nTherefore, it is being set to 2";
-			commandStartFunction.displayConsoleWarning(frame,warningStr);
-	}
+					"\nTherefore, it is being set to 2");
 	DF_BDG = 2;
 }
 
@@ -685,27 +683,21 @@ DF_BDG = Math.pow(totalVar, 2) / DF_denom;
  */
 // According to Gaylor1969_Technometrics_v4p691, there is a minimum DF
 if (DF_BDG < DF_min) {
-	if(verbose&&!RoeMetz.doValidation&&!exploreExpSize.doFullSize&&!MRMC.commandStart) {
-		JFrame frame = new JFrame();
-		String warningStr = "DF_BDG is below a minimum." +
+	curRecord.displayWarning(verbose&&!RoeMetz.doValidation&&!exploreExpSize.doFullSize&&!MRMC.commandStart,
+			"DF_BDG is below a minimum." +
 				"\nDF_BDG was calculated to be " + DF_BDG + "\nIt is being set to DF_min = " + DF_min +
 				"\nThis follows Gaylor1969_Technometrics_v4p691" +
-				"\nand indicates that your data is very limited";
-		commandStartFunction.displayConsoleWarning(frame,warningStr);
-	}
+				"\nand indicates that your data is very limited");
 	DF_BDG = DF_min;
 }
 
 //Do not return a DF_BDG that is less than 2
 if (DF_BDG < 2) {
-	if((verbose&&!RoeMetz.doValidation&&!exploreExpSize.doFullSize&&!MRMC.commandStart)) {
-			JFrame frame = new JFrame();
-			String warningStr = "DF_BDG is below a minimum." +
+	curRecord.displayWarning(verbose&&!RoeMetz.doValidation&&!exploreExpSize.doFullSize&&!MRMC.commandStart,
+			"DF_BDG is below a minimum." +
 					"\nDF_BDG was calculated to be " + DF_BDG +
 					"\nDF_BDG less than 2 cannot be handled" +
-					"\nTherefore, it is being set to 2";
-			commandStartFunction.displayConsoleWarning(frame,warningStr);
-	}
+					"\nTherefore, it is being set to 2");
 	DF_BDG = 2;
 }
 
@@ -798,23 +790,17 @@ return DF_BDG;
 		}
 
 		if (DF_Hillis < 2) {
-			if (!RoeMetz.doValidation&&!MRMC.commandStart){
-				JFrame frame = new JFrame();
-				String warningStr = "DF_Hillis was calculated to be " + DF_Hillis + "\nIt is being set to 2";
-				commandStartFunction.displayConsoleWarning(frame,warningStr);
-			}
+			curRecord.displayWarning(!RoeMetz.doValidation&&!MRMC.commandStart,
+					"DF_Hillis was calculated to be " + DF_Hillis + "\nIt is being set to 2");
 			DF_Hillis = 2;
 		}
 		if( Double.isInfinite(DF_Hillis) ) {
-		    if (!RoeMetz.doValidation&&!MRMC.commandStart){
-			JFrame frame = new JFrame();
-			String warningStr = "DF_Hillis was calculated to be infinite." + 
+		    curRecord.displayWarning(!RoeMetz.doValidation&&!MRMC.commandStart,
+		    		"DF_Hillis was calculated to be infinite." + 
 					"\nIt is likely due to ms_tr = 0.0 (difference in modalities analysis)" +
 					"\n    or ms_r = 0.0 (single modality analysis)." + 
 					"\nDF_Hillis is being set to 50." +
-					"\nPlease check your data.";
-			commandStartFunction.displayConsoleWarning(frame,warningStr);
-		    }
+					"\nPlease check your data.");
 			DF_Hillis = 50.0;			
 		}
 
@@ -0,0 +1,113 @@
+package mrmc.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mrmc.gui.GUInterface;
+
+/**
+ * A reader study read from an .imrmc or .omrmc file, for {@link mrmc.core.Analysis}. <br>
+ * <br>
+ * A StudyInput does not change once it has been read,
+ * so it can be analyzed by many threads at the same time. <br>
+ * -- An .imrmc file holds raw data, kept in an {@link mrmc.core.InputFile} <br>
+ * -- An .omrmc file holds summary statistics, kept in a {@link mrmc.core.DBRecord} <br>
+ */
+public final class StudyInput {
+
+	/**
+	 * Name of the input file, without its folder
+	 */
+	public final String fileName;
+	/**
+	 * True for raw data (.imrmc), false for summary statistics (.omrmc)
+	 */
+	public final boolean rawData;
+	/**
+	 * The number of readers, signal-absent cases and signal-present cases
+	 */
+	public final long Nreader, Nnormal, Ndisease;
+
+	private final InputFile InputFile1;
+	private final DBRecord summary;
+	private final List<String> modalityIDs;
+
+	private StudyInput(InputFile InputFile1, DBRecord summary, List<String> modalityIDs,
+			long Nreader, long Nnormal, long Ndisease) {
+
+		this.InputFile1 = InputFile1;
+		this.summary = summary;
+		this.modalityIDs = Collections.unmodifiableList(modalityIDs);
+		this.fileName = InputFile1.fileName;
+		this.rawData = summary == null;
+		this.Nreader = Nreader;
+		this.Nnormal = Nnormal;
+		this.Ndisease = Ndisease;
+
+	}
+
+	/**
+	 * Reads an input file. No dialog is shown; warnings about the data are printed on the console.
+	 *
+	 * @param filePathAndName an .imrmc or .omrmc file
+	 * @return the reader study
+	 * @throws IOException if the file cannot be read or its data are not valid
+	 */
+	public static StudyInput read(String filePathAndName) throws IOException {
+
+		File f = new File(filePathAndName);
+		String inputFormat = f.getName().substring(f.getName().lastIndexOf(".") + 1);
+		String inputMode;
+		if (inputFormat.equals("imrmc")) {
+			inputMode = GUInterface.DescInputModeImrmc;
+		} else if (inputFormat.equals("omrmc")) {
+			inputMode = GUInterface.DescInputModeOmrmc;
+		} else {
+			throw new IOException("Please choose .imrmc or .omrmc format inputfile.");
+		}
+		InputFile InputFile1 = new InputFile();
+		InputFile1.fileName = f.getName();
+		InputFile1.filePath = f.getParent();
+		InputFile1.filePathAndName = f.getPath();
+		DBRecord summary = new DBRecord();
+		InputFile1.ReadInputFile(inputMode, summary, false);
+		if (!InputFile1.isLoaded())
+			throw new IOException("Cannot read " + filePathAndName);
+
+		if (inputMode == GUInterface.DescInputModeImrmc) {
+			return new StudyInput(InputFile1, null, InputFile1.getModalityIDs(),
+					InputFile1.Nreader, InputFile1.Nnormal, InputFile1.Ndisease);
+		}
+		ArrayList<String> modalityIDs = new ArrayList<String>();
+		if (summary.inputMod != 1) modalityIDs.add(summary.modalityA);
+		if (summary.inputMod != 0) modalityIDs.add(summary.modalityB);
+		return new StudyInput(InputFile1, summary, modalityIDs,
+				summary.Nreader, summary.Nnormal, summary.Ndisease);
+
+	}
+
+	/**
+	 * @return the modality IDs of the study, in sorted order for raw data
+	 */
+	public List<String> getModalityIDs() {
+		return modalityIDs;
+	}
+
+	/**
+	 * @return the raw data; only read, never changed
+	 */
+	InputFile getInputFile() {
+		return InputFile1;
+	}
+
+	/**
+	 * @return the summary statistics, null for raw data; only read, never changed
+	 */
+	DBRecord getSummary() {
+		return summary;
+	}
+
+}
@@ -0,0 +1,231 @@
+package mrmc.core;
+
+import java.util.Arrays;
+
+/**
+ * Sort-based kernels for the U-statistic sums in {@link mrmc.core.CovMRMC#doAUCcovUstatistics(String)} <br>
+ * <br>
+ * The success matrix of one reader and one modality is s[i][j] = 1, 0.5, 0
+ * when the j-th signal-present score is greater than, equal to, or less than the i-th signal-absent score.
+ * The U-statistics only need the row sums (placement values of the signal-absent cases),
+ * the column sums (placement values of the signal-present cases),
+ * and the total of the element-wise product of two success matrices. <br>
+ * -- {@link ReaderScores} ranks the scores of one reader in one modality once and gets the row and column sums <br>
+ * -- {@link #crossKernel(ReaderScores, ReaderScores)} gets the product total for a pair of
+ *    {@link ReaderScores} by counting 2-D dominance pairs with a Fenwick tree <br>
+ * <br>
+ * Both cost O(N log N) instead of the O(Nnormal x Ndisease) needed to build the success matrices.
+ * All results are integers or multiples of 0.25 and are therefore exact,
+ * so they agree bit for bit with the sums of the full matrices. <br>
+ * The scores must be finite.
+ */
+public class UstatKernel {
+
+	/**
+	 * Summary of the scores of one reader in one modality, computed once and
+	 * shared by every reader pair that includes this reader. <br>
+	 * <br>
+	 * Key fields <br>
+	 * -- {@link #place0}, {@link #place1}: placement values (row and column sums of the success matrix) <br>
+	 * -- {@link #total}: total of the success matrix <br>
+	 * -- {@link #d0}, {@link #d1}, {@link #N0}, {@link #N1}: study design and number of cases scored <br>
+	 */
+	public static class ReaderScores {
+		/**
+		 * Study design, 1 if scored and 0 otherwise [Nnormal], [Ndisease]
+		 */
+		public int[] d0, d1;
+		/**
+		 * Number of signal-absent and signal-present cases scored
+		 */
+		public int N0, N1;
+		/**
+		 * place0[i] = sum over j of d0[i]*d1[j]*s[i][j], the row sums of the success matrix [Nnormal] <br>
+		 * place1[j] = sum over i of d0[i]*d1[j]*s[i][j], the column sums of the success matrix [Ndisease]
+		 */
+		public double[] place0, place1;
+		/**
+		 * Total of the success matrix
+		 */
+		public double total;
+		/**
+		 * Dense rank of each scored case among all scores of this reader in this modality, -1 if not scored
+		 */
+		int[] rank0, rank1;
+		/**
+		 * Number of distinct scores
+		 */
+		int Nranks;
+		/**
+		 * Indices of the scored cases in order of increasing score
+		 */
+		int[] order0, order1;
+
+		/**
+		 * @param t0 signal-absent scores [Nnormal]
+		 * @param d0 signal-absent design, 1 if scored and 0 otherwise [Nnormal]
+		 * @param t1 signal-present scores [Ndisease]
+		 * @param d1 signal-present design, 1 if scored and 0 otherwise [Ndisease]
+		 */
+		public ReaderScores(double[] t0, int[] d0, double[] t1, int[] d1) {
+
+			this.d0 = d0;
+			this.d1 = d1;
+			N0 = 0;
+			for (int i = 0; i < d0.length; i++)
+				if (d0[i] != 0) N0++;
+			N1 = 0;
+			for (int j = 0; j < d1.length; j++)
+				if (d1[j] != 0) N1++;
+
+			// Dense ranks of the scored cases; equal scores get equal ranks
+			double[] values = new double[N0 + N1];
+			int n = 0;
+			for (int i = 0; i < d0.length; i++)
+				if (d0[i] != 0) values[n++] = t0[i];
+			for (int j = 0; j < d1.length; j++)
+				if (d1[j] != 0) values[n++] = t1[j];
+			Arrays.sort(values);
+			Nranks = 0;
+			for (int k = 0; k < values.length; k++) {
+				if (Nranks == 0 || values[k] != values[Nranks - 1])
+					values[Nranks++] = values[k];
+			}
+			rank0 = new int[d0.length];
+			rank1 = new int[d1.length];
+			int[] count0 = new int[Nranks + 1];
+			int[] count1 = new int[Nranks + 1];
+			for (int i = 0; i < d0.length; i++) {
+				rank0[i] = -1;
+				if (d0[i] != 0) {
+					rank0[i] = lowerBound(values, Nranks, t0[i]);
+					count0[rank0[i] + 1]++;
+				}
+			}
+			for (int j = 0; j < d1.length; j++) {
+				rank1[j] = -1;
+				if (d1[j] != 0) {
+					rank1[j] = lowerBound(values, Nranks, t1[j]);
+					count1[rank1[j] + 1]++;
+				}
+			}
+
+			// Counting sort by rank; count[k+1] becomes the number of cases with rank <= k
+			for (int k = 0; k < Nranks; k++) {
+				count0[k + 1] += count0[k];
+				count1[k + 1] += count1[k];
+			}
+			order0 = new int[N0];
+			order1 = new int[N1];
+			int[] next0 = Arrays.copyOf(count0, Nranks);
+			int[] next1 = Arrays.copyOf(count1, Nranks);
+			for (int i = 0; i < d0.length; i++)
+				if (rank0[i] >= 0) order0[next0[rank0[i]]++] = i;
+			for (int j = 0; j < d1.length; j++)
+				if (rank1[j] >= 0) order1[next1[rank1[j]]++] = j;
+
+			// Placement values: cases of the other truth state ranked below, plus half the ties
+			place0 = new double[d0.length];
+			place1 = new double[d1.length];
+			total = 0.0;
+			for (int i = 0; i < d0.length; i++) {
+				if (rank0[i] < 0) continue;
+				int below = count1[rank0[i]];
+				int notAbove = count1[rank0[i] + 1];
+				place0[i] = (N1 - notAbove) + 0.5 * (notAbove - below);
+			}
+			for (int j = 0; j < d1.length; j++) {
+				if (rank1[j] < 0) continue;
+				int below = count0[rank1[j]];
+				int notAbove = count0[rank1[j] + 1];
+				place1[j] = below + 0.5 * (notAbove - below);
+				total = total + place1[j];
+			}
+
+		}
+	}
+
+	/**
+	 * Computes the total of the element-wise product of the success matrices of a and b
+	 * over the cases scored in both. <br>
+	 * <br>
+	 * Writing s(y-x) = 0.5*[x&lt;y] + 0.5*[x&lt;=y], the product expands into four
+	 * counts of pairs (i,j) with a ranking i before j and b ranking i before j.
+	 * Each count is a 2-D dominance count: sweep the cases in the order of a and
+	 * keep a Fenwick tree over the ranks of b.
+	 *
+	 * @param a scores of the first reader and modality
+	 * @param b scores of the second reader and modality
+	 * @return the sum of the element-wise product
+	 */
+	public static double crossKernel(ReaderScores a, ReaderScores b) {
+
+		if (a.N0 == 0 || a.N1 == 0 || b.N0 == 0 || b.N1 == 0) return 0.0;
+
+		int[] tree = new int[b.Nranks + 1];
+		long count = dominanceCount(a, b, tree, false);
+		Arrays.fill(tree, 0);
+		count = count + dominanceCount(a, b, tree, true);
+		return 0.25 * count;
+
+	}
+
+	/**
+	 * Sweeps the signal-present cases in the order of a, inserting the signal-absent
+	 * cases ranked lower by a (or lower-or-equal when aTies) into a Fenwick tree
+	 * indexed by the ranks of b. Cases not scored by b are skipped.
+	 *
+	 * @return the number of pairs ranked in order by b plus the number ranked in order or tied by b
+	 */
+	private static long dominanceCount(ReaderScores a, ReaderScores b, int[] tree, boolean aTies) {
+
+		int Nu = b.Nranks;
+		long count = 0;
+		int i = 0;
+		for (int jj = 0; jj < a.order1.length; jj++) {
+			int j = a.order1[jj];
+			int u1 = b.rank1[j];
+			if (u1 < 0) continue;
+			int x1 = a.rank1[j];
+			while (i < a.order0.length) {
+				int x0 = a.rank0[a.order0[i]];
+				if (x0 < x1 || (aTies && x0 == x1)) {
+					int u0 = b.rank0[a.order0[i]];
+					if (u0 >= 0) {
+						for (int k = u0 + 1; k <= Nu; k += k & -k)
+							tree[k]++;
+					}
+					i++;
+				} else {
+					break;
+				}
+			}
+			// u0 < u1
+			for (int k = u1; k > 0; k -= k & -k)
+				count += tree[k];
+			// u0 <= u1
+			for (int k = u1 + 1; k > 0; k -= k & -k)
+				count += tree[k];
+		}
+		return count;
+
+	}
+
+	/**
+	 * Uses the &lt; operator rather than {@link java.util.Arrays#binarySearch(double[], double)}
+	 * so that -0.0 and 0.0 are treated as ties, as they are by the success matrix.
+	 *
+	 * @return the number of elements of sorted[0..to) that are less than x
+	 */
+	private static int lowerBound(double[] sorted, int to, double x) {
+		int lo = 0;
+		int hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] < x) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+}
@@ -1,7 +1,9 @@
 package mrmc.core;
 
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Scanner;
 
 import javax.swing.JFrame;
@@ -61,20 +63,69 @@ public class commandStartFunction {
 		GUInterface.SaveAllStatListener ExportAllListener1 = GUI. new SaveAllStatListener();
 		ExportAllListener1.exportResult();
 	}
+	/**
+	 * Removes the options from the command-line arguments and applies them. <br>
+	 * ---- -threads=N sets {@link mrmc.core.CovMRMC#parallelism}, the number of threads used to analyze readers <br>
+	 * ---- -cache sets {@link mrmc.core.ImrmcCache#useCache}, to keep the parsed .imrmc data in a binary cache file <br>
+	 * 
+	 * CALLED BY: {@link mrmc.core.MRMC#main(String[])}
+	 * 
+	 * @param args command-line arguments
+	 * @return the arguments that are not options: input file and output folder
+	 */
+	public static String[] parseOptions(String[] args) {
+		ArrayList<String> remaining = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.startsWith("-threads=")) {
+				int threads = 0;
+				try {
+					threads = Integer.parseInt(arg.substring("-threads=".length()).trim());
+				} catch (NumberFormatException e) {
+					threads = 0;
+				}
+				if (threads < 1) {
+					System.out.println("Error: -threads must be a positive integer: " + arg);
+					System.exit(0);
+				}
+				CovMRMC.parallelism = threads;
+			} else if (arg.equals("-cache")) {
+				ImrmcCache.useCache = true;
+			} else {
+				remaining.add(arg);
+			}
+		}
+		return remaining.toArray(new String[remaining.size()]);
+	}
+	/**
+	 * Shows an error in a dialog, or on the console and exits in command mode. <br>
+	 * Without a display (see {@link mrmc.core.BatchAnalysis}) the error is thrown
+	 * as an IllegalStateException, so only the analysis of the current file stops.
+	 * 
+	 * @param frame parent of the dialog, may be null
+	 * @param errorStr the error
+	 */
 	public static void displayConsoleError(JFrame frame, String errorStr){
-		if(!MRMC.commandStart){
+		if(MRMC.commandStart){
+			System.out.println("Error: "+ errorStr);
+			System.exit(0);
+		}else if(GraphicsEnvironment.isHeadless()){
+			throw new IllegalStateException(errorStr);
+		}else{
 			System.out.println("Error: "+ errorStr);
 			JOptionPane.showMessageDialog(frame,
 					errorStr, "Error",
 					JOptionPane.ERROR_MESSAGE);
-		}else{
-			System.out.println("Error: "+ errorStr);
-			System.exit(0);
 		}
 
 	}
+	/**
+	 * Shows a warning in a dialog, or only on the console in command mode or without a display
+	 * 
+	 * @param frame parent of the dialog, may be null
+	 * @param warningStr the warning
+	 */
 	public static void displayConsoleWarning(JFrame frame, String warningStr){
-		if(!MRMC.commandStart){
+		if(!MRMC.commandStart && !GraphicsEnvironment.isHeadless()){
 			System.out.println("Warning: "+ warningStr);
 			JOptionPane.showMessageDialog(frame,
 					warningStr, "Warning",
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import mrmc.core.CovMRMC;
 import mrmc.core.MRMC;
 
 /**
@@ -156,6 +157,34 @@ public class GUImenubar {
 		}
 	}
 
+	/**
+	 * Handler for "Analysis Threads" menu button. Sets the number of threads
+	 * used to analyze readers, {@link mrmc.core.CovMRMC#parallelism}.
+	 */
+	class menuThreadsListener implements ActionListener {
+		public void actionPerformed(ActionEvent event) {
+			String input = (String) JOptionPane.showInputDialog(lst.getFrame(),
+					"Number of threads used to analyze readers (available processors: "
+							+ Runtime.getRuntime().availableProcessors() + ")",
+					"Analysis Threads", JOptionPane.PLAIN_MESSAGE, null, null,
+					Integer.toString(CovMRMC.parallelism));
+			if (input == null) return;
+			int threads = 0;
+			try {
+				threads = Integer.parseInt(input.trim());
+			} catch (NumberFormatException e) {
+				threads = 0;
+			}
+			if (threads < 1) {
+				JOptionPane.showMessageDialog(lst.getFrame(),
+						"The number of threads must be a positive integer.", "Error",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			CovMRMC.parallelism = threads;
+		}
+	}
+
 	/**
 	 * Creates and initializes the menubar items
 	 */
@@ -177,6 +206,13 @@ public class GUImenubar {
 		menuItem = new JMenuItem("Report Issue");
 		menuItem.addActionListener(new menuIssueListener());
 		menu.add(menuItem);
+
+		menu = new JMenu("Settings");
+		menuBar.add(menu);
+
+		menuItem = new JMenuItem("Analysis Threads");
+		menuItem.addActionListener(new menuThreadsListener());
+		menu.add(menuItem);
 	}
 
 }
@@ -27,6 +27,7 @@ import mrmc.core.MRMC;
 import mrmc.core.DBRecord;
 import mrmc.core.InputFile;
 import mrmc.core.Matrix;
+import mrmc.core.SaveAllStat;
 import mrmc.core.StatTest;
 
 import org.jfree.ui.RefineryUtilities;
@@ -75,7 +76,7 @@ Click the Browse button ({@link InputFileCard.brwsButtonListener brwsButtonListe
   <li> Browses for reader study .imrmc file with file chooser.
   <li> Creates {@link mrmc.core.InputFile} object from .imrmc file <br>
   ---- Object contains IDs for readers, cases, modalities
-  ---- Object contains core data structures {@link mrmc.core.InputFile#keyedData keyedData}
+  ---- Object contains core data structures {@link mrmc.core.InputFile#scoreStore scoreStore}
           and {@link mrmc.core.InputFile#truthVals truthVals}
 </ul>
 Click the Variance Analysis Button ({@link InputFileCard.varAnalysisListener})
@@ -113,7 +114,6 @@ public class GUInterface {
 	 */
 	public DBRecord DBRecordStat = new DBRecord(this);
 	public DBRecord DBRecordSize = new DBRecord(this);
-	private DBRecord DBRecordStatAll = new DBRecord(this);
 	public int resetcall = 0 ;
 	public final static int USE_MLE = 1;
 	public final static int NO_MLE = 0;
@@ -751,7 +751,6 @@ public class GUInterface {
 
 	//	@Override
 		//public String sFileName="";
-		private String BDGout,BCKout,DBMout,ORout,MSout;
      	public void actionPerformed(ActionEvent e) {
 			exportResult();
 
@@ -774,109 +773,12 @@ public class GUInterface {
 					filePathAndName = filePathAndName+ fileTime;
 				}
 				File outputDir = new File (filePathAndName);				
-				if(!outputDir.exists() && !outputDir.isDirectory()) 
-					outputDir.mkdir();					
-				// create file save all stat analysis result
-				String AllStatPath = outputDir+ "//statAnalysis.csv";
-				// create file save all stat analysis MLE result
-				String AllStatMLEPath = outputDir+ "//statAnalysisMLE.csv";
-				// create file save all readers analysis result
-				String AllAUCsPath = outputDir+ "//AUCperReader.csv";
-				// create file save all readers covariance 
-				String AllReaderCovPath = outputDir+ "//readerCovariance.csv";
-				// create file save ROC result
-				String AllROCPath = outputDir+ "//ROCcurves.csv";
-				// create file save BDG table
-				String BDGtable = outputDir+ "//BDGtable.csv";
-				// create file save BCK table
-				String BCKtable = outputDir+ "//BCKtable.csv";
-				// create file save DBM table
-				String DBMtable = outputDir+ "//DBMtable.csv";
-				// create file save OR table
-				String ORtable = outputDir+ "//ORtable.csv";
-				// create file save MS table
-				String MStable = outputDir+ "//MStable.csv";
-	            // initial 3 string to save All stat, AUCs and ROC result
-	    		String statHead =  "inputFile,date,iMRMCversion,NR,N0,N1,modalityA,modalityB,UstatOrMLE,AUCA,varAUCA,AUCB,varAUCB,AUCAminusAUCB,varAUCAminusAUCB,"
-	    				+"pValueNormal,botCInormal,topCInormal,rejectNormal,dfBDG,pValueBDG,botCIBDG,topCIBDG,rejectBDG,dfHillis,pValueHillis,botCIHillis,topCIHillis,rejectHillis";
-	    		BDGout =  "modalityA,modalityB,UstatOrMLE,compOrCoeff,M1,M2,M3,M4,M5,M6,M7,M8" +"\r\n";
-	    		BCKout =  "modalityA,modalityB,UstatOrMLE,Moments,N,D,ND,R,NR,DR,RND" +"\r\n";
-	    		DBMout =  "modalityA,modalityB,UstatOrMLE,Components,R,C,RC,TR,TC,TRC" +"\r\n";
-	    		ORout =  "modalityA,modalityB,UstatOrMLE,Components,R,TR,COV1,COV2,COV3,ERROR" +"\r\n";
-	    		MSout =  "modalityA,modalityB,UstatOrMLE,Components,R,C,RC,MR,MC,MRC" +"\r\n";
-	            String AllStatreport = statHead+"\r\n";
-	            String AllStatMLEreport = statHead+"\r\n";
-	            String AllAUCsreport = "inputFile,date,iMRMCversion,readerID,N0,N1,modalityA,modalityB,AUCA,varAUCA,AUCB,varAUCB,AUCAminusAUCB,varAUCAminusAUCB,"
-	    				+"pValueNormal,botCInormal,topCInormal,rejectNormal,dfBDG,pValueBDG,botCIBDG,topCIBDG,rejectBDG,dfHillis,pValueHillis,botCIHillis,topCIHillis,rejectHillis"+"\r\n";
-	            String readerCovReport = "inputFile,data,iMRMCversion" +"\r\n" + InputFile1.fileName + "," + fileTime + ',' + MRMC.versionname + "\r\n";
-	            String AllROCreport = "";
+				SaveAllStat allStat = new SaveAllStat(InputFile1, fileTime);
 				if  (GUInterface.selectedInput == GUInterface.DescInputModeImrmc){
 					System.out.println("MRMC Save All Stat button clicked");
-					// Create a list for all combination of modality
-					int numMod = InputFile1.getModalityIDs().size();
-					int modCombination  = calFactorial(numMod)/calFactorial(numMod-2)/calFactorial(2)+numMod;      // find how many combination in total
-					String[][] modCombinationList = new String[modCombination] [2];
-					String[] rocMod = new String[numMod];
-					int count = 0;
-					for (String ModalityID : InputFile1.getModalityIDs()) {
-						modCombinationList[count][0]= ModalityID;
-						modCombinationList[count][1]= "NO_MOD";
-						rocMod[count] = ModalityID;
-						count++;
-					}
-					for (int i=0; i<numMod-1; i++) {
-						for(int j=i+1 ; j<numMod; j++){
-							modCombinationList[count][0]= modCombinationList[i][0];
-							modCombinationList[count][1]= modCombinationList[j][0];
-							count++;
-						}
-					}
-					
-		            //Do simulation for each group of modality, save Stat and reader AUC result
-					for (int i = 0; i<count; i ++ ){
-						DBRecordStatAll.flagMLE = 0;
-						DBRecordStatAll.modalityA = modCombinationList[i][0];
-						DBRecordStatAll.modalityB = modCombinationList[i][1];
-						if (i<numMod){
-							DBRecordStatAll.selectedMod = 0;
-						}else{
-							DBRecordStatAll.selectedMod = 3;
-						}
-						// calculate and save Ustat result
-						DBRecordStatAll.DBRecordStatFill(InputFile1, DBRecordStatAll);
-						AllStatreport = exportToFile.exportStat(AllStatreport, DBRecordStatAll, fileTime);
-						AllAUCsreport = exportToFile.exportReaders(AllAUCsreport, DBRecordStatAll,InputFile1, fileTime);
-						readerCovReport =  exportToFile.exportReadersCov(readerCovReport, DBRecordStatAll,InputFile1);
-						savetable();
-						// calculate and save MLE result
-						DBRecordStatAll.flagMLE = 1;
-						DBRecordStatAll.DBRecordStatFill(InputFile1, DBRecordStatAll);
-						AllStatMLEreport = exportToFile.exportStat(AllStatMLEreport, DBRecordStatAll, fileTime);
-						savetable();
-					}
-					
-					//Get ROC result
-					final ROCCurvePlot roc = new ROCCurvePlot(
-							"ROC Curve: All Modality ",
-							"FPF (1 - Specificity), legend shows symbols for each modalityID:readerID", "TPF (Sensitivity)",
-							InputFile1.generateROCpoints(rocMod),InputFile1.filePathAndName,InputFile1.fileName);
-					roc.addData(InputFile1.generatePooledROC(rocMod), "Pooled Average");
-					AllROCreport = exportToFile.exportROC(roc.seriesCollection,AllROCreport);
-					
+					allStat.analyzeRawData();
 					// summary input
 				}else{
-					DBRecord a = DBRecordStat;
-					DBRecordStatAll.AUCs = Matrix.copy(DBRecordStat.AUCs);
-					DBRecordStatAll.AUCsReaderAvg = Matrix.copy(DBRecordStat.AUCsReaderAvg);
-					DBRecordStatAll.LoadBDG = Matrix.copy(DBRecordStat.LoadBDG);
-					DBRecordStatAll.Ndisease = DBRecordStat.Ndisease;
-					DBRecordStatAll.NdiseaseDB = DBRecordStat.NdiseaseDB;
-					DBRecordStatAll.Nnormal = DBRecordStat.Nnormal;
-					DBRecordStatAll.NnormalDB = DBRecordStat.NnormalDB;
-					DBRecordStatAll.Nreader = DBRecordStat.Nreader;
-					DBRecordStatAll.NreaderDB = DBRecordStat.NreaderDB;
-					DBRecord track = DBRecordStatAll;
-					DBRecordStatAll.InputFile1 = InputFile1;
 					String tempModA = "";
 					String tempModB = "";
 					if (MRMC.commandStart){
@@ -886,95 +788,13 @@ public class GUInterface {
 						tempModA = InputSummaryCard.loadmodalityA;
 						tempModB = InputSummaryCard.loadmodalityB;
 					}
-					// Analysis modality A
-					if (tempModA!=null&&!tempModA.equals("NO_MOD")){
-						DBRecordStatAll.modalityA = tempModA;
-						DBRecordStatAll.modalityB = "NO_MOD";
-						DBRecordStatAll.selectedMod = 0;
-						DBRecordStatAll.flagMLE = 0;
-						DBRecordStatAll.DBRecordStatFillSummary(DBRecordStatAll);
-						AllStatreport = exportToFile.exportStat(AllStatreport, DBRecordStatAll, fileTime);	
-						savetable();
-						DBRecordStatAll.flagMLE = 1;
-						DBRecordStatAll.DBRecordStatFillSummary(DBRecordStatAll);
-						AllStatMLEreport = exportToFile.exportStat(AllStatMLEreport, DBRecordStatAll, fileTime);
-						savetable();
-					}
-					DBRecord track1 = DBRecordStat;
-					// Analysis modality B
-					if (tempModB!=null&&!tempModB.equals("NO_MOD")){
-						DBRecordStatAll.modalityA = "NO_MOD";
-						DBRecordStatAll.modalityB = tempModB;
-						DBRecordStatAll.selectedMod = 1;
-						DBRecordStatAll.flagMLE = 0;
-						DBRecordStatAll.DBRecordStatFillSummary(DBRecordStatAll);
-						AllStatreport = exportToFile.exportStat(AllStatreport, DBRecordStatAll, fileTime);	
-						savetable();
-						DBRecordStatAll.flagMLE = 1;
-						DBRecordStatAll.DBRecordStatFillSummary(DBRecordStatAll);
-						AllStatMLEreport = exportToFile.exportStat(AllStatMLEreport, DBRecordStatAll, fileTime);
-						savetable();
-					}
-					// Analysis modality A and B
-					if (tempModA!=null&&tempModB!=null&&!tempModA.equals("NO_MOD")&&!tempModB.equals("NO_MOD")){
-						DBRecordStatAll.modalityA = tempModA;
-						DBRecordStatAll.modalityB = tempModB;
-						DBRecordStatAll.selectedMod = 3;
-						DBRecordStatAll.flagMLE = 0;
-						DBRecordStatAll.DBRecordStatFillSummary(DBRecordStatAll);
-						AllStatreport = exportToFile.exportStat(AllStatreport, DBRecordStatAll, fileTime);	
-						savetable();
-						DBRecordStatAll.flagMLE = 1;
-						DBRecordStatAll.DBRecordStatFillSummary(DBRecordStatAll);
-						AllStatMLEreport = exportToFile.exportStat(AllStatMLEreport, DBRecordStatAll, fileTime);
-						savetable();
-					}
+					allStat.analyzeSummary(DBRecordStat, tempModA, tempModB);
 				}
 				// export result to disk
 				try {
-					FileWriter fwAllStat = new FileWriter(AllStatPath);
-					FileWriter fwAllStatMLE = new FileWriter(AllStatMLEPath);
-					FileWriter fwBDGtable = new FileWriter(BDGtable);
-					FileWriter fwBCKtable = new FileWriter(BCKtable);
-					FileWriter fwDBMtable = new FileWriter(DBMtable);
-					FileWriter fwORtable = new FileWriter(ORtable);
-					FileWriter fwMStable = new FileWriter(MStable);				
-					BufferedWriter bwAllStat = new BufferedWriter(fwAllStat);
-					BufferedWriter bwAllStatMLE = new BufferedWriter(fwAllStatMLE);
-					BufferedWriter bwBDGtable = new BufferedWriter(fwBDGtable);
-					BufferedWriter bwBCKtable = new BufferedWriter(fwBCKtable);
-					BufferedWriter bwDBMtable = new BufferedWriter(fwDBMtable);
-					BufferedWriter bwORtable = new BufferedWriter(fwORtable);
-					BufferedWriter bwMStable = new BufferedWriter(fwMStable);										
-					bwAllStat.write(AllStatreport);
-					bwAllStat.close();
-					bwAllStatMLE.write(AllStatMLEreport);
-					bwAllStatMLE.close();
-					bwBDGtable.write(BDGout);
-					bwBDGtable.close();
-					bwBCKtable.write(BCKout);
-					bwBCKtable.close();
-					bwDBMtable.write(DBMout);
-					bwDBMtable.close();
-					bwORtable.write(ORout);
-					bwORtable.close();
-					bwMStable.write(MSout);
-					bwMStable.close();					
-					
+					allStat.write(outputDir);
 					// only export ROC and each reader information for raw data 
-					if  (GUInterface.selectedInput == GUInterface.DescInputModeImrmc){
-						FileWriter fwAllAUCs = new FileWriter(AllAUCsPath);
-						FileWriter fwAllROC = new FileWriter(AllROCPath);
-						FileWriter fwAllCov = new FileWriter(AllReaderCovPath);
-						BufferedWriter bwAllAUCs = new BufferedWriter(fwAllAUCs);
-						BufferedWriter bwAllROC = new BufferedWriter(fwAllROC);	
-						BufferedWriter bwAllCov = new BufferedWriter(fwAllCov);	
-						bwAllAUCs.write(AllAUCsreport);
-						bwAllAUCs.close();
-						bwAllROC.write(AllROCreport);
-						bwAllROC.close();
-						bwAllCov.write(readerCovReport);
-						bwAllCov.close();
+					if  (allStat.rawData){
 						if (!MRMC.commandStart){
 							JOptionPane.showMessageDialog(
 											thisGUI.MRMCobject.getFrame(),"All modalities combinations analysis table, result, AUCs and ROC have been succeed export to \n " + outputDir, 
@@ -1005,13 +825,6 @@ public class GUInterface {
 			}
 						
 		}
-		private void savetable() {
-			// save tables result
-			BDGout = exportToFile.exportTableBDG(BDGout,DBRecordStatAll);
-    		BCKout = exportToFile.exportTableBCK(BCKout,DBRecordStatAll);
-	    	DBMout = exportToFile.exportTableDBM(DBMout,DBRecordStatAll);
-	    	ORout = exportToFile.exportTableOR(ORout,DBRecordStatAll);
-			MSout = exportToFile.exportTableMS(MSout,DBRecordStatAll);}
 			
 	}
 	
@@ -20,6 +20,12 @@ public class CalcGenRoeMetz {
 	
 	public static DBRecord DBRecordNumerical = new DBRecord();
 	
+	/**
+	 * Product moments integrated by {@link #prodMomentSingleModality} and {@link #prodMomentTwoModalities},
+	 * shared by all numerical Roe-Metz runs
+	 */
+	public static final MomentCache momentCache = new MomentCache(4096);
+	
 	
 	/**
 	 * Used when calling CalGenRoeMetz as a standalone application via
@@ -76,121 +82,112 @@ public class CalcGenRoeMetz {
 		}
 	}
 	/**
-	 * Numerically integrates a one dimensional gaussian pdf times two normal
-	 * cdfs follow Gallas2014_J-Med-Img_v1p031006 function 12
+	 * Integrates a one dimensional gaussian pdf times two normal
+	 * cdfs follow Gallas2014_J-Med-Img_v1p031006 function 12,
+	 * see {@link #cdfProductMoment(double, double, double, double, double, double)}.
+	 * Integrals of the same inputs are taken from {@link #momentCache}
 	 * 
 	 * @param u Contains experiment means
-	 * @param scale Contains one 1-D gaussian pdf and two 2-D normal cdfs
-	 * @param numSamples Number of samples for numerical integration
 	 * @return Integrated product moment
 	 */
 	private static double prodMomentSingleModality(double[] u, double sigmaSqOmega,
-		double sigmaSqOmegaMoment, double sigmaSqOneMod, double sigmaSqOneModMoment, int numSamples) {
-		NormalDist gaussNew = new NormalDist();
+		double sigmaSqOmegaMoment, double sigmaSqOneMod, double sigmaSqOneModMoment) {
 		// calculate temp Numerator
 		double tempNum = Math.sqrt(sigmaSqOmega + sigmaSqOneMod - sigmaSqOmegaMoment - sigmaSqOneModMoment);
 		// calculate temp Denominator
 		double tempDen = Math.sqrt(sigmaSqOmegaMoment + sigmaSqOneModMoment);
-		
-		// calculate x
-		double lx = 10.0;
-		double dx = lx / (double) numSamples;
-		double[] x = new double[numSamples];
-		double Integral = 0.0;
-		for (int i = 0; i < numSamples; i++) {
-			x[i] = ((double) i * dx) - (0.5 * lx);
-		}
-
-		double[] phi_x = new double[numSamples];
-		double[] cdfOneMod = new double[numSamples];
-
-		for (int i = 0; i < numSamples; i++) {
-			// calculate phi for normal gaussian distribution
-			phi_x[i] = Math.exp(-(x[i] * x[i]) / 2.0 )
-					/ Math.sqrt(Math.PI * 2.0);
-			// if Denominator is 0, set cdf to 1
-			if (tempDen!=0){
-				cdfOneMod[i] = gaussNew.cdf((u[0] + x[i]*tempNum)/tempDen);
-			}else{
-				cdfOneMod[i] = 1;
-			}		
-			// do integral
-			Integral = Integral + dx*phi_x[i]*cdfOneMod[i]*cdfOneMod[i];	
-		}
-		return Integral;
+		Double moment = momentCache.get(1, u[0], sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqOneMod, sigmaSqOneModMoment);
+		if (moment != null) return moment;
+		double result = cdfProductMoment(u[0], tempNum, tempDen, u[0], tempNum, tempDen);
+		momentCache.put(result, 1, u[0], sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqOneMod, sigmaSqOneModMoment);
+		return result;
 	}
 	/**
-	 * Numerically integrates a two dimensional gaussian pdf times a gaussian
-	 * cdf follow Gallas2014_J-Med-Img_v1p031006 function 15
+	 * Integrates a two dimensional gaussian pdf times a gaussian
+	 * cdf follow Gallas2014_J-Med-Img_v1p031006 function 15,
+	 * see {@link #cdfProductMoment(double, double, double, double, double, double)}.
+	 * Integrals of the same inputs are taken from {@link #momentCache}
 	 * 
 	 * @param u Contains experiment means.
-	 * @param scale Contains 2-D gaussian pdf and cdf
-	 * @param numSamples Number of samples for numerical integration
 	 * @return Integrated product moment
 	 */
 	private static double prodMomentTwoModalities(double[] u, double sigmaSqOmega,
-			double sigmaSqOmegaMoment, double sigmaSqA, double sigmaSqB, int numSamples) {
-		NormalDist gaussNew = new NormalDist();
+			double sigmaSqOmegaMoment, double sigmaSqA, double sigmaSqB) {
 		// calculate temp Numerator
 		double tempNumA = Math.sqrt(sigmaSqOmega - sigmaSqOmegaMoment); 
 		double tempNumB = Math.sqrt(sigmaSqOmega - sigmaSqOmegaMoment); 
 		// calculate temp Denominator
 		double tempDenA = Math.sqrt(sigmaSqA + sigmaSqOmegaMoment); 
 		double tempDenB = Math.sqrt(sigmaSqB + sigmaSqOmegaMoment);
-		
-		// calculate x
-		double lx = 10.0;
-		double dx = lx / (double) numSamples;
-		double[] x = new double[numSamples];
-		double Integral = 0.0;
-		for (int i = 0; i < numSamples; i++) {
-			x[i] = ((double) i * dx) - (0.5 * lx);
+		Double moment = momentCache.get(2, u[0], u[1], sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB);
+		if (moment != null) return moment;
+		double result = cdfProductMoment(u[0], tempNumA, tempDenA, u[1], tempNumB, tempDenB);
+		momentCache.put(result, 2, u[0], u[1], sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB);
+		return result;
+	}
+	/**
+	 * Integral over x of phi(x) cdf((uA + x numA) / denA) cdf((uB + x numB) / denB),
+	 * where a cdf with a denominator of 0 is 1. <br>
+	 * <br>
+	 * This is the probability that denA ZA - numA X &lt; uA and denB ZB - numB X &lt; uB
+	 * for independent standard normal ZA, ZB and X: the bivariate normal cdf
+	 * at hA = uA / sqrt(denA^2 + numA^2), hB = uB / sqrt(denB^2 + numB^2)
+	 * with correlation numA numB / sqrt((denA^2 + numA^2) (denB^2 + numB^2)),
+	 * see {@link #bivariateNormalCdf(double, double, double)}.
+	 * It replaces the sum over 256 samples of x in [-5, 5], which took a cdf for each sample and was within about 1e-6.
+	 */
+	private static double cdfProductMoment(double uA, double numA, double denA, double uB, double numB, double denB) {
+		// if Denominator is 0, the cdf is 1
+		if (denA == 0 && denB == 0) {
+			return 1.0;
 		}
-
-		double[] phi_x = new double[numSamples];
-		double[] cdf_A = new double[numSamples];
-		double[] cdf_B = new double[numSamples];
-
-		for (int i = 0; i < numSamples; i++) {
-			// calculate phi for normal gaussian distribution
-			phi_x[i] = Math.exp(-(x[i] * x[i]) / 2.0 )
-					/ Math.sqrt(Math.PI * 2.0);
-			// if Denominator is 0, set cdf to 1
-			if (tempDenA != 0){
-				cdf_A[i] = gaussNew.cdf((u[0] + x[i]*tempNumA)/tempDenA);
-			}else{
-				cdf_A[i] = 1;
-			}
-			// if Denominator is 0, set cdf to 1
-			if (tempDenB != 0){
-				cdf_B[i] = gaussNew.cdf((u[1] + x[i]*tempNumB)/tempDenB);;
-			}else{
-				cdf_B[i] = 1;
-			}
-			// do integral
-			Integral = Integral + dx*phi_x[i]*cdf_A[i]*cdf_B[i];		
+		double scaleA = Math.sqrt(denA * denA + numA * numA);
+		double scaleB = Math.sqrt(denB * denB + numB * numB);
+		if (denA == 0) {
+			return NormalDist.cdf01(uB / scaleB);
+		}
+		if (denB == 0) {
+			return NormalDist.cdf01(uA / scaleA);
 		}
-		return Integral;
+		return bivariateNormalCdf(uA / scaleA, uB / scaleB, numA * numB / (scaleA * scaleB));
 	}
 	/**
-	 * Calculates AUC components of variance for given experiment parameters via
-	 * numerical integration
+	 * Bivariate standard normal cdf by Plackett's formula with r = sin(theta) (Drezner and Wesolowsky, 1990):
+	 * cdf(h) cdf(k) + 1/(2 pi) times the integral from 0 to asin(rho) of
+	 * exp(-(h^2 - 2 h k sin(theta) + k^2) / (2 cos(theta)^2)). The integrand is smooth and bounded,
+	 * even as rho goes to 1, and is integrated by {@link roemetz.core.Quadrature} within {@link roemetz.core.Quadrature#TOLERANCE}.
+	 * 
+	 * @param h first limit
+	 * @param k second limit
+	 * @param rho correlation, from 0 to 1
+	 * @return the probability that both variables are below their limits
+	 */
+	private static double bivariateNormalCdf(final double h, final double k, double rho) {
+		double independent = NormalDist.cdf01(h) * NormalDist.cdf01(k);
+		if (rho == 0) {
+			return independent;
+		}
+		final double hh = h * h + k * k;
+		final double hk = 2.0 * h * k;
+		double integral = Quadrature.integrate(new Quadrature.Integrand() {
+			public double value(double theta) {
+				double sin = Math.sin(theta);
+				double cosSq = 1.0 - sin * sin;
+				return Math.exp(-(hh - hk * sin) / (2.0 * cosSq));
+			}
+		}, 0.0, Math.asin(Math.min(rho, 1.0)));
+		return independent + integral / (2.0 * Math.PI);
+	}
+	/**
+	 * Moments M1 to M8 of the AUCs for given experiment means and variance components,
+	 * which do not depend on the numbers of readers and cases. <br>
+	 * CALLED BY: {@link #genRoeMetz(double[], double[], SizePanel)}, {@link roemetz.core.RoeMetzSweep}
 	 * 
 	 * @param u Contains experiment means. Has 2 elements.
 	 * @param var_t Contains variance components. Has 18 elements.
-	 * @param Nreader Number of readers in experiment.
-	 * @param Nnormal Number of normal cases in experiment.
-	 * @param Ndisease Number of disease cases in experiment.
+	 * @return BDG moments [3][8]: modality A, modality B, and the product of the two
 	 */
-	public static void genRoeMetz(double[] u, double[] var_t, SizePanel SizePanelRoeMetz) {
-		
-		DBRecordNumerical.Nreader = Integer.parseInt(SizePanelRoeMetz.NreaderJTextField.getText());
-		DBRecordNumerical.Nnormal = Integer.parseInt(SizePanelRoeMetz.NnormalJTextField.getText());
-		DBRecordNumerical.Ndisease = Integer.parseInt(SizePanelRoeMetz.NdiseaseJTextField.getText());
-
-
-		// number of samples for numerical integration, can change
-		final int numSamples = 256;
+	public static double[][] moments(double[] u, double[] var_t) {
 
 	//	NormalDistribution gauss = new NormalDistribution();
 		NormalDist gaussNew = new NormalDist();
@@ -222,104 +219,121 @@ public class CalcGenRoeMetz {
 		double sigmaSqOmegaMoment = 0;
 		
 		
-		DBRecordNumerical.AUCsReaderAvg = new double[2];
-		DBRecordNumerical.AUCs = new double[(int) DBRecordNumerical.Nreader][2];
-
-		DBRecordNumerical.AUCsReaderAvg[0] = 
-				gaussNew.cdf(u[0] / Math.sqrt(sigmaSqOmega + sigmaSqA));
-		DBRecordNumerical.AUCsReaderAvg[1] = 
-				gaussNew.cdf(u[1] / Math.sqrt(sigmaSqOmega + sigmaSqB));
-
-		for(int r=0; r<DBRecordNumerical.Nreader; r++) {
-			DBRecordNumerical.AUCs[r][0] = DBRecordNumerical.AUCsReaderAvg[0];
-			DBRecordNumerical.AUCs[r][1] = DBRecordNumerical.AUCsReaderAvg[1];
-		}
+		double[][] BDG = new double[3][8];
+		double AUCA = gaussNew.cdf(u[0] / Math.sqrt(sigmaSqOmega + sigmaSqA));
+		double AUCB = gaussNew.cdf(u[1] / Math.sqrt(sigmaSqOmega + sigmaSqB));
 		
 		// M1
-		DBRecordNumerical.BDG[0][0] = DBRecordNumerical.AUCsReaderAvg[0];
-		DBRecordNumerical.BDG[1][0] = DBRecordNumerical.AUCsReaderAvg[1];
-		DBRecordNumerical.BDG[2][0] = 
-			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB, numSamples);
+		BDG[0][0] = AUCA;
+		BDG[1][0] = AUCB;
+		BDG[2][0] = 
+			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB);
 
 		// M2
 		sigmaSqAMoment = v_AC0 + v_ARC0;
 		sigmaSqBMoment = v_BC0 + v_BRC0;
 		sigmaSqOmegaMoment = v_C0 + v_RC0;
 
-		DBRecordNumerical.BDG[0][1] = 
-			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment, numSamples);
-		DBRecordNumerical.BDG[1][1] = 
-			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment, numSamples);
-		DBRecordNumerical.BDG[2][1] = 
-			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB, numSamples);
+		BDG[0][1] = 
+			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment);
+		BDG[1][1] = 
+			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment);
+		BDG[2][1] = 
+			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB);
 		
 		// M3
 		sigmaSqAMoment = v_AC1 + v_ARC1;
 		sigmaSqBMoment = v_BC1 + v_BRC1;
 		sigmaSqOmegaMoment = v_C1 + v_RC1 ;
 		
-		DBRecordNumerical.BDG[0][2] = 
-			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment, numSamples);
-		DBRecordNumerical.BDG[1][2] = 
-			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment, numSamples);
-		DBRecordNumerical.BDG[2][2] = 
-			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB, numSamples);
+		BDG[0][2] = 
+			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment);
+		BDG[1][2] = 
+			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment);
+		BDG[2][2] = 
+			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB);
 		
 		// M4
 		sigmaSqAMoment = v_AC1 + v_ARC1 + v_AC0 + v_ARC0;
 		sigmaSqBMoment = v_BC1 + v_BRC1 + v_BC0 + v_BRC0;
 		sigmaSqOmegaMoment = v_C1 + v_RC1 + v_C0 + v_RC0;
 
-		DBRecordNumerical.BDG[0][3] = 
-			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment, numSamples);
-		DBRecordNumerical.BDG[1][3] = 
-			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment, numSamples);
-		DBRecordNumerical.BDG[2][3] = 
-			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB, numSamples);
+		BDG[0][3] = 
+			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment);
+		BDG[1][3] = 
+			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment);
+		BDG[2][3] = 
+			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB);
 		
 		// M5
 		sigmaSqAMoment = v_AR0 + v_ARC0 + v_AR1 + v_ARC1;
 		sigmaSqBMoment = v_BR0 + v_BRC0 + v_BR1 + v_BRC1;
 		sigmaSqOmegaMoment = v_R0 + v_RC0 + v_R1 + v_RC1;
 
-		DBRecordNumerical.BDG[0][4] = 
-			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment, numSamples);
-		DBRecordNumerical.BDG[1][4] = 
-			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment, numSamples);
-		DBRecordNumerical.BDG[2][4] = 
-			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB, numSamples);
+		BDG[0][4] = 
+			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment);
+		BDG[1][4] = 
+			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment);
+		BDG[2][4] = 
+			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB);
 		
 		// M6	
 		sigmaSqAMoment = v_AR0 + v_AC0  + v_ARC0 + v_AR1 + v_ARC1;
 		sigmaSqBMoment = v_BR0 + v_BC0  + v_BRC0 + v_BR1 + v_BRC1;
 		sigmaSqOmegaMoment = v_R0 + v_C0 + v_RC0 + v_R1 + v_RC1;
 		
-		DBRecordNumerical.BDG[0][5] = 
-			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment, numSamples);
-		DBRecordNumerical.BDG[1][5] = 
-			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment, numSamples);
-		DBRecordNumerical.BDG[2][5] = 
-			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB, numSamples);
+		BDG[0][5] = 
+			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment);
+		BDG[1][5] = 
+			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment);
+		BDG[2][5] = 
+			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB);
 		
 		// M7	
 		sigmaSqAMoment = v_AR0 + v_ARC0 + v_AR1 + v_AC1 + v_ARC1;
 		sigmaSqBMoment = v_BR0 + v_BRC0 + v_BR1 + v_BC1 + v_BRC1;
 		sigmaSqOmegaMoment = v_R0 + v_RC0 + v_R1 + v_C1 + v_RC1;
 		
-		DBRecordNumerical.BDG[0][6] = 
-			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment, numSamples);
-		DBRecordNumerical.BDG[1][6] = 
-			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment, numSamples);
-		DBRecordNumerical.BDG[2][6] = 
-			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB, numSamples);
+		BDG[0][6] = 
+			prodMomentSingleModality(new double[] { u[0], u[0] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqAMoment);
+		BDG[1][6] = 
+			prodMomentSingleModality(new double[] { u[1], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqB, sigmaSqBMoment);
+		BDG[2][6] = 
+			prodMomentTwoModalities(new double[] { u[0], u[1] }, sigmaSqOmega, sigmaSqOmegaMoment, sigmaSqA, sigmaSqB);
 		
 		// M8
-		DBRecordNumerical.BDG[0][7] = 
-				DBRecordNumerical.AUCsReaderAvg[0]*DBRecordNumerical.AUCsReaderAvg[0];
-		DBRecordNumerical.BDG[1][7] = 
-				DBRecordNumerical.AUCsReaderAvg[1]*DBRecordNumerical.AUCsReaderAvg[1];
-		DBRecordNumerical.BDG[2][7] = 
-				DBRecordNumerical.AUCsReaderAvg[0]*DBRecordNumerical.AUCsReaderAvg[1];
+		BDG[0][7] = AUCA*AUCA;
+		BDG[1][7] = AUCB*AUCB;
+		BDG[2][7] = AUCA*AUCB;
+
+		return BDG;
+	}
+	/**
+	 * Calculates AUC components of variance for given experiment parameters via
+	 * numerical integration
+	 * 
+	 * @param u Contains experiment means. Has 2 elements.
+	 * @param var_t Contains variance components. Has 18 elements.
+	 * @param SizePanelRoeMetz Number of readers, normal cases and disease cases in experiment.
+	 */
+	public static void genRoeMetz(double[] u, double[] var_t, SizePanel SizePanelRoeMetz) {
+		
+		DBRecordNumerical.Nreader = Integer.parseInt(SizePanelRoeMetz.NreaderJTextField.getText());
+		DBRecordNumerical.Nnormal = Integer.parseInt(SizePanelRoeMetz.NnormalJTextField.getText());
+		DBRecordNumerical.Ndisease = Integer.parseInt(SizePanelRoeMetz.NdiseaseJTextField.getText());
+
+		double[][] BDG = moments(u, var_t);
+		DBRecordNumerical.AUCsReaderAvg = new double[] { BDG[0][0], BDG[1][0] };
+		DBRecordNumerical.AUCs = new double[(int) DBRecordNumerical.Nreader][2];
+		for(int r=0; r<DBRecordNumerical.Nreader; r++) {
+			DBRecordNumerical.AUCs[r][0] = DBRecordNumerical.AUCsReaderAvg[0];
+			DBRecordNumerical.AUCs[r][1] = DBRecordNumerical.AUCsReaderAvg[1];
+		}
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 8; j++) {
+				DBRecordNumerical.BDG[i][j] = BDG[i][j];
+			}
+		}
 
 		// Set the coefficients
 		DBRecordNumerical.DBRecordRoeMetzNumericalFill(SizePanelRoeMetz);
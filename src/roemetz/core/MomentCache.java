@@ -0,0 +1,117 @@
+package roemetz.core;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the product moments of {@link roemetz.core.CalcGenRoeMetz}, keyed by the exact inputs
+ * of an integral, so that numerical Roe-Metz runs that share means and variance components reuse their integrals. <br>
+ * <br>
+ * The least recently used moment is dropped once the cache has {@link #capacity} moments.
+ * The methods are synchronized, so the cache can be shared by threads. A moment that is not in the cache
+ * is integrated outside of the lock: two threads that miss the same moment both integrate it, with the same result. <br>
+ * <br>
+ * CALLED FROM: {@link roemetz.core.CalcGenRoeMetz#momentCache}
+ */
+public class MomentCache {
+
+	/**
+	 * Largest number of moments kept
+	 */
+	public final int capacity;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	private final LinkedHashMap<Key, Double> moments;
+
+	/**
+	 * @param capacity largest number of moments kept
+	 */
+	public MomentCache(final int capacity) {
+		this.capacity = capacity;
+		moments = new LinkedHashMap<Key, Double>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @param inputs the inputs of the integral, only used for the lookup
+	 * @return the moment, or null if it is not in the cache. Counts a hit or a miss
+	 */
+	public synchronized Double get(double... inputs) {
+		Double moment = moments.get(new Key(inputs));
+		if (moment == null) misses++;
+		else hits++;
+		return moment;
+	}
+
+	/**
+	 * @param moment the integral of the inputs
+	 * @param inputs the inputs of the integral, which are copied
+	 */
+	public synchronized void put(double moment, double... inputs) {
+		moments.put(new Key(inputs.clone()), moment);
+	}
+
+	/**
+	 * Drops all moments and resets the counters
+	 */
+	public synchronized void clear() {
+		moments.clear();
+		hits = 0;
+		misses = 0;
+	}
+
+	/**
+	 * @return number of moments found in the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of moments not found in the cache
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return number of moments kept
+	 */
+	public synchronized int size() {
+		return moments.size();
+	}
+
+	public synchronized String toString() {
+		return "moments=" + moments.size() + " hits=" + hits + " misses=" + misses;
+	}
+
+	/**
+	 * Inputs of an integral, equal when all inputs are equal to the last bit
+	 */
+	private static class Key {
+		final double[] inputs;
+		final int hash;
+
+		Key(double[] inputs) {
+			this.inputs = inputs;
+			hash = Arrays.hashCode(inputs);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(inputs, ((Key) o).inputs);
+		}
+	}
+
+}
@@ -0,0 +1,124 @@
+package roemetz.core;
+
+import java.util.ArrayList;
+
+/**
+ * Adaptive Gauss-Kronrod integration of a function over a finite interval to an absolute error tolerance,
+ * used for the product moments of {@link roemetz.core.CalcGenRoeMetz}. <br>
+ * <br>
+ * The 15-point Gauss-Kronrod rule of an interval is compared with the 7-point Gauss rule of the same nodes.
+ * The interval with the largest difference is split in two until the sum of the differences is within the tolerance.
+ * A smooth function needs one or a few intervals. <br>
+ * <br>
+ * The methods keep no state, so integrals can be done on several threads at once.
+ */
+public class Quadrature {
+
+	/**
+	 * Function to integrate
+	 */
+	public interface Integrand {
+		double value(double x);
+	}
+
+	/**
+	 * Default absolute error tolerance
+	 */
+	public static final double TOLERANCE = 1e-12;
+	/**
+	 * Largest number of intervals
+	 */
+	public static final int MAX_INTERVALS = 100;
+
+	/**
+	 * Gauss-Kronrod 15-point nodes on [-1, 1], from the center out (QUADPACK qk15).
+	 * The even ones are the 7-point Gauss nodes
+	 */
+	private static final double[] XGK = {
+		0.000000000000000000000000000000000, 0.207784955007898467600689403773245,
+		0.405845151377397166906606412076961, 0.586087235467691130294144845693013,
+		0.741531185599394439863864773280788, 0.864864423359769072789712788640926,
+		0.949107912342758524526189684047851, 0.991455371120812639206854697526329 };
+	/**
+	 * Gauss-Kronrod 15-point weights of XGK
+	 */
+	private static final double[] WGK = {
+		0.209482141084727828012999174891714, 0.204432940075298892414161999234649,
+		0.190350578064785409913256402421014, 0.169004726639267902826583426598550,
+		0.140653259715525918745189590510238, 0.104790010322250183839876322541518,
+		0.063092092629978553290700663189204, 0.022935322010529224963732008058970 };
+	/**
+	 * Gauss 7-point weights of the nodes XGK[0], XGK[2], XGK[4], XGK[6]
+	 */
+	private static final double[] WG = {
+		0.417959183673469387755102040816327, 0.381830050505118944950369775488975,
+		0.279705391489276667901467771423780, 0.129484966168869693270611432679082 };
+
+	/**
+	 * @param f the function
+	 * @param a lower limit
+	 * @param b upper limit
+	 * @return the integral of f from a to b, within {@link #TOLERANCE}
+	 */
+	public static double integrate(Integrand f, double a, double b) {
+		return integrate(f, a, b, TOLERANCE);
+	}
+
+	/**
+	 * @param f the function
+	 * @param a lower limit
+	 * @param b upper limit
+	 * @param tolerance absolute error tolerance
+	 * @return the integral of f from a to b. If the tolerance is not reached with {@link #MAX_INTERVALS} intervals,
+	 *  the best estimate
+	 */
+	public static double integrate(Integrand f, double a, double b, double tolerance) {
+
+		if (a == b) return 0.0;
+		ArrayList<double[]> intervals = new ArrayList<double[]>();
+		intervals.add(gaussKronrod(f, a, b));
+		double integral = intervals.get(0)[2];
+		double error = intervals.get(0)[3];
+		while (error > tolerance && intervals.size() < MAX_INTERVALS) {
+			// split the interval of the largest error
+			int worst = 0;
+			for (int i = 1; i < intervals.size(); i++) {
+				if (intervals.get(i)[3] > intervals.get(worst)[3]) worst = i;
+			}
+			double[] interval = intervals.get(worst);
+			double middle = 0.5 * (interval[0] + interval[1]);
+			intervals.set(worst, gaussKronrod(f, interval[0], middle));
+			intervals.add(gaussKronrod(f, middle, interval[1]));
+			integral = 0.0;
+			error = 0.0;
+			for (double[] i : intervals) {
+				integral += i[2];
+				error += i[3];
+			}
+		}
+		return integral;
+
+	}
+
+	/**
+	 * @return [0] a, [1] b, [2] the 15-point Gauss-Kronrod rule of f over [a, b],
+	 *  [3] its error estimate, the difference with the 7-point Gauss rule
+	 */
+	private static double[] gaussKronrod(Integrand f, double a, double b) {
+
+		double center = 0.5 * (a + b);
+		double half = 0.5 * (b - a);
+		double fc = f.value(center);
+		double kronrod = WGK[0] * fc;
+		double gauss = WG[0] * fc;
+		for (int j = 1; j < XGK.length; j++) {
+			double dx = half * XGK[j];
+			double sum = f.value(center - dx) + f.value(center + dx);
+			kronrod += WGK[j] * sum;
+			if (j % 2 == 0) gauss += WG[j / 2] * sum;
+		}
+		return new double[] { a, b, kronrod * half, Math.abs((kronrod - gauss) * half) };
+
+	}
+
+}
@@ -45,7 +45,13 @@ public class RoeMetz extends JApplet {
 	 * Entry point of application. Sets the look-and-feel to match that of the
 	 * user's OS and starts the application with specified frame size.
 	 * 
-	 * @param args Command-line arguments, not used
+	 * @param args Command-line arguments: an optional input file to validate, and -workers=N,
+	 *            the number of worker threads of the simulation experiments. <br>
+	 *            With -trials=START:END, only the simulation experiments START to END-1 of the input file are done,
+	 *            without the GUI, and written to a shard file. With -merge, the shard files of the input file
+	 *            are merged and the simulation results are exported, see {@link roemetz.core.SimShards}. <br>
+	 *            With -trials, -checkpoint=SECONDS writes checkpoints of the experiments done every SECONDS,
+	 *            and -resume continues the shard from its checkpoints
 	 */
 	public static void main(String[] args) {
 		try {
@@ -60,9 +66,54 @@ public class RoeMetz extends JApplet {
 			e.printStackTrace();
 		}
 		String inputFileFullName = "";
-		if (args.length != 0){
-			inputFileFullName = args[0];
-			doValidation = true;
+		long[] shard = null;
+		boolean mergeShards = false;
+		for (String arg : args) {
+			if (arg.startsWith("-workers=")) {
+				try {
+					SimExperiments.numWorkers = Integer.parseInt(arg.substring("-workers=".length()));
+				} catch (NumberFormatException e) {
+					System.out.println("Incorrect number of workers: " + arg);
+					return;
+				}
+			} else if (arg.startsWith("-trials=")) {
+				String range = arg.substring("-trials=".length());
+				try {
+					int loc = range.indexOf(":");
+					shard = new long[] {Long.parseLong(range.substring(0, loc).trim()),
+							Long.parseLong(range.substring(loc + 1).trim())};
+				} catch (RuntimeException e) {
+					System.out.println("Incorrect range of experiments, expected -trials=START:END: " + arg);
+					return;
+				}
+			} else if (arg.equals("-merge")) {
+				mergeShards = true;
+			} else if (arg.startsWith("-checkpoint=")) {
+				try {
+					SimExperiments.checkpointSeconds = Long.parseLong(arg.substring("-checkpoint=".length()));
+				} catch (NumberFormatException e) {
+					System.out.println("Incorrect number of seconds between checkpoints: " + arg);
+					return;
+				}
+			} else if (arg.equals("-resume")) {
+				SimExperiments.resume = true;
+			} else if (inputFileFullName.length() == 0) {
+				inputFileFullName = arg;
+				doValidation = true;
+			}
+		}
+		if (shard == null && (SimExperiments.checkpointSeconds > 0 || SimExperiments.resume)) {
+			System.out.println("-checkpoint and -resume are for the experiments of -trials=START:END");
+			return;
+		}
+		if (shard != null || mergeShards) {
+			if (inputFileFullName.length() == 0) {
+				System.out.println("An input file is needed with -trials or -merge");
+				return;
+			}
+			// shards run without a window, on machines that may have no display
+			validateFunction.simulationShard(inputFileFullName, shard, mergeShards);
+			return;
 		}
 		run(new RoeMetz(), 900, 600);
 		validateFunction.validateFunction(RMGUInterface1,inputFileFullName);
@@ -0,0 +1,176 @@
+package roemetz.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import mrmc.core.DBRecord;
+import umontreal.iro.lecuyer.probdist.NormalDist;
+
+/**
+ * Numerical Roe and Metz variances and powers over a grid of experiment means, variance components
+ * and study sizes, without a GUI. <br>
+ * <br>
+ * The moments M1 to M8 do not depend on the numbers of readers and cases, see
+ * {@link roemetz.core.CalcGenRoeMetz#moments(double[], double[])}. They are integrated once per
+ * distinct (u, var_t) of a sweep, and each study size only takes the fully-crossed coefficients of
+ * {@link mrmc.core.DBRecord#genBDGCoeff(long, long, long)}. The configurations are done in parallel
+ * on {@link roemetz.core.SimExperiments#numWorkers} threads. <br>
+ * <br>
+ * The power is that of the normal approximation, as {@link mrmc.core.StatTest#PowerZtest()}, with the effect size
+ * the difference of the AUCs of the two modalities.
+ */
+public class RoeMetzSweep {
+
+	/**
+	 * One configuration of a sweep
+	 */
+	public static class Config {
+		/**
+		 * Experiment means. Has 2 elements
+		 */
+		public final double[] u;
+		/**
+		 * Variance components. Has 18 elements
+		 */
+		public final double[] var_t;
+		public final long Nreader;
+		public final long Nnormal;
+		public final long Ndisease;
+
+		/**
+		 * @throws IllegalArgumentException if u does not have 2 elements or var_t 18
+		 */
+		public Config(double[] u, double[] var_t, long Nreader, long Nnormal, long Ndisease) {
+			if (u.length != 2) throw new IllegalArgumentException("Expected input u to contain 2 elements");
+			if (var_t.length != 18) throw new IllegalArgumentException("Expected input var_t to contain 18 elements");
+			this.u = u.clone();
+			this.var_t = var_t.clone();
+			this.Nreader = Nreader;
+			this.Nnormal = Nnormal;
+			this.Ndisease = Ndisease;
+		}
+
+		/**
+		 * @return the (u, var_t) of the configuration, equal for equal inputs to the last bit
+		 */
+		String momentsKey() {
+			return Arrays.toString(u) + Arrays.toString(var_t);
+		}
+	}
+
+	/**
+	 * One row of the table of a sweep
+	 */
+	public static class Row {
+		public final Config config;
+		/**
+		 * BDG moments [3][8] of the configuration, shared by the rows of the same (u, var_t)
+		 */
+		public final double[][] BDG;
+		public double AUCA, AUCB;
+		public double varA, varB;
+		/**
+		 * Variance of the difference of the AUCs
+		 */
+		public double totalVar;
+		public double SE;
+		public double cutoffNormal, powerNormal;
+
+		private Row(Config config, double[][] BDG) {
+			this.config = config;
+			this.BDG = BDG;
+		}
+	}
+
+	/**
+	 * @param configs the configurations
+	 * @param sigLevel significance level of the power
+	 * @return a row for each configuration, in the same order
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public static Row[] sweep(Config[] configs, final double sigLevel) throws InterruptedException {
+
+		final ConcurrentHashMap<String, FutureTask<double[][]>> moments = new ConcurrentHashMap<String, FutureTask<double[][]>>();
+		Row[] rows = new Row[configs.length];
+		if (configs.length == 0) return rows;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(SimExperiments.numWorkers, configs.length)));
+		try {
+			ArrayList<Future<Row>> futures = new ArrayList<Future<Row>>();
+			for (final Config config : configs) {
+				futures.add(pool.submit(new Callable<Row>() {
+					public Row call() throws InterruptedException, ExecutionException {
+						return row(config, moments(moments, config), sigLevel);
+					}
+				}));
+			}
+			for (int i = 0; i < configs.length; i++) {
+				try {
+					rows[i] = futures.get(i).get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof ExecutionException) cause = cause.getCause();
+					if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+					throw new IllegalStateException(cause);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return rows;
+
+	}
+
+	/**
+	 * @return the moments of the (u, var_t) of the configuration, integrated by the first worker that needs them
+	 *  while the others wait for them
+	 */
+	private static double[][] moments(ConcurrentHashMap<String, FutureTask<double[][]>> moments, final Config config)
+			throws InterruptedException, ExecutionException {
+
+		FutureTask<double[][]> task = new FutureTask<double[][]>(new Callable<double[][]>() {
+			public double[][] call() {
+				return CalcGenRoeMetz.moments(config.u, config.var_t);
+			}
+		});
+		FutureTask<double[][]> done = moments.putIfAbsent(config.momentsKey(), task);
+		if (done == null) {
+			task.run();
+			done = task;
+		}
+		return done.get();
+
+	}
+
+	/**
+	 * Variances and power of one study size, as {@link mrmc.core.DBRecord#DBRecordRoeMetzNumericalFill} for a
+	 * fully-crossed study
+	 */
+	private static Row row(Config config, double[][] BDG, double sigLevel) {
+
+		Row row = new Row(config, BDG);
+		row.AUCA = BDG[0][0];
+		row.AUCB = BDG[1][0];
+		double[][] BDGcoeff = DBRecord.genBDGCoeff(config.Nreader, config.Nnormal, config.Ndisease);
+		for (int i = 0; i < 8; i++) {
+			row.varA += BDGcoeff[0][i] * BDG[0][i];
+			row.varB += BDGcoeff[1][i] * BDG[1][i];
+			row.totalVar += BDGcoeff[0][i] * BDG[0][i]
+					+ BDGcoeff[1][i] * BDG[1][i]
+					- 2.0 * BDGcoeff[2][i] * BDG[2][i];
+		}
+		row.SE = Math.sqrt(row.totalVar);
+		double tStatCalc = Math.abs(row.AUCA - row.AUCB) / row.SE;
+		row.cutoffNormal = NormalDist.inverseF(0, 1, 1 - sigLevel / 2.0);
+		row.powerNormal = 1 - NormalDist.cdf(tStatCalc, 1, row.cutoffNormal);
+		return row;
+
+	}
+
+}
@@ -0,0 +1,658 @@
+package roemetz.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mrmc.core.DBRecord;
+import mrmc.core.DBRecordAccumulator;
+import mrmc.gui.SizePanel;
+import umontreal.iro.lecuyer.rng.WELL1024;
+
+/**
+ * Performs the Monte Carlo simulation experiments of iRoeMetz on a pool of worker threads. <br>
+ * <br>
+ * The experiments 0 to Nexp-1 are split into one contiguous range of whole segments
+ * of {@link roemetz.core.TrialAccumulator#SEGMENT_TRIALS} experiments per worker.
+ * Each worker has its own {@link umontreal.iro.lecuyer.rng.WELL1024} stream and its own
+ * {@link roemetz.core.SimRoeMetz}, and accumulates the mean and variance of its
+ * experiments in its own branch of a {@link roemetz.core.TrialAccumulator}. <br>
+ * <br>
+ * Before each experiment the stream of the worker is seeded for that experiment, see {@link #trialSeed(int, int, long)},
+ * and the segments are merged in a fixed order, so a seed and a random stream ID always give the same
+ * experiments and the same results, whatever the number of workers. <br>
+ * <br>
+ * A simulation can also be split into shards, ranges of whole segments done by separate processes,
+ * see {@link #setShard(long, long)} and {@link roemetz.core.SimShards}. A long shard can write checkpoints
+ * of the experiments done by each worker and be resumed from them, see {@link #checkpointSeconds} and {@link #resume}.
+ * The stream of an experiment only depends on its index, so no state of the streams is kept. <br>
+ * <br>
+ * Instead of a fixed number of experiments, a simulation can run until the Monte Carlo standard errors
+ * of some values reach their targets, see {@link #targetSE}. It then gives the same results as a simulation
+ * of the number of experiments done, {@link #NexpDone}. <br>
+ * <br>
+ * CALLED FROM: {@link roemetz.gui.RMGUInterface.DoSimBtnListener} <br>
+ */
+public class SimExperiments {
+
+	/**
+	 * Number of worker threads used for the simulation experiments. <br>
+	 * Set by the -workers=N command-line option of {@link roemetz.core.RoeMetz}
+	 * or the "Number of Workers" line of an input file. Default: the number of available processors
+	 */
+	public static int numWorkers = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Seconds between two checkpoints of a worker, written to a file once the experiments of a segment are done.
+	 * Only for simulations with an {@link #inputFile}. <br>
+	 * Set by the -checkpoint=SECONDS command-line option of {@link roemetz.core.RoeMetz}. Default: 0, no checkpoints
+	 */
+	public static long checkpointSeconds = 0;
+
+	/**
+	 * True to read the checkpoints of the {@link #inputFile} and only do the experiments that are not in them,
+	 * see {@link roemetz.core.SimShards#readCheckpoints(SimExperiments, TrialAccumulator)}. <br>
+	 * Set by the -resume command-line option of {@link roemetz.core.RoeMetz}
+	 */
+	public static boolean resume = false;
+
+	/**
+	 * Values whose Monte Carlo standard error can stop a simulation before Nexp experiments, see {@link #targetSE}: <br>
+	 * -- the mean AUC difference, {@link mrmc.core.DBRecord#AUCsReaderAvg}[2] <br>
+	 * -- the mean totalVar <br>
+	 * -- the rejection rates of the Normal, BDG and Hillis tests
+	 */
+	public static final String[] PRECISION_VALUES = {"AUC A-B", "totalVar", "rejectNormal", "rejectBDG", "rejectHillis"};
+
+	/**
+	 * Target Monte Carlo standard error of each of {@link #PRECISION_VALUES}, 0 for none. <br>
+	 * If a target is set, the experiments are done in batches of {@link #batchTrials}, and the simulation stops
+	 * after the first batch that brings the standard error of every value with a target to its target,
+	 * or after Nexp experiments. Not used by shards. <br>
+	 * Set by the "Target SE of" lines of an input file
+	 */
+	public static double[] targetSE = new double[PRECISION_VALUES.length];
+
+	/**
+	 * Number of experiments between two checks of {@link #targetSE}, rounded up to whole segments. <br>
+	 * Set by the "Experiments per Batch" line of an input file. Default: 1000
+	 */
+	public static long batchTrials = 1000;
+
+	/**
+	 * Called by the workers after each simulation experiment
+	 */
+	public interface TrialListener {
+		/**
+		 * @param trial index of the experiment, from 0 to Nexp-1
+		 * @param DBRecordStat the analysis of the experiment; it is reused by the next experiment of the worker
+		 * @param used false if the experiment was dropped because its totalVar is negative
+		 */
+		void trialDone(long trial, DBRecord DBRecordStat, boolean used);
+	}
+
+	/**
+	 * Experiment means [2] and components of variance [18], see {@link roemetz.core.SimRoeMetz}
+	 */
+	public double[] u, var_t;
+	/**
+	 * Size and study design of each experiment
+	 */
+	public SizePanel sizePanel1;
+	/**
+	 * 0 for U-statistics, 1 for MLE
+	 */
+	public int useMLE;
+	/**
+	 * Number of simulation experiments
+	 */
+	public long Nexp;
+	/**
+	 * The experiments done by {@link #run(TrialListener)}: shardStart to shardEnd-1. Default: all
+	 */
+	public long shardStart, shardEnd;
+	/**
+	 * True if the experiments are a shard, set by {@link #setShard(long, long)}: they are written to a file
+	 * and merged by another process, so {@link #run(TrialListener)} leaves them in {@link #trialAccumulator}
+	 */
+	public boolean isShard = false;
+	/**
+	 * Input file of the simulation, which names its shard and checkpoint files, see {@link roemetz.core.SimShards}.
+	 * Null if none, as in the GUI
+	 */
+	public File inputFile = null;
+	/**
+	 * Seed of the random number generator and random stream ID, which give the stream of each experiment
+	 */
+	public int seed, RandomStreamID;
+	/**
+	 * Number of workers used: {@link #numWorkers}, but no more than the number of segments of experiments
+	 */
+	public int numWorkersToUse;
+	/**
+	 * True if the experiments are saved to files, so each experiment is also written as text rows,
+	 * see {@link roemetz.core.SimRoeMetz#makeObserverData}
+	 */
+	public boolean saveTrials = false;
+
+	/**
+	 * Number of experiments done by {@link #run(TrialListener)}: those of the shard, Nexp by default,
+	 * or fewer if the targets of {@link #targetSE} were reached
+	 */
+	public long NexpDone = 0;
+	/**
+	 * Mean and variance of all the experiments, set by {@link #run(TrialListener)} when it is not a shard,
+	 * or by {@link #finish(TrialAccumulator)}
+	 */
+	public DBRecordAccumulator accumulator;
+	/**
+	 * Experiments of each segment, set by {@link #run(TrialListener)}
+	 */
+	public TrialAccumulator trialAccumulator;
+	/**
+	 * If not null, the results of every experiment are also kept here, one partition per worker.
+	 * Set before {@link #run(TrialListener)}
+	 */
+	public TrialResultStore trialResults = null;
+
+	/**
+	 * Sets up the workers and their random number streams
+	 *
+	 * @param u experiment means [2]
+	 * @param var_t components of variance [18]
+	 * @param sizePanelTemp size and study design of each experiment
+	 * @param useMLE 0 for U-statistics, 1 for MLE
+	 * @param Nexp number of simulation experiments
+	 * @param seed seed of the random number generator
+	 * @param RandomStreamID random stream ID; another ID gives other experiments for the same seed
+	 */
+	public SimExperiments(double[] u, double[] var_t, SizePanel sizePanelTemp, int useMLE,
+			long Nexp, int seed, int RandomStreamID) {
+
+		this.u = u;
+		this.var_t = var_t;
+		this.sizePanel1 = sizePanelTemp;
+		this.useMLE = useMLE;
+		this.Nexp = Nexp;
+		this.seed = seed;
+		this.RandomStreamID = RandomStreamID;
+		shardStart = 0;
+		shardEnd = Nexp;
+		setNumWorkersToUse();
+
+	}
+
+	/**
+	 * Sets the experiments of a shard, done by {@link #run(TrialListener)}, and the number of workers
+	 *
+	 * @param shardStart index of the first experiment, the first of a segment
+	 *  (a multiple of {@link roemetz.core.TrialAccumulator#SEGMENT_TRIALS})
+	 * @param shardEnd index after the last experiment, the first of a segment or Nexp
+	 */
+	public void setShard(long shardStart, long shardEnd) {
+
+		if (shardStart < 0 || shardEnd > Nexp || shardStart >= shardEnd
+				|| shardStart % TrialAccumulator.SEGMENT_TRIALS != 0
+				|| (shardEnd % TrialAccumulator.SEGMENT_TRIALS != 0 && shardEnd != Nexp)) {
+			throw new IllegalArgumentException("The experiments " + shardStart + " to " + shardEnd
+					+ " are not whole segments of " + TrialAccumulator.SEGMENT_TRIALS + " of the " + Nexp + " experiments");
+		}
+		this.shardStart = shardStart;
+		this.shardEnd = shardEnd;
+		isShard = true;
+		setNumWorkersToUse();
+
+	}
+
+	/**
+	 * Uses {@link #numWorkers}, but no more workers than segments of experiments
+	 */
+	private void setNumWorkersToUse() {
+		numWorkersToUse = (int) Math.max(1, Math.min(Math.max(numWorkers, 1), segments(shardEnd - shardStart)));
+	}
+
+	/**
+	 * @return the number of segments of a number of experiments
+	 */
+	private static long segments(long n) {
+		return (n + TrialAccumulator.SEGMENT_TRIALS - 1) / TrialAccumulator.SEGMENT_TRIALS;
+	}
+
+	/**
+	 * SSJ: Simulation Stochastique in Java
+	 * http://simul.iro.umontreal.ca/ssj
+	 * The actual random number generators (RNGs) are provided in
+	 * classes that implement this RandomStream interface. Each
+	 * stream of random numbers is an object of the class that
+	 * implements this interface, and can be viewed as a virtual
+	 * random number generator. <br>
+	 * <br>
+	 * Seed of the {@link umontreal.iro.lecuyer.rng.WELL1024} stream of one experiment.
+	 * The 32 numbers of the seed are drawn with the SplitMix64 generator (Steele, Lea and Flood, 2014)
+	 * started from a hash of the seed, the random stream ID and the index of the experiment,
+	 * so experiment i always gets the same random numbers, whatever worker or process does it.
+	 * The period of WELL1024 is 2^1024 - 1, so streams seeded this way do not overlap in practice.
+	 *
+	 * @param seed seed of the random number generator
+	 * @param RandomStreamID random stream ID
+	 * @param trial index of the experiment, from 0 to Nexp-1
+	 * @return the seed of the stream, 32 numbers that are not all 0
+	 */
+	public static int[] trialSeed(int seed, int RandomStreamID, long trial) {
+
+		long state = mix64(mix64(mix64(seed + 0x9E3779B97F4A7C15L) + RandomStreamID) + trial);
+		int[] seedIntArr32 = new int[32];
+		int nonzero = 0;
+		for (int i = 0; i < 32; i += 2) {
+			state += 0x9E3779B97F4A7C15L;
+			long z = mix64(state);
+			seedIntArr32[i] = (int) z;
+			seedIntArr32[i + 1] = (int) (z >>> 32);
+			nonzero |= seedIntArr32[i] | seedIntArr32[i + 1];
+		}
+		if (nonzero == 0) seedIntArr32[0] = 1;
+		return seedIntArr32;
+
+	}
+
+	/**
+	 * Output function of SplitMix64
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Seeds the stream of a worker for an experiment
+	 *
+	 * @param currSimRoeMetz the simulation experiment of the worker, see {@link #createWorker(long)}
+	 * @param trial index of the experiment
+	 */
+	private void seedTrial(SimRoeMetz currSimRoeMetz, long trial) {
+		((WELL1024) currSimRoeMetz.RandomStreamI).setSeed(trialSeed(seed, RandomStreamID, trial));
+	}
+
+	/**
+	 * Performs the simulation experiments shardStart to shardEnd-1, all of them by default, each worker on its own thread.
+	 * When resuming, the experiments in the checkpoints are read instead, see {@link #resume}.
+	 *
+	 * @param listener called after each experiment, from the thread of the worker; can be null
+	 * @return [0] the last experiment of the first worker, [1] the mean of all experiments used,
+	 *  with the number of dropped experiments in flagTotalVarIsNegative, [2] the sample variance of all experiments used.
+	 *  The other fields of [1] and [2] are those of the first experiment. The experiments are also in {@link #accumulator}.
+	 *  When resumed, as {@link #finish(TrialAccumulator)}. When the targets of {@link #targetSE} are reached,
+	 *  those of the {@link #NexpDone} experiments done.
+	 *  For a shard, [1] and [2] are not filled and the experiments are only in {@link #trialAccumulator}
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public DBRecord[] run(final TrialListener listener) throws IOException, InterruptedException {
+
+		TrialAccumulator tree = new TrialAccumulator(Nexp);
+		trialAccumulator = tree;
+		if (!isShard && isAdaptive()) {
+			return runAdaptive(tree, listener);
+		}
+		long[][] checkpoints = resume && inputFile != null ? SimShards.readCheckpoints(this, tree) : new long[0][];
+		long[][] ranges = ranges(checkpoints);
+		int tasks = ranges.length;
+		SimRoeMetz[] sims = new SimRoeMetz[tasks];
+		DBRecord[] records = new DBRecord[tasks];
+		DBRecord[] merged = null;
+		if (tasks > 0 && (isShard || ranges[0][0] == shardStart)) {
+			// the records of the mean and the variance are made from the first experiment of the first worker.
+			// The stream is seeded again for each experiment, so this does not change the experiments
+			sims[0] = createWorker(ranges[0][0]);
+			merged = new DBRecord[] {null, newRecord(sims[0], ranges[0][0]), newRecord(sims[0], ranges[0][0])};
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(numWorkersToUse, tasks)));
+		try {
+			doRanges(ranges, tree, listener, sims, records, pool);
+		} finally {
+			pool.shutdownNow();
+		}
+		NexpDone = shardEnd - shardStart;
+		if (merged != null) merged[0] = records[0];
+		if (isShard) {
+			return merged;
+		}
+		if (tasks == 0 || ranges[0][0] != shardStart) {
+			return finish(tree);
+		}
+		accumulator = tree.merge();
+		accumulator.fillMean(merged[1]);
+		accumulator.fillVariance(merged[2]);
+		return merged;
+
+	}
+
+	/**
+	 * Performs the experiments in batches of {@link #batchTrials} until the targets of {@link #targetSE} are reached,
+	 * or Nexp experiments are done. Sets {@link #NexpDone}.
+	 * The workers, their records and the pool are made once and kept for all batches.
+	 *
+	 * @return as {@link #run(TrialListener)}, the same as for a simulation of NexpDone experiments,
+	 *  with [0] the last experiment of the first worker in the last batch
+	 */
+	private DBRecord[] runAdaptive(TrialAccumulator tree, TrialListener listener) throws IOException, InterruptedException {
+
+		long batch = Math.max(1, segments(batchTrials)) * TrialAccumulator.SEGMENT_TRIALS;
+		SimRoeMetz[] sims = new SimRoeMetz[numWorkersToUse];
+		DBRecord[] records = new DBRecord[numWorkersToUse];
+		// the records of the mean and the variance are made from the first experiment, once
+		sims[0] = createWorker(0);
+		DBRecord[] merged = new DBRecord[] {null, newRecord(sims[0], 0), newRecord(sims[0], 0)};
+		long done = 0;
+		ExecutorService pool = Executors.newFixedThreadPool(numWorkersToUse);
+		try {
+			while (done < Nexp) {
+				long end = Math.min(Nexp, done + batch);
+				doRanges(split(done, end), tree, listener, sims, records, pool);
+				done = end;
+				accumulator = tree.merge(done);
+				if (targetsReached(accumulator)) break;
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		NexpDone = done;
+		merged[0] = records[0];
+		accumulator.fillMean(merged[1]);
+		accumulator.fillVariance(merged[2]);
+		return merged;
+
+	}
+
+	/**
+	 * @return true if a target of {@link #targetSE} is set
+	 */
+	public static boolean isAdaptive() {
+		for (double target : targetSE) {
+			if (target > 0) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the Monte Carlo standard error of each value with a target is at most the target
+	 */
+	private static boolean targetsReached(DBRecordAccumulator accumulator) {
+
+		double[] SE = monteCarloSE(accumulator);
+		for (int i = 0; i < targetSE.length; i++) {
+			// false if NaN, before two experiments are used
+			if (targetSE[i] > 0 && !(SE[i] <= targetSE[i])) return false;
+		}
+		return true;
+
+	}
+
+	/**
+	 * @param accumulator the experiments used
+	 * @return the Monte Carlo standard error of the mean of each of {@link #PRECISION_VALUES}:
+	 *  the square root of the sample variance over the number of experiments used; NaN before two experiments
+	 */
+	public static double[] monteCarloSE(DBRecordAccumulator accumulator) {
+
+		double[] SE = new double[PRECISION_VALUES.length];
+		for (int i = 0; i < PRECISION_VALUES.length; i++) {
+			if (accumulator.n < 2) {
+				SE[i] = Double.NaN;
+				continue;
+			}
+			int index = i == 0 ? accumulator.indexOf("AUCsReaderAvg") + 2 : accumulator.indexOf(PRECISION_VALUES[i]);
+			SE[i] = Math.sqrt(accumulator.getVariance(index) / accumulator.n);
+		}
+		return SE;
+
+	}
+
+	/**
+	 * Performs ranges of experiments, each on a worker of a pool
+	 *
+	 * @param ranges [i][0] the first experiment of a worker, a first of a segment, [i][1] the experiment after its last
+	 * @param tree the experiments done, which gets a branch per worker
+	 * @param listener called after each experiment; can be null
+	 * @param sims the simulation experiment of each worker, at least one per range. Made by {@link #createWorker(long)}
+	 *  where null, and kept for the next ranges
+	 * @param records the record of each worker, which holds its last experiment, at least one per range.
+	 *  Made where null, and kept for the next ranges
+	 * @param pool the threads of the workers
+	 */
+	private void doRanges(final long[][] ranges, TrialAccumulator tree, final TrialListener listener,
+			final SimRoeMetz[] sims, final DBRecord[] records, ExecutorService pool)
+			throws IOException, InterruptedException {
+
+		final int tasks = ranges.length;
+		for (int i = 0; i < tasks; i++) {
+			if (sims[i] == null) sims[i] = createWorker(ranges[i][0]);
+			if (records[i] == null) records[i] = newTrialRecord();
+		}
+
+		final TrialAccumulator.Branch[] branches = new TrialAccumulator.Branch[tasks];
+		final TrialResultStore.Partition[] partitions = new TrialResultStore.Partition[tasks];
+		for (int i = 0; i < tasks; i++) {
+			branches[i] = tree.newBranch();
+			if (trialResults != null) partitions[i] = trialResults.newPartition(ranges[i][0]);
+		}
+		ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int i = 0; i < tasks; i++) {
+			final int task = i;
+			futures.add(pool.submit(new Callable<Void>() {
+				public Void call() throws IOException {
+					doTrials(sims[task], records[task], ranges[task][0], ranges[task][1],
+							branches[task], partitions[task], listener);
+					return null;
+				}
+			}));
+		}
+		for (int i = 0; i < tasks; i++) {
+			try {
+				futures.get(i).get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+				if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+	}
+
+	/**
+	 * @return the experiments start to end-1 split into one contiguous range of whole segments per worker,
+	 *  see {@link #ranges(long[][])}
+	 */
+	private long[][] split(long start, long end) {
+
+		long segments = segments(end - start);
+		int workers = (int) Math.max(1, Math.min(numWorkersToUse, segments));
+		long[][] ranges = new long[workers][];
+		for (int i = 0; i < workers; i++) {
+			ranges[i] = new long[] {start + segments * i / workers * TrialAccumulator.SEGMENT_TRIALS,
+					i == workers - 1 ? end : start + segments * (i + 1) / workers * TrialAccumulator.SEGMENT_TRIALS};
+		}
+		return ranges;
+
+	}
+
+	/**
+	 * @param checkpoints the ranges of experiments read from checkpoints, in order
+	 * @return the ranges of experiments to do, one per worker, in order: [i][0] the first experiment, a first of a segment,
+	 *  [i][1] the experiment after the last. Without checkpoints, one contiguous range per worker.
+	 *  Else the experiments between the checkpoints, in ranges of at most as many segments as a worker would do
+	 */
+	private long[][] ranges(long[][] checkpoints) {
+
+		if (checkpoints.length == 0) {
+			return split(shardStart, shardEnd);
+		}
+		ArrayList<long[]> ranges = new ArrayList<long[]>();
+
+		ArrayList<long[]> gaps = new ArrayList<long[]>();
+		long next = shardStart;
+		for (long[] checkpoint : checkpoints) {
+			if (checkpoint[0] > next) gaps.add(new long[] {next, checkpoint[0]});
+			next = checkpoint[1];
+		}
+		if (next < shardEnd) gaps.add(new long[] {next, shardEnd});
+		long remaining = 0;
+		for (long[] gap : gaps) {
+			remaining += segments(gap[1] - gap[0]);
+		}
+		long length = (remaining + numWorkersToUse - 1) / numWorkersToUse * TrialAccumulator.SEGMENT_TRIALS;
+		for (long[] gap : gaps) {
+			for (long start = gap[0]; start < gap[1]; start += length) {
+				ranges.add(new long[] {start, Math.min(start + length, gap[1])});
+			}
+		}
+		return ranges.toArray(new long[ranges.size()][]);
+
+	}
+
+	/**
+	 * Merges the experiments of all the shards of a simulation, read into a {@link roemetz.core.TrialAccumulator}
+	 *
+	 * @param tree the experiments of all the shards
+	 * @return as {@link #run(TrialListener)}, with [0] the first experiment
+	 * @throws IOException
+	 */
+	public DBRecord[] finish(TrialAccumulator tree) throws IOException {
+
+		SimRoeMetz currSimRoeMetz = createWorker(0);
+		DBRecord[] merged = new DBRecord[3];
+		for (int i = 0; i < 3; i++) {
+			merged[i] = newRecord(currSimRoeMetz, 0);
+		}
+		trialAccumulator = tree;
+		accumulator = tree.merge();
+		accumulator.fillMean(merged[1]);
+		accumulator.fillVariance(merged[2]);
+		return merged;
+
+	}
+
+	/**
+	 * Creates the simulation experiment of a worker, with its stream seeded for the first experiment of the worker
+	 *
+	 * @param NexpStart index of the first experiment of the worker
+	 * @return the simulation experiment of the worker
+	 * @throws IOException
+	 */
+	public SimRoeMetz createWorker(long NexpStart) throws IOException {
+
+		// The stream is seeded again before each experiment, see trialSeed
+		WELL1024 RandomStreamI = new WELL1024();
+		RandomStreamI.setSeed(trialSeed(seed, RandomStreamID, NexpStart));
+		System.out.print("ThreadName:"+Thread.currentThread().getName()+":");
+		//each thread prints 5 random numbers for testing proper threading and reproducibility
+		for(int j = 0 ; j < 5; j++) {
+			int nextInt = RandomStreamI.nextInt(1, 100);
+			System.out.print(nextInt + ",");
+		}
+		System.out.println();
+		SimRoeMetz currSimRoeMetz = new SimRoeMetz(u, var_t, RandomStreamI, sizePanel1);
+		currSimRoeMetz.makeObserverData = saveTrials;
+		return currSimRoeMetz;
+
+	}
+
+	/**
+	 * @param currSimRoeMetz the simulation experiment of a worker
+	 * @param trial index of an experiment
+	 * @return a new record of the experiment
+	 * @throws IOException
+	 */
+	private DBRecord newRecord(SimRoeMetz currSimRoeMetz, long trial) throws IOException {
+
+		DBRecord DBRecordTemp = new DBRecord();
+		DBRecordTemp.verbose = false;
+		DBRecordTemp.flagMLE = useMLE;
+		seedTrial(currSimRoeMetz, trial);
+		currSimRoeMetz.doSim(DBRecordTemp);
+		return DBRecordTemp;
+
+	}
+
+	/**
+	 * @return a record in which a worker analyzes its experiments
+	 */
+	private DBRecord newTrialRecord() {
+
+		DBRecord DBRecordStat = new DBRecord();
+		DBRecordStat.verbose = false;
+		DBRecordStat.flagMLE = useMLE;
+		// every experiment is analyzed in the same record, reusing the buffers of its CovMRMC
+		DBRecordStat.reuseCovMRMC = true;
+		return DBRecordStat;
+
+	}
+
+	/**
+	 * Performs the simulation experiments NexpStart to NexpEnd-1 of one worker
+	 * and adds them to the branch of the worker.
+	 * Experiments with a negative totalVar are dropped
+	 * and counted in {@link mrmc.core.DBRecordAccumulator#flagTotalVarIsNegative}.
+	 * Writes a checkpoint every {@link #checkpointSeconds}, once the experiments of a segment are done,
+	 * and deletes the checkpoint before it.
+	 *
+	 * @param currSimRoeMetz the simulation experiment of the worker, see {@link #createWorker(long)}
+	 * @param DBRecordStat the record of the worker, which holds the last experiment when done, see {@link #newTrialRecord()}
+	 * @param NexpStart index of the first experiment, the first of a segment
+	 * @param NexpEnd index after the last experiment
+	 * @param accumulator branch of the worker
+	 * @param trialResults partition of {@link #trialResults} of the worker, which gets every experiment; can be null
+	 * @param listener called after each experiment; can be null
+	 * @throws IOException
+	 */
+	public void doTrials(SimRoeMetz currSimRoeMetz, DBRecord DBRecordStat, long NexpStart, long NexpEnd,
+			TrialAccumulator.Branch accumulator, TrialResultStore.Partition trialResults,
+			TrialListener listener) throws IOException {
+
+		long lastCheckpoint = System.currentTimeMillis();
+		File checkpointFile = null;
+		for (long i = NexpStart; i < NexpEnd; i++) {
+			if (checkpointSeconds > 0 && inputFile != null && i > NexpStart && i % TrialAccumulator.SEGMENT_TRIALS == 0
+					&& System.currentTimeMillis() - lastCheckpoint >= checkpointSeconds * 1000) {
+				File previous = checkpointFile;
+				checkpointFile = SimShards.writeCheckpoint(this, NexpStart, i, accumulator, trialResults);
+				if (previous != null) previous.delete();
+				lastCheckpoint = System.currentTimeMillis();
+			}
+			seedTrial(currSimRoeMetz, i);
+			// When seed = 123456, trial 68447 will generate a Inf.
+			try{
+				currSimRoeMetz.doSim(DBRecordStat);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+
+			// Check if DBRecordStat.totalVar < 0
+			// Keep track of how often this happens
+			// Drop the current simulation
+			if(DBRecordStat.totalVar < 0) {
+				accumulator.drop(i);
+				if (trialResults != null) trialResults.add(i, DBRecordStat, false);
+				if (listener != null) listener.trialDone(i, DBRecordStat, false);
+				continue;
+			}
+
+			accumulator.add(i, DBRecordStat);
+			if (trialResults != null) trialResults.add(i, DBRecordStat, true);
+			if (listener != null) listener.trialDone(i, DBRecordStat, true);
+			if(DBRecordStat.verbose) {
+				System.out.print("ThreadName:"+Thread.currentThread().getName()+":");
+				System.out.print(i+1 + " of " + Nexp + " completed\n");
+			}
+		}
+		if (trialResults != null) trialResults.finish();
+
+	}
+
+}
@@ -2,6 +2,8 @@ package roemetz.core;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 
 
@@ -13,6 +15,7 @@ import java.util.Arrays;
 
 
 
+import umontreal.iro.lecuyer.probdist.NormalDist;
 import umontreal.iro.lecuyer.randvar.NormalGen;
 import umontreal.iro.lecuyer.randvar.RandomVariateGen;
 import umontreal.iro.lecuyer.rng.RandomStream;
@@ -21,6 +24,7 @@ import mrmc.core.CovMRMC;
 import mrmc.core.DBRecord;
 import mrmc.core.InputFile;
 import mrmc.core.Matrix;
+import mrmc.core.ScoreStore;
 import mrmc.gui.SizePanel;
 
 /**
@@ -39,8 +43,32 @@ public class SimRoeMetz {
 	/**
 	 * Data from one simulation experiment based on the Roe & Metz model <br>
 	 * -- String[Nobservations][4], each observation has readerID, caseID, modalityID, score <br>
+	 * Only filled if {@link #makeObserverData} is true
 	 */
 	private String[][] observerData;
+	/**
+	 * True to also write each simulation experiment as text rows in {@link mrmc.core.InputFile#observerData},
+	 * needed to save the experiment to a file. The analysis does not use them.
+	 */
+	public boolean makeObserverData = false;
+	/**
+	 * Scores of one simulation experiment, analyzed by {@link mrmc.core.CovMRMC}.
+	 * The IDs, truth and study design are set once, by {@link #createScoreStore(String, String)}
+	 */
+	private ScoreStore scoreStore;
+	/**
+	 * Modalities of {@link #scoreStore} and their indices
+	 */
+	private String storeModalityA, storeModalityB;
+	private int iModA, iModB;
+	/**
+	 * Index in {@link #scoreStore} of each reader, signal-absent case and signal-present case
+	 */
+	private int[] readerIndex, normalIndex, diseaseIndex;
+	/**
+	 * Number of rows of {@link #observerData}
+	 */
+	private int nrows;
 	
 	RandomStream RandomStreamI;
 	RandomVariateGen gaussRV;
@@ -49,6 +77,13 @@ public class SimRoeMetz {
 	private double[] scoreMeans;
 	private double[] scoreVariances;
 
+	/**
+	 * Buffers of the simulation experiments, allocated once for the study size
+	 */
+	private TrialWorkspace workspace;
+	/**
+	 * Scores of the current experiment, the buffers of {@link #workspace}
+	 */
 	private double[][] tA0, tB0, tA1, tB1;
 	private int[][] dA0, dB0, dA1, dB1;
 	private double[] auc;
@@ -87,12 +122,18 @@ public class SimRoeMetz {
 		Nnormal = Integer.parseInt(sizePanel1Temp.NnormalJTextField.getText());
 		Ndisease = Integer.parseInt(sizePanel1Temp.NdiseaseJTextField.getText());
 
+		workspace = new TrialWorkspace(Nreader, Nnormal, Ndisease);
+		tA0 = workspace.tA0;
+		tB0 = workspace.tB0;
+		tA1 = workspace.tA1;
+		tB1 = workspace.tB1;
+
 		// Get study design matrix
 		CovMRMC covMRMC = new CovMRMC(sizePanel1);
 
 		// The first rows of observerData will be the truth status of each case
 		// The remaining rows are the reader-by-case observations determined by the study design
-		int nrows = Nnormal + Ndisease;
+		nrows = Nnormal + Ndisease;
 		dA0 = new int[Nreader][Nnormal];
 		dB0 = new int[Nreader][Nnormal];
 		dA1 = new int[Nreader][Ndisease];
@@ -111,12 +152,10 @@ public class SimRoeMetz {
 		}
 			
 		/*
-		 * Create the array as it would result from an input file.
 		 * nrows includes n0+n1 rows defining truth
 		 * plus 2 modalities * nr * (n0+n1)
 		 */
 		InputFileStat = new InputFile();
-		InputFileStat.observerData = new String[nrows][4];
 		
 		RandomStreamI = RandomStream0;
 		gaussRV = new NormalGen(RandomStreamI);
@@ -238,49 +277,207 @@ public class SimRoeMetz {
 	/**
 	 * Given {@link #scoreMeans}, {@link #scoreVariances},
 	 *    {@link #Nreader}, {@link #Nnormal}, {@link #Ndisease} <br>
-	 * Create {@link #observerData} then <br>
-	 * -- {@link mrmc.core.InputFile#verifySizesAndGetIDs(boolean,boolean)} <br>
-	 * -- {@link mrmc.core.InputFile#processScoresAndTruth(boolean)} <br>
+	 * Create the scores of one simulation experiment then <br>
+	 * -- write them in {@link #scoreStore}, created by {@link #createScoreStore(String, String)} the first time <br>
+	 * -- write them in {@link #observerData} if {@link #makeObserverData} is true <br>
 	 * -- {@link mrmc.core.DBRecord#DBRecordStatFill(InputFile, DBRecord)} <br>
 	 * <br>
-	 * CALLED FROM: {@link roemetz.gui.RMGUInterface.SimExperiments_thread#doInBackground()} <br>
+	 * CALLED FROM: {@link roemetz.core.SimExperiments#doTrials(SimRoeMetz, DBRecord, long, long, TrialAccumulator.Branch, TrialResultStore.Partition, SimExperiments.TrialListener)} <br>
 	 * 
 	 * @throws IOException 
 	 */
 	public void doSim(DBRecord tempDBRecord) throws IOException {
 
 		DBRecordStat = tempDBRecord;
-		observerData = InputFileStat.observerData;
 		
-		double[] RA0 = fillGaussian(Math.sqrt(scoreVariances[0]), Nreader);
-		double[] CA0 = fillGaussian(Math.sqrt(scoreVariances[1]), Nnormal);
-		double[][] RCA0 = fillGaussian(Math.sqrt(scoreVariances[2]), Nreader, Nnormal);
-		double[] RA1 = fillGaussian(Math.sqrt(scoreVariances[3]), Nreader);
-		double[] CA1 = fillGaussian(Math.sqrt(scoreVariances[4]), Ndisease);
-		double[][] RCA1 = fillGaussian(Math.sqrt(scoreVariances[5]), Nreader, Ndisease);
-		double[] RB0 = fillGaussian(Math.sqrt(scoreVariances[6]), Nreader);
-		double[] CB0 = fillGaussian(Math.sqrt(scoreVariances[7]), Nnormal);
-		double[][] RCB0 = fillGaussian(Math.sqrt(scoreVariances[8]), Nreader, Nnormal);
-		double[] RB1 = fillGaussian(Math.sqrt(scoreVariances[9]), Nreader);
-		double[] CB1 = fillGaussian(Math.sqrt(scoreVariances[10]), Ndisease);
-		double[][] RCB1 = fillGaussian(Math.sqrt(scoreVariances[11]), Nreader, Ndisease);
-		double[] R0 = fillGaussian(Math.sqrt(scoreVariances[12]), Nreader);
-		double[] C0 = fillGaussian(Math.sqrt(scoreVariances[13]), Nnormal);
-		double[][] RC0 = fillGaussian(Math.sqrt(scoreVariances[14]), Nreader, Nnormal);
-		double[] R1 = fillGaussian(Math.sqrt(scoreVariances[15]), Nreader);
-		double[] C1 = fillGaussian(Math.sqrt(scoreVariances[16]), Ndisease);
-		double[][] RC1 = fillGaussian(Math.sqrt(scoreVariances[17]), Nreader, Ndisease);
-
-		tA0 = new double[(int) Nreader][(int) Nnormal];
-		tB0 = new double[(int) Nreader][(int) Nnormal];
-		tA1 = new double[(int) Nreader][(int) Ndisease];
-		tB1 = new double[(int) Nreader][(int) Ndisease];
-
-		for (int i = 0; i < Nreader; i++) {
-			Arrays.fill(tA1[i], scoreMeans[0]);
-			Arrays.fill(tB1[i], scoreMeans[1]);
+		/*
+		 * Draw the components of variance into the buffers of the workspace,
+		 * in the same order as when they were allocated for every experiment
+		 */
+		TrialWorkspace ws = workspace;
+		fillGaussian(Math.sqrt(scoreVariances[0]), ws.RA0);
+		fillGaussian(Math.sqrt(scoreVariances[1]), ws.CA0);
+		fillGaussian(Math.sqrt(scoreVariances[2]), ws.RCA0);
+		fillGaussian(Math.sqrt(scoreVariances[3]), ws.RA1);
+		fillGaussian(Math.sqrt(scoreVariances[4]), ws.CA1);
+		fillGaussian(Math.sqrt(scoreVariances[5]), ws.RCA1);
+		fillGaussian(Math.sqrt(scoreVariances[6]), ws.RB0);
+		fillGaussian(Math.sqrt(scoreVariances[7]), ws.CB0);
+		fillGaussian(Math.sqrt(scoreVariances[8]), ws.RCB0);
+		fillGaussian(Math.sqrt(scoreVariances[9]), ws.RB1);
+		fillGaussian(Math.sqrt(scoreVariances[10]), ws.CB1);
+		fillGaussian(Math.sqrt(scoreVariances[11]), ws.RCB1);
+		fillGaussian(Math.sqrt(scoreVariances[12]), ws.R0);
+		fillGaussian(Math.sqrt(scoreVariances[13]), ws.C0);
+		fillGaussian(Math.sqrt(scoreVariances[14]), ws.RC0);
+		fillGaussian(Math.sqrt(scoreVariances[15]), ws.R1);
+		fillGaussian(Math.sqrt(scoreVariances[16]), ws.C1);
+		fillGaussian(Math.sqrt(scoreVariances[17]), ws.RC1);
+		double[] RA0 = ws.RA0, CA0 = ws.CA0, RA1 = ws.RA1, CA1 = ws.CA1;
+		double[] RB0 = ws.RB0, CB0 = ws.CB0, RB1 = ws.RB1, CB1 = ws.CB1;
+		double[] R0 = ws.R0, C0 = ws.C0, R1 = ws.R1, C1 = ws.C1;
+		double[][] RCA0 = ws.RCA0, RCA1 = ws.RCA1, RCB0 = ws.RCB0, RCB1 = ws.RCB1, RC0 = ws.RC0, RC1 = ws.RC1;
+
+		ws.resetScores(scoreMeans);
+
+		/*
+		 * Create the scores
+		 */
+		for (int readerID = 0; readerID < Nreader; readerID++) {
+			for (int normalID = 0; normalID < Nnormal; normalID++) {
+				if(dA0[readerID][normalID] == 1) {
+					tA0[readerID][normalID] += R0[readerID] + C0[normalID] + RA0[readerID]
+							+ CA0[normalID] + RC0[readerID][normalID] + RCA0[readerID][normalID];
+				}
+				if(dB0[readerID][normalID] == 1) {
+					tB0[readerID][normalID] += R0[readerID] + C0[normalID] + RB0[readerID]
+							+ CB0[normalID] + RC0[readerID][normalID] + RCB0[readerID][normalID];
+				}
+			}
+			for (int diseaseID = 0; diseaseID < Ndisease; diseaseID++) {
+				if(dA1[readerID][diseaseID] == 1) {
+					tA1[readerID][diseaseID] += R1[readerID] + C1[diseaseID] + RA1[readerID]
+							+ CA1[diseaseID] + RC1[readerID][diseaseID] + RCA1[readerID][diseaseID];
+				}
+				if(dB1[readerID][diseaseID] == 1) {
+					tB1[readerID][diseaseID] += R1[readerID] + C1[diseaseID] + RB1[readerID]
+							+ CB1[diseaseID] + RC1[readerID][diseaseID] + RCB1[readerID][diseaseID];
+				}
+			}
+		}
+		
+		/*
+		 * Write the scores directly into the score store analyzed by CovMRMC,
+		 * without formatting and parsing them as text
+		 */
+		if (scoreStore == null || !DBRecordStat.modalityA.equals(storeModalityA)
+				|| !DBRecordStat.modalityB.equals(storeModalityB)) {
+			createScoreStore(DBRecordStat.modalityA, DBRecordStat.modalityB);
+		}
+		double[] scoresA = scoreStore.scores[iModA];
+		double[] scoresB = scoreStore.scores[iModB];
+		for (int readerID = 0; readerID < Nreader; readerID++) {
+			int ir = readerIndex[readerID];
+			if (ir < 0) continue;
+			for (int normalID = 0; normalID < Nnormal; normalID++) {
+				int i = scoreStore.index(ir, normalIndex[normalID]);
+				if(dA0[readerID][normalID] == 1) scoresA[i] = tA0[readerID][normalID];
+				if(dB0[readerID][normalID] == 1) scoresB[i] = tB0[readerID][normalID];
+			}
+			for (int diseaseID = 0; diseaseID < Ndisease; diseaseID++) {
+				int i = scoreStore.index(ir, diseaseIndex[diseaseID]);
+				if(dA1[readerID][diseaseID] == 1) scoresA[i] = tA1[readerID][diseaseID];
+				if(dB1[readerID][diseaseID] == 1) scoresB[i] = tB1[readerID][diseaseID];
+			}
+		}
+		if (makeObserverData) {
+			fillObserverData(DBRecordStat);
+		}
+
+		DBRecordStat.DBRecordStatFill(InputFileStat, DBRecordStat);
+
 		}
 
+	/**
+	 * Creates {@link #scoreStore} for the study design and loads it in the input file of the simulation.
+	 * As in an input file, the IDs are in sorted order:
+	 * readerNNN, diseaseNNNNNN before normalNNNNNN, and the modalities.
+	 * Readers without observations, possible in a split-plot design, are left out, as they are from a saved experiment.
+	 * 
+	 * @param modalityA ID of modality A
+	 * @param modalityB ID of modality B
+	 * @throws IOException if the modality IDs are the same
+	 */
+	private void createScoreStore(String modalityA, String modalityB) throws IOException {
+
+		if (modalityA.equals(modalityB)) {
+			throw new IOException("ERROR: Modality A and modality B are both " + modalityA);
+		}
+		
+		// As in an input file, a reader is only in the study if it has observations
+		TreeMap<String, Integer> readers = new TreeMap<String, Integer>();
+		for (int readerID = 0; readerID < Nreader; readerID++)
+			if (hasObservations(readerID))
+				readers.put("reader"+String.format("%03d", readerID), readerID);
+		TreeMap<String, Integer> cases = new TreeMap<String, Integer>();
+		for (int normalID = 0; normalID < Nnormal; normalID++)
+			cases.put("normal"+String.format("%06d", normalID), normalID);
+		for (int diseaseID = 0; diseaseID < Ndisease; diseaseID++)
+			cases.put("disease"+String.format("%06d", diseaseID), Nnormal + diseaseID);
+		TreeSet<String> modalities = new TreeSet<String>();
+		modalities.add(modalityA);
+		modalities.add(modalityB);
+		
+		scoreStore = new ScoreStore(readers.keySet().toArray(new String[0]),
+				cases.keySet().toArray(new String[0]),
+				modalities.toArray(new String[0]));
+		readerIndex = new int[Nreader];
+		normalIndex = new int[Nnormal];
+		diseaseIndex = new int[Ndisease];
+		Arrays.fill(readerIndex, -1);
+		int index = 0;
+		for (int readerID : readers.values())
+			readerIndex[readerID] = index++;
+		index = 0;
+		for (int caseID : cases.values()) {
+			if (caseID < Nnormal) {
+				normalIndex[caseID] = index;
+			} else {
+				diseaseIndex[caseID - Nnormal] = index;
+				scoreStore.truth[index] = 1;
+			}
+			index++;
+		}
+		iModA = modalityA.compareTo(modalityB) < 0 ? 0 : 1;
+		iModB = 1 - iModA;
+		
+		// Study design
+		for (int readerID = 0; readerID < Nreader; readerID++) {
+			int ir = readerIndex[readerID];
+			if (ir < 0) continue;
+			for (int normalID = 0; normalID < Nnormal; normalID++) {
+				int i = scoreStore.index(ir, normalIndex[normalID]);
+				if(dA0[readerID][normalID] == 1) scoreStore.design[iModA].set(i);
+				if(dB0[readerID][normalID] == 1) scoreStore.design[iModB].set(i);
+			}
+			for (int diseaseID = 0; diseaseID < Ndisease; diseaseID++) {
+				int i = scoreStore.index(ir, diseaseIndex[diseaseID]);
+				if(dA1[readerID][diseaseID] == 1) scoreStore.design[iModA].set(i);
+				if(dB1[readerID][diseaseID] == 1) scoreStore.design[iModB].set(i);
+			}
+		}
+
+		boolean VerboseFalse = false;
+		boolean DisplayWarning = false;
+		InputFileStat.loadScores(scoreStore, VerboseFalse, DisplayWarning);
+		storeModalityA = modalityA;
+		storeModalityB = modalityB;
+
+	}
+
+	/**
+	 * @param readerID index of a reader
+	 * @return true if the study design has an observation of the reader in either modality
+	 */
+	private boolean hasObservations(int readerID) {
+		for (int normalID = 0; normalID < Nnormal; normalID++)
+			if (dA0[readerID][normalID] == 1 || dB0[readerID][normalID] == 1) return true;
+		for (int diseaseID = 0; diseaseID < Ndisease; diseaseID++)
+			if (dA1[readerID][diseaseID] == 1 || dB1[readerID][diseaseID] == 1) return true;
+		return false;
+	}
+
+	/**
+	 * Writes the scores of the current simulation experiment as the rows of an input file
+	 * in {@link #observerData}, used to save the experiment to a file
+	 * 
+	 * @param DBRecordStat provides the modality IDs
+	 */
+	private void fillObserverData(DBRecord DBRecordStat) {
+
+		observerData = new String[nrows][4];
+		InputFileStat.observerData = observerData;
+
 		/*
 		 * Create the rows defining truth states
 		 */
@@ -309,10 +506,7 @@ public class SimRoeMetz {
 		 */
 		for (int readerID = 0; readerID < Nreader; readerID++) {
 			for (int normalID = 0; normalID < Nnormal; normalID++) {
-				
 				if(dA0[readerID][normalID] == 1) {
-					tA0[readerID][normalID] += R0[readerID] + C0[normalID] + RA0[readerID]
-							+ CA0[normalID] + RC0[readerID][normalID] + RCA0[readerID][normalID];
 //					observerData[irow][0] = "reader"+Integer.toString(readerID);
 					observerData[irow][0] = "reader"+String.format("%03d", readerID);
 //					observerData[irow][1] = "normal"+Integer.toString(normalID);
@@ -322,8 +516,6 @@ public class SimRoeMetz {
 					irow++;
 				}
 				if(dB0[readerID][normalID] == 1) {
-					tB0[readerID][normalID] += R0[readerID] + C0[normalID] + RB0[readerID]
-							+ CB0[normalID] + RC0[readerID][normalID] + RCB0[readerID][normalID];
 //					observerData[irow][0] = "reader"+Integer.toString(readerID);
 					observerData[irow][0] = "reader"+String.format("%03d", readerID);
 //					observerData[irow][1] = "normal"+Integer.toString(normalID);
@@ -335,8 +527,6 @@ public class SimRoeMetz {
 			}
 			for (int diseaseID = 0; diseaseID < Ndisease; diseaseID++) {
 				if(dA1[readerID][diseaseID] == 1) {
-					tA1[readerID][diseaseID] += R1[readerID] + C1[diseaseID] + RA1[readerID]
-							+ CA1[diseaseID] + RC1[readerID][diseaseID] + RCA1[readerID][diseaseID];
 //					observerData[irow][0] = "reader"+Integer.toString(readerID);
 					observerData[irow][0] = "reader"+String.format("%03d", readerID);
 //					observerData[irow][1] = "disease"+Integer.toString(diseaseID);
@@ -346,8 +536,6 @@ public class SimRoeMetz {
 					irow++;
 				}
 				if(dB1[readerID][diseaseID] == 1) {
-					tB1[readerID][diseaseID] += R1[readerID] + C1[diseaseID] + RB1[readerID]
-							+ CB1[diseaseID] + RC1[readerID][diseaseID] + RCB1[readerID][diseaseID];
 //					observerData[irow][0] = "reader"+Integer.toString(readerID);
 					observerData[irow][0] = "reader"+String.format("%03d", readerID);
 //					observerData[irow][1] = "disease"+Integer.toString(diseaseID);
@@ -358,16 +546,8 @@ public class SimRoeMetz {
 				}
 			}
 		}
-		
-		boolean VerboseFalse = false;
-		boolean DisplayWarning = false;
-		InputFileStat.resetIDs();
-		InputFileStat.verifySizesAndGetIDs(VerboseFalse,DisplayWarning);
-		InputFileStat.processScoresAndTruth(VerboseFalse);
-
-		DBRecordStat.DBRecordStatFill(InputFileStat, DBRecordStat);
 
-		}
+	}
 
 	/**
 	 * Fills a vector with x random numbers according to a Gaussian
@@ -379,12 +559,7 @@ public class SimRoeMetz {
 	 */
 	public double[] fillGaussian(double scalar, long Nreader2) {
 		double[] toReturn = new double[(int) Nreader2];
-		for (int i = 0; i < Nreader2; i++) {
-			toReturn[i] = scalar * gaussRV.nextDouble();
-			if (Double.isInfinite(toReturn[i])){
-				toReturn[i] = scalar * gaussRV.nextDouble();
-			}
-		}
+		fillGaussian(scalar, toReturn);
 		return toReturn;
 	}
 
@@ -400,15 +575,68 @@ public class SimRoeMetz {
 	public double[][] fillGaussian(double scalar, long Nreader2,
 			long Nnormal2) {
 		double[][] toReturn = new double[(int) Nreader2][(int) Nnormal2];
-		for (int i = 0; i < Nreader2; i++) {
-			for (int j = 0; j < Nnormal2; j++) {
-				toReturn[i][j] = scalar * gaussRV.nextDouble();
-				if (Double.isInfinite(toReturn[i][j])){
-					toReturn[i][j] = scalar * gaussRV.nextDouble();
-				}
+		fillGaussian(scalar, toReturn);
+		return toReturn;
+	}
+
+	/**
+	 * Fills an existing vector with random numbers according to a Gaussian
+	 * distribution, drawn in the same order as {@link #fillGaussian(double, long)}. <br>
+	 * <br>
+	 * The uniforms of the whole vector are taken from the stream in one call and turned into
+	 * Gaussians by inversion in place, which is what gaussRV does one number at a time.
+	 * The numbers are the same as those of gaussRV for the same seed. An infinite number
+	 * is replaced by the next one, as before: the uniforms left in the vector are used first,
+	 * then one more is taken from the stream.
+	 * 
+	 * @param scalar Width of distribution
+	 * @param toFill vector to fill
+	 */
+	public void fillGaussian(double scalar, double[] toFill) {
+		int n = toFill.length;
+		if (n == 0) return;
+		RandomStreamI.nextArrayOfDouble(toFill, 0, n);
+		for (int i = 0; i < n; i++) {
+			double x = scalar * NormalDist.inverseF01(toFill[i]);
+			if (Double.isInfinite(x)) {
+				// Every later number moves up one uniform
+				fillGaussianShifted(scalar, toFill, i);
+				return;
 			}
+			toFill[i] = x;
+		}
+	}
+
+	/**
+	 * Finishes {@link #fillGaussian(double, double[])} from element i, whose number was infinite.
+	 * toFill[i+1..] still hold uniforms, and each element takes the next uniform not yet used,
+	 * so the uniforms read are always ahead of the element written.
+	 */
+	private void fillGaussianShifted(double scalar, double[] toFill, int i) {
+		int n = toFill.length;
+		int next = i + 1;
+		// The replacement of element i is not checked, as before
+		toFill[i] = scalar * NormalDist.inverseF01(next < n ? toFill[next++] : RandomStreamI.nextDouble());
+		for (int k = i + 1; k < n; k++) {
+			double x = scalar * NormalDist.inverseF01(next < n ? toFill[next++] : RandomStreamI.nextDouble());
+			if (Double.isInfinite(x)) {
+				x = scalar * NormalDist.inverseF01(next < n ? toFill[next++] : RandomStreamI.nextDouble());
+			}
+			toFill[k] = x;
+		}
+	}
+
+	/**
+	 * Fills an existing matrix with random numbers according to a Gaussian
+	 * distribution, row by row, drawn in the same order as {@link #fillGaussian(double, long, long)}.
+	 * 
+	 * @param scalar Width of distribution
+	 * @param toFill matrix to fill
+	 */
+	public void fillGaussian(double scalar, double[][] toFill) {
+		for (int i = 0; i < toFill.length; i++) {
+			fillGaussian(scalar, toFill[i]);
 		}
-		return toReturn;
 	}
 
 }
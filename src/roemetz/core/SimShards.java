@@ -0,0 +1,377 @@
+package roemetz.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+import mrmc.core.DBRecord;
+
+/**
+ * Shards of an iRoeMetz simulation: ranges of experiments done by separate processes,
+ * possibly on separate machines, that exchange files only. <br>
+ * <br>
+ * -- A shard is done from an input file with the command-line option -trials=START:END, see {@link roemetz.core.RoeMetz}.
+ * It writes its experiments to a shard file in the output directory of the input file, see {@link #shardFile(File, long, long)}:
+ * the nodes of its {@link roemetz.core.TrialAccumulator} and the rows of its {@link roemetz.core.TrialResultStore}. <br>
+ * -- The option -merge reads all the shard files of the input file, see {@link #merge(SimExperiments, File[])},
+ * and exports the same results as a simulation of all the experiments. <br>
+ * <br>
+ * -- With the option -checkpoint=SECONDS, each worker of a shard also writes the experiments it has done so far
+ * to a checkpoint file, in the same format, see {@link #writeCheckpoint(SimExperiments, long, long, TrialAccumulator.Branch, TrialResultStore.Partition)}.
+ * With the option -resume, the shard reads them, see {@link #readCheckpoints(SimExperiments, TrialAccumulator)},
+ * and only does the experiments that are not in a checkpoint.
+ * The checkpoints of a shard are deleted once its shard file is written. <br>
+ * <br>
+ * Each experiment is seeded from its index and the segments are merged in a fixed order, see {@link roemetz.core.SimExperiments},
+ * so the merged results are the same, to the last bit, as those of one process, however often it was resumed.
+ * The shards and the checkpoints start at the beginning of a segment of {@link roemetz.core.TrialAccumulator#SEGMENT_TRIALS} experiments.
+ */
+public class SimShards {
+
+	/**
+	 * Extension of the shard files
+	 */
+	public static final String SUFFIX = ".irmshard";
+
+	private static final int MAGIC = 0x69524d53;
+	private static final int VERSION = 1;
+
+	/**
+	 * @param inputFile input file of the simulation
+	 * @return the output directory of the input file, where the results of a validation are written
+	 */
+	public static File outputDirectory(File inputFile) {
+		File outputDir = new File(inputFile.getAbsoluteFile().getParent() + "//" + "output");
+		if (!outputDir.exists() && !outputDir.isDirectory())
+			outputDir.mkdir();
+		return outputDir;
+	}
+
+	/**
+	 * @param inputFile input file of the simulation
+	 * @param shardStart index of the first experiment of the shard
+	 * @param shardEnd index after the last experiment of the shard
+	 * @return the shard file, in the output directory of the input file
+	 */
+	public static File shardFile(File inputFile, long shardStart, long shardEnd) {
+		return new File(outputDirectory(inputFile), prefix(inputFile) + shardStart + "_" + shardEnd + SUFFIX);
+	}
+
+	/**
+	 * @param inputFile input file of the simulation
+	 * @return the shard files of the input file in its output directory
+	 */
+	public static File[] listShards(File inputFile) {
+		final String prefix = prefix(inputFile);
+		File[] files = outputDirectory(inputFile).listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix) && name.endsWith(SUFFIX);
+			}
+		});
+		return files == null ? new File[0] : files;
+	}
+
+	/**
+	 * @param inputFile input file of the simulation
+	 * @param start index of the first experiment of the checkpoint
+	 * @param end index after the last experiment of the checkpoint
+	 * @return the checkpoint file, in the output directory of the input file
+	 */
+	public static File checkpointFile(File inputFile, long start, long end) {
+		return new File(outputDirectory(inputFile), checkpointPrefix(inputFile) + start + "_" + end + SUFFIX);
+	}
+
+	/**
+	 * @param inputFile input file of the simulation
+	 * @return the checkpoint files of the input file in its output directory
+	 */
+	public static File[] listCheckpoints(File inputFile) {
+		final String prefix = checkpointPrefix(inputFile);
+		File[] files = outputDirectory(inputFile).listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix) && name.endsWith(SUFFIX);
+			}
+		});
+		return files == null ? new File[0] : files;
+	}
+
+	private static String prefix(File inputFile) {
+		return baseName(inputFile) + "SimulationShard_";
+	}
+
+	private static String checkpointPrefix(File inputFile) {
+		return baseName(inputFile) + "SimulationCheckpoint_";
+	}
+
+	private static String baseName(File inputFile) {
+		String FileName = inputFile.getName();
+		if (FileName.lastIndexOf(".") > 0)
+			FileName = FileName.substring(0, FileName.lastIndexOf("."));
+		return FileName;
+	}
+
+	/**
+	 * Writes the experiments of a shard once {@link roemetz.core.SimExperiments#run(SimExperiments.TrialListener)} is done.
+	 * The file is written under another name and renamed when it is complete.
+	 *
+	 * @param simExperiments the shard
+	 * @param file the shard file
+	 * @throws IOException
+	 */
+	public static void write(final SimExperiments simExperiments, File file) throws IOException {
+
+		write(simExperiments, file, simExperiments.shardStart, simExperiments.shardEnd, new Experiments() {
+			public void write(DataOutputStream out) throws IOException {
+				simExperiments.trialAccumulator.write(out);
+				out.writeBoolean(simExperiments.trialResults != null);
+				if (simExperiments.trialResults != null)
+					simExperiments.trialResults.write(out);
+			}
+		});
+
+	}
+
+	/**
+	 * Writes the experiments done so far by a worker to a checkpoint file.
+	 * Called by the thread of the worker once the experiments of a segment are done.
+	 *
+	 * @param simExperiments the simulation, with its {@link roemetz.core.SimExperiments#inputFile}
+	 * @param start index of the first experiment of the worker
+	 * @param end index after the last experiment done, the first of a segment
+	 * @param branch branch of the worker
+	 * @param partition partition of the worker; can be null
+	 * @return the checkpoint file
+	 * @throws IOException
+	 */
+	public static File writeCheckpoint(SimExperiments simExperiments, long start, long end,
+			final TrialAccumulator.Branch branch, final TrialResultStore.Partition partition) throws IOException {
+
+		File file = checkpointFile(simExperiments.inputFile, start, end);
+		write(simExperiments, file, start, end, new Experiments() {
+			public void write(DataOutputStream out) throws IOException {
+				branch.write(out);
+				out.writeBoolean(partition != null);
+				if (partition != null)
+					partition.write(out);
+			}
+		});
+		return file;
+
+	}
+
+	/**
+	 * Adds the experiments of the checkpoints of a shard to its tree and to its
+	 * {@link roemetz.core.SimExperiments#trialResults}, in the order of the experiments.
+	 * If checkpoints overlap, the one that starts first, and then the longest, is used.
+	 * Checkpoints that are not within the shard are not used.
+	 *
+	 * @param simExperiments the shard, with its {@link roemetz.core.SimExperiments#inputFile}
+	 * @param tree the experiments of the shard
+	 * @return the ranges of experiments read, in order: [i][0] the first experiment, [i][1] the experiment after the last
+	 * @throws IOException if a checkpoint cannot be read or is of another simulation
+	 */
+	public static long[][] readCheckpoints(SimExperiments simExperiments, TrialAccumulator tree) throws IOException {
+
+		File[] files = listCheckpoints(simExperiments.inputFile);
+		ArrayList<long[]> ranges = readRanges(files, describe(simExperiments));
+		ArrayList<long[]> used = new ArrayList<long[]>();
+		long next = simExperiments.shardStart;
+		for (long[] range : ranges) {
+			if (range[0] < next || range[1] > simExperiments.shardEnd) continue;
+			read(simExperiments, files[(int) range[2]], tree);
+			used.add(new long[] {range[0], range[1]});
+			next = range[1];
+		}
+		return used.toArray(new long[used.size()][]);
+
+	}
+
+	/**
+	 * Deletes the checkpoints within the experiments of a shard
+	 *
+	 * @param simExperiments the shard, with its {@link roemetz.core.SimExperiments#inputFile}
+	 */
+	public static void deleteCheckpoints(SimExperiments simExperiments) {
+
+		String prefix = checkpointPrefix(simExperiments.inputFile);
+		for (File file : listCheckpoints(simExperiments.inputFile)) {
+			String[] range = file.getName().substring(prefix.length(), file.getName().length() - SUFFIX.length()).split("_");
+			try {
+				if (Long.parseLong(range[0]) >= simExperiments.shardStart
+						&& Long.parseLong(range[1]) <= simExperiments.shardEnd)
+					file.delete();
+			} catch (RuntimeException e) {
+				// not named by checkpointFile
+			}
+		}
+
+	}
+
+	/**
+	 * Experiments written to a shard file after its header
+	 */
+	private interface Experiments {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Writes a shard file: its header and its experiments.
+	 * The file is written under another name and renamed when it is complete,
+	 * so a file is never left half written.
+	 */
+	private static void write(SimExperiments simExperiments, File file, long start, long end,
+			Experiments experiments) throws IOException {
+
+		File tempFile = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(describe(simExperiments));
+			out.writeLong(start);
+			out.writeLong(end);
+			experiments.write(out);
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Cannot replace " + file);
+		}
+		if (!tempFile.renameTo(file)) {
+			throw new IOException("Cannot rename " + tempFile + " to " + file);
+		}
+
+	}
+
+	/**
+	 * Merges the shards of a simulation. The shards must be of the same simulation as simExperiments
+	 * and cover all its experiments once. The results of each experiment are added to
+	 * {@link roemetz.core.SimExperiments#trialResults}, if not null, in the order of the experiments.
+	 *
+	 * @param simExperiments the simulation of all the experiments
+	 * @param files the shard files, in any order
+	 * @return the mean and the variance of all the experiments, see {@link roemetz.core.SimExperiments#finish(TrialAccumulator)}
+	 * @throws IOException if a file cannot be read, is of another simulation,
+	 *  or if the shards miss or overlap some experiments
+	 */
+	public static DBRecord[] merge(SimExperiments simExperiments, File[] files) throws IOException {
+
+		ArrayList<long[]> ranges = readRanges(files, describe(simExperiments));
+
+		long next = 0;
+		for (long[] range : ranges) {
+			if (range[0] != next) {
+				throw new IOException(range[0] < next
+						? "The shard " + files[(int) range[2]] + " overlaps the experiments before experiment " + next
+						: "No shard has the experiments " + next + " to " + range[0]);
+			}
+			next = range[1];
+		}
+		if (next != simExperiments.Nexp) {
+			throw new IOException("No shard has the experiments " + next + " to " + simExperiments.Nexp);
+		}
+
+		TrialAccumulator tree = new TrialAccumulator(simExperiments.Nexp);
+		for (long[] range : ranges) {
+			read(simExperiments, files[(int) range[2]], tree);
+		}
+		return simExperiments.finish(tree);
+
+	}
+
+	/**
+	 * @return the ranges of experiments of the files: [i][0] the first experiment, [i][1] the experiment after the last,
+	 *  [i][2] the index of the file; sorted by the first experiment, then the longest first
+	 */
+	private static ArrayList<long[]> readRanges(File[] files, String description) throws IOException {
+
+		ArrayList<long[]> ranges = new ArrayList<long[]>();
+		for (int i = 0; i < files.length; i++) {
+			DataInputStream in = open(files[i], description);
+			try {
+				ranges.add(new long[] {in.readLong(), in.readLong(), i});
+			} finally {
+				in.close();
+			}
+		}
+		Collections.sort(ranges, new Comparator<long[]>() {
+			public int compare(long[] a, long[] b) {
+				if (a[0] != b[0]) return a[0] < b[0] ? -1 : 1;
+				return a[1] > b[1] ? -1 : a[1] < b[1] ? 1 : 0;
+			}
+		});
+		return ranges;
+
+	}
+
+	/**
+	 * Adds the experiments of a file to the tree, and to {@link roemetz.core.SimExperiments#trialResults} if not null
+	 */
+	private static void read(SimExperiments simExperiments, File file, TrialAccumulator tree) throws IOException {
+
+		DataInputStream in = open(file, describe(simExperiments));
+		try {
+			long start = in.readLong();
+			in.readLong();
+			tree.read(in);
+			if (in.readBoolean() && simExperiments.trialResults != null)
+				simExperiments.trialResults.read(in, start);
+		} finally {
+			in.close();
+		}
+
+	}
+
+	/**
+	 * Opens a shard file and checks that it is of the simulation described
+	 */
+	private static DataInputStream open(File file, String description) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(file + " is not a shard file of this version of iRoeMetz");
+			}
+			String shardDescription = in.readUTF();
+			if (!shardDescription.equals(description)) {
+				throw new IOException(file + " is a shard of another simulation:\n" + shardDescription
+						+ "\nnot:\n" + description);
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return in;
+
+	}
+
+	/**
+	 * @return the inputs that give the experiments of a simulation
+	 */
+	private static String describe(SimExperiments simExperiments) {
+		return "Seed for RNG: " + simExperiments.seed
+				+ ", Random Stream: " + simExperiments.RandomStreamID
+				+ ", Number of Experiments: " + simExperiments.Nexp
+				+ ", MLE: " + simExperiments.useMLE
+				+ ", Means: " + Arrays.toString(simExperiments.u)
+				+ ", Variances: " + Arrays.toString(simExperiments.var_t)
+				+ ", NR: " + simExperiments.sizePanel1.NreaderJTextField.getText().trim()
+				+ ", N0: " + simExperiments.sizePanel1.NnormalJTextField.getText().trim()
+				+ ", N1: " + simExperiments.sizePanel1.NdiseaseJTextField.getText().trim()
+				+ ", Split-Plot Groups: " + simExperiments.sizePanel1.numSplitPlots
+				+ ", Paired Readers: " + simExperiments.sizePanel1.pairedReadersFlag
+				+ ", Paired Normal: " + simExperiments.sizePanel1.pairedNormalsFlag
+				+ ", Paired Disease: " + simExperiments.sizePanel1.pairedDiseasedFlag;
+	}
+
+}
@@ -0,0 +1,301 @@
+package roemetz.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import mrmc.core.DBRecord;
+import mrmc.core.DBRecordAccumulator;
+
+/**
+ * Mean and variance of the simulation experiments of {@link roemetz.core.SimExperiments}
+ * that do not depend on how the experiments are split among workers. <br>
+ * <br>
+ * The experiments are accumulated in segments of {@link #SEGMENT_TRIALS} consecutive experiments,
+ * one after the other, and the segments are merged two by two in a fixed binary tree over their indexes:
+ * a node of level L starting at segment s holds the segments s to s + 2^L - 1, and is its left child
+ * merged with its right child, see {@link mrmc.core.DBRecordAccumulator#merge(DBRecordAccumulator)}.
+ * Each worker merges the nodes within its experiments as soon as both children are done,
+ * in a {@link Branch}, and {@link #merge()} merges the nodes of the workers. As every node is
+ * merged from the same children in the same order, the result is the same, to the last bit,
+ * for any number of workers, as long as each worker does whole segments. <br>
+ * <br>
+ * A branch keeps at most two nodes per level, so the memory does not grow with the number of experiments. <br>
+ * <br>
+ * A shard of the simulation, done by another process, passes its nodes in a file,
+ * see {@link #write(DataOutput)} and {@link #read(DataInput)}. Shards also start at the beginning of a segment,
+ * so their nodes are merged as those of the workers of one process.
+ * A checkpoint of a worker passes the nodes of its branch the same way, see {@link Branch#write(DataOutput)}.
+ */
+public class TrialAccumulator {
+
+	/**
+	 * Number of experiments of a segment
+	 */
+	public static final int SEGMENT_TRIALS = 16;
+
+	/**
+	 * Number of simulation experiments
+	 */
+	public final long Nexp;
+	/**
+	 * Number of segments, the last one may be shorter
+	 */
+	public final long Nsegments;
+
+	private final ArrayList<Branch> branches = new ArrayList<Branch>();
+
+	/**
+	 * @param Nexp number of simulation experiments
+	 */
+	public TrialAccumulator(long Nexp) {
+		this.Nexp = Nexp;
+		Nsegments = (Nexp + SEGMENT_TRIALS - 1) / SEGMENT_TRIALS;
+	}
+
+	/**
+	 * Adds a branch for the experiments of one worker
+	 *
+	 * @return the new branch, to be filled by one thread
+	 */
+	public synchronized Branch newBranch() {
+		Branch branch = new Branch();
+		branches.add(branch);
+		return branch;
+	}
+
+	/**
+	 * Merges the nodes of all branches once the workers are done.
+	 * The nodes are not changed, so more experiments can be added and merged again.
+	 *
+	 * @return an accumulator of all the experiments.
+	 *  flagTotalVarIsNegative counts the dropped experiments of all branches
+	 */
+	public DBRecordAccumulator merge() {
+		return merge(Nexp);
+	}
+
+	/**
+	 * Merges the nodes of the experiments 0 to NexpUsed-1, as {@link #merge()} would
+	 * if Nexp were NexpUsed: the result is the same, to the last bit, as that of a simulation of NexpUsed experiments.
+	 * Called between batches of experiments, once the workers of the experiments 0 to NexpUsed-1 are done.
+	 *
+	 * @param NexpUsed number of experiments merged, a multiple of {@link #SEGMENT_TRIALS} or Nexp
+	 * @return an accumulator of the experiments 0 to NexpUsed-1
+	 * @throws IllegalArgumentException if a node of a branch has experiments before and after NexpUsed
+	 */
+	public synchronized DBRecordAccumulator merge(long NexpUsed) {
+
+		long segments = (NexpUsed + SEGMENT_TRIALS - 1) / SEGMENT_TRIALS;
+		int root = 0;
+		while ((1L << root) < segments) root++;
+		ArrayList<HashMap<Long, DBRecordAccumulator>> nodes = new ArrayList<HashMap<Long, DBRecordAccumulator>>();
+		for (int level = 0; level <= root; level++) {
+			nodes.add(new HashMap<Long, DBRecordAccumulator>());
+		}
+		for (Branch branch : branches) {
+			branch.finish();
+			for (Node node : branch.stack) {
+				if (node.start >= segments) continue;
+				if (Math.min(node.start + (1L << node.level), Nsegments) > segments) {
+					throw new IllegalArgumentException("The experiments cannot be merged up to experiment " + NexpUsed);
+				}
+				if (nodes.get(node.level).put(node.start, node.accumulator) != null) {
+					throw new IllegalStateException("Segment " + node.start + " of the simulation experiments was done twice");
+				}
+			}
+		}
+		DBRecordAccumulator merged = node(nodes, root, 0, segments);
+		return merged == null ? new DBRecordAccumulator() : merged.copy();
+
+	}
+
+	/**
+	 * Writes the nodes of all branches once the workers are done, so that another process
+	 * can merge them with {@link #read(DataInput)}
+	 *
+	 * @param out the stream
+	 * @throws IOException
+	 */
+	public synchronized void write(DataOutput out) throws IOException {
+
+		int count = 0;
+		for (Branch branch : branches) {
+			branch.finish();
+			count += branch.stack.size();
+		}
+		out.writeLong(Nexp);
+		out.writeInt(count);
+		for (Branch branch : branches) {
+			branch.writeNodes(out);
+		}
+
+	}
+
+	/**
+	 * Adds the nodes written by {@link #write(DataOutput)} as a branch
+	 *
+	 * @param in the stream
+	 * @throws IOException if the nodes are of another number of experiments
+	 */
+	public synchronized void read(DataInput in) throws IOException {
+
+		long NexpWritten = in.readLong();
+		if (NexpWritten != Nexp) {
+			throw new IOException("The experiments were written for " + NexpWritten + " experiments, not " + Nexp);
+		}
+		Branch branch = new Branch();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			int level = in.readInt();
+			long start = in.readLong();
+			branch.stack.add(new Node(level, start, DBRecordAccumulator.read(in)));
+		}
+		branches.add(branch);
+
+	}
+
+	/**
+	 * @return the node of the tree, from the branches if a branch has it, else merged from its children
+	 *  into a new accumulator; null if it starts after the last segment merged
+	 */
+	private DBRecordAccumulator node(ArrayList<HashMap<Long, DBRecordAccumulator>> nodes, int level, long start,
+			long segments) {
+
+		if (start >= segments) return null;
+		DBRecordAccumulator accumulator = nodes.get(level).get(start);
+		if (accumulator != null) return accumulator;
+		if (level == 0) {
+			throw new IllegalStateException("Segment " + start + " of the simulation experiments was not done");
+		}
+		DBRecordAccumulator left = node(nodes, level - 1, start, segments);
+		DBRecordAccumulator right = node(nodes, level - 1, start + (1L << (level - 1)), segments);
+		if (right == null) return left;
+		DBRecordAccumulator merged = left.copy();
+		merged.merge(right);
+		return merged;
+
+	}
+
+	/**
+	 * Node of the tree: the segments start to start + 2^level - 1
+	 */
+	private static class Node {
+		final int level;
+		final long start;
+		final DBRecordAccumulator accumulator;
+
+		Node(int level, long start, DBRecordAccumulator accumulator) {
+			this.level = level;
+			this.start = start;
+			this.accumulator = accumulator;
+		}
+	}
+
+	/**
+	 * Experiments of one worker, given in increasing order and starting at the beginning of a segment
+	 */
+	public class Branch {
+
+		/**
+		 * Nodes done, from the first segment of the worker to the last
+		 */
+		private final ArrayList<Node> stack = new ArrayList<Node>();
+		private DBRecordAccumulator segment = null;
+		private long segmentIndex = -1;
+
+		private Branch() {
+		}
+
+		/**
+		 * Adds the results of an experiment
+		 *
+		 * @param trial index of the experiment, from 0 to Nexp-1
+		 * @param DBRecordStat the analysis of the experiment
+		 */
+		public void add(long trial, DBRecord DBRecordStat) {
+			segment(trial).add(DBRecordStat);
+		}
+
+		/**
+		 * Counts an experiment that was dropped because its totalVar was negative
+		 *
+		 * @param trial index of the experiment, from 0 to Nexp-1
+		 */
+		public void drop(long trial) {
+			segment(trial).flagTotalVarIsNegative++;
+		}
+
+		/**
+		 * @return the accumulator of the segment of the experiment,
+		 *  pushing the previous segment when the experiment starts a new one
+		 */
+		private DBRecordAccumulator segment(long trial) {
+
+			long index = trial / SEGMENT_TRIALS;
+			if (index != segmentIndex) {
+				if (segment != null) push(new Node(0, segmentIndex, segment));
+				segment = new DBRecordAccumulator();
+				segmentIndex = index;
+			}
+			return segment;
+
+		}
+
+		/**
+		 * Pushes a node and merges it with the node before it as long as they are the two children of a node
+		 */
+		private void push(Node node) {
+
+			stack.add(node);
+			while (stack.size() > 1) {
+				Node right = stack.get(stack.size() - 1);
+				Node left = stack.get(stack.size() - 2);
+				long width = 1L << left.level;
+				if (left.level != right.level || left.start % (2 * width) != 0 || right.start != left.start + width) {
+					break;
+				}
+				left.accumulator.merge(right.accumulator);
+				stack.remove(stack.size() - 1);
+				stack.set(stack.size() - 1, new Node(left.level + 1, left.start, left.accumulator));
+			}
+
+		}
+
+		/**
+		 * Writes the nodes of the branch as {@link TrialAccumulator#write(DataOutput)} writes those of all branches,
+		 * for a checkpoint of the worker. Called by the thread of the worker once the experiments
+		 * of its last segment are done, as the segment is pushed
+		 *
+		 * @param out the stream
+		 * @throws IOException
+		 */
+		public void write(DataOutput out) throws IOException {
+			finish();
+			out.writeLong(Nexp);
+			out.writeInt(stack.size());
+			writeNodes(out);
+		}
+
+		private void writeNodes(DataOutput out) throws IOException {
+			for (Node node : stack) {
+				out.writeInt(node.level);
+				out.writeLong(node.start);
+				node.accumulator.write(out);
+			}
+		}
+
+		/**
+		 * Pushes the last segment
+		 */
+		private void finish() {
+			if (segment != null) push(new Node(0, segmentIndex, segment));
+			segment = null;
+			segmentIndex = -1;
+		}
+
+	}
+
+}
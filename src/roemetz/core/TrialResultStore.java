@@ -0,0 +1,516 @@
+package roemetz.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mrmc.core.DBRecord;
+
+/**
+ * Results of each simulation experiment of {@link roemetz.core.SimExperiments}, one row per experiment,
+ * for studies of the distribution of the results, such as the type I error or the coverage of confidence intervals. <br>
+ * <br>
+ * The columns are {@link #COLUMNS}: the experiment number (1 to Nexp), the AUCs and their variances, the p-values,
+ * confidence intervals, degrees of freedom and rejections of the normal, BDG and Hillis tests, and whether
+ * the experiment was used in the means (0 if it was dropped because its totalVar was negative). <br>
+ * <br>
+ * Each worker writes its own {@link Partition}, so the workers do not wait on each other.
+ * A partition keeps blocks of {@link #BLOCK_ROWS} rows, one array per column. The block being filled starts empty
+ * and doubles from {@link #FIRST_ROWS} rows as it is filled, so a partition of a few experiments takes little memory.
+ * When the blocks of all partitions take more than the memory budget, a partition that grows a block, or is finished,
+ * writes its blocks, the one being filled too, to its own binary file and frees them.
+ * The partitions hold contiguous ranges of experiments and are read in the order of their first experiment,
+ * which is the order of the experiments. <br>
+ * <br>
+ * Read the results with {@link #getColumn(String)} or {@link #exportCSV(File)} once the workers are done,
+ * and call {@link #delete()} to remove the files.
+ * The results of a shard of the simulation, done by another process, are passed with
+ * {@link #write(DataOutput)} and {@link #read(DataInput)}.
+ */
+public class TrialResultStore {
+
+	/**
+	 * Names of the columns, as in the CSV file
+	 */
+	public static final String[] COLUMNS = new String[] {"TrialID","AUCA","AUCB","AUCAminusB","varAUCA","varAUCB","varAUCAandB",
+		"pValueNormal","botCInormal","topCInormal","rejectNormal",
+		"dfBDG","pValueBDG","botCIBDG","topCIBDG","rejectBDG",
+		"dfHillis","pValueHillis","botCIHillis","topCIHillis","rejectHillis","used"};
+	/**
+	 * Number of rows of a block
+	 */
+	public static final int BLOCK_ROWS = 4096;
+	/**
+	 * Number of rows of the block being filled when its first row is added
+	 */
+	public static final int FIRST_ROWS = 64;
+	/**
+	 * Default memory budget of a store, in bytes
+	 */
+	public static long memoryBudget = 64L * 1024 * 1024;
+
+	private final long budget;
+	private final File spillDirectory;
+	private final AtomicLong memoryUsed = new AtomicLong();
+	private final ArrayList<Partition> partitions = new ArrayList<Partition>();
+
+	/**
+	 * Creates a store with the default memory budget, spilling to the temporary directory
+	 */
+	public TrialResultStore() {
+		this(memoryBudget, null);
+	}
+
+	/**
+	 * @param budget memory taken by the blocks of all partitions, in bytes, before they are written to files
+	 * @param spillDirectory directory of the files; null for the temporary directory
+	 */
+	public TrialResultStore(long budget, File spillDirectory) {
+		this.budget = budget;
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Adds a partition for a range of experiments.
+	 * Partitions are read in the order of their first experiment, then in the order they are created.
+	 *
+	 * @param firstTrial index of the first experiment of the partition
+	 * @return the new partition, to be written by one thread
+	 */
+	public synchronized Partition newPartition(long firstTrial) {
+		Partition partition = new Partition(firstTrial);
+		int i = partitions.size();
+		while (i > 0 && partitions.get(i - 1).firstTrial > firstTrial) i--;
+		partitions.add(i, partition);
+		return partition;
+	}
+
+	/**
+	 * @return number of experiments in all partitions
+	 */
+	public synchronized long size() {
+		long size = 0;
+		for (Partition partition : partitions)
+			size += partition.rows;
+		return size;
+	}
+
+	/**
+	 * @param name one of {@link #COLUMNS}
+	 * @return the column of all experiments, in the order of the partitions
+	 * @throws IOException if a file of the partitions cannot be read
+	 */
+	public synchronized double[] getColumn(String name) throws IOException {
+
+		int column = columnIndex(name);
+		long size = size();
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalStateException("Too many experiments to hold a column in memory: " + size);
+		final double[] values = new double[(int) size];
+		final int[] next = new int[1];
+		final int col = column;
+		for (Partition partition : partitions) {
+			partition.read(new BlockReader() {
+				public void block(double[][] block, int rows) {
+					System.arraycopy(block[col], 0, values, next[0], rows);
+					next[0] += rows;
+				}
+			});
+		}
+		return values;
+
+	}
+
+	/**
+	 * Writes all experiments to a CSV file, one row per experiment with the {@link #COLUMNS} as header
+	 *
+	 * @param file the CSV file
+	 * @throws IOException
+	 */
+	public synchronized void exportCSV(File file) throws IOException {
+
+		final BufferedWriter bw = new BufferedWriter(new FileWriter(file.getAbsoluteFile()));
+		try {
+			for (int i = 0; i < COLUMNS.length; i++) {
+				bw.write(COLUMNS[i] + ",");
+			}
+			bw.write("\n");
+			final StringBuilder line = new StringBuilder();
+			final IOException[] error = new IOException[1];
+			for (Partition partition : partitions) {
+				partition.read(new BlockReader() {
+					public void block(double[][] block, int rows) {
+						for (int r = 0; r < rows && error[0] == null; r++) {
+							line.setLength(0);
+							line.append((long) block[0][r]).append(',');
+							for (int c = 1; c < COLUMNS.length; c++) {
+								line.append(block[c][r]).append(',');
+							}
+							line.append('\n');
+							try {
+								bw.write(line.toString());
+							} catch (IOException e) {
+								error[0] = e;
+							}
+						}
+					}
+				});
+				if (error[0] != null) throw error[0];
+			}
+		} finally {
+			bw.close();
+		}
+
+	}
+
+	/**
+	 * Writes all experiments, block by block, so that another process can add them with {@link #read(DataInput)}
+	 *
+	 * @param out the stream
+	 * @throws IOException
+	 */
+	public synchronized void write(final DataOutput out) throws IOException {
+
+		out.writeInt(COLUMNS.length);
+		for (Partition partition : partitions) {
+			partition.writeBlocks(out);
+		}
+		out.writeInt(0);
+
+	}
+
+	/**
+	 * Adds the experiments written by {@link #write(DataOutput)} in a new partition
+	 *
+	 * @param in the stream
+	 * @param firstTrial index of the first experiment written
+	 * @throws IOException if the stream does not hold experiments of the same columns
+	 */
+	public void read(DataInput in, long firstTrial) throws IOException {
+
+		if (in.readInt() != COLUMNS.length) {
+			throw new IOException("The experiments were written with other columns");
+		}
+		Partition partition = newPartition(firstTrial);
+		double[][] block = new double[COLUMNS.length][BLOCK_ROWS];
+		int rows;
+		while ((rows = in.readInt()) > 0) {
+			for (double[] column : block) {
+				for (int r = 0; r < rows; r++) {
+					column[r] = in.readDouble();
+				}
+			}
+			for (int r = 0; r < rows; r++) {
+				partition.makeRoom();
+				for (int c = 0; c < COLUMNS.length; c++) {
+					partition.current[c][partition.currentRows] = block[c][r];
+				}
+				partition.rowAdded();
+			}
+		}
+		partition.finish();
+
+	}
+
+	/**
+	 * Frees the blocks and deletes the files of all partitions
+	 */
+	public synchronized void delete() {
+		for (Partition partition : partitions)
+			partition.delete();
+		partitions.clear();
+	}
+
+	private static int columnIndex(String name) {
+		for (int c = 0; c < COLUMNS.length; c++) {
+			if (COLUMNS[c].equals(name)) return c;
+		}
+		throw new IllegalArgumentException("Unknown column: " + name);
+	}
+
+	/**
+	 * Receives the blocks of a partition in order
+	 */
+	private interface BlockReader {
+		void block(double[][] block, int rows);
+	}
+
+	/**
+	 * Experiments written by one worker, in the order they are done
+	 */
+	public class Partition {
+
+		private long rows = 0;
+		/**
+		 * Full blocks kept in memory, and the block being filled, which has no rows until the first experiment
+		 */
+		private ArrayList<double[][]> blocks = new ArrayList<double[][]>();
+		private double[][] current = newBlock(0);
+		private int currentRows = 0;
+		/**
+		 * File of the blocks written out, and the number of blocks in it. Each block is written as
+		 * its number of rows followed by its columns
+		 */
+		private File file;
+		private DataOutputStream out;
+		private int blocksInFile = 0;
+		private final long firstTrial;
+
+		private Partition(long firstTrial) {
+			this.firstTrial = firstTrial;
+		}
+
+		/**
+		 * Adds the results of one experiment
+		 *
+		 * @param trial index of the experiment, from 0 to Nexp-1
+		 * @param DBRecordStat the analysis of the experiment
+		 * @param used false if the experiment was dropped
+		 * @throws IOException if the blocks cannot be written to the file
+		 */
+		public void add(long trial, DBRecord DBRecordStat, boolean used) throws IOException {
+
+			makeRoom();
+			double AUC_A = DBRecordStat.AUCsReaderAvg[0];
+			double AUC_B = DBRecordStat.AUCsReaderAvg[1];
+			int r = currentRows;
+			double[][] c = current;
+			c[0][r] = trial + 1;
+			c[1][r] = AUC_A;
+			c[2][r] = AUC_B;
+			c[3][r] = AUC_A - AUC_B;
+			c[4][r] = DBRecordStat.varA;
+			c[5][r] = DBRecordStat.varB;
+			c[6][r] = DBRecordStat.totalVar;
+			c[7][r] = DBRecordStat.testStat.pValNormal;
+			c[8][r] = DBRecordStat.testStat.ciBotNormal;
+			c[9][r] = DBRecordStat.testStat.ciTopNormal;
+			c[10][r] = DBRecordStat.testStat.rejectNormal;
+			c[11][r] = DBRecordStat.testStat.DF_BDG;
+			c[12][r] = DBRecordStat.testStat.pValBDG;
+			c[13][r] = DBRecordStat.testStat.ciBotBDG;
+			c[14][r] = DBRecordStat.testStat.ciTopBDG;
+			c[15][r] = DBRecordStat.testStat.rejectBDG;
+			c[16][r] = DBRecordStat.testStat.DF_Hillis;
+			c[17][r] = DBRecordStat.testStat.pValHillis;
+			c[18][r] = DBRecordStat.testStat.ciBotHillis;
+			c[19][r] = DBRecordStat.testStat.ciTopHillis;
+			c[20][r] = DBRecordStat.testStat.rejectHillis;
+			c[21][r] = used ? 1.0 : 0.0;
+			rowAdded();
+
+		}
+
+		/**
+		 * Counts the row just filled in the current block
+		 */
+		private void rowAdded() {
+			currentRows++;
+			rows++;
+		}
+
+		/**
+		 * Makes room for one more row in the current block: doubles it, up to {@link #BLOCK_ROWS} rows,
+		 * or keeps it and starts a new one if it is full. Then writes the partition to its file
+		 * if the blocks of all partitions take more than the memory budget
+		 */
+		private void makeRoom() throws IOException {
+
+			int capacity = current[0].length;
+			if (currentRows < capacity) return;
+			if (capacity == BLOCK_ROWS) {
+				blocks.add(current);
+				current = newBlock(FIRST_ROWS);
+				currentRows = 0;
+			} else {
+				double[][] block = newBlock(Math.min(Math.max(2 * capacity, FIRST_ROWS), BLOCK_ROWS));
+				for (int c = 0; c < COLUMNS.length; c++) {
+					System.arraycopy(current[c], 0, block[c], 0, currentRows);
+				}
+				memoryUsed.addAndGet(-blockBytes(capacity));
+				current = block;
+			}
+			if (memoryUsed.get() > budget) {
+				spill(FIRST_ROWS);
+			}
+
+		}
+
+		/**
+		 * Called by the thread of the worker once it has added its experiments: frees the rows of the current block
+		 * that are not filled, and writes the partition to its file if the blocks of all partitions
+		 * take more than the memory budget
+		 *
+		 * @throws IOException if the blocks cannot be written to the file
+		 */
+		public void finish() throws IOException {
+
+			int capacity = current[0].length;
+			if (currentRows < capacity) {
+				double[][] block = newBlock(currentRows);
+				for (int c = 0; c < COLUMNS.length; c++) {
+					System.arraycopy(current[c], 0, block[c], 0, currentRows);
+				}
+				memoryUsed.addAndGet(-blockBytes(capacity));
+				current = block;
+			}
+			if (memoryUsed.get() > budget) {
+				spill(0);
+			}
+
+		}
+
+		/**
+		 * Writes the experiments of the partition as {@link TrialResultStore#write(DataOutput)} writes
+		 * those of all partitions, for a checkpoint of the worker. Called by the thread of the worker
+		 *
+		 * @param out the stream
+		 * @throws IOException
+		 */
+		public void write(DataOutput out) throws IOException {
+			out.writeInt(COLUMNS.length);
+			writeBlocks(out);
+			out.writeInt(0);
+		}
+
+		private void writeBlocks(final DataOutput out) throws IOException {
+
+			final IOException[] error = new IOException[1];
+			read(new BlockReader() {
+				public void block(double[][] block, int rows) {
+					if (error[0] != null) return;
+					try {
+						out.writeInt(rows);
+						for (double[] column : block) {
+							for (int r = 0; r < rows; r++) {
+								out.writeDouble(column[r]);
+							}
+						}
+					} catch (IOException e) {
+						error[0] = e;
+					}
+				}
+			});
+			if (error[0] != null) throw error[0];
+
+		}
+
+		/**
+		 * @return number of experiments in the partition
+		 */
+		public long size() {
+			return rows;
+		}
+
+		/**
+		 * Writes the blocks in memory, full or not, to the file of the partition and frees them
+		 *
+		 * @param firstRows number of rows of the new block being filled
+		 */
+		private void spill(int firstRows) throws IOException {
+
+			if (out == null && (!blocks.isEmpty() || currentRows > 0)) {
+				file = File.createTempFile("iRoeMetzTrials", ".bin", spillDirectory);
+				file.deleteOnExit();
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			}
+			for (double[][] block : blocks) {
+				writeBlock(block, BLOCK_ROWS);
+			}
+			if (currentRows > 0) {
+				writeBlock(current, currentRows);
+			}
+			memoryUsed.addAndGet(-blockBytes(BLOCK_ROWS) * blocks.size() - blockBytes(current[0].length));
+			blocks.clear();
+			current = newBlock(firstRows);
+			currentRows = 0;
+
+		}
+
+		private void writeBlock(double[][] block, int rows) throws IOException {
+			out.writeInt(rows);
+			for (double[] column : block) {
+				for (int r = 0; r < rows; r++) {
+					out.writeDouble(column[r]);
+				}
+			}
+			blocksInFile++;
+		}
+
+		/**
+		 * Passes the blocks to the reader in order: those in the file, those in memory, and the block being filled
+		 */
+		private void read(BlockReader reader) throws IOException {
+
+			if (blocksInFile > 0) {
+				out.flush();
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+				try {
+					double[][] block = new double[COLUMNS.length][BLOCK_ROWS];
+					for (int b = 0; b < blocksInFile; b++) {
+						int rows = in.readInt();
+						for (double[] column : block) {
+							for (int r = 0; r < rows; r++) {
+								column[r] = in.readDouble();
+							}
+						}
+						reader.block(block, rows);
+					}
+				} finally {
+					in.close();
+				}
+			}
+			for (double[][] block : blocks) {
+				reader.block(block, BLOCK_ROWS);
+			}
+			if (currentRows > 0) {
+				reader.block(current, currentRows);
+			}
+
+		}
+
+		private void delete() {
+
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				out = null;
+				file.delete();
+			}
+			memoryUsed.addAndGet(-blockBytes(BLOCK_ROWS) * blocks.size() - blockBytes(current[0].length));
+			blocks.clear();
+			current = newBlock(0);
+			currentRows = 0;
+			blocksInFile = 0;
+
+		}
+
+	}
+
+	/**
+	 * @return a block of a number of rows, counted in the memory used
+	 */
+	private double[][] newBlock(int rows) {
+		memoryUsed.addAndGet(blockBytes(rows));
+		return new double[COLUMNS.length][rows];
+	}
+
+	private static long blockBytes(int rows) {
+		return 8L * COLUMNS.length * rows;
+	}
+
+}
@@ -0,0 +1,98 @@
+package roemetz.core;
+
+import java.util.Arrays;
+
+/**
+ * Buffers of one simulation experiment of {@link roemetz.core.SimRoeMetz}, allocated once for a study size
+ * and refilled by every experiment, so that the trial loop does not allocate them again. <br>
+ * <br>
+ * -- Gaussian components of the Roe and Metz model: reader (R), case (C) and reader-by-case (RC) effects
+ * of modality A, modality B and both, for signal-absent (0) and signal-present (1) cases <br>
+ * -- Scores of each reader and case: {@link #tA0}, {@link #tB0}, {@link #tA1}, {@link #tB1} <br>
+ * <br>
+ * Each worker of {@link roemetz.core.SimExperiments} has its own SimRoeMetz, and so its own workspace.
+ * A workspace is not shared between threads.
+ */
+public class TrialWorkspace {
+
+	/**
+	 * Number of readers, signal-absent cases and signal-present cases
+	 */
+	public final int Nreader, Nnormal, Ndisease;
+	/**
+	 * Reader effects [Nreader]
+	 */
+	public final double[] RA0, RA1, RB0, RB1, R0, R1;
+	/**
+	 * Signal-absent case effects [Nnormal]
+	 */
+	public final double[] CA0, CB0, C0;
+	/**
+	 * Signal-present case effects [Ndisease]
+	 */
+	public final double[] CA1, CB1, C1;
+	/**
+	 * Reader-by-case effects [Nreader][Nnormal] and [Nreader][Ndisease]
+	 */
+	public final double[][] RCA0, RCB0, RC0, RCA1, RCB1, RC1;
+	/**
+	 * Scores of modality A and B [Nreader][Nnormal] and [Nreader][Ndisease]
+	 */
+	public final double[][] tA0, tB0, tA1, tB1;
+
+	/**
+	 * Allocates the buffers of a study
+	 *
+	 * @param Nreader number of readers
+	 * @param Nnormal number of signal-absent cases
+	 * @param Ndisease number of signal-present cases
+	 */
+	public TrialWorkspace(int Nreader, int Nnormal, int Ndisease) {
+
+		this.Nreader = Nreader;
+		this.Nnormal = Nnormal;
+		this.Ndisease = Ndisease;
+
+		RA0 = new double[Nreader];
+		RA1 = new double[Nreader];
+		RB0 = new double[Nreader];
+		RB1 = new double[Nreader];
+		R0 = new double[Nreader];
+		R1 = new double[Nreader];
+		CA0 = new double[Nnormal];
+		CB0 = new double[Nnormal];
+		C0 = new double[Nnormal];
+		CA1 = new double[Ndisease];
+		CB1 = new double[Ndisease];
+		C1 = new double[Ndisease];
+		RCA0 = new double[Nreader][Nnormal];
+		RCB0 = new double[Nreader][Nnormal];
+		RC0 = new double[Nreader][Nnormal];
+		RCA1 = new double[Nreader][Ndisease];
+		RCB1 = new double[Nreader][Ndisease];
+		RC1 = new double[Nreader][Ndisease];
+		tA0 = new double[Nreader][Nnormal];
+		tB0 = new double[Nreader][Nnormal];
+		tA1 = new double[Nreader][Ndisease];
+		tB1 = new double[Nreader][Ndisease];
+
+	}
+
+	/**
+	 * Resets the scores before an experiment: 0 for signal-absent cases,
+	 * the mean of the modality for signal-present cases
+	 *
+	 * @param scoreMeans mean of the signal-present scores of modality A and B [2]
+	 */
+	public void resetScores(double[] scoreMeans) {
+
+		for (int i = 0; i < Nreader; i++) {
+			Arrays.fill(tA0[i], 0.0);
+			Arrays.fill(tB0[i], 0.0);
+			Arrays.fill(tA1[i], scoreMeans[0]);
+			Arrays.fill(tB1[i], scoreMeans[1]);
+		}
+
+	}
+
+}
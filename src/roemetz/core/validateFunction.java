@@ -1,9 +1,12 @@
 package roemetz.core;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Scanner;
 
+import javax.swing.JPanel;
+
 import mrmc.chart.exportToFile;
 import roemetz.gui.RMGUInterface;
 import roemetz.gui.RMGUInterface.analysisExportListener;
@@ -48,4 +51,36 @@ public static File inputFile = null;
 				RMGUInterface.analysisExportListener analysisExportListener1 =RMGUInterface1. new analysisExportListener(RMGUInterface1.avgDBRecordStat,"SimulationOutput",RMGUInterface1.StatPanel1);
 				analysisExportListener1.exportResult();*/
 	}
+
+	/**
+	 * Performs a shard of the simulation of an input file, or merges its shards, without the GUI,
+	 * see {@link roemetz.core.SimShards}. Exits with status 1 if it fails. <br>
+	 * <br>
+	 * CALLED FROM: {@link roemetz.core.RoeMetz#main(String[])} with -trials=START:END or -merge
+	 * 
+	 * @param inputFileFullName the input file
+	 * @param shard the first experiment and the experiment after the last one of the shard; not used when merging
+	 * @param mergeShards true to merge the shards of the input file
+	 */
+	public static void simulationShard(String inputFileFullName, long[] shard, boolean mergeShards) {
+		System.out.println(inputFileFullName);
+		// absolute, as the output directory is next to the input file
+		inputFile = new File (inputFileFullName).getAbsoluteFile();
+		RoeMetz.doValidation = true;
+		RMGUInterface RMGUInterface1 = new RMGUInterface(null, new JPanel());
+		RMGUInterface1.parseCofVfile(inputFile);
+
+		RMGUInterface.DoSimBtnListener DoSimBtnListener1 =  RMGUInterface1.new DoSimBtnListener();
+		try {
+			if (mergeShards) {
+				DoSimBtnListener1.mergeSimulationShards();
+			} else {
+				DoSimBtnListener1.doSimulationShard(shard[0], shard[1]);
+			}
+		} catch (IOException | InterruptedException | IllegalArgumentException | IllegalStateException e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
 }
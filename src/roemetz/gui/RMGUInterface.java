@@ -28,6 +28,7 @@ import java.text.DateFormat;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -47,10 +48,10 @@ import mrmc.gui.SizePanel;
 import mrmc.gui.StatPanel;
 import roemetz.core.CalcGenRoeMetz;
 import roemetz.core.RoeMetz;
-import roemetz.core.SimRoeMetz;
+import roemetz.core.SimExperiments;
+import roemetz.core.SimShards;
+import roemetz.core.TrialResultStore;
 import roemetz.core.validateFunction;
-import umontreal.iro.lecuyer.rng.RandomStream;
-import umontreal.iro.lecuyer.rng.WELL1024;
 
 /**
  * This class describes the interface for iRoeMetz application. It contains a
@@ -59,7 +60,7 @@ import umontreal.iro.lecuyer.rng.WELL1024;
  * last panel estimates the components of variance for the given input.
  * 
  * Note: In order to debug properly, you do not want to be running in multi-thread mode.
- * Change the numCores in class DoSimBtnListener to 1
+ * Set {@link roemetz.core.SimExperiments#numWorkers} to 1 (command-line option -workers=1)
  * 
  * @author Rohan Pathare
  * @author Qi Gong
@@ -80,7 +81,15 @@ public class RMGUInterface {
 	public StatPanel StatPanel1;
 	public StatPanel StatPanelNumerical;
 	public static int RandomStreamID = 1;
-	private double[][] trialResultArray; 
+	/**
+	 * Results of each experiment of the last simulation, exported with the simulation results
+	 */
+	private TrialResultStore trialResults;
+	/**
+	 * Number of experiments done by the last simulation, fewer than the number of experiments
+	 * if it stopped at the target standard errors, see {@link roemetz.core.SimExperiments#targetSE}
+	 */
+	private long NexpDone;
 	private double[][][] SizingResultArray; 
 	private double[][] SizingResultMean;
 	JPanel studyDesignJPanel;
@@ -485,6 +494,7 @@ public class RMGUInterface {
 		JTextField_Nexp.setText("10");
 	    useMLEbox.setSelected(false);
 	    useMLE = NO_MLE;
+	    Arrays.fill(SimExperiments.targetSE, 0);
 		
 	}
 
@@ -523,6 +533,23 @@ public class RMGUInterface {
 			counter++;
 			int loc;
 			
+			// before the other keys, as "AUC A-B:" or "TOTALVAR:" would match some of them
+			loc = tempstr.indexOf("TARGET SE OF ");
+			if (loc != -1) {
+				int tmploc = tempstr.indexOf(":");
+				String name = tempstr.substring(loc + "TARGET SE OF ".length(), tmploc).trim();
+				for (int i = 0; i < SimExperiments.PRECISION_VALUES.length; i++) {
+					if (SimExperiments.PRECISION_VALUES[i].toUpperCase().equals(name))
+						SimExperiments.targetSE[i] = Double.parseDouble(tempstr.substring(tmploc + 1).trim());
+				}
+				continue;
+			}
+			loc = tempstr.indexOf("EXPERIMENTS PER BATCH:");
+			if (loc != -1) {
+				int tmploc = tempstr.indexOf(":");
+				SimExperiments.batchTrials = Long.parseLong(tempstr.substring(tmploc + 1).trim());
+				continue;
+			}
 			loc = tempstr.indexOf("ARC0:");
 			if (loc != -1) {
 				int tmploc = tempstr.indexOf(":");
@@ -731,6 +758,12 @@ public class RMGUInterface {
 				JTextField_Nexp.setText(tempstr.substring(tmploc + 1).trim());
 				continue;
 			}	
+			loc = tempstr.indexOf("NUMBER OF WORKERS:");
+			if (loc != -1) {
+				int tmploc = tempstr.indexOf(":");
+				SimExperiments.numWorkers = Integer.parseInt(tempstr.substring(tmploc + 1).trim());
+				continue;
+			}	
 			loc = tempstr.indexOf("MLE ANALYSIS:");
 			if (loc != -1) {
 				int tmploc = tempstr.indexOf(":");
@@ -926,195 +959,67 @@ public class RMGUInterface {
 
 	
 	/**
-	 * extends SwingWorker, Performs multiple consecutive simulation experiments in a separate
-	 * thread. Enables multi-threading to take advantage of multi-core systems
-	 * and keep GUI responsive during heavy calculations.
+	 * extends SwingWorker, Performs the simulation experiments with {@link roemetz.core.SimExperiments}
+	 * in a separate thread. The experiments run on the worker threads of
+	 * {@link roemetz.core.SimExperiments} to take advantage of multi-core systems
+	 * and this thread keeps the GUI responsive during heavy calculations.
 	 * 
 	 */
 	private class SimExperiments_thread extends SwingWorker<DBRecord[], Integer> {
 
-		double[] u; // experiment means
-		double[] var_t; // components of variance
-		SizePanel sizePanel1;
-		
-		/**
-		 * number of experiments per thead
-		 */
-		long Nexp, NexpStart, NexpEnd, NexpThisCore;
+		SimExperiments simExperiments;
 		/**
 		 * progress indicating number of completed experiments,
-		 *  updated by all threads via "atomic"
+		 *  updated by all workers via "atomic"
 		 */
 		AtomicInteger NexpCompleted_atomic;
 		String filenameTime;
-		@SuppressWarnings("unused")
-		int whichTask;
-		private RandomStream RandomStreamI;
 		
 		/**
-		 * Constructor for group of simulation experiments.
+		 * Constructor for the simulation experiments.
 		 * 
-		 * @param u Contains experiment means
-		 * @param var_t Contains components of variance
-		 * @param Nexp Number of simulation experiments
-		 * @param NexpStart The starting index of the simulation experiment for this core
-		 * @param NexpEnd The ending index of the simulation experiment for this core 
+		 * @param simExperiments The simulation experiments and their workers
 		 * @param NexpCompleted_atomic Shared counter of number of experiments performed
-		 *            across all threads
+		 *            across all workers
 		 * @param filenameTime Timestamp when this set of experiments was
 		 *            started, to categorize output files
-		 * @param whichTask Indentifier for this group of simulation experiments
-		 *            (this thread)
-		 * @param RandomStreamI Random numbergenerator at its current state
-		 * @param sizePanelTemp Contains parameters for the mrmc experiment to be simulated
 		 */
-		public SimExperiments_thread(double[] u, double[] var_t,
-				long Nexp, long NexpStart, long NexpEnd, AtomicInteger NexpCompleted_atomic, String filenameTime,
-				int whichTask, RandomStream RandomStreamI, SizePanel sizePanelTemp) {
+		public SimExperiments_thread(SimExperiments simExperiments,
+				AtomicInteger NexpCompleted_atomic, String filenameTime) {
 			
-			sizePanel1 = sizePanelTemp;
-			
-			this.u = u;
-			this.var_t = var_t;
-			this.Nexp = Nexp;
-			this.NexpStart = NexpStart;
-			this.NexpEnd = NexpEnd;
-			this.NexpThisCore = NexpEnd-NexpStart;
+			this.simExperiments = simExperiments;
 			this.NexpCompleted_atomic = NexpCompleted_atomic;
 			this.filenameTime = filenameTime;
-			this.whichTask = whichTask;
-			this.RandomStreamI = RandomStreamI;
-			
-			System.out.print("ThreadName:"+Thread.currentThread().getName()+":");
-			//each thread prints 5 random numbers for testing proper threading and reproducibility
-	        for(int j = 0 ; j < 5; j++) {
-	            int nextInt = RandomStreamI.nextInt(1, 100);
-	            System.out.print(nextInt + ",");
-	        }
-	        System.out.println();
 
 		}
 
 		/**
 		 * Actual task that is performed
 		 * 
-		 * @return Averaged components of variance decompositions and AUCs for
-		 *         this group of simulation experiments
+		 * @return Mean and variance of the components of variance decompositions and AUCs
+		 *         of all simulation experiments, see {@link roemetz.core.SimExperiments#run(SimExperiments.TrialListener)}
 		 * @throws IOException 
+		 * @throws InterruptedException 
 		 */
-		public DBRecord[] doInBackground() throws IOException {
-
-			DBRecord DBRecordStat = new DBRecord();
-			DBRecord squareDBRecordStat = new DBRecord();
-			DBRecord sumDBRecordStat = new DBRecord();
-			DBRecord sumSquareDBRecordStat = new DBRecord();
-			DBRecordStat.verbose = false;
-			sumDBRecordStat.verbose = false;
-			squareDBRecordStat.verbose = false;
-			sumSquareDBRecordStat.verbose = false;
-			DBRecordStat.flagMLE = useMLE;
-			sumDBRecordStat.flagMLE = useMLE;
-			squareDBRecordStat.flagMLE = useMLE;
-			sumSquareDBRecordStat.flagMLE = useMLE;
-			long flagTotalVarIsNegative = 0;
-			trialResultArray = new double[(int) NexpEnd][21];
-			SizingResultArray = new double[8][(int) NexpEnd][13];
-			SizingResultMean = new double[8][14];
-			SimRoeMetz currSimRoeMetz = new SimRoeMetz(u, var_t, RandomStreamI, sizePanel1);
-			
-			// initialize DBRecords
-			currSimRoeMetz.doSim(squareDBRecordStat);
-			currSimRoeMetz.doSim(sumDBRecordStat);
-			currSimRoeMetz.doSim(sumSquareDBRecordStat);
-
-			// for i=NexpStart
-			currSimRoeMetz.doSim(DBRecordStat);
-			// Accumulate DBRecord
-			DBRecord.copy(DBRecordStat, sumDBRecordStat);
-			// Accumulate squareDBRecord
-			DBRecord.copy(DBRecordStat, squareDBRecordStat);			
-			DBRecord.square(squareDBRecordStat);
-			DBRecord.copy(squareDBRecordStat, sumSquareDBRecordStat);
-			//saveTrialResult(DBRecordStat,0);
-			// validate sizing feature
-			//sizeValidation(DBRecordStat,0);
-			// write to disk
-			if (simSaveDirectory != null && !simSaveDirectory.equals("")) {
-				writeInputFile(sumDBRecordStat, filenameTime, NexpStart);
-			}
-			
-			// continue the loop, add the simulation results to avgDBRecordStat
-			for (long i = NexpStart+1; i < NexpEnd; i++) {
-					// When seed = 123456, trial 68447 will generate a Inf. Using following function to check it. 
-					//int mm;
-					//if (i == 68447)
-					//    mm = 1;
+		public DBRecord[] doInBackground() throws IOException, InterruptedException {
+
+			final long Nexp = simExperiments.Nexp;
+			return simExperiments.run(new SimExperiments.TrialListener() {
+				public void trialDone(long trial, DBRecord DBRecordStat, boolean used) {
 					// Sends data chunks to the "process" method.
 					// Below, the process method updates the progress bar.
-					publish(NexpCompleted_atomic.incrementAndGet());
-	
+					int NexpCompleted = NexpCompleted_atomic.incrementAndGet();
+					publish(NexpCompleted);
 					// SwingWorker supports bound properties, 
 					// which are useful for communicating with other threads.
-					// Two bound properties are predefined: progress and state.
-					// As with all bound properties, progress and state can be used 
-					// to trigger event-handling tasks on the event dispatch thread.
 					// The progress bound variable is an int value that can range from 0 to 100.
-					// It has a predefined setter method (the protected SwingWorker.setProgress)
-					// and a predefined getter method (the public SwingWorker.getProgress).
-					setProgress((int) (100 * (i-NexpStart) / NexpThisCore));
-				try{	
-					currSimRoeMetz.doSim(DBRecordStat);
-				} catch (Exception e) {
-					e.printStackTrace();
-				} 
-					
-					// Check if DBRecordStat.totalVar < 0
-					// Keep track of how often this happens
-					// Replace current simulation with a new simulation
-					if(DBRecordStat.totalVar < 0) {
-						flagTotalVarIsNegative++;
-						// pad current simulation result to trialResult even totalvar < 0. 
-						
-						//saveTrialResult(DBRecordStat,i);
-						//sizeValidation(DBRecordStat,i);
-						// validate sizing feature
-						//sizeValidation(DBRecordStat,i);
-						continue;
-					}
-					// pad current simulation result to trialResult. 
-					//saveTrialResult(DBRecordStat,i);
-
-					// Accumulate DBRecord
-					DBRecord.add(DBRecordStat, sumDBRecordStat);
-					// Accumulate squareDBRecord
-					DBRecord.copy(DBRecordStat, squareDBRecordStat);
-					DBRecord.square(squareDBRecordStat);
-					DBRecord.add(squareDBRecordStat, sumSquareDBRecordStat);
-					// validate sizing feature
-					//sizeValidation(DBRecordStat,i);
+					setProgress((int) (100 * NexpCompleted / Nexp));
 					// write to disk
-					if (simSaveDirectory != null && !simSaveDirectory.equals("")) {
-						writeInputFile(DBRecordStat, filenameTime, i);
-					}
-					if(DBRecordStat.verbose) {
-						System.out.print("ThreadName:"+Thread.currentThread().getName()+":");
-						System.out.print(i+1 + " of " + Nexp + " completed\n");
+					if (used && simSaveDirectory != null && !simSaveDirectory.equals("")) {
+						writeInputFile(DBRecordStat, filenameTime, trial);
 					}
-
-			
-			}
-
-			sumDBRecordStat.flagTotalVarIsNegative = flagTotalVarIsNegative;
-			
-			/**
-			 * Return array of DBRecords! 
-			 */
-			DBRecord[] currDBRecord = new DBRecord[4];
-			currDBRecord[0] = DBRecordStat;
-			currDBRecord[1] = sumDBRecordStat;
-			currDBRecord[2] = squareDBRecordStat;
-			currDBRecord[3] = sumSquareDBRecordStat;
-			return currDBRecord;
+				}
+			});
 			
 		}
 
@@ -1131,34 +1036,6 @@ public class RMGUInterface {
 			firePropertyChange("done", 0, 1);
 		}
 	}
-	/**
-	 * function to save each trial result to trialResultArray
-	 * 
-	 */
-	/*private void saveTrialResult( DBRecord dBRecordStat, long trialID) {
-		double AUC_A       = dBRecordStat.AUCsReaderAvg[0];
-		double AUC_B       = dBRecordStat.AUCsReaderAvg[1];
-		double AUC_AminusAUC_B = AUC_A-AUC_B;
-		double totalVar    = dBRecordStat.totalVar;
-		double varA    = dBRecordStat.varA;
-		double varB    = dBRecordStat.varB;
-		double rejectNormal    = dBRecordStat.testStat.rejectNormal;
-		double rejectBDG    = dBRecordStat.testStat.rejectBDG;
-		double rejectHillis    = dBRecordStat.testStat.rejectHillis;
-		double pValueNormal = dBRecordStat.testStat.pValNormal;
-		double botCInormal = dBRecordStat.testStat.ciBotNormal;
-		double topCInormal = dBRecordStat.testStat.ciTopNormal;
-		double dfBDG = dBRecordStat.testStat.DF_BDG;
-		double pValueBDG = dBRecordStat.testStat.pValBDG;
-		double botCIBDG = dBRecordStat.testStat.ciBotBDG;
-		double topCIBDG = dBRecordStat.testStat.ciTopBDG;
-		double dfHillis = dBRecordStat.testStat.DF_Hillis;
-		double pValueHillis = dBRecordStat.testStat.pValHillis;
-		double botCIHillis = dBRecordStat.testStat.ciBotHillis;
-		double topCIHillis = dBRecordStat.testStat.ciTopHillis;
-		double[] tempTrial = {trialID+1, AUC_A,AUC_B,AUC_AminusAUC_B ,varA,varB,totalVar,pValueNormal,botCInormal,topCInormal,rejectNormal,dfBDG,pValueBDG,botCIBDG,topCIBDG,rejectBDG,dfHillis,pValueHillis,botCIHillis,topCIHillis,rejectHillis};
-		trialResultArray[(int) trialID] = tempTrial;
-	}*/
 	/**
 	 * function to do the sizing validation
 	 * 
@@ -1192,11 +1069,7 @@ public class RMGUInterface {
 	 */
 	
 	public class DoSimBtnListener implements ActionListener {
-		int finishedTasks = 0;
-//		final int numCores = Runtime.getRuntime().availableProcessors();
-		final int numCores = 1;
-		int numCoresToUse;
-		DBRecord[][] results = new DBRecord[numCores][2];
+		DBRecord[] results;
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
@@ -1206,30 +1079,13 @@ public class RMGUInterface {
 		public void doSimulationAnalysis() {
 			// TODO Auto-generated method stub
 			try {
-				SizePanelRoeMetz.NreaderJTextField = NreaderJTextField;
-				SizePanelRoeMetz.NnormalJTextField = NnormalJTextField;
-				SizePanelRoeMetz.NdiseaseJTextField = NdiseaseJTextField;
-
 				String String_seed = JTextField_seed.getText();
 				if(String_seed.length() > 9) {
 					return;
 				}
-				
-				double[] u = getMeans();
-				double[] var_t = getVariances();
 
 				// Get number of experiments
 				long Nexp = Integer.valueOf(JTextField_Nexp.getText());
-				// Determine number of cores
-				if (Nexp < numCores) {
-					numCoresToUse = (int) Nexp;
-				} else {
-					numCoresToUse = numCores;
-				}
-				// Determine the number of experiments per core
-				long NexpPerCore = Nexp/numCoresToUse;
-				// Declare the start and end of experiment index to be assigned to each core 
-				long NexpStart, NexpEnd;
 
 				// Check if saving results
 				if (!RoeMetz.doValidation){
@@ -1245,87 +1101,50 @@ public class RMGUInterface {
 				Date currDate = new Date();
 				final String filenameTime = dateForm.format(currDate);
 
-				/*
-				 * SSJ: Simulation Stochastique in Java
-				 * http://simul.iro.umontreal.ca/ssj
-				 * The actual random number generators (RNGs) are provided in
-				 * classes that implement this RandomStream interface. Each
-				 * stream of random numbers is an object of the class that 
-				 * implements this interface, and can be viewed as a virtual
-				 * random number generator.
-				 * ...
-				 * Each time a new RandomStream is created, its starting point
-				 * (initial seed) is computed automatically, Z steps ahead of
-				 * the starting point of the previously created stream of the
-				 * same type, and its current state is set equal to this starting point.
-				 */
-				int[] seedIntArr32 = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 
-					     10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 
-					     20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31} ;
-				String seedString = JTextField_seed.getText();
-				seedIntArr32[0] = Integer.parseInt(seedString);
-				WELL1024.setPackageSeed(seedIntArr32);
-				// set seed to 234567890 to yield a sequence for 1 core where DF_BDG < 1
-				// set seed to 725722555 to yield a sequence for 1 core where totalVar < 0, iter=6547
+				// Create the simulation experiments
+				final SimExperiments simExperiments = createSimExperiments();
+				simExperiments.saveTrials = simSaveDirectory != null && !simSaveDirectory.equals("");
+				// Keep the results of each experiment, replacing those of the last simulation
+				if (trialResults != null) trialResults.delete();
+				trialResults = new TrialResultStore();
+				simExperiments.trialResults = trialResults;
+				System.out.println("Simulation experiments: " + Nexp + ", workers: " + simExperiments.numWorkersToUse);
 
 				// Create a progress bar
 				final AtomicInteger NexpCompleted_atomic = new AtomicInteger(0);
 				createProgressBar((int) Nexp, NexpCompleted_atomic.get());
 
-				final SimExperiments_thread[] allTasks = new SimExperiments_thread[numCoresToUse];
 		        System.out.println("******** TEST serial RNG BEG ********");
-				for (int i = 0; i < numCoresToUse; i++) {
-					final int taskNum = i;
-					WELL1024 RandomStreamI = new WELL1024();
-					for (int ns= 1; ns<RandomStreamID; ns++){
-						RandomStreamI = new WELL1024();
-					}
-					NexpStart = NexpPerCore * i;
-					NexpEnd = NexpStart + NexpPerCore;
-					// Last core must do more experiments 
-					//   if the number of experiments is not a factor of the number of cores
-					if( i==numCoresToUse-1) {
-						NexpEnd = Nexp;
-					}
-					
-					// Create the simulation objects on available cores
-					allTasks[i] = new SimExperiments_thread(
-						u, var_t, Nexp, NexpStart, NexpEnd, NexpCompleted_atomic, 
-						filenameTime, i, RandomStreamI, SizePanelRoeMetz);
-					
-					// Check to see when each task finishes and get its results
-					allTasks[i].addPropertyChangeListener(
-					new PropertyChangeListener() {
-					public void propertyChange(PropertyChangeEvent evt) {
-						if (evt.getPropertyName().equals("done")) {
-							try {
-								results[taskNum] = allTasks[taskNum].get();
-								finishedTasks++;
-								if (finishedTasks == numCoresToUse) {
-									finishedTasks = 0;
-									processResults(simSaveDirectory,filenameTime);
-									if(RoeMetz.doValidation){
-										analysisExportListener analysisExportListener1 = new analysisExportListener(avgDBRecordStat,"Simulation",StatPanel1);
-										analysisExportListener1.exportResult();
-										//exportTrialResult(null);
-										//exportSizeValResult(null);
-										System.exit(0);
-									}
-								}
-							} catch (InterruptedException e) {
-								e.printStackTrace();
-							} catch (ExecutionException e) {
-								e.printStackTrace();
+				final SimExperiments_thread task = new SimExperiments_thread(
+						simExperiments, NexpCompleted_atomic, filenameTime);
+		        System.out.println("******** TEST serial RNG END ********");
+				
+				// Check to see when the task finishes and get its results
+				task.addPropertyChangeListener(
+				new PropertyChangeListener() {
+				public void propertyChange(PropertyChangeEvent evt) {
+					if (evt.getPropertyName().equals("done")) {
+						try {
+							results = task.get();
+							reportExperimentsDone(simExperiments);
+							processResults(simSaveDirectory,filenameTime);
+							if(RoeMetz.doValidation){
+								analysisExportListener analysisExportListener1 = new analysisExportListener(avgDBRecordStat,"Simulation",StatPanel1);
+								analysisExportListener1.exportResult();
+								exportTrialResult(null);
+								//exportSizeValResult(null);
+								System.exit(0);
 							}
+						} catch (InterruptedException e) {
+							e.printStackTrace();
+						} catch (ExecutionException e) {
+							e.printStackTrace();
 						}
-					}});
-				}
+					}
+				}});
 				
-		        System.out.println("******** TEST serial RNG END ********");
-				// Run each simulation object on its own core
-				for (int i = 0; i < numCoresToUse; i++) {
-					allTasks[i].execute();
-				}
+				// Run the simulation experiments on the workers
+				task.execute();
 	
 			} catch (NumberFormatException e1) {
 				System.out.println(e1.toString());
@@ -1337,6 +1156,96 @@ public class RMGUInterface {
 			
 		}
 		
+		/**
+		 * Keeps the number of experiments done and, if the simulation stops at target standard errors,
+		 * prints it with the standard errors reached
+		 */
+		private void reportExperimentsDone(SimExperiments simExperiments) {
+
+			NexpDone = simExperiments.NexpDone;
+			if (!SimExperiments.isAdaptive()) return;
+			double[] SE = SimExperiments.monteCarloSE(simExperiments.accumulator);
+			String report = "Experiments done: " + NexpDone + " of at most " + simExperiments.Nexp;
+			for (int i = 0; i < SE.length; i++) {
+				if (SimExperiments.targetSE[i] > 0)
+					report = report + ", SE of " + SimExperiments.PRECISION_VALUES[i] + " = " + SE[i]
+							+ " (target " + SimExperiments.targetSE[i] + ")";
+			}
+			System.out.println(report);
+
+		}
+
+		/**
+		 * @return the simulation experiments of the inputs, all of them
+		 * @throws NumberFormatException if an input is not a number
+		 */
+		private SimExperiments createSimExperiments() {
+
+			SizePanelRoeMetz.NreaderJTextField = NreaderJTextField;
+			SizePanelRoeMetz.NnormalJTextField = NnormalJTextField;
+			SizePanelRoeMetz.NdiseaseJTextField = NdiseaseJTextField;
+			double[] u = getMeans();
+			double[] var_t = getVariances();
+			long Nexp = Integer.valueOf(JTextField_Nexp.getText());
+			return new SimExperiments(u, var_t, SizePanelRoeMetz,
+					useMLE, Nexp, Integer.parseInt(JTextField_seed.getText()), RandomStreamID);
+
+		}
+
+		/**
+		 * Performs the simulation experiments shardStart to shardEnd-1 of the input file being validated,
+		 * on this thread, and writes them to a shard file, see {@link roemetz.core.SimShards}.
+		 * Writes checkpoints and resumes from them as set by {@link roemetz.core.SimExperiments#checkpointSeconds}
+		 * and {@link roemetz.core.SimExperiments#resume}
+		 *
+		 * @param shardStart index of the first experiment
+		 * @param shardEnd index after the last experiment
+		 * @throws IOException
+		 * @throws InterruptedException
+		 */
+		public void doSimulationShard(long shardStart, long shardEnd) throws IOException, InterruptedException {
+
+			SimExperiments simExperiments = createSimExperiments();
+			simExperiments.setShard(shardStart, shardEnd);
+			simExperiments.inputFile = validateFunction.inputFile;
+			if (trialResults != null) trialResults.delete();
+			trialResults = new TrialResultStore();
+			simExperiments.trialResults = trialResults;
+			// checkpoints of an earlier run of the shard are only kept to resume it
+			if (!SimExperiments.resume) SimShards.deleteCheckpoints(simExperiments);
+			System.out.println("Simulation experiments: " + shardStart + " to " + (shardEnd - 1)
+					+ " of " + simExperiments.Nexp + ", workers: " + simExperiments.numWorkersToUse);
+			simExperiments.run(null);
+			File shardFile = SimShards.shardFile(validateFunction.inputFile, shardStart, shardEnd);
+			SimShards.write(simExperiments, shardFile);
+			SimShards.deleteCheckpoints(simExperiments);
+			trialResults.delete();
+			System.out.println("Shard written to " + shardFile);
+
+		}
+
+		/**
+		 * Merges the shard files of the input file being validated and exports the results
+		 * as a simulation of all the experiments would
+		 *
+		 * @throws IOException if the shards are not those of the simulation of the input file
+		 */
+		public void mergeSimulationShards() throws IOException {
+
+			SimExperiments simExperiments = createSimExperiments();
+			if (trialResults != null) trialResults.delete();
+			trialResults = new TrialResultStore();
+			simExperiments.trialResults = trialResults;
+			File[] shardFiles = SimShards.listShards(validateFunction.inputFile);
+			System.out.println("Merging " + shardFiles.length + " shards");
+			results = SimShards.merge(simExperiments, shardFiles);
+			processResults(null, "");
+			analysisExportListener analysisExportListener1 = new analysisExportListener(avgDBRecordStat,"Simulation",StatPanel1);
+			analysisExportListener1.exportResult();
+			exportTrialResult(null);
+
+		}
+
 		/**
 		 * Makes a bar indicating the amount of progress over all simulation
 		 * experiments
@@ -1358,31 +1267,14 @@ public class RMGUInterface {
 
 		/**
 		 * Called after all groups of simulation experiments are completed.
-		 * Averages together their results and calls method to display them.
+		 * Displays the mean and variance of their results.
 		 */
 		public void processResults(String simSaveDirectory, String filenameTime) {
-			progDialog.setVisible(false);
+			if (progDialog != null) progDialog.setVisible(false);
 
-			DBRecord DBRecordStat = new DBRecord();
-			avgDBRecordStat = new DBRecord();
-			DBRecord squareDBRecordStat = new DBRecord();
-			DBRecord avgSquareDBRecordStat = new DBRecord();
-			
-			// for i=0, put results in avgDBRecordStat
-			DBRecordStat = results[0][0];
-			avgDBRecordStat = results[0][1];
-			squareDBRecordStat = results[0][2];
-			avgSquareDBRecordStat = results[0][3];
-			// continue the loop, add the simulation results to avgDBRecordStat
-			for (int i = 1; i < numCoresToUse; i++) {
-				DBRecordStat = results[i][1];
-				DBRecord.add(DBRecordStat, avgDBRecordStat);
-				DBRecordStat = results[i][0];
-				
-				squareDBRecordStat = results[i][3];
-				DBRecord.add(squareDBRecordStat, avgSquareDBRecordStat);
-				squareDBRecordStat = results[i][2];
-			}
+			// the mean and variance over all workers, merged by SimExperiments
+			avgDBRecordStat = results[1];
+			varDBRecordStat = results[2];
 
 			if(avgDBRecordStat.flagTotalVarIsNegative > 0 &&!RoeMetz.doValidation) {
 	 			JFrame frame = new JFrame();
@@ -1396,37 +1288,13 @@ public class RMGUInterface {
 						JOptionPane.ERROR_MESSAGE);
 			}
 			
- 			final double Nexp = Integer.valueOf(JTextField_Nexp.getText());
- 			double UseTrial = Nexp - avgDBRecordStat.flagTotalVarIsNegative;
-			DBRecord.scale(avgDBRecordStat, 1.0/UseTrial);
-			DBRecord.scale(avgSquareDBRecordStat, 1.0/UseTrial);
-
-			// Calculate second order moments
-			DBRecord.copy(avgSquareDBRecordStat, squareDBRecordStat);
-			DBRecord.scale(squareDBRecordStat, UseTrial/(UseTrial-1));
-			// Calculate squared means
-			DBRecord.copy(avgDBRecordStat, DBRecordStat);
-			DBRecord.square(DBRecordStat);
-			DBRecord.scale(DBRecordStat, -UseTrial/(UseTrial-1));
-			// Calculate variances: N/(N-1) * (avg(x^2) - avg(x)^2)
-			DBRecord.add(DBRecordStat, squareDBRecordStat);
-			// Rename result
-			varDBRecordStat = squareDBRecordStat;
-			squareDBRecordStat = null;
-			// Reset DBRecordStat: Access one MC trial
-			DBRecordStat = results[0][0];
 			avgDBRecordStat.Decompositions();
-			StatPanel1 = new StatPanel(RoeMetz1.getFrame(), avgDBRecordStat);
+			// there is no frame when merging shards from the command line
+			StatPanel1 = new StatPanel(RoeMetz1 == null ? null : RoeMetz1.getFrame(), avgDBRecordStat);
 			StatPanel1.setStatPanel();
 			StatPanel1.setTable1();
 			StatPanel1.setMCresults(avgDBRecordStat, varDBRecordStat);
 			
-			JDialog simOutput = new JDialog(RoeMetz1.getFrame(), "Simulation Results: MC means");
-			simOutput.add(StatPanel1.JPanelStat);
-			JButton simulationExport= new JButton("Export Analysis Result");
-			simulationExport.addActionListener(new analysisExportListener(avgDBRecordStat,"Simulation",StatPanel1));			
-			simOutput.add(simulationExport, BorderLayout.PAGE_END);
-			simOutput.pack();
 			/*for (int i =0 ; i<8; i++){
 				double[][] oneSetting = SizingResultArray[i];
 				for(int j =0; j<7;j++){
@@ -1448,8 +1316,15 @@ public class RMGUInterface {
 			}
 			// Processing sizing results
 			double[][] tracking = SizingResultMean;*/
-			if(!RoeMetz.doValidation)
-			simOutput.setVisible(true);
+			if(!RoeMetz.doValidation) {
+				JDialog simOutput = new JDialog(RoeMetz1.getFrame(), "Simulation Results: MC means");
+				simOutput.add(StatPanel1.JPanelStat);
+				JButton simulationExport= new JButton("Export Analysis Result");
+				simulationExport.addActionListener(new analysisExportListener(avgDBRecordStat,"Simulation",StatPanel1));			
+				simOutput.add(simulationExport, BorderLayout.PAGE_END);
+				simOutput.pack();
+				simOutput.setVisible(true);
+			}
 //			writeSummaryFile(simSaveDirectory, "Summary of Simulation Results",
 //					"results-simulation-" + filenameTime, allDecomps,
 //					allCoeffs, avgdAUC);
@@ -1804,7 +1679,7 @@ public class RMGUInterface {
 	 *            of output files
 	 * @param l The number of this particular experiment in the batch
 	 */
-	public void writeInputFile(DBRecord currDBRecord, String filename, long l) {
+	public synchronized void writeInputFile(DBRecord currDBRecord, String filename, long l) {
 		
 		try {
 			
@@ -2418,14 +2293,18 @@ public class RMGUInterface {
 							reportGUI = reportGUI + savedFileName + "\r\n" + "\r\n";
 							reportGUI = exportToFile.exoprtiRoeMetzSet(reportGUI,SizePanelRoeMetz);
 							reportGUI = reportGUI + "Seed for RNG: " + JTextField_seed.getText() + "\r\n";
-							reportGUI = reportGUI + "Number of Experiments: " + JTextField_Nexp.getText() + "\r\n" + "\r\n";
+							reportGUI = reportGUI + "Number of Experiments: " + JTextField_Nexp.getText() + "\r\n";
+							if (SimExperiments.isAdaptive())
+								reportGUI = reportGUI + "Number of Experiments Done: " + NexpDone
+										+ " (stopped at the target Monte Carlo standard errors)" + "\r\n";
+							reportGUI = reportGUI + "\r\n";
 							reportGUI = reportGUI + "\r\n************************************************************\r\n";
 							reportGUI = exportToFile.exportSummary(reportGUI, DB1);	
 							reportGUI = exportToFile.exportStatPanel(reportGUI, DB1, StatPanelIn);						
 							reportGUI = exportToFile.exportMCvariance(reportGUI, varDBRecordStat);
 							reportGUI = exportToFile.exportTable1(reportGUI, DB1);
 							reportGUI = exportToFile.exportTable2(reportGUI, DB1);
-						  //  exportTrialResult(outputPackage);
+						    exportTrialResult(outputPackage);
 						   // exportSizeValResult(outputPackage);
 						}
 						reportValidation = "MCstat,AUCA,AUCB,AUCAminusAUCB,varA,varB,varAUCAminusAUCB,pValueNormal,botCInormal,topCInormal,rejectNormal,dfBDG,pValueBDG,botCIBDG,topCIBDG,rejectBDG,dfHillis,pValueHillis,botCIHillis,topCIHillis,rejectHillis" + "\r\n";
@@ -2477,8 +2356,15 @@ public class RMGUInterface {
  		}
 	
 	}
-	/*private void exportTrialResult(File GUIoutputDir) {
-		// TODO Auto-generated method stub
+	/**
+	 * Writes the results of each experiment of the last simulation to simulationTrials.csv,
+	 * see {@link roemetz.core.TrialResultStore#exportCSV(File)}
+	 * 
+	 * @param GUIoutputDir directory chosen in the GUI; not used when validating an input file,
+	 *  where the file is written to the output directory of the input file
+	 */
+	private void exportTrialResult(File GUIoutputDir) {
+		if (trialResults == null) return;
 		try {
 			File f;	
 			if (RoeMetz.doValidation){
@@ -2489,39 +2375,14 @@ public class RMGUInterface {
 				FileName= FileName.substring(0,FileName.lastIndexOf("."));
 				String exportFileName = FileName +"simulationTrials" +".csv";
 				f = new File (outputDir +"//" + exportFileName);
-				if (!f.exists()) {
-					f.createNewFile();
-				}
 			}else{
 				f = new File (GUIoutputDir + "//" + "simulationTrials" +".csv");
 			}
-			FileWriter fw;		
-			fw = new FileWriter(f.getAbsoluteFile());
-			BufferedWriter bw = new BufferedWriter(fw);
-			String [] trialResultTitle = new String[] {"TrialID","AUCA","AUCB","AUCAminusB","varAUCA","varAUCB","varAUCAandB","pValueNormal","botCInormal","topCInormal",
-					"rejectNormal","dfBDG","pValueBDG","botCIBDG","topCIBDG","rejectBDG","dfHillis","pValueHillis","botCIHillis","topCIHillis","rejectHillis"};
-			for (int i=0;i<trialResultTitle.length;i++){
-				bw.write(trialResultTitle[i]+",");
-			}
-			bw.write("\n");
-		    for (int i=0;i<trialResultArray.length;i++){
-		    	bw.write(Double.toString(trialResultArray[i][0])+",");
-		        for (int j=1;j<trialResultArray[0].length;j++){		
-		        	if (Double.isNaN(trialResultArray[i][j])){
-		        		bw.write("NaN,");
-		        	}else{
-		        		bw.write(fourDecE.format(trialResultArray[i][j])+",");
-		        	}
-		        }
-		        bw.write("\n");
-		    }
-			//bw.write(trialResultArrayfollow);
-			bw.close();
+			trialResults.exportCSV(f);
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
-	}*/
+	}
 
 	// export sizing validation results
 /*	private void exportSizeValResult(File GUIoutputDir) {